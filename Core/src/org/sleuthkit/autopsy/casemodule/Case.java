@@ -54,6 +54,7 @@
 import org.sleuthkit.autopsy.casemodule.events.ContentTagDeletedEvent;
 import org.sleuthkit.autopsy.casemodule.events.DataSourceAddedEvent;
 import org.sleuthkit.autopsy.casemodule.events.ReportAddedEvent;
+import org.sleuthkit.autopsy.casemodule.services.Blackboard;
 import org.sleuthkit.autopsy.casemodule.services.Services;
 import org.sleuthkit.autopsy.core.RuntimeProperties;
 import org.sleuthkit.autopsy.core.UserPreferences;
@@ -832,6 +833,15 @@ public void receiveError(String context, String errorMessage) {
      *                             exception.
      */
     public void closeCase() throws CaseActionException {
+        /*
+         * Index the queued artifacts before the keyword search index is closed
+         * by the listeners of the current case change.
+         */
+        try {
+            services.getBlackboard().awaitIndexing();
+        } catch (Blackboard.BlackboardException ex) {
+            logger.log(Level.WARNING, "Error waiting for the queued artifacts to be indexed", ex); //NON-NLS
+        }
         changeCurrentCase(null);
         try {
             services.close();
@@ -0,0 +1,180 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.casemodule.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.keywordsearchservice.KeywordSearchService;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Indexes the artifacts posted to the blackboard in the background, so that
+ * modules posting artifacts do not wait for the keyword search service. The
+ * artifacts are taken off a bounded queue in batches by worker threads; a
+ * module only waits when the queue is full.
+ */
+final class ArtifactIndexingQueue {
+
+    private static final Logger logger = Logger.getLogger(ArtifactIndexingQueue.class.getName());
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final int NUM_WORKERS = 2;
+    private static final long POLL_TIMEOUT_MS = 500;
+
+    private final KeywordSearchService searchService;
+    private final SleuthkitCase caseDb;
+    private final BlockingQueue<BlackboardArtifact> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final List<Thread> workers = new ArrayList<>();
+    private final Object pendingLock = new Object();
+    private long queued = 0; //artifacts queued so far, guarded by pendingLock
+    private long completed = 0; //artifacts indexed (or failed) so far, guarded by pendingLock
+    private volatile boolean shutDown = false;
+
+    /**
+     * Starts the worker threads
+     *
+     * @param searchService the service that indexes the artifacts
+     * @param caseDb        the case database of the artifacts
+     */
+    ArtifactIndexingQueue(KeywordSearchService searchService, SleuthkitCase caseDb) {
+        this.searchService = searchService;
+        this.caseDb = caseDb;
+        for (int i = 0; i < NUM_WORKERS; ++i) {
+            Thread worker = new Thread(new Worker(), "artifact-indexing-" + i); //NON-NLS
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Queues an artifact for indexing, waiting for room in the queue if it is
+     * full
+     *
+     * @param artifact the artifact
+     *
+     * @throws InterruptedException
+     */
+    void add(BlackboardArtifact artifact) throws InterruptedException {
+        synchronized (pendingLock) {
+            ++queued;
+        }
+        try {
+            queue.put(artifact);
+        } catch (InterruptedException ex) {
+            done(1);
+            throw ex;
+        }
+    }
+
+    /**
+     * Waits until as many artifacts as were queued at the time of the call are
+     * indexed. Artifacts queued after the call, e.g. by other ingest jobs, are
+     * not waited for.
+     *
+     * @throws InterruptedException
+     */
+    void awaitIndexing() throws InterruptedException {
+        synchronized (pendingLock) {
+            final long target = queued;
+            while (completed < target && !shutDown) {
+                pendingLock.wait();
+            }
+        }
+    }
+
+    /**
+     * Indexes the queued artifacts and stops the worker threads
+     */
+    void shutDown() {
+        try {
+            awaitIndexing();
+        } catch (InterruptedException ex) {
+            logger.log(Level.WARNING, "Interrupted while waiting for {0} artifacts to be indexed", queue.size()); //NON-NLS
+            Thread.currentThread().interrupt();
+        }
+        shutDown = true;
+        synchronized (pendingLock) {
+            pendingLock.notifyAll();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private void done(int numArtifacts) {
+        synchronized (pendingLock) {
+            completed += numArtifacts;
+            pendingLock.notifyAll();
+        }
+    }
+
+    /**
+     * Takes batches of artifacts off the queue and indexes them
+     */
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            List<BlackboardArtifact> batch = new ArrayList<>();
+            while (!shutDown) {
+                try {
+                    BlackboardArtifact first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                } catch (InterruptedException ex) {
+                    if (shutDown) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    searchService.indexArtifacts(caseDb, batch);
+                } catch (TskCoreException | RuntimeException ex) {
+                    logger.log(Level.WARNING, "Error indexing a batch of " + batch.size() + " artifacts, indexing them one at a time", ex); //NON-NLS
+                    indexEach(batch);
+                } finally {
+                    done(batch.size());
+                    batch.clear();
+                }
+            }
+        }
+
+        private void indexEach(List<BlackboardArtifact> batch) {
+            for (BlackboardArtifact artifact : batch) {
+                try {
+                    searchService.indexArtifacts(caseDb, Collections.singletonList(artifact));
+                } catch (TskCoreException | RuntimeException ex) {
+                    logger.log(Level.SEVERE, "Error indexing artifact " + artifact.getArtifactID(), ex); //NON-NLS
+                }
+            }
+        }
+    }
+}
@@ -38,7 +38,8 @@
 public final class Blackboard implements Closeable {
 
     private SleuthkitCase caseDb;
-    
+    private ArtifactIndexingQueue indexingQueue = null; //created on first use
+
     /**
      * Constructs a representation of the blackboard, a place where artifacts
      * and their attributes are posted.
@@ -50,25 +51,63 @@ public final class Blackboard implements Closeable {
     }
 
     /**
-     * Indexes the text associated with the an artifact.
+     * Queues the text associated with the an artifact for indexing. The
+     * artifact is indexed in the background, in a batch with other artifacts;
+     * this only waits if too many artifacts are already queued. Errors while
+     * indexing are logged. See awaitIndexing().
      *
      * @param artifact The artifact to be indexed.
      *
      * @throws BlackboardException If there is a problem indexing the artifact.
      */
-    public synchronized void indexArtifact(BlackboardArtifact artifact) throws BlackboardException {
-        if (null == caseDb) {
-            throw new BlackboardException("Blackboard has been closed");
+    public void indexArtifact(BlackboardArtifact artifact) throws BlackboardException {
+        ArtifactIndexingQueue queue = getIndexingQueue();
+        try {
+            queue.add(artifact);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BlackboardException("Interrupted while queueing artifact for indexing", ex);
+        }
+    }
+
+    /**
+     * Waits until all the artifacts queued for indexing so far are indexed,
+     * e.g. at the end of an ingest job.
+     *
+     * @throws BlackboardException If the blackboard is closed or the wait is
+     *                             interrupted.
+     */
+    public void awaitIndexing() throws BlackboardException {
+        final ArtifactIndexingQueue queue;
+        synchronized (this) {
+            if (null == caseDb) {
+                throw new BlackboardException("Blackboard has been closed");
+            }
+            queue = indexingQueue;
         }
-        KeywordSearchService searchService = Lookup.getDefault().lookup(KeywordSearchService.class);
-        if (null == searchService) {
-            throw new BlackboardException("Keyword search service not found");
+        if (null == queue) {
+            return;
         }
         try {
-            searchService.indexArtifact(artifact);
-        } catch (TskCoreException ex) {
-            throw new BlackboardException("Error indexing artifact", ex);
+            queue.awaitIndexing();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BlackboardException("Interrupted while waiting for artifacts to be indexed", ex);
+        }
+    }
+
+    private synchronized ArtifactIndexingQueue getIndexingQueue() throws BlackboardException {
+        if (null == caseDb) {
+            throw new BlackboardException("Blackboard has been closed");
+        }
+        if (null == indexingQueue) {
+            KeywordSearchService searchService = Lookup.getDefault().lookup(KeywordSearchService.class);
+            if (null == searchService) {
+                throw new BlackboardException("Keyword search service not found");
+            }
+            indexingQueue = new ArtifactIndexingQueue(searchService, caseDb);
         }
+        return indexingQueue;
     }
 
     /**
@@ -131,13 +170,23 @@ public synchronized BlackboardAttribute.Type getOrAddAttributeType(String typeNa
     }
 
     /**
-     * Closes the blackboard.
+     * Closes the blackboard. The artifacts still queued for indexing should be
+     * indexed before, with awaitIndexing(), while the keyword search index of
+     * the case is open.
      *
      * @throws IOException If there is a problem closing the blackboard.
      */
     @Override
-    public synchronized void close() throws IOException {
-        caseDb = null;
+    public void close() throws IOException {
+        final ArtifactIndexingQueue queue;
+        synchronized (this) {
+            caseDb = null;
+            queue = indexingQueue;
+            indexingQueue = null;
+        }
+        if (null != queue) {
+            queue.shutDown();
+        }
     }
 
 
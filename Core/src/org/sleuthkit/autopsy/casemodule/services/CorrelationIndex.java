@@ -0,0 +1,487 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.casemodule.services;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.PlatformUtil;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.SleuthkitCase;
+
+/**
+ * An index of the MD5 hashes of the files of the case, for finding the files
+ * that also occur in other data sources of the case or in earlier cases
+ * without querying the case database.
+ *
+ * The occurrences in the case are kept in memory, keyed by MD5. They are
+ * loaded from the hashes in the case database in the background the first
+ * time the index is used, and kept up to date by the hash lookup module as it
+ * calculates hashes. Until the index is loaded, the counts are unknown (-1).
+ *
+ * The occurrences in earlier cases come from a central store of the hashes of
+ * the cases of this user, a SQLite database in the user config directory
+ * indexed by MD5. Files are recorded in it when the hash lookup module is
+ * configured to do so; the number of other cases is read for the hashes of the
+ * case when the index is loaded and, for new hashes, in batches as files are
+ * added.
+ */
+public final class CorrelationIndex implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(CorrelationIndex.class.getName());
+    private static final String CENTRAL_STORE_FILE_NAME = "correlation.db"; //NON-NLS
+    // below the default limit of 999 parameters of a SQLite statement
+    private static final int BATCH_SIZE = 500;
+    // how long a write waits for the readers of the store, e.g. a loading index
+    private static final int BUSY_TIMEOUT_MS = 60000;
+    // serializes the writes to the store of the indexes of this process
+    private static final Object centralStoreLock = new Object();
+
+    private final SleuthkitCase caseDb;
+    private volatile String caseDirectory = null; //identifies the case in the central store, set when loading starts
+    private final Object lock = new Object();
+    private final Map<String, Occurrences> occurrences = new HashMap<>(); //guarded by lock
+    // files counted while loading, so that a file added while it is being loaded is counted once
+    private Set<Long> countedWhileLoading = new HashSet<>(); //guarded by lock
+    private boolean loaded = false; //guarded by lock
+    private Thread loader = null; //guarded by lock, started on first use
+    private final List<long[]> pendingFiles = new ArrayList<>(); //object and data source ids, guarded by lock
+    private final List<String> pendingHashes = new ArrayList<>(); //guarded by lock
+    private final Set<String> pendingLookups = new HashSet<>(); //guarded by lock
+
+    /**
+     * The occurrences of one hash
+     */
+    private static class Occurrences {
+
+        private int fileCount = 0;
+        private long[] dataSourceIds = new long[0];
+        private int otherCaseCount = 0;
+
+        void addFile(long dataSourceId) {
+            ++fileCount;
+            for (long id : dataSourceIds) {
+                if (id == dataSourceId) {
+                    return;
+                }
+            }
+            dataSourceIds = Arrays.copyOf(dataSourceIds, dataSourceIds.length + 1);
+            dataSourceIds[dataSourceIds.length - 1] = dataSourceId;
+        }
+    }
+
+    /**
+     * Constructs an index of the MD5 hashes of the files of a case
+     *
+     * @param caseDb the case database
+     */
+    CorrelationIndex(SleuthkitCase caseDb) {
+        this.caseDb = caseDb;
+    }
+
+    /**
+     * Gets the path of the central store of the hashes of all cases
+     *
+     * @return the path
+     */
+    public static String getCentralStorePath() {
+        return PlatformUtil.getUserConfigDirectory() + File.separator + CENTRAL_STORE_FILE_NAME;
+    }
+
+    /**
+     * Adds a file whose MD5 hash was just calculated. Files hashed before are
+     * already in the index.
+     *
+     * @param file         the file
+     * @param dataSourceId the object id of its data source
+     * @param md5Hash      its MD5 hash
+     */
+    public void addFile(AbstractFile file, long dataSourceId, String md5Hash) {
+        final String key = md5Hash.toLowerCase();
+        boolean flush;
+        synchronized (lock) {
+            startLoading();
+            if (countedWhileLoading == null || countedWhileLoading.add(file.getId())) {
+                Occurrences entry = occurrences.get(key);
+                if (entry == null) {
+                    entry = new Occurrences();
+                    occurrences.put(key, entry);
+                    pendingLookups.add(key);
+                }
+                entry.addFile(dataSourceId);
+            }
+            flush = pendingLookups.size() >= BATCH_SIZE;
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
+    /**
+     * Records a file in the central store, for finding it in later cases. The
+     * files are written in batches.
+     *
+     * @param file         the file
+     * @param dataSourceId the object id of its data source
+     * @param md5Hash      its MD5 hash
+     */
+    public void recordInCentralStore(AbstractFile file, long dataSourceId, String md5Hash) {
+        boolean flush;
+        synchronized (lock) {
+            startLoading();
+            pendingFiles.add(new long[]{file.getId(), dataSourceId});
+            pendingHashes.add(md5Hash.toLowerCase());
+            flush = pendingFiles.size() >= BATCH_SIZE;
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
+    /**
+     * Gets the number of files of the case with an MD5 hash
+     *
+     * @param md5Hash the hash
+     *
+     * @return the number of files, or -1 if the index is still loading
+     */
+    public int getFileCount(String md5Hash) {
+        synchronized (lock) {
+            if (!isLoaded()) {
+                return -1;
+            }
+            Occurrences entry = occurrences.get(md5Hash.toLowerCase());
+            return entry == null ? 0 : entry.fileCount;
+        }
+    }
+
+    /**
+     * Gets the data sources of the case that contain a file with an MD5 hash
+     *
+     * @param md5Hash the hash
+     *
+     * @return the object ids of the data sources, empty if the index is still
+     *         loading
+     */
+    public List<Long> getDataSourceIds(String md5Hash) {
+        List<Long> ids = new ArrayList<>();
+        synchronized (lock) {
+            Occurrences entry = isLoaded() ? occurrences.get(md5Hash.toLowerCase()) : null;
+            if (entry != null) {
+                for (long id : entry.dataSourceIds) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Gets the number of other cases recorded in the central store with a
+     * file with an MD5 hash
+     *
+     * @param md5Hash the hash
+     *
+     * @return the number of cases, or -1 if the index is still loading
+     */
+    public int getOtherCaseCount(String md5Hash) {
+        synchronized (lock) {
+            if (!isLoaded()) {
+                return -1;
+            }
+            Occurrences entry = occurrences.get(md5Hash.toLowerCase());
+            return entry == null ? 0 : entry.otherCaseCount;
+        }
+    }
+
+    /**
+     * Checks whether the content of a file was seen elsewhere: in another data
+     * source of the case or in another case
+     *
+     * @param md5Hash      the MD5 hash of the file
+     * @param dataSourceId the object id of its data source
+     *
+     * @return true if it was seen elsewhere, false if not or if the index is
+     *         still loading
+     */
+    public boolean isSeenElsewhere(String md5Hash, long dataSourceId) {
+        synchronized (lock) {
+            Occurrences entry = isLoaded() ? occurrences.get(md5Hash.toLowerCase()) : null;
+            if (entry == null) {
+                return false;
+            }
+            return entry.otherCaseCount > 0 || entry.dataSourceIds.length > 1
+                    || (entry.dataSourceIds.length == 1 && entry.dataSourceIds[0] != dataSourceId);
+        }
+    }
+
+    /**
+     * Writes the files queued for the central store and reads the number of
+     * other cases of the new hashes, e.g. at the end of an ingest job. If the
+     * store cannot be updated, the files and hashes are queued again for the
+     * next flush.
+     */
+    public void flush() {
+        final List<long[]> files;
+        final List<String> hashes;
+        final List<String> lookups;
+        synchronized (lock) {
+            files = new ArrayList<>(pendingFiles);
+            hashes = new ArrayList<>(pendingHashes);
+            pendingFiles.clear();
+            pendingHashes.clear();
+            // the new hashes are looked up once the counts of the loaded ones are read
+            lookups = loaded ? new ArrayList<>(pendingLookups) : new ArrayList<>();
+            pendingLookups.removeAll(lookups);
+        }
+        if (files.isEmpty() && lookups.isEmpty()) {
+            return;
+        }
+        boolean written = files.isEmpty();
+        int looked = 0;
+        synchronized (centralStoreLock) {
+            try (Connection connection = openCentralStore(!files.isEmpty())) {
+                if (connection == null) {
+                    return;
+                }
+                if (!written) {
+                    writeFiles(connection, caseDirectory, files, hashes);
+                    written = true;
+                }
+                while (looked < lookups.size()) {
+                    final int end = Math.min(looked + BATCH_SIZE, lookups.size());
+                    Map<String, Integer> counts = readOtherCaseCounts(connection, caseDirectory, lookups.subList(looked, end));
+                    synchronized (lock) {
+                        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                            occurrences.get(count.getKey()).otherCaseCount = count.getValue();
+                        }
+                    }
+                    looked = end;
+                }
+            } catch (SQLException ex) {
+                logger.log(Level.SEVERE, "Error updating the correlation central store, will retry on the next flush", ex); //NON-NLS
+            }
+        }
+        if (!written || looked < lookups.size()) {
+            synchronized (lock) {
+                if (!written) {
+                    pendingFiles.addAll(0, files);
+                    pendingHashes.addAll(0, hashes);
+                }
+                pendingLookups.addAll(lookups.subList(looked, lookups.size()));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread loaderThread;
+        synchronized (lock) {
+            loaderThread = loader;
+        }
+        if (loaderThread != null) {
+            loaderThread.interrupt();
+            try {
+                loaderThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            // record the files added since the last flush
+            flush();
+        }
+    }
+
+    /**
+     * Checks whether the index is loaded, starting to load it on first use.
+     * Called with the lock held.
+     */
+    private boolean isLoaded() {
+        startLoading();
+        return loaded;
+    }
+
+    /**
+     * Starts loading the index in the background, if not started yet. Called
+     * with the lock held.
+     */
+    private void startLoading() {
+        if (loader == null) {
+            caseDirectory = Case.getCurrentCase().getCaseDirectory();
+            loader = new Thread(this::load, "correlation-index-loader"); //NON-NLS
+            loader.setDaemon(true);
+            loader.start();
+        }
+    }
+
+    private void load() {
+        final long start = System.currentTimeMillis();
+        final String query = "SELECT obj_id, data_source_obj_id, md5 FROM tsk_files WHERE md5 IS NOT NULL"; //NON-NLS
+        try (SleuthkitCase.CaseDbQuery dbQuery = caseDb.executeQuery(query)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            while (resultSet.next()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                final long objId = resultSet.getLong("obj_id"); //NON-NLS
+                final long dataSourceId = resultSet.getLong("data_source_obj_id"); //NON-NLS
+                final String key = resultSet.getString("md5").toLowerCase(); //NON-NLS
+                synchronized (lock) {
+                    if (countedWhileLoading.add(objId)) {
+                        Occurrences entry = occurrences.get(key);
+                        if (entry == null) {
+                            entry = new Occurrences();
+                            occurrences.put(key, entry);
+                        }
+                        entry.addFile(dataSourceId);
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            logger.log(Level.SEVERE, "Error loading the MD5 hashes of the case", ex); //NON-NLS
+        }
+        loadOtherCaseCounts();
+        synchronized (lock) {
+            countedWhileLoading = null;
+            loaded = true;
+            logger.log(Level.INFO, "Loaded {0} MD5 hashes of the case in {1} ms", //NON-NLS
+                    new Object[]{occurrences.size(), System.currentTimeMillis() - start});
+        }
+    }
+
+    /**
+     * Reads the number of other cases of the hashes of the case from the
+     * central store, in one pass over the store
+     */
+    private void loadOtherCaseCounts() {
+        if (!new File(getCentralStorePath()).exists()) {
+            return;
+        }
+        try (Connection connection = openCentralStore(false);
+                PreparedStatement statement = connection.prepareStatement(
+                        "SELECT md5, COUNT(DISTINCT case_dir) AS cases FROM occurrences WHERE case_dir != ? GROUP BY md5")) { //NON-NLS
+            statement.setString(1, caseDirectory);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    synchronized (lock) {
+                        Occurrences entry = occurrences.get(resultSet.getString("md5")); //NON-NLS
+                        if (entry != null) {
+                            entry.otherCaseCount = resultSet.getInt("cases"); //NON-NLS
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "Error reading the correlation central store", ex); //NON-NLS
+        }
+    }
+
+    /**
+     * Opens the central store
+     *
+     * @param create whether to create it if it does not exist
+     *
+     * @return the connection, or null if the store does not exist
+     */
+    private static Connection openCentralStore(boolean create) throws SQLException {
+        final String path = getCentralStorePath();
+        if (!create && !new File(path).exists()) {
+            return null;
+        }
+        try {
+            Class.forName("org.sqlite.JDBC"); //NON-NLS //load JDBC driver
+        } catch (ClassNotFoundException ex) {
+            throw new SQLException("SQLite JDBC driver not found", ex); //NON-NLS
+        }
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path); //NON-NLS
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS); //NON-NLS
+            statement.execute("CREATE TABLE IF NOT EXISTS occurrences (md5 TEXT NOT NULL, case_dir TEXT NOT NULL, " //NON-NLS
+                    + "data_source_obj_id INTEGER NOT NULL, obj_id INTEGER NOT NULL, PRIMARY KEY (case_dir, obj_id))"); //NON-NLS
+            statement.execute("CREATE INDEX IF NOT EXISTS occurrences_md5 ON occurrences (md5)"); //NON-NLS
+        } catch (SQLException ex) {
+            connection.close();
+            throw ex;
+        }
+        return connection;
+    }
+
+    private static void writeFiles(Connection connection, String caseDirectory, List<long[]> files, List<String> hashes) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT OR REPLACE INTO occurrences (md5, case_dir, data_source_obj_id, obj_id) VALUES (?, ?, ?, ?)")) { //NON-NLS
+            for (int i = 0; i < files.size(); ++i) {
+                statement.setString(1, hashes.get(i));
+                statement.setString(2, caseDirectory);
+                statement.setLong(3, files.get(i)[1]);
+                statement.setLong(4, files.get(i)[0]);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static Map<String, Integer> readOtherCaseCounts(Connection connection, String caseDirectory, List<String> hashes) throws SQLException {
+        Map<String, Integer> counts = new HashMap<>();
+        if (hashes.isEmpty()) {
+            return counts;
+        }
+        StringBuilder sql = new StringBuilder("SELECT md5, COUNT(DISTINCT case_dir) AS cases FROM occurrences WHERE case_dir != ? AND md5 IN ("); //NON-NLS
+        for (int i = 0; i < hashes.size(); ++i) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") GROUP BY md5"); //NON-NLS
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            statement.setString(1, caseDirectory);
+            for (int i = 0; i < hashes.size(); ++i) {
+                statement.setString(i + 2, hashes.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    counts.put(resultSet.getString("md5"), resultSet.getInt("cases")); //NON-NLS
+                }
+            }
+        }
+        return counts;
+    }
+}
@@ -40,6 +40,7 @@ public class Services implements Closeable {
     private final TagsManager tagsManager;
     private final KeywordSearchService keywordSearchService;
     private final Blackboard blackboard;
+    private final CorrelationIndex correlationIndex;
 
     /**
      * Constructs a collection of case-level services (e.g., file manager, tags
@@ -54,11 +55,15 @@ public Services(SleuthkitCase caseDb) {
         tagsManager = new TagsManager(caseDb);
         services.add(tagsManager);
 
-        keywordSearchService = Lookup.getDefault().lookup(KeywordSearchService.class);
-        services.add(keywordSearchService);
+        correlationIndex = new CorrelationIndex(caseDb);
+        services.add(correlationIndex);
 
+        // closed before the keyword search service, to stop indexing artifacts
         blackboard = new Blackboard(caseDb);
         services.add(blackboard);
+
+        keywordSearchService = Lookup.getDefault().lookup(KeywordSearchService.class);
+        services.add(keywordSearchService);
     }
 
     /**
@@ -97,6 +102,15 @@ public Blackboard getBlackboard() {
         return blackboard;
     }
 
+    /**
+     * Gets the MD5 correlation index service for the current case.
+     *
+     * @return The MD5 correlation index service for the current case.
+     */
+    public CorrelationIndex getCorrelationIndex() {
+        return correlationIndex;
+    }
+
     /**
      * Closes the services for the current case.
      *
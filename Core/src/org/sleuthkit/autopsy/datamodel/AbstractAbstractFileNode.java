@@ -26,6 +26,7 @@
 import org.apache.commons.lang3.StringUtils;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.services.CorrelationIndex;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.ingest.IngestManager;
 import org.sleuthkit.autopsy.ingest.ModuleContentEvent;
@@ -223,6 +224,18 @@ public String toString() {
                         return NbBundle.getMessage(this.getClass(), "AbstractAbstractFileNode.md5HashColLbl");
                     }
                 },
+        CASE_OCCURRENCES {
+                    @Override
+                    public String toString() {
+                        return NbBundle.getMessage(this.getClass(), "AbstractAbstractFileNode.caseOccurrencesColLbl");
+                    }
+                },
+        OTHER_CASES {
+                    @Override
+                    public String toString() {
+                        return NbBundle.getMessage(this.getClass(), "AbstractAbstractFileNode.otherCasesColLbl");
+                    }
+                },
         ObjectID {
                     @Override
                     public String toString() {
@@ -274,6 +287,7 @@ public static void fillPropertyMap(Map<String, Object> map, AbstractFile content
         map.put(AbstractFilePropertyType.KNOWN.toString(), content.getKnown().getName());
         map.put(AbstractFilePropertyType.HASHSETS.toString(), getHashSetHitsForFile(content));
         map.put(AbstractFilePropertyType.MD5HASH.toString(), content.getMd5Hash() == null ? "" : content.getMd5Hash());
+        addOccurrences(map, content);
         map.put(AbstractFilePropertyType.ObjectID.toString(), content.getId());
         map.put(AbstractFilePropertyType.MIMETYPE.toString(), content.getMIMEType() == null ? "" : content.getMIMEType());
     }
@@ -291,6 +305,26 @@ static String getContentDisplayName(AbstractFile file) {
         }
     }
 
+    /**
+     * Adds the number of files of the case with the same MD5 and the number of
+     * other cases with it, from the correlation index, so without a query per
+     * file. Empty while the index is loading or if the file is not hashed. The
+     * counts are the ones when the node is created, they are not refreshed as
+     * ingest adds files, which the column labels say.
+     */
+    private static void addOccurrences(Map<String, Object> map, AbstractFile content) {
+        final String md5Hash = content.getMd5Hash();
+        int fileCount = -1;
+        int otherCaseCount = -1;
+        if (md5Hash != null && !md5Hash.isEmpty()) {
+            CorrelationIndex correlationIndex = Case.getCurrentCase().getServices().getCorrelationIndex();
+            fileCount = correlationIndex.getFileCount(md5Hash);
+            otherCaseCount = correlationIndex.getOtherCaseCount(md5Hash);
+        }
+        map.put(AbstractFilePropertyType.CASE_OCCURRENCES.toString(), fileCount < 0 ? "" : fileCount);
+        map.put(AbstractFilePropertyType.OTHER_CASES.toString(), otherCaseCount < 0 ? "" : otherCaseCount);
+    }
+
     @SuppressWarnings("deprecation")
     private static String getHashSetHitsForFile(AbstractFile content) {
         try {
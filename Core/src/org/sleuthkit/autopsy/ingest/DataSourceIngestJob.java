@@ -33,6 +33,7 @@
 import org.openide.util.Cancellable;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.services.Blackboard;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.NetworkUtils;
 import org.sleuthkit.datamodel.AbstractFile;
@@ -688,6 +689,13 @@ private void finish() {
         } catch (TskCoreException ex) {
             logger.log(Level.SEVERE, "Failed to set end date for ingest job in database.", ex);
         }
+
+        // the job is not done until the artifacts it posted are indexed
+        try {
+            Case.getCurrentCase().getServices().getBlackboard().awaitIndexing();
+        } catch (Blackboard.BlackboardException | IllegalStateException ex) {
+            logger.log(Level.WARNING, "Failed to wait for artifacts to be indexed.", ex); //NON-NLS
+        }
         this.parentJob.dataSourceJobFinished(this);
 
     }
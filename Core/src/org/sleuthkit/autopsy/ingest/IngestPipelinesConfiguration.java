@@ -22,6 +22,7 @@
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
@@ -46,6 +47,16 @@ final class IngestPipelinesConfiguration {
     private static final String STAGE_TWO_DATA_SOURCE_INGEST_PIPELINE_ELEM = "ImageAnalysisStageTwo"; //NON-NLS
     private static final String FILE_INGEST_PIPELINE_ELEM = "FileAnalysis"; //NON-NLS
     private static final String INGEST_MODULE_ELEM = "MODULE"; //NON-NLS
+    private static final String ENCODING = "UTF-8"; //NON-NLS
+
+    /*
+     * Factories of data source ingest modules that used to be file ingest
+     * modules, and may still be listed in the file ingest pipeline of a
+     * configuration file copied to the user config directory by an earlier
+     * version. They must run after the file ingest pipeline.
+     */
+    private static final List<String> MOVED_TO_STAGE_TWO_MODULES = Arrays.asList(
+            "org.sleuthkit.autopsy.modules.fileextmismatch.FileExtMismatchDetectorModuleFactory"); //NON-NLS
 
     private static IngestPipelinesConfiguration instance;
 
@@ -136,6 +147,8 @@ private void readPipelinesConfigurationFile() {
             // Parse the pipeline elements to populate the pipeline 
             // configuration lists.
             List<String> pipelineConfig = null;
+            Element filePipelineElement = null;
+            Element stageTwoPipelineElement = null;
             for (int pipelineNum = 0; pipelineNum < numPipelines; ++pipelineNum) {
                 Element pipelineElement = (Element) pipelineElements.item(pipelineNum);
                 String pipelineTypeAttr = pipelineElement.getAttribute(PIPELINE_TYPE_ATTR);
@@ -146,9 +159,11 @@ private void readPipelinesConfigurationFile() {
                             break;
                         case FILE_INGEST_PIPELINE_ELEM:
                             pipelineConfig = this.fileIngestPipelineConfig;
+                            filePipelineElement = pipelineElement;
                             break;
                         case STAGE_TWO_DATA_SOURCE_INGEST_PIPELINE_ELEM:
                             pipelineConfig = this.stageTwoDataSourceIngestPipelineConfig;
+                            stageTwoPipelineElement = pipelineElement;
                             break;
                         default:
                             logger.log(Level.SEVERE, "Invalid pipelines config file"); //NON-NLS
@@ -170,8 +185,41 @@ private void readPipelinesConfigurationFile() {
                     }
                 }
             }
+            migrateModulesToStageTwo(doc, filePipelineElement, stageTwoPipelineElement, configFilePath);
         } catch (IOException ex) {
             logger.log(Level.SEVERE, "Error copying default pipeline configuration to user dir", ex); //NON-NLS
         }
     }
+
+    /**
+     * Moves the modules that must run after the file ingest pipeline from the
+     * file ingest pipeline to the start of the second stage data source ingest
+     * pipeline, and saves the configuration file if any were moved.
+     */
+    private void migrateModulesToStageTwo(Document doc, Element filePipelineElement, Element stageTwoPipelineElement, Path configFilePath) {
+        if (null == filePipelineElement || null == stageTwoPipelineElement) {
+            return;
+        }
+        boolean migrated = false;
+        NodeList modulesElems = filePipelineElement.getElementsByTagName(INGEST_MODULE_ELEM);
+        for (int moduleNum = modulesElems.getLength() - 1; moduleNum >= 0; --moduleNum) {
+            Element moduleElement = (Element) modulesElems.item(moduleNum);
+            String className = moduleElement.getTextContent();
+            if (MOVED_TO_STAGE_TWO_MODULES.contains(className)) {
+                filePipelineElement.removeChild(moduleElement);
+                this.fileIngestPipelineConfig.remove(className);
+                if (!this.stageTwoDataSourceIngestPipelineConfig.contains(className)) {
+                    stageTwoPipelineElement.insertBefore(moduleElement, stageTwoPipelineElement.getFirstChild());
+                    this.stageTwoDataSourceIngestPipelineConfig.add(0, className);
+                }
+                migrated = true;
+            }
+        }
+        if (migrated) {
+            logger.log(Level.INFO, "Moved modules to the second stage data source ingest pipeline in {0}", configFilePath); //NON-NLS
+            if (!XMLUtil.saveDoc(IngestPipelinesConfiguration.class, configFilePath.toAbsolutePath().toString(), ENCODING, doc)) {
+                logger.log(Level.WARNING, "Error saving pipeline configuration to {0}", configFilePath); //NON-NLS
+            }
+        }
+    }
 }
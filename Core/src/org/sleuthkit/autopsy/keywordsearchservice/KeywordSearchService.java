@@ -19,7 +19,9 @@
 package org.sleuthkit.autopsy.keywordsearchservice;
 
 import java.io.Closeable;
+import java.util.Collection;
 import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.TskCoreException;
 
 /**
@@ -39,6 +41,22 @@ public interface KeywordSearchService extends Closeable {
      */
     public void indexArtifact(BlackboardArtifact artifact) throws TskCoreException;
 
+    /**
+     * Adds the attributes of a batch of Blackboard artifacts to the keyword
+     * search index. Implementations should index the batch with fewer round
+     * trips than indexing each artifact.
+     *
+     * @param caseDb    the case database of the artifacts
+     * @param artifacts
+     *
+     * @throws org.sleuthkit.datamodel.TskCoreException
+     */
+    default public void indexArtifacts(SleuthkitCase caseDb, Collection<BlackboardArtifact> artifacts) throws TskCoreException {
+        for (BlackboardArtifact artifact : artifacts) {
+            indexArtifact(artifact);
+        }
+    }
+
     /**
      * Checks if we can communicate with the KeywordSearchService using the
      * passed-in host and port. Closes the connection upon exit. Throws if it
@@ -21,7 +21,7 @@
 import org.openide.util.NbBundle;
 import org.openide.util.lookup.ServiceProvider;
 import org.sleuthkit.autopsy.coreutils.Version;
-import org.sleuthkit.autopsy.ingest.FileIngestModule;
+import org.sleuthkit.autopsy.ingest.DataSourceIngestModule;
 import org.sleuthkit.autopsy.ingest.IngestModuleFactory;
 import org.sleuthkit.autopsy.ingest.IngestModuleFactoryAdapter;
 import org.sleuthkit.autopsy.ingest.IngestModuleGlobalSettingsPanel;
@@ -29,8 +29,9 @@
 import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettingsPanel;
 
 /**
- * An factory that creates file ingest modules that detect mismatches between
- * the types of files and their extensions.
+ * An factory that creates data source ingest modules that detect mismatches
+ * between the types of files and their extensions. The modules are meant to
+ * run in the second stage of an ingest job, after the file types are detected.
  */
 @ServiceProvider(service = IngestModuleFactory.class)
 public class FileExtMismatchDetectorModuleFactory extends IngestModuleFactoryAdapter {
@@ -90,16 +91,16 @@ public IngestModuleGlobalSettingsPanel getGlobalSettingsPanel() {
     }
 
     @Override
-    public boolean isFileIngestModuleFactory() {
+    public boolean isDataSourceIngestModuleFactory() {
         return true;
     }
 
     @Override
-    public FileIngestModule createFileIngestModule(IngestModuleIngestJobSettings settings) {
+    public DataSourceIngestModule createDataSourceIngestModule(IngestModuleIngestJobSettings settings) {
         assert settings instanceof FileExtMismatchDetectorModuleSettings;
         if (!(settings instanceof FileExtMismatchDetectorModuleSettings)) {
             throw new IllegalArgumentException(NbBundle.getMessage(this.getClass(),
-                    "FileExtMismatchDetectorModuleFactory.getIngestJobSettingsPanel.exception.msg"));
+                    "FileExtMismatchDetectorModuleFactory.createFileIngestModule.exception.msg"));
         }
         return new FileExtMismatchIngestModule((FileExtMismatchDetectorModuleSettings) settings);
     }
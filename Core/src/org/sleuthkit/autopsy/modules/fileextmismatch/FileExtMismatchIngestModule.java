@@ -18,9 +18,10 @@
  */
 package org.sleuthkit.autopsy.modules.fileextmismatch;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Set;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import org.openide.util.NbBundle;
 import org.openide.util.NbBundle.Messages;
@@ -28,75 +29,59 @@
 import org.sleuthkit.autopsy.casemodule.services.Blackboard;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
-import org.sleuthkit.autopsy.ingest.FileIngestModule;
+import org.sleuthkit.autopsy.ingest.DataSourceIngestModule;
+import org.sleuthkit.autopsy.ingest.DataSourceIngestModuleProgress;
 import org.sleuthkit.autopsy.ingest.IngestJobContext;
 import org.sleuthkit.autopsy.ingest.IngestMessage;
-import org.sleuthkit.autopsy.ingest.IngestModuleReferenceCounter;
 import org.sleuthkit.autopsy.ingest.IngestServices;
 import org.sleuthkit.autopsy.ingest.ModuleDataEvent;
 import org.sleuthkit.autopsy.modules.filetypeid.FileTypeDetector;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardArtifact.ARTIFACT_TYPE;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.TskCoreException;
 import org.sleuthkit.datamodel.TskData;
 import org.sleuthkit.datamodel.TskData.FileKnown;
-import org.sleuthkit.datamodel.TskException;
 
 /**
  * Flags mismatched filename extensions based on file signature.
+ *
+ * Runs in the second stage of an ingest job, after the file ingest modules
+ * have detected the types of the files, as a single query over the files of
+ * the data source: the names and MIME types of the files are streamed from the
+ * case database and compared with the compiled mismatch settings, and only the
+ * mismatched files are loaded. Files without a type, e.g., when the file type
+ * identification module is not enabled, are typed after the query, without
+ * saving their types.
  */
 @NbBundle.Messages({
     "CannotRunFileTypeDetection=Unable to run file type detection.",
     "FileExtMismatchIngestModule.readError.message=Could not read settings."
 })
-public class FileExtMismatchIngestModule implements FileIngestModule {
+public class FileExtMismatchIngestModule implements DataSourceIngestModule {
 
     private static final Logger logger = Logger.getLogger(FileExtMismatchIngestModule.class.getName());
     private final IngestServices services = IngestServices.getInstance();
     private final FileExtMismatchDetectorModuleSettings settings;
-    private HashMap<String, Set<String>> mimeTypeToExtsMap = new HashMap<>();
-    private long jobId;
-    private static final HashMap<Long, IngestJobTotals> totalsForIngestJobs = new HashMap<>();
-    private static final IngestModuleReferenceCounter refCounter = new IngestModuleReferenceCounter();
-    private static Blackboard blackboard;
+    private IngestJobContext context;
+    private FileExtMismatchLookup lookup;
+    private SleuthkitCase skCase;
+    private Blackboard blackboard;
     private FileTypeDetector detector;
 
-    private static class IngestJobTotals {
-
-        private long processTime = 0;
-        private long numFiles = 0;
-    }
-
-    /**
-     * Update the match time total and increment num of files for this job
-     *
-     * @param ingestJobId
-     * @param matchTimeInc amount of time to add
-     */
-    private static synchronized void addToTotals(long ingestJobId, long processTimeInc) {
-        IngestJobTotals ingestJobTotals = totalsForIngestJobs.get(ingestJobId);
-        if (ingestJobTotals == null) {
-            ingestJobTotals = new IngestJobTotals();
-            totalsForIngestJobs.put(ingestJobId, ingestJobTotals);
-        }
-
-        ingestJobTotals.processTime += processTimeInc;
-        ingestJobTotals.numFiles++;
-        totalsForIngestJobs.put(ingestJobId, ingestJobTotals);
-    }
-
     FileExtMismatchIngestModule(FileExtMismatchDetectorModuleSettings settings) {
         this.settings = settings;
     }
 
     @Override
     public void startUp(IngestJobContext context) throws IngestModuleException {
-        jobId = context.getJobId();
-        refCounter.incrementAndGet(jobId);
-
+        this.context = context;
+        skCase = Case.getCurrentCase().getSleuthkitCase();
+        blackboard = Case.getCurrentCase().getServices().getBlackboard();
         try {
-            mimeTypeToExtsMap = FileExtMismatchSettings.readSettings().getMimeTypeToExtsMap();
+            lookup = FileExtMismatchSettings.getLookup();
             this.detector = new FileTypeDetector();
         } catch (FileExtMismatchSettings.FileExtMismatchSettingsException ex) {
             throw new IngestModuleException(Bundle.FileExtMismatchIngestModule_readError_message(), ex);
@@ -107,118 +92,160 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
 
     @Override
     @Messages({"FileExtMismatchIngestModule.indexError.message=Failed to index file extension mismatch artifact for keyword search."})
-    public ProcessResult process(AbstractFile abstractFile) {
-        blackboard = Case.getCurrentCase().getServices().getBlackboard();
-        if (this.settings.skipKnownFiles() && (abstractFile.getKnown() == FileKnown.KNOWN)) {
-            return ProcessResult.OK;
-        }
-
-        // skip non-files
-        if ((abstractFile.getType() == TskData.TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS)
-                || (abstractFile.getType() == TskData.TSK_DB_FILES_TYPE_ENUM.UNUSED_BLOCKS)
-                || (abstractFile.isFile() == false)) {
-            return ProcessResult.OK;
-        }
-
-        // deleted files often have content that was not theirs and therefor causes mismatch
-        if ((abstractFile.isMetaFlagSet(TskData.TSK_FS_META_FLAG_ENUM.UNALLOC))
-                || (abstractFile.isDirNameFlagSet(TskData.TSK_FS_NAME_FLAG_ENUM.UNALLOC))) {
-            return ProcessResult.OK;
+    public ProcessResult process(Content dataSource, DataSourceIngestModuleProgress progressBar) {
+        progressBar.switchToIndeterminate();
+        final long startTime = System.currentTimeMillis();
+        long numFiles = 0;
+        List<Long> mismatchedObjIds = new ArrayList<>();
+        List<Long> untypedObjIds = new ArrayList<>();
+
+        /*
+         * The files are only loaded after the query is closed, since adding an
+         * artifact writes to the case database.
+         */
+        try (SleuthkitCase.CaseDbQuery dbQuery = skCase.executeQuery(getFilesQuery(dataSource))) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            while (resultSet.next()) {
+                if (context.dataSourceIngestIsCancelled()) {
+                    return ProcessResult.OK;
+                }
+                ++numFiles;
+                final String extension = getExtension(resultSet.getString("name")); //NON-NLS
+                // If we are skipping names with no extension
+                if (settings.skipFilesWithNoExtension() && extension.isEmpty()) {
+                    continue;
+                }
+                final String mimeType = resultSet.getString("mime_type"); //NON-NLS
+                if (mimeType == null) {
+                    untypedObjIds.add(resultSet.getLong("obj_id")); //NON-NLS
+                } else if (isMismatch(mimeType, extension)) {
+                    mismatchedObjIds.add(resultSet.getLong("obj_id")); //NON-NLS
+                }
+            }
+        } catch (TskCoreException | SQLException ex) {
+            logger.log(Level.SEVERE, "Error querying files of data source " + dataSource.getId(), ex); //NON-NLS
+            return ProcessResult.ERROR;
         }
 
+        progressBar.switchToDeterminate(untypedObjIds.size() + mismatchedObjIds.size());
+        int workUnits = 0;
+        List<BlackboardArtifact> artifacts = new ArrayList<>();
         try {
-            long startTime = System.currentTimeMillis();
-
-            boolean mismatchDetected = compareSigTypeToExt(abstractFile);
-
-            addToTotals(jobId, System.currentTimeMillis() - startTime);
-
-            if (mismatchDetected) {
-                // add artifact               
-                BlackboardArtifact bart = abstractFile.newArtifact(ARTIFACT_TYPE.TSK_EXT_MISMATCH_DETECTED);
-
-                try {
-                    // index the artifact for keyword search
-                    blackboard.indexArtifact(bart);
-                } catch (Blackboard.BlackboardException ex) {
-                    logger.log(Level.SEVERE, "Unable to index blackboard artifact " + bart.getArtifactID(), ex); //NON-NLS
-                    MessageNotifyUtil.Notify.error(
-                            Bundle.FileExtMismatchIngestModule_indexError_message(), bart.getDisplayName());
+            for (long objId : untypedObjIds) {
+                if (context.dataSourceIngestIsCancelled()) {
+                    break;
+                }
+                progressBar.progress(++workUnits);
+                AbstractFile file = skCase.getAbstractFileById(objId);
+                if (file == null) {
+                    continue;
+                }
+                // only the file type identification module adds types to the case
+                String mimeType = detector.detect(file);
+                if (mimeType != null && isMismatch(mimeType, file.getNameExtension())) {
+                    artifacts.add(addArtifact(file));
+                }
+            }
+            for (long objId : mismatchedObjIds) {
+                if (context.dataSourceIngestIsCancelled()) {
+                    break;
+                }
+                progressBar.progress(++workUnits);
+                AbstractFile file = skCase.getAbstractFileById(objId);
+                if (file != null) {
+                    artifacts.add(addArtifact(file));
                 }
-
-                services.fireModuleDataEvent(new ModuleDataEvent(FileExtMismatchDetectorModuleFactory.getModuleName(), ARTIFACT_TYPE.TSK_EXT_MISMATCH_DETECTED, Collections.singletonList(bart)));
             }
-            return ProcessResult.OK;
-        } catch (TskException ex) {
+        } catch (TskCoreException ex) {
             logger.log(Level.WARNING, "Error matching file signature", ex); //NON-NLS
             return ProcessResult.ERROR;
+        } finally {
+            if (!artifacts.isEmpty()) {
+                services.fireModuleDataEvent(new ModuleDataEvent(FileExtMismatchDetectorModuleFactory.getModuleName(), ARTIFACT_TYPE.TSK_EXT_MISMATCH_DETECTED, artifacts));
+            }
         }
+
+        postSummary(System.currentTimeMillis() - startTime, numFiles);
+        return ProcessResult.OK;
+    }
+
+    /**
+     * Builds the query for the candidate files of a data source: the
+     * allocated regular files, and unless they are to be skipped, not known.
+     * Deleted files often have content that was not theirs and therefore
+     * cause mismatches.
+     */
+    private String getFilesQuery(Content dataSource) {
+        String query = "SELECT obj_id, name, mime_type FROM tsk_files WHERE data_source_obj_id = " + dataSource.getId() //NON-NLS
+                + " AND type NOT IN (" + TskData.TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS.getFileType() //NON-NLS
+                + ", " + TskData.TSK_DB_FILES_TYPE_ENUM.UNUSED_BLOCKS.getFileType() + ")" //NON-NLS
+                + " AND meta_type = " + TskData.TSK_FS_META_TYPE_ENUM.TSK_FS_META_TYPE_REG.getValue() //NON-NLS
+                + " AND (meta_flags & " + TskData.TSK_FS_META_FLAG_ENUM.UNALLOC.getValue() + ") = 0" //NON-NLS
+                + " AND (dir_flags & " + TskData.TSK_FS_NAME_FLAG_ENUM.UNALLOC.getValue() + ") = 0"; //NON-NLS
+        if (settings.skipKnownFiles()) {
+            query += " AND (known IS NULL OR known != " + FileKnown.KNOWN.getFileKnownValue() + ")"; //NON-NLS
+        }
+        return query;
+    }
+
+    /**
+     * Gets the extension of a file name, the same way as
+     * AbstractFile.getNameExtension
+     */
+    private static String getExtension(String name) {
+        final int dot = name.lastIndexOf('.');
+        // a name starting with its only dot has no extension
+        if (dot > 0 && dot + 1 < name.length()) {
+            return name.substring(dot + 1).toLowerCase();
+        }
+        return "";
     }
 
     /**
      * Compare file type for file and extension.
      *
-     * @param abstractFile
+     * @param mimeType  the type of the file
+     * @param extension the extension of the file
      *
      * @return false if the two match. True if there is a mismatch.
      */
-    private boolean compareSigTypeToExt(AbstractFile abstractFile) throws TskCoreException {
-        String currActualExt = abstractFile.getNameExtension();
-
-        // If we are skipping names with no extension
-        if (settings.skipFilesWithNoExtension() && currActualExt.isEmpty()) {
-            return false;
-        }
-        String currActualSigType = detector.getFileType(abstractFile);
-        if (currActualSigType == null) {
-            return false;
-        }
+    private boolean isMismatch(String mimeType, String extension) {
         if (settings.skipFilesWithTextPlainMimeType()) {
-            if (!currActualExt.isEmpty() && currActualSigType.equals("text/plain")) { //NON-NLS
+            if (!extension.isEmpty() && mimeType.equals("text/plain")) { //NON-NLS
                 return false;
             }
         }
+        return lookup.isMismatch(mimeType, extension);
+    }
 
-        //get known allowed values from the map for this type
-        Set<String> allowedExtSet = mimeTypeToExtsMap.get(currActualSigType);
-        if (allowedExtSet != null) {
-            // see if the filename ext is in the allowed list
-            for (String e : allowedExtSet) {
-                if (e.equals(currActualExt)) {
-                    return false;
-                }
-            }
-            return true; //potential mismatch
+    private BlackboardArtifact addArtifact(AbstractFile file) throws TskCoreException {
+        BlackboardArtifact bart = file.newArtifact(ARTIFACT_TYPE.TSK_EXT_MISMATCH_DETECTED);
+        try {
+            // index the artifact for keyword search
+            blackboard.indexArtifact(bart);
+        } catch (Blackboard.BlackboardException ex) {
+            logger.log(Level.SEVERE, "Unable to index blackboard artifact " + bart.getArtifactID(), ex); //NON-NLS
+            MessageNotifyUtil.Notify.error(
+                    Bundle.FileExtMismatchIngestModule_indexError_message(), bart.getDisplayName());
         }
-
-        return false;
+        return bart;
     }
 
-    @Override
-    public void shutDown() {
-        // We only need to post the summary msg from the last module per job
-        if (refCounter.decrementAndGet(jobId) == 0) {
-            IngestJobTotals jobTotals;
-            synchronized (this) {
-                jobTotals = totalsForIngestJobs.remove(jobId);
-            }
-            if (jobTotals != null) {
-                StringBuilder detailsSb = new StringBuilder();
-                detailsSb.append("<table border='0' cellpadding='4' width='280'>"); //NON-NLS
-                detailsSb.append("<tr><td>").append(FileExtMismatchDetectorModuleFactory.getModuleName()).append("</td></tr>"); //NON-NLS
-                detailsSb.append("<tr><td>").append( //NON-NLS
-                        NbBundle.getMessage(this.getClass(), "FileExtMismatchIngestModule.complete.totalProcTime"))
-                        .append("</td><td>").append(jobTotals.processTime).append("</td></tr>\n"); //NON-NLS
-                detailsSb.append("<tr><td>").append( //NON-NLS
-                        NbBundle.getMessage(this.getClass(), "FileExtMismatchIngestModule.complete.totalFiles"))
-                        .append("</td><td>").append(jobTotals.numFiles).append("</td></tr>\n"); //NON-NLS
-                detailsSb.append("</table>"); //NON-NLS
-
-                services.postMessage(IngestMessage.createMessage(IngestMessage.MessageType.INFO, FileExtMismatchDetectorModuleFactory.getModuleName(),
-                        NbBundle.getMessage(this.getClass(),
-                                "FileExtMismatchIngestModule.complete.svcMsg.text"),
-                        detailsSb.toString()));
-            }
-        }
+    private void postSummary(long processTime, long numFiles) {
+        StringBuilder detailsSb = new StringBuilder();
+        detailsSb.append("<table border='0' cellpadding='4' width='280'>"); //NON-NLS
+        detailsSb.append("<tr><td>").append(FileExtMismatchDetectorModuleFactory.getModuleName()).append("</td></tr>"); //NON-NLS
+        detailsSb.append("<tr><td>").append( //NON-NLS
+                NbBundle.getMessage(this.getClass(), "FileExtMismatchIngestModule.complete.totalProcTime"))
+                .append("</td><td>").append(processTime).append("</td></tr>\n"); //NON-NLS
+        detailsSb.append("<tr><td>").append( //NON-NLS
+                NbBundle.getMessage(this.getClass(), "FileExtMismatchIngestModule.complete.totalFiles"))
+                .append("</td><td>").append(numFiles).append("</td></tr>\n"); //NON-NLS
+        detailsSb.append("</table>"); //NON-NLS
+
+        services.postMessage(IngestMessage.createMessage(IngestMessage.MessageType.INFO, FileExtMismatchDetectorModuleFactory.getModuleName(),
+                NbBundle.getMessage(this.getClass(),
+                        "FileExtMismatchIngestModule.complete.svcMsg.text"),
+                detailsSb.toString()));
     }
 }
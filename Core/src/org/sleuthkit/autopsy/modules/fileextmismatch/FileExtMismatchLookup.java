@@ -0,0 +1,88 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.fileextmismatch;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The MIME type to allowed extensions map of the file extension mismatch
+ * settings, compiled for lookups. Each MIME type and each extension is given
+ * an index, and the extensions allowed for a type are a bit set of extension
+ * indexes, so a lookup is two hash lookups and a bit test, without iterating
+ * over the allowed extensions.
+ *
+ * Built by FileExtMismatchSettings when the settings change, and shared by all
+ * ingest jobs.
+ * <p>
+ * Thread-safe (immutable).
+ */
+final class FileExtMismatchLookup {
+
+    private final Map<String, Integer> mimeTypeIndexes = new HashMap<>();
+    private final Map<String, Integer> extensionIndexes = new HashMap<>();
+    private final BitSet[] allowedExtensions;
+
+    /**
+     * Compiles a MIME type to allowed extensions map
+     *
+     * @param mimeTypeToExtsMap the map; the types mapped to null have no
+     *                          allowed extensions and are not checked
+     */
+    FileExtMismatchLookup(Map<String, Set<String>> mimeTypeToExtsMap) {
+        allowedExtensions = new BitSet[mimeTypeToExtsMap.size()];
+        for (Map.Entry<String, Set<String>> entry : mimeTypeToExtsMap.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            final int mimeTypeIndex = mimeTypeIndexes.size();
+            mimeTypeIndexes.put(entry.getKey(), mimeTypeIndex);
+            BitSet extensions = new BitSet();
+            for (String extension : entry.getValue()) {
+                Integer extensionIndex = extensionIndexes.get(extension);
+                if (extensionIndex == null) {
+                    extensionIndex = extensionIndexes.size();
+                    extensionIndexes.put(extension, extensionIndex);
+                }
+                extensions.set(extensionIndex);
+            }
+            allowedExtensions[mimeTypeIndex] = extensions;
+        }
+    }
+
+    /**
+     * Checks whether an extension is allowed for a MIME type
+     *
+     * @param mimeType  the MIME type
+     * @param extension the extension, without the dot
+     *
+     * @return true if the type has allowed extensions and the extension is
+     *         not one of them
+     */
+    boolean isMismatch(String mimeType, String extension) {
+        final Integer mimeTypeIndex = mimeTypeIndexes.get(mimeType);
+        if (mimeTypeIndex == null) {
+            return false;
+        }
+        final Integer extensionIndex = extensionIndexes.get(extension);
+        return extensionIndex == null || !allowedExtensions[mimeTypeIndex].get(extensionIndex);
+    }
+}
@@ -54,6 +54,7 @@ class FileExtMismatchSettings implements Serializable {
     private static final String FILTER_CONFIG_FILE = PlatformUtil.getUserConfigDirectory() + File.separator + DEFAULT_CONFIG_FILE_NAME;
     private static final String DEFAULT_SERIALIZED_FILE_NAME = "mismatch_config.settings";
     private static final String DEFAULT_SERIALIZED_FILE_PATH = PlatformUtil.getUserConfigDirectory() + File.separator + DEFAULT_SERIALIZED_FILE_NAME;
+    private static FileExtMismatchLookup lookup = null; //guarded by FileExtMismatchSettings.class
 
     static {
         try {
@@ -100,6 +101,19 @@ static synchronized FileExtMismatchSettings readSettings() throws FileExtMismatc
         return readXmlSettings();
     }
 
+    /**
+     * Gets the compiled lookup of the current settings, compiling it the first
+     * time it is needed after the settings are written.
+     *
+     * @return The lookup.
+     */
+    static synchronized FileExtMismatchLookup getLookup() throws FileExtMismatchSettingsException {
+        if (lookup == null) {
+            lookup = new FileExtMismatchLookup(readSettings().getMimeTypeToExtsMap());
+        }
+        return lookup;
+    }
+
     private static FileExtMismatchSettings readSerializedSettings() throws FileExtMismatchSettingsException {
         File serializedFile = new File(DEFAULT_SERIALIZED_FILE_PATH);
         try {
@@ -169,6 +183,7 @@ private static FileExtMismatchSettings readXmlSettings() throws FileExtMismatchS
      * @return Loaded hash map or null on error or null if data does not exist
      */
     static synchronized void writeSettings(FileExtMismatchSettings settings) throws FileExtMismatchSettingsException {
+        lookup = null;
         try (NbObjectOutputStream out = new NbObjectOutputStream(new FileOutputStream(DEFAULT_SERIALIZED_FILE_PATH))) {
             out.writeObject(settings);
         } catch (IOException ex) {
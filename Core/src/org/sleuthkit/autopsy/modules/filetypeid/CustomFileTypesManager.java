@@ -58,6 +58,7 @@ final class CustomFileTypesManager {
     private static CustomFileTypesManager instance;
     private final List<FileType> autopsyDefinedFileTypes = new ArrayList<>();
     private List<FileType> userDefinedFileTypes = new ArrayList<>();
+    private FileTypeSignatureMatcher signatureMatcher = null; // compiled on first use
 
     /**
      * Gets the singleton manager of the custom file types defined by Autopsy
@@ -130,6 +131,20 @@ synchronized List<FileType> getUserDefinedFileTypes() {
         return new ArrayList<>(userDefinedFileTypes);
     }
 
+    /**
+     * Gets the signatures of the custom file types compiled for matching, see
+     * FileTypeSignatureMatcher. The matcher is compiled once and shared until
+     * the user-defined file types change.
+     *
+     * @return The signature matcher.
+     */
+    synchronized FileTypeSignatureMatcher getSignatureMatcher() {
+        if (null == signatureMatcher) {
+            signatureMatcher = new FileTypeSignatureMatcher(userDefinedFileTypes, autopsyDefinedFileTypes);
+        }
+        return signatureMatcher;
+    }
+
     /**
      * Sets the user-defined custom file types.
      *
@@ -142,6 +157,7 @@ synchronized void setUserDefinedFileTypes(List<FileType> newFileTypes) throws Cu
         String filePath = getFileTypeDefinitionsFilePath(SERIALIZED_SETTINGS_FILE);
         writeSerializedFileTypes(newFileTypes, filePath);
         userDefinedFileTypes = newFileTypes;
+        signatureMatcher = null;
     }
 
     /**
@@ -45,8 +45,10 @@ public class FileTypeDetector {
 
     private static final Logger logger = Logger.getLogger(FileTypeDetector.class.getName());
     private static final Tika tika = new Tika();
-    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final TikaPrefixCache tikaCache = new TikaPrefixCache(tika);
+    private static final int BUFFER_SIZE = FileTypeSignatureMatcher.MAX_HEAD_LENGTH;
     private final byte buffer[] = new byte[BUFFER_SIZE];
+    private final FileTypeSignatureMatcher signatureMatcher;
     private final List<FileType> userDefinedFileTypes;
     private final List<FileType> autopsyDefinedFileTypes;
 
@@ -62,8 +64,13 @@ public class FileTypeDetector {
      */
     public FileTypeDetector() throws FileTypeDetectorInitException {
         try {
-            userDefinedFileTypes = CustomFileTypesManager.getInstance().getUserDefinedFileTypes();
-            autopsyDefinedFileTypes = CustomFileTypesManager.getInstance().getAutopsyDefinedFileTypes();
+            /*
+             * The signatures are compiled once and shared by all detectors,
+             * until the custom file types change.
+             */
+            signatureMatcher = CustomFileTypesManager.getInstance().getSignatureMatcher();
+            userDefinedFileTypes = signatureMatcher.getUserDefinedFileTypes();
+            autopsyDefinedFileTypes = signatureMatcher.getAutopsyDefinedFileTypes();
         } catch (CustomFileTypesManager.CustomFileTypesException ex) {
             throw new FileTypeDetectorInitException("Error loading custom file types", ex); //NON-NLS
         }
@@ -211,29 +218,48 @@ private String detect(AbstractFile file, boolean addToCaseDb) throws TskCoreExce
         }
 
         /*
-         * If the file is a regular file, give precedence to user-defined custom
-         * file types.
+         * If the file is a regular file, read its initial bytes once, for the
+         * custom file types and for Tika.
          */
+        int len = 0;
         if (null == mimeType) {
-            mimeType = detectUserDefinedType(file);
+            try {
+                len = Math.max(0, file.read(buffer, 0, Math.min(BUFFER_SIZE, file.getSize())));
+            } catch (TskCoreException ex) {
+                /*
+                 * Swallowed rather than propagated because files in data
+                 * sources are not always consistent with their file system
+                 * metadata, making for read errors. Default to octet-stream,
+                 * as when Tika cannot read the file.
+                 */
+                logger.log(Level.WARNING, "Error reading from file with objId = " + file.getId(), ex); //NON-NLS
+                mimeType = MimeTypes.OCTET_STREAM;
+            }
         }
 
         /*
-         * If the file does not match a user-defined type, give precedence to
-         * custom file types defined by Autopsy.
+         * Give precedence to custom file types, the user-defined ones first,
+         * then the ones defined by Autopsy.
          */
         if (null == mimeType) {
-            mimeType = detectAutopsyDefinedType(file);
+            mimeType = detectCustomType(file, len);
         }
 
         /*
-         * If the file does not match a user-defined type, send the initial
-         * bytes to Tika.
+         * If the file does not match a custom type, look up the type Tika
+         * detected for files with the same initial bytes, if it was decided
+         * by those bytes alone.
+         */
+        if (null == mimeType) {
+            mimeType = tikaCache.get(buffer, len, file.getName());
+        }
+
+        /*
+         * Otherwise, send the initial bytes to Tika.
          */
         if (null == mimeType) {
             try {
                 byte buf[];
-                int len = file.read(buffer, 0, BUFFER_SIZE);
                 if (len < BUFFER_SIZE) {
                     buf = new byte[len];
                     System.arraycopy(buffer, 0, buf, 0, len);
@@ -246,6 +272,7 @@ private String detect(AbstractFile file, boolean addToCaseDb) throws TskCoreExce
                  * Remove the Tika suffix from the MIME type name.
                  */
                 mimeType = tikaType.replace("tika-", ""); //NON-NLS
+                tikaCache.put(buffer, len, file.getName(), mimeType);
 
             } catch (Exception ignored) {
                 /*
@@ -298,65 +325,47 @@ private String detect(AbstractFile file, boolean addToCaseDb) throws TskCoreExce
     }
 
     /**
-     * Determines whether or not the a file matches a user-defined custom file
-     * type.
+     * Determines whether or not the a file matches a custom file type, giving
+     * precedence to user-defined types. All the signatures are matched at
+     * once, see FileTypeSignatureMatcher.
      *
      * @param file The file to test.
+     * @param len  The number of initial bytes of the file in the buffer.
      *
      * @return The file type name string or null, if no match is detected.
      *
      * @throws TskCoreException
      */
-    private String detectUserDefinedType(AbstractFile file) throws TskCoreException {
-        for (FileType fileType : userDefinedFileTypes) {
-            if (fileType.matches(file)) {
-                if (fileType.createInterestingFileHit()) {
-                    BlackboardArtifact artifact;
-                    artifact = file.newArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT);
-                    BlackboardAttribute setNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME, FileTypeIdModuleFactory.getModuleName(), fileType.getInterestingFilesSetName());
-                    artifact.addAttribute(setNameAttribute);
-
-                    /*
-                     * Use the MIME type as the category attribute, i.e., the
-                     * rule that determined this file belongs to the interesting
-                     * files set.
-                     */
-                    BlackboardAttribute ruleNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_CATEGORY, FileTypeIdModuleFactory.getModuleName(), fileType.getMimeType());
-                    artifact.addAttribute(ruleNameAttribute);
-
-                    /*
-                     * Index the artifact for keyword search.
-                     */
-                    try {
-                        Case.getCurrentCase().getServices().getBlackboard().indexArtifact(artifact);
-                    } catch (Blackboard.BlackboardException ex) {
-                        logger.log(Level.SEVERE, String.format("Unable to index blackboard artifact %d", artifact.getArtifactID()), ex); //NON-NLS
-                        MessageNotifyUtil.Notify.error(
-                                NbBundle.getMessage(Blackboard.class, "Blackboard.unableToIndexArtifact.exception.msg"), artifact.getDisplayName());
-                    }
-                }
+    private String detectCustomType(AbstractFile file, int len) throws TskCoreException {
+        FileType fileType = signatureMatcher.match(file, buffer, len);
+        if (null != fileType) {
+            if (fileType.createInterestingFileHit()) {
+                BlackboardArtifact artifact;
+                artifact = file.newArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT);
+                BlackboardAttribute setNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME, FileTypeIdModuleFactory.getModuleName(), fileType.getInterestingFilesSetName());
+                artifact.addAttribute(setNameAttribute);
 
-                return fileType.getMimeType();
-            }
-        }
-        return null;
-    }
+                /*
+                 * Use the MIME type as the category attribute, i.e., the
+                 * rule that determined this file belongs to the interesting
+                 * files set.
+                 */
+                BlackboardAttribute ruleNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_CATEGORY, FileTypeIdModuleFactory.getModuleName(), fileType.getMimeType());
+                artifact.addAttribute(ruleNameAttribute);
 
-    /**
-     * Determines whether or not the a file matches a custom file type defined
-     * by Autopsy.
-     *
-     * @param file The file to test.
-     *
-     * @return The file type name string or null, if no match is detected.
-     *
-     * @throws TskCoreException
-     */
-    private String detectAutopsyDefinedType(AbstractFile file) throws TskCoreException {
-        for (FileType fileType : autopsyDefinedFileTypes) {
-            if (fileType.matches(file)) {
-                return fileType.getMimeType();
+                /*
+                 * Index the artifact for keyword search.
+                 */
+                try {
+                    Case.getCurrentCase().getServices().getBlackboard().indexArtifact(artifact);
+                } catch (Blackboard.BlackboardException ex) {
+                    logger.log(Level.SEVERE, String.format("Unable to index blackboard artifact %d", artifact.getArtifactID()), ex); //NON-NLS
+                    MessageNotifyUtil.Notify.error(
+                            NbBundle.getMessage(Blackboard.class, "Blackboard.unableToIndexArtifact.exception.msg"), artifact.getDisplayName());
+                }
             }
+
+            return fileType.getMimeType();
         }
         return null;
     }
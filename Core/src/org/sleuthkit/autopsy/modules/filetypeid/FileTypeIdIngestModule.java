@@ -111,6 +111,7 @@ public ProcessResult process(AbstractFile file) {
      * @inheritDoc
      */
     @Override
+    @NbBundle.Messages({"FileTypeIdIngestModule.complete.avgProcTime=Average Time per File (ms)"})
     public void shutDown() {
         /**
          * If this is the instance of this module for this ingest job, post a
@@ -131,6 +132,9 @@ public void shutDown() {
                 detailsSb.append("<tr><td>") //NON-NLS
                         .append(NbBundle.getMessage(this.getClass(), "FileTypeIdIngestModule.complete.totalFiles"))
                         .append("</td><td>").append(jobTotals.numFiles).append("</td></tr>\n"); //NON-NLS
+                detailsSb.append("<tr><td>") //NON-NLS
+                        .append(Bundle.FileTypeIdIngestModule_complete_avgProcTime())
+                        .append("</td><td>").append(String.format("%.3f", (double) jobTotals.matchTime / Math.max(1, jobTotals.numFiles))).append("</td></tr>\n"); //NON-NLS
                 detailsSb.append("</table>"); //NON-NLS
                 IngestServices.getInstance().postMessage(IngestMessage.createMessage(IngestMessage.MessageType.INFO, FileTypeIdModuleFactory.getModuleName(),
                         NbBundle.getMessage(this.getClass(),
@@ -0,0 +1,321 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.filetypeid;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.modules.filetypeid.FileType.Signature;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * The signatures of the custom file types compiled for matching a file against
+ * all of them at once. The signatures relative to the start of a file are
+ * grouped by offset, and the signatures at the same offset are merged into a
+ * prefix trie, so each byte of the head of the file is compared once per
+ * offset instead of once per signature. The signatures relative to the end of
+ * a file are compiled the same way, against the tail of the file. The head and
+ * the tail are each read once per file.
+ *
+ * Built by CustomFileTypesManager when the custom file types change, and shared
+ * by all file type detectors.
+ * <p>
+ * Thread-safe (immutable).
+ */
+final class FileTypeSignatureMatcher {
+
+    private static final Logger logger = Logger.getLogger(FileTypeSignatureMatcher.class.getName());
+    // signatures reaching further into a file are read on their own
+    static final int MAX_HEAD_LENGTH = 64 * 1024;
+    private static final int MAX_TAIL_LENGTH = 64 * 1024;
+
+    private final List<FileType> userDefinedFileTypes;
+    private final List<FileType> autopsyDefinedFileTypes;
+    private final List<FileType> fileTypes = new ArrayList<>(); // user-defined types first
+    private final List<int[]> fileTypeSignatureIds = new ArrayList<>();
+    private final List<Signature> signatures = new ArrayList<>();
+    private final List<OffsetTrie> startTries = new ArrayList<>();
+    private final List<OffsetTrie> endTries = new ArrayList<>();
+    private final List<Integer> uncompiledSignatureIds = new ArrayList<>();
+    private final int headLength;
+    private final int tailLength;
+
+    /**
+     * Compiles the signatures of custom file types
+     *
+     * @param userDefinedFileTypes    the file types defined by users, which
+     *                                take precedence
+     * @param autopsyDefinedFileTypes the file types defined by Autopsy
+     */
+    FileTypeSignatureMatcher(List<FileType> userDefinedFileTypes, List<FileType> autopsyDefinedFileTypes) {
+        this.userDefinedFileTypes = Collections.unmodifiableList(new ArrayList<>(userDefinedFileTypes));
+        this.autopsyDefinedFileTypes = Collections.unmodifiableList(new ArrayList<>(autopsyDefinedFileTypes));
+        fileTypes.addAll(userDefinedFileTypes);
+        fileTypes.addAll(autopsyDefinedFileTypes);
+
+        Map<Long, TrieBuilder> startBuilders = new TreeMap<>();
+        Map<Long, TrieBuilder> endBuilders = new TreeMap<>();
+        int maxHead = 0;
+        int maxTail = 0;
+        for (FileType fileType : fileTypes) {
+            List<Signature> typeSignatures = fileType.getSignatures();
+            int[] ids = new int[typeSignatures.size()];
+            for (int i = 0; i < ids.length; ++i) {
+                final Signature signature = typeSignatures.get(i);
+                final int id = signatures.size();
+                signatures.add(signature);
+                ids[i] = id;
+                final byte[] bytes = signature.getSignatureBytes();
+                final long offset = signature.getOffset();
+                if (signature.isRelativeToStart() && offset + bytes.length <= MAX_HEAD_LENGTH) {
+                    getBuilder(startBuilders, offset).add(bytes, id);
+                    maxHead = Math.max(maxHead, (int) offset + bytes.length);
+                } else if (!signature.isRelativeToStart() && offset < MAX_TAIL_LENGTH) {
+                    getBuilder(endBuilders, offset).add(bytes, id);
+                    maxTail = Math.max(maxTail, (int) offset + 1);
+                } else {
+                    uncompiledSignatureIds.add(id);
+                }
+            }
+            fileTypeSignatureIds.add(ids);
+        }
+        for (Map.Entry<Long, TrieBuilder> entry : startBuilders.entrySet()) {
+            startTries.add(new OffsetTrie(entry.getKey(), entry.getValue().build()));
+        }
+        for (Map.Entry<Long, TrieBuilder> entry : endBuilders.entrySet()) {
+            endTries.add(new OffsetTrie(entry.getKey(), entry.getValue().build()));
+        }
+        headLength = maxHead;
+        tailLength = maxTail;
+    }
+
+    private static TrieBuilder getBuilder(Map<Long, TrieBuilder> builders, long offset) {
+        TrieBuilder builder = builders.get(offset);
+        if (builder == null) {
+            builder = new TrieBuilder();
+            builders.put(offset, builder);
+        }
+        return builder;
+    }
+
+    /**
+     * Gets the file types defined by users that were compiled
+     *
+     * @return the file types
+     */
+    List<FileType> getUserDefinedFileTypes() {
+        return userDefinedFileTypes;
+    }
+
+    /**
+     * Gets the file types defined by Autopsy that were compiled
+     *
+     * @return the file types
+     */
+    List<FileType> getAutopsyDefinedFileTypes() {
+        return autopsyDefinedFileTypes;
+    }
+
+    /**
+     * Gets the number of bytes at the start of a file needed to match the
+     * compiled signatures relative to the start
+     *
+     * @return the number of bytes
+     */
+    int getHeadLength() {
+        return headLength;
+    }
+
+    /**
+     * Finds the first custom file type, user-defined ones first, whose
+     * signatures are all contained in a file
+     *
+     * @param file       the file
+     * @param head       the bytes at the start of the file
+     * @param headLength the number of bytes in head, at least getHeadLength()
+     *                   unless the file is shorter or could not be read, at
+     *                   most MAX_HEAD_LENGTH
+     *
+     * @return the file type, or null if none matches
+     */
+    FileType match(AbstractFile file, byte[] head, int headLength) {
+        if (fileTypes.isEmpty()) {
+            return null;
+        }
+        BitSet matched = new BitSet(signatures.size());
+        for (OffsetTrie trie : startTries) {
+            trie.match(head, (int) trie.offset, headLength, matched);
+        }
+        if (!endTries.isEmpty()) {
+            matchTail(file, matched);
+        }
+        for (int id : uncompiledSignatureIds) {
+            if (signatures.get(id).containedIn(file)) {
+                matched.set(id);
+            }
+        }
+        for (int i = 0; i < fileTypes.size(); ++i) {
+            boolean all = true;
+            for (int id : fileTypeSignatureIds.get(i)) {
+                if (!matched.get(id)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                return fileTypes.get(i);
+            }
+        }
+        return null;
+    }
+
+    private void matchTail(AbstractFile file, BitSet matched) {
+        final long size = file.getSize();
+        final int length = (int) Math.min(size, tailLength);
+        if (length <= 0) {
+            return;
+        }
+        byte[] tail = new byte[length];
+        int read;
+        try {
+            read = file.read(tail, size - length, length);
+        } catch (TskCoreException ex) {
+            /*
+             * Swallowed rather than propagated because files in images are not
+             * always consistent with their file system meta data making for
+             * read errors.
+             */
+            logger.log(Level.WARNING, "Error reading from file with objId = " + file.getId(), ex); //NON-NLS
+            return;
+        }
+        if (read != length) {
+            return;
+        }
+        for (OffsetTrie trie : endTries) {
+            // a signature at offset o from the end starts o + 1 bytes before the end
+            final long start = length - 1 - trie.offset;
+            if (start >= 0) {
+                trie.match(tail, (int) start, length, matched);
+            }
+        }
+    }
+
+    /**
+     * A node of a prefix trie of signature bytes
+     */
+    private static final class Node {
+
+        private final byte[] keys;
+        private final Node[] children;
+        private final int[] signatureIds; // the signatures ending at this node
+
+        Node(byte[] keys, Node[] children, int[] signatureIds) {
+            this.keys = keys;
+            this.children = children;
+            this.signatureIds = signatureIds;
+        }
+
+        Node child(byte b) {
+            for (int i = 0; i < keys.length; ++i) {
+                if (keys[i] == b) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The trie of the signatures at one offset
+     */
+    private static final class OffsetTrie {
+
+        private final long offset;
+        private final Node root;
+
+        OffsetTrie(long offset, Node root) {
+            this.offset = offset;
+            this.root = root;
+        }
+
+        /**
+         * Marks the signatures of the trie found at a position of a buffer
+         */
+        void match(byte[] buffer, int position, int length, BitSet matched) {
+            if (position >= length) {
+                return;
+            }
+            Node node = root;
+            int i = position;
+            while (node != null) {
+                for (int id : node.signatureIds) {
+                    matched.set(id);
+                }
+                if (i >= length) {
+                    break;
+                }
+                node = node.child(buffer[i++]);
+            }
+        }
+    }
+
+    /**
+     * Builds the trie of the signatures at one offset
+     */
+    private static final class TrieBuilder {
+
+        private final TreeMap<Byte, TrieBuilder> children = new TreeMap<>();
+        private final List<Integer> signatureIds = new ArrayList<>();
+
+        void add(byte[] bytes, int id) {
+            TrieBuilder node = this;
+            for (byte b : bytes) {
+                TrieBuilder child = node.children.get(b);
+                if (child == null) {
+                    child = new TrieBuilder();
+                    node.children.put(b, child);
+                }
+                node = child;
+            }
+            node.signatureIds.add(id);
+        }
+
+        Node build() {
+            byte[] keys = new byte[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Byte, TrieBuilder> child : children.entrySet()) {
+                keys[i] = child.getKey();
+                nodes[i] = child.getValue().build();
+                ++i;
+            }
+            int[] ids = new int[signatureIds.size()];
+            for (int j = 0; j < ids.length; ++j) {
+                ids[j] = signatureIds.get(j);
+            }
+            return new Node(keys, nodes, ids);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.filetypeid;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.bind.DatatypeConverter;
+import org.apache.tika.Tika;
+
+/**
+ * A bounded cache of the MIME types detected by Tika, keyed by the first bytes
+ * of a file and its extension, so that Tika does not run its full set of
+ * detectors on the header of every file of a common type.
+ *
+ * A type is only cached when Tika decides it from the prefix alone: the type
+ * must be one whose magic lies within the prefix, Tika must detect the same
+ * type from the prefix as from the whole header, and the prefix must not start
+ * a container format (ZIP, OLE2), whose type depends on the entries of the
+ * container. The extension is part of the key because Tika refines a type
+ * detected by magic with the file name. As a safeguard, every VERIFY_INTERVAL
+ * hits an entry is checked against Tika again, and a prefix for which Tika
+ * disagrees is never cached again.
+ * <p>
+ * Thread-safe.
+ */
+final class TikaPrefixCache {
+
+    static final int PREFIX_LENGTH = 16;
+    private static final int MAX_ENTRIES = 4096;
+    private static final int VERIFY_INTERVAL = 64;
+    private static final byte[] ZIP_MAGIC = {'P', 'K'};
+    private static final byte[] OLE2_MAGIC = DatatypeConverter.parseHexBinary("D0CF11E0A1B11AE1"); //NON-NLS
+
+    /*
+     * The types decided by magic within the first 16 bytes, for which a file
+     * name does not change the type (apart from the extensions in the key).
+     */
+    private static final Set<String> CACHEABLE_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "image/jpeg", "image/png", "image/gif", "image/tiff", "image/webp", //NON-NLS
+            "application/pdf", "application/x-sqlite3", "application/x-bzip2", //NON-NLS
+            "application/x-xz", "application/x-7z-compressed", "application/x-rar-compressed", //NON-NLS
+            "audio/mpeg", "audio/x-wav", "audio/vnd.wave", "video/x-msvideo", //NON-NLS
+            "video/mp4", "video/quicktime", "video/3gpp", "audio/mp4", "video/x-flv"))); //NON-NLS
+
+    private final Tika tika;
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    }; //guarded by lock
+    private final Set<String> rejectedKeys = new HashSet<>(); //guarded by lock
+
+    private static class Entry {
+
+        private final String mimeType;
+        private int hits = 0;
+
+        Entry(String mimeType) {
+            this.mimeType = mimeType;
+        }
+    }
+
+    /**
+     * Constructs a cache of the types detected by a Tika instance
+     *
+     * @param tika the Tika instance, used to check that a type is decided by
+     *             the prefix alone
+     */
+    TikaPrefixCache(Tika tika) {
+        this.tika = tika;
+    }
+
+    /**
+     * Gets the cached type of a file header
+     *
+     * @param header   the header of the file
+     * @param length   the number of bytes in the header
+     * @param fileName the name of the file
+     *
+     * @return the MIME type, or null if it is not cached or if the entry is
+     *         due to be checked against Tika again
+     */
+    String get(byte[] header, int length, String fileName) {
+        final String key = getKey(header, length, fileName);
+        if (key == null) {
+            return null;
+        }
+        synchronized (lock) {
+            Entry entry = entries.get(key);
+            if (entry == null || ++entry.hits % VERIFY_INTERVAL == 0) {
+                return null;
+            }
+            return entry.mimeType;
+        }
+    }
+
+    /**
+     * Records the type Tika detected for a file header, if it was decided by
+     * the prefix alone
+     *
+     * @param header   the header of the file
+     * @param length   the number of bytes in the header
+     * @param fileName the name of the file
+     * @param mimeType the type Tika detected, without the Tika suffix
+     */
+    void put(byte[] header, int length, String fileName, String mimeType) {
+        final String key = getKey(header, length, fileName);
+        if (key == null) {
+            return;
+        }
+        synchronized (lock) {
+            if (rejectedKeys.contains(key)) {
+                return;
+            }
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (!entry.mimeType.equals(mimeType)) {
+                    // the prefix does not decide the type after all
+                    entries.remove(key);
+                    if (rejectedKeys.size() < MAX_ENTRIES) {
+                        rejectedKeys.add(key);
+                    }
+                }
+                return;
+            }
+        }
+        if (!CACHEABLE_TYPES.contains(mimeType)) {
+            return;
+        }
+        final String prefixType = tika.detect(Arrays.copyOf(header, PREFIX_LENGTH)).replace("tika-", ""); //NON-NLS
+        synchronized (lock) {
+            if (rejectedKeys.contains(key)) {
+                return;
+            }
+            if (prefixType.equals(mimeType)) {
+                entries.put(key, new Entry(mimeType));
+            } else if (rejectedKeys.size() < MAX_ENTRIES) {
+                rejectedKeys.add(key);
+            }
+        }
+    }
+
+    /**
+     * Gets the key of a file header: its extension and its first bytes
+     *
+     * @return the key, or null if the header cannot be cached
+     */
+    private static String getKey(byte[] header, int length, String fileName) {
+        if (length < PREFIX_LENGTH || startsWith(header, ZIP_MAGIC) || startsWith(header, OLE2_MAGIC)) {
+            return null;
+        }
+        final int dot = fileName.lastIndexOf('.');
+        final String extension = dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase();
+        return extension + "/" + DatatypeConverter.printHexBinary(Arrays.copyOf(header, PREFIX_LENGTH));
+    }
+
+    private static boolean startsWith(byte[] header, byte[] magic) {
+        for (int i = 0; i < magic.length; ++i) {
+            if (header[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.fuzzyhash;
+
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Context triggered piecewise hash of a file, in the style of ssdeep
+ * (spamsum): "blocksize:signature:signature of double blocksize". A rolling
+ * hash over a 7 byte window splits the content into pieces where it hits a
+ * trigger value, and each piece contributes one character to the signature,
+ * so a local change in the content only changes a few characters. Two hashes
+ * are compared with an edit distance between their signatures.
+ *
+ * The signatures of the candidate block sizes are computed in one pass over
+ * the content, so the content is read once. The values follow the spamsum
+ * algorithm but are not guaranteed to be identical to those of the ssdeep
+ * tool; they are meant to be compared with each other.
+ */
+final class FuzzyHash {
+
+    static final int ROLLING_WINDOW = 7;
+    private static final int MIN_BLOCKSIZE = 3;
+    private static final int SPAMSUM_LENGTH = 64;
+    private static final int HASH_PRIME = 0x01000193;
+    private static final int HASH_INIT = 0x28021967;
+    // smaller block sizes tried when the signature of the first guess is short
+    private static final int NUM_SMALLER_BLOCKSIZES = 4;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final String B64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"; //NON-NLS
+
+    private final long blockSize;
+    private final String signature;
+    private final String doubleSignature;
+
+    private FuzzyHash(long blockSize, String signature, String doubleSignature) {
+        this.blockSize = blockSize;
+        this.signature = signature;
+        this.doubleSignature = doubleSignature;
+    }
+
+    long getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the signature at the block size, with runs of more than three
+     *         identical characters shortened, as used for comparisons
+     */
+    String getSignature() {
+        return eliminateSequences(signature);
+    }
+
+    /**
+     * @return the signature at twice the block size, with runs of more than
+     *         three identical characters shortened
+     */
+    String getDoubleSignature() {
+        return eliminateSequences(doubleSignature);
+    }
+
+    @Override
+    public String toString() {
+        return blockSize + ":" + signature + ":" + doubleSignature;
+    }
+
+    /**
+     * Parses a hash from its string form
+     *
+     * @param value the string form
+     *
+     * @return the hash, or null if the value is not a hash
+     */
+    static FuzzyHash parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(":", -1);
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            long blockSize = Long.parseLong(parts[0]);
+            return blockSize >= MIN_BLOCKSIZE ? new FuzzyHash(blockSize, parts[1], parts[2]) : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Computes the hash of the content of a file
+     *
+     * @param file the file
+     *
+     * @return the hash
+     *
+     * @throws TskCoreException if the file cannot be read
+     */
+    static FuzzyHash compute(AbstractFile file) throws TskCoreException {
+        final long size = file.getSize();
+        long guess = MIN_BLOCKSIZE;
+        while (guess * SPAMSUM_LENGTH < size) {
+            guess *= 2;
+        }
+        // levels from the smallest block size tried up to twice the guess
+        int smallest = 0;
+        long smallestBlockSize = guess;
+        while (smallest < NUM_SMALLER_BLOCKSIZES && smallestBlockSize > MIN_BLOCKSIZE) {
+            smallestBlockSize /= 2;
+            ++smallest;
+        }
+        Level[] levels = new Level[smallest + 2];
+        for (int i = 0; i < levels.length; ++i) {
+            levels[i] = new Level(smallestBlockSize << i);
+        }
+
+        RollingHash roll = new RollingHash();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        long offset = 0;
+        while (offset < size) {
+            int read = file.read(buffer, offset, Math.min(buffer.length, size - offset));
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; ++i) {
+                final int c = buffer[i] & 0xFF;
+                final long h = roll.update(c) & 0xFFFFFFFFL;
+                for (Level level : levels) {
+                    level.update(c, h);
+                }
+            }
+            offset += read;
+        }
+        if (roll.value() != 0) {
+            for (Level level : levels) {
+                level.finish();
+            }
+        }
+
+        // use a smaller block size while the signature is too short to compare well
+        int chosen = smallest;
+        while (chosen > 0 && levels[chosen].full.length() < SPAMSUM_LENGTH / 2) {
+            --chosen;
+        }
+        return new FuzzyHash(levels[chosen].blockSize, levels[chosen].full.toString(), levels[chosen + 1].half.toString());
+    }
+
+    /**
+     * Compares two hashes
+     *
+     * @param other the other hash
+     *
+     * @return a score from 0 (no similarity) to 100 (very similar)
+     */
+    int compare(FuzzyHash other) {
+        if (blockSize == other.blockSize) {
+            return Math.max(scoreSignatures(getSignature(), other.getSignature(), blockSize),
+                    scoreSignatures(getDoubleSignature(), other.getDoubleSignature(), blockSize * 2));
+        } else if (blockSize == other.blockSize * 2) {
+            return scoreSignatures(getSignature(), other.getDoubleSignature(), blockSize);
+        } else if (other.blockSize == blockSize * 2) {
+            return scoreSignatures(getDoubleSignature(), other.getSignature(), other.blockSize);
+        }
+        return 0;
+    }
+
+    private static int scoreSignatures(String s1, String s2, long blockSize) {
+        if (s1.length() < ROLLING_WINDOW || s2.length() < ROLLING_WINDOW || !haveCommonSubstring(s1, s2)) {
+            return 0;
+        }
+        long score = (long) editDistance(s1, s2) * SPAMSUM_LENGTH / (s1.length() + s2.length());
+        score = 100 * score / SPAMSUM_LENGTH;
+        if (score >= 100) {
+            return 0;
+        }
+        score = 100 - score;
+        // small block sizes give short pieces that match by chance, cap their score
+        final long cap = blockSize / MIN_BLOCKSIZE * Math.min(s1.length(), s2.length());
+        if (blockSize < (99 + ROLLING_WINDOW) / ROLLING_WINDOW * MIN_BLOCKSIZE && score > cap) {
+            score = cap;
+        }
+        return (int) score;
+    }
+
+    private static boolean haveCommonSubstring(String s1, String s2) {
+        for (int i = 0; i + ROLLING_WINDOW <= s1.length(); ++i) {
+            if (s2.contains(s1.substring(i, i + ROLLING_WINDOW))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Edit distance with insertions and deletions costing 1 and changes
+     * costing 2, as in ssdeep
+     */
+    private static int editDistance(String s1, String s2) {
+        int[] previous = new int[s2.length() + 1];
+        int[] current = new int[s2.length() + 1];
+        for (int j = 0; j <= s2.length(); ++j) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= s1.length(); ++i) {
+            current[0] = i;
+            for (int j = 1; j <= s2.length(); ++j) {
+                final int change = previous[j - 1] + (s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 2);
+                current[j] = Math.min(change, Math.min(previous[j] + 1, current[j - 1] + 1));
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[s2.length()];
+    }
+
+    private static String eliminateSequences(String s) {
+        StringBuilder result = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); ++i) {
+            if (i < 3 || s.charAt(i) != s.charAt(i - 1) || s.charAt(i) != s.charAt(i - 2) || s.charAt(i) != s.charAt(i - 3)) {
+                result.append(s.charAt(i));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * The rolling hash over the last ROLLING_WINDOW bytes that picks the
+     * piece boundaries
+     */
+    private static class RollingHash {
+
+        private final int[] window = new int[ROLLING_WINDOW];
+        private int h1;
+        private int h2;
+        private int h3;
+        private int n;
+
+        int update(int c) {
+            h2 -= h1;
+            h2 += ROLLING_WINDOW * c;
+            h1 += c;
+            h1 -= window[n % ROLLING_WINDOW];
+            window[n % ROLLING_WINDOW] = c;
+            ++n;
+            h3 <<= 5;
+            h3 ^= c;
+            return value();
+        }
+
+        int value() {
+            return h1 + h2 + h3;
+        }
+    }
+
+    /**
+     * The signatures of one block size: the full one, used when the block size
+     * is chosen, and the half length one, used as the second signature of
+     * half the block size
+     */
+    private static class Level {
+
+        private final long blockSize;
+        private final StringBuilder full = new StringBuilder(SPAMSUM_LENGTH);
+        private final StringBuilder half = new StringBuilder(SPAMSUM_LENGTH / 2);
+        private int fullHash = HASH_INIT;
+        private int halfHash = HASH_INIT;
+
+        Level(long blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        void update(int c, long rollingHash) {
+            fullHash = (fullHash * HASH_PRIME) ^ c;
+            halfHash = (halfHash * HASH_PRIME) ^ c;
+            if (rollingHash % blockSize == blockSize - 1) {
+                // the last character of a signature takes the rest of the content
+                if (full.length() < SPAMSUM_LENGTH - 1) {
+                    full.append(b64(fullHash));
+                    fullHash = HASH_INIT;
+                }
+                if (half.length() < SPAMSUM_LENGTH / 2 - 1) {
+                    half.append(b64(halfHash));
+                    halfHash = HASH_INIT;
+                }
+            }
+        }
+
+        void finish() {
+            full.append(b64(fullHash));
+            half.append(b64(halfHash));
+        }
+
+        private static char b64(int hash) {
+            return B64.charAt((int) ((hash & 0xFFFFFFFFL) % 64));
+        }
+    }
+}
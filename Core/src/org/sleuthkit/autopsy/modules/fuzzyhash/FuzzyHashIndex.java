@@ -0,0 +1,366 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.fuzzyhash;
+
+import java.beans.PropertyChangeEvent;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * The fuzzy hashes of the files of the current case, indexed by the 7
+ * character substrings (n-grams) of their signatures. Two hashes can only be
+ * similar if their signatures share such a substring at a compatible block
+ * size, so a similarity query only compares the hashes that share one,
+ * instead of all hashes of the case.
+ *
+ * The hashes are stored in the case as attributes of the general info
+ * artifacts of the files, and the index is loaded from them the first time it
+ * is used for a case. A hash has about 90 n-grams, so the postings are kept in
+ * primitive arrays (see Postings) to stay small for cases with millions of
+ * files. Thread safe; the hashes are compared outside the lock, so the file
+ * ingest threads only wait for each other to look up and update the index.
+ */
+final class FuzzyHashIndex {
+
+    private static final Logger logger = Logger.getLogger(FuzzyHashIndex.class.getName());
+    static final String ATTRIBUTE_TYPE_NAME = "AUT_FUZZY_HASH"; //NON-NLS
+    private static FuzzyHashIndex currentIndex = null; //guarded by FuzzyHashIndex.class
+
+    private final List<Long> objIds = new ArrayList<>();
+    private final List<FuzzyHash> hashes = new ArrayList<>();
+    private final Map<Long, Integer> entriesByObjId = new HashMap<>();
+    private final Set<Long> knownBadObjIds = new HashSet<>();
+    private final Postings postings = new Postings();
+
+    static {
+        Case.addPropertyChangeListener((PropertyChangeEvent evt) -> {
+            if (evt.getPropertyName().equals(Case.Events.CURRENT_CASE.toString())) {
+                synchronized (FuzzyHashIndex.class) {
+                    currentIndex = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the index of the current case, loading it from the case the first
+     * time
+     *
+     * @param attributeType the attribute type the hashes are stored in
+     *
+     * @return the index
+     *
+     * @throws TskCoreException if the stored hashes cannot be read
+     */
+    static synchronized FuzzyHashIndex getIndex(BlackboardAttribute.Type attributeType) throws TskCoreException {
+        if (currentIndex == null) {
+            FuzzyHashIndex index = new FuzzyHashIndex();
+            index.load(Case.getCurrentCase().getSleuthkitCase(), attributeType);
+            currentIndex = index;
+        }
+        return currentIndex;
+    }
+
+    private void load(SleuthkitCase skCase, BlackboardAttribute.Type attributeType) throws TskCoreException {
+        final long start = System.currentTimeMillis();
+        final String query = "SELECT art.obj_id AS obj_id, att.value_text AS value_text, f.known AS known " //NON-NLS
+                + "FROM blackboard_artifacts AS art, blackboard_attributes AS att, tsk_files AS f " //NON-NLS
+                + "WHERE att.artifact_id = art.artifact_id AND f.obj_id = art.obj_id " //NON-NLS
+                + "AND art.artifact_type_id = " + BlackboardArtifact.ARTIFACT_TYPE.TSK_GEN_INFO.getTypeID() + " " //NON-NLS
+                + "AND att.attribute_type_id = " + attributeType.getTypeID(); //NON-NLS
+        try (SleuthkitCase.CaseDbQuery dbQuery = skCase.executeQuery(query)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            while (resultSet.next()) {
+                FuzzyHash hash = FuzzyHash.parse(resultSet.getString("value_text")); //NON-NLS
+                if (hash != null) {
+                    add(resultSet.getLong("obj_id"), hash, //NON-NLS
+                            resultSet.getInt("known") == TskData.FileKnown.BAD.getFileKnownValue()); //NON-NLS
+                }
+            }
+        } catch (SQLException ex) {
+            throw new TskCoreException("Error reading fuzzy hashes of the case", ex); //NON-NLS
+        }
+        logger.log(Level.INFO, "Loaded {0} fuzzy hashes, {1} of known bad files, in {2} ms", //NON-NLS
+                new Object[]{hashes.size(), knownBadObjIds.size(), System.currentTimeMillis() - start});
+    }
+
+    synchronized boolean contains(long objId) {
+        return entriesByObjId.containsKey(objId);
+    }
+
+    /**
+     * Marks the hash of a file as the hash of a known bad file, e.g. when a
+     * later ingest job finds the file in a new hash set
+     *
+     * @param objId the file
+     *
+     * @return the hash of the file, or null if it is not in the index or was
+     *         already known bad
+     */
+    synchronized FuzzyHash markKnownBad(long objId) {
+        final Integer entry = entriesByObjId.get(objId);
+        if (entry == null || !knownBadObjIds.add(objId)) {
+            return null;
+        }
+        return hashes.get(entry);
+    }
+
+    /**
+     * Adds the hash of a file
+     *
+     * @param objId    the file
+     * @param hash     its hash
+     * @param knownBad whether the file is known bad
+     */
+    synchronized void add(long objId, FuzzyHash hash, boolean knownBad) {
+        if (knownBad) {
+            knownBadObjIds.add(objId);
+        }
+        if (entriesByObjId.containsKey(objId)) {
+            return;
+        }
+        final int entry = hashes.size();
+        objIds.add(objId);
+        hashes.add(hash);
+        entriesByObjId.put(objId, entry);
+        for (int key : getKeys(hash)) {
+            postings.add(key, entry);
+        }
+    }
+
+    /**
+     * Finds the files with a hash similar to the hash of a file, then adds the
+     * hash. The candidates are collected and the hash added at once, so that
+     * of two similar files hashed at the same time one finds the other.
+     *
+     * @param objId    the file
+     * @param hash     its hash
+     * @param knownBad whether the file is known bad; if not, only similar
+     *                 known bad files are returned
+     * @param minScore the minimum similarity score, from 1 to 100
+     *
+     * @return the similarity scores of the files, by object id
+     */
+    Map<Long, Integer> addAndFindSimilar(long objId, FuzzyHash hash, boolean knownBad, int minScore) {
+        final List<Candidate> candidates;
+        synchronized (this) {
+            candidates = getCandidates(hash, !knownBad, objId);
+            add(objId, hash, knownBad);
+        }
+        return compare(hash, candidates, minScore);
+    }
+
+    /**
+     * Finds the files with a hash similar to a given one
+     *
+     * @param hash          the hash
+     * @param minScore      the minimum similarity score, from 1 to 100
+     * @param knownBadOnly  whether to only return known bad files
+     * @param excludedObjId a file not to return, e.g., the file of the hash
+     *
+     * @return the similarity scores of the files, by object id
+     */
+    Map<Long, Integer> findSimilar(FuzzyHash hash, int minScore, boolean knownBadOnly, long excludedObjId) {
+        final List<Candidate> candidates;
+        synchronized (this) {
+            candidates = getCandidates(hash, knownBadOnly, excludedObjId);
+        }
+        return compare(hash, candidates, minScore);
+    }
+
+    /**
+     * Gets the hashes that share an index key with a hash. Called with the
+     * lock held.
+     */
+    private List<Candidate> getCandidates(FuzzyHash hash, boolean knownBadOnly, long excludedObjId) {
+        Set<Integer> entries = new HashSet<>();
+        for (int key : getKeys(hash)) {
+            postings.collect(key, entries);
+        }
+        List<Candidate> candidates = new ArrayList<>(entries.size());
+        for (Integer entry : entries) {
+            final long objId = objIds.get(entry);
+            if (objId == excludedObjId || (knownBadOnly && !knownBadObjIds.contains(objId))) {
+                continue;
+            }
+            candidates.add(new Candidate(objId, hashes.get(entry)));
+        }
+        return candidates;
+    }
+
+    /**
+     * Compares a hash with candidate hashes, without the lock
+     */
+    private static Map<Long, Integer> compare(FuzzyHash hash, List<Candidate> candidates, int minScore) {
+        Map<Long, Integer> similar = new LinkedHashMap<>();
+        for (Candidate candidate : candidates) {
+            final int score = hash.compare(candidate.hash);
+            if (score >= minScore) {
+                similar.put(candidate.objId, score);
+            }
+        }
+        return similar;
+    }
+
+    private static final class Candidate {
+
+        private final long objId;
+        private final FuzzyHash hash;
+
+        Candidate(long objId, FuzzyHash hash) {
+            this.objId = objId;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Gets the index keys of a hash: the n-grams of its signature at its block
+     * size and of its second signature at twice the block size. A hash at
+     * block size b can match hashes at b/2, b and 2b, which all share one of
+     * these block sizes.
+     *
+     * The n-grams are hashed to 32 bits. Two n-grams with the same key only
+     * add candidates that the comparison of the hashes then rejects.
+     *
+     * @return the keys, sorted and without duplicates
+     */
+    private static int[] getKeys(FuzzyHash hash) {
+        int[] keys = new int[Math.max(0, hash.getSignature().length() - FuzzyHash.ROLLING_WINDOW + 1)
+                + Math.max(0, hash.getDoubleSignature().length() - FuzzyHash.ROLLING_WINDOW + 1)];
+        int numKeys = addKeys(hash.getSignature(), hash.getBlockSize(), keys, 0);
+        numKeys = addKeys(hash.getDoubleSignature(), hash.getBlockSize() * 2, keys, numKeys);
+        Arrays.sort(keys, 0, numKeys);
+        int numUnique = 0;
+        for (int i = 0; i < numKeys; ++i) {
+            if (numUnique == 0 || keys[i] != keys[numUnique - 1]) {
+                keys[numUnique++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, numUnique);
+    }
+
+    private static int addKeys(String signature, long blockSize, int[] keys, int numKeys) {
+        // block sizes are 3 * 2^n, the exponent fits in 6 bits
+        final long blockSizeBits = Long.numberOfTrailingZeros(blockSize);
+        for (int i = 0; i + FuzzyHash.ROLLING_WINDOW <= signature.length(); ++i) {
+            long key = blockSizeBits;
+            for (int j = i; j < i + FuzzyHash.ROLLING_WINDOW; ++j) {
+                key = (key << 8) | (signature.charAt(j) & 0xFF);
+            }
+            keys[numKeys++] = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+        return numKeys;
+    }
+
+    /**
+     * The entries of the hashes that have each key. An open addressing table
+     * maps each key to its last posting, and the postings of a key are a list
+     * linked backwards through two parallel arrays. A posting takes 20 to 40
+     * bytes, depending on how full the arrays are, where a map of boxed keys
+     * to arrays of entries took over 80.
+     */
+    private static final class Postings {
+
+        private static final int INITIAL_CAPACITY = 1 << 16;
+        private static final int NONE = -1;
+
+        private int[] tableKeys = new int[INITIAL_CAPACITY];
+        private int[] tableHeads = newTableHeads(INITIAL_CAPACITY);
+        private int numKeys = 0;
+        private int[] postingEntries = new int[INITIAL_CAPACITY];
+        private int[] postingNext = new int[INITIAL_CAPACITY];
+        private int numPostings = 0;
+
+        private static int[] newTableHeads(int capacity) {
+            int[] heads = new int[capacity];
+            Arrays.fill(heads, NONE);
+            return heads;
+        }
+
+        /**
+         * Gets the table slot of a key: the slot holding it, or the empty slot
+         * where it goes
+         */
+        private int getSlot(int key) {
+            final int mask = tableKeys.length - 1;
+            int slot = key & mask;
+            while (tableHeads[slot] != NONE && tableKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        void add(int key, int entry) {
+            if (numPostings == postingEntries.length) {
+                postingEntries = Arrays.copyOf(postingEntries, numPostings * 2);
+                postingNext = Arrays.copyOf(postingNext, numPostings * 2);
+            }
+            int slot = getSlot(key);
+            if (tableHeads[slot] == NONE) {
+                tableKeys[slot] = key;
+                ++numKeys;
+            }
+            postingEntries[numPostings] = entry;
+            postingNext[numPostings] = tableHeads[slot];
+            tableHeads[slot] = numPostings++;
+            if (numKeys * 4 > tableKeys.length * 3) {
+                grow();
+            }
+        }
+
+        /**
+         * Adds the entries with a key to a set
+         */
+        void collect(int key, Set<Integer> entries) {
+            for (int posting = tableHeads[getSlot(key)]; posting != NONE; posting = postingNext[posting]) {
+                entries.add(postingEntries[posting]);
+            }
+        }
+
+        private void grow() {
+            final int[] oldKeys = tableKeys;
+            final int[] oldHeads = tableHeads;
+            tableKeys = new int[oldKeys.length * 2];
+            tableHeads = newTableHeads(oldKeys.length * 2);
+            for (int i = 0; i < oldKeys.length; ++i) {
+                if (oldHeads[i] != NONE) {
+                    final int slot = getSlot(oldKeys[i]);
+                    tableKeys[slot] = oldKeys[i];
+                    tableHeads[slot] = oldHeads[i];
+                }
+            }
+        }
+    }
+}
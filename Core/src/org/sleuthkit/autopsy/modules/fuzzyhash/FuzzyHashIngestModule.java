@@ -0,0 +1,167 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.fuzzyhash;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Level;
+import org.openide.util.NbBundle.Messages;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.services.Blackboard;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
+import org.sleuthkit.autopsy.ingest.FileIngestModule;
+import org.sleuthkit.autopsy.ingest.IngestJobContext;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.autopsy.ingest.ModuleDataEvent;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * A file ingest module that computes the fuzzy hash of each file (see
+ * FuzzyHash), stores it in the case and flags the files that are similar to
+ * known bad files with interesting file hits. Files are marked known bad by the
+ * hash lookup module, which runs before this module.
+ *
+ * Similarity is checked both ways: a file is compared with the known bad files
+ * hashed so far, and a known bad file with all files hashed so far, so the
+ * order the files are ingested in does not matter. A file hashed by an earlier
+ * ingest job is not hashed again, but if it has become known bad since, e.g.
+ * with a new hash set, it is compared with all files then.
+ */
+@Messages({"FuzzyHashIngestModule.setName=Similar to Known Bad Files",
+    "# {0} - file name", "# {1} - score", "FuzzyHashIngestModule.comment=Similar to {0} (score {1})",
+    "FuzzyHashIngestModule.attributeType.displayName=Fuzzy Hash",
+    "FuzzyHashIngestModule.startUpError.message=Could not load the fuzzy hashes of the case."})
+final class FuzzyHashIngestModule implements FileIngestModule {
+
+    private static final Logger logger = Logger.getLogger(FuzzyHashIngestModule.class.getName());
+    // fuzzy hashes of small files have too few pieces to be meaningful
+    private static final long MIN_FILE_SIZE = 4096;
+    private static final int MIN_SCORE = 60;
+
+    private final IngestServices services = IngestServices.getInstance();
+    private SleuthkitCase skCase;
+    private Blackboard blackboard;
+    private BlackboardAttribute.Type attributeType;
+    private FuzzyHashIndex index;
+
+    @Override
+    public void startUp(IngestJobContext context) throws IngestModuleException {
+        skCase = Case.getCurrentCase().getSleuthkitCase();
+        blackboard = Case.getCurrentCase().getServices().getBlackboard();
+        try {
+            attributeType = blackboard.getOrAddAttributeType(FuzzyHashIndex.ATTRIBUTE_TYPE_NAME,
+                    BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.STRING, Bundle.FuzzyHashIngestModule_attributeType_displayName());
+            index = FuzzyHashIndex.getIndex(attributeType);
+        } catch (Blackboard.BlackboardException | TskCoreException ex) {
+            throw new IngestModuleException(Bundle.FuzzyHashIngestModule_startUpError_message(), ex);
+        }
+    }
+
+    @Override
+    public ProcessResult process(AbstractFile file) {
+        if (file.getType() == TskData.TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS
+                || file.getType() == TskData.TSK_DB_FILES_TYPE_ENUM.UNUSED_BLOCKS
+                || file.isDir()
+                || file.getSize() < MIN_FILE_SIZE
+                || file.getKnown() == TskData.FileKnown.KNOWN) {
+            return ProcessResult.OK;
+        }
+        final boolean knownBad = file.getKnown() == TskData.FileKnown.BAD;
+        if (index.contains(file.getId())) {
+            // hashed by an earlier ingest job
+            final FuzzyHash knownBadHash = knownBad ? index.markKnownBad(file.getId()) : null;
+            if (knownBadHash != null) {
+                postHits(file, true, index.findSimilar(knownBadHash, MIN_SCORE, false, file.getId()));
+            }
+            return ProcessResult.OK;
+        }
+
+        final FuzzyHash hash;
+        try {
+            hash = FuzzyHash.compute(file);
+            BlackboardArtifact genInfo = file.getGenInfoArtifact();
+            genInfo.addAttribute(new BlackboardAttribute(attributeType, FuzzyHashModuleFactory.getModuleName(), hash.toString()));
+        } catch (TskCoreException ex) {
+            logger.log(Level.WARNING, "Error computing fuzzy hash of file " + file.getId(), ex); //NON-NLS
+            return ProcessResult.ERROR;
+        }
+
+        postHits(file, knownBad, index.addAndFindSimilar(file.getId(), hash, knownBad, MIN_SCORE));
+        return ProcessResult.OK;
+    }
+
+    /**
+     * Posts the hits for the files similar to a file
+     *
+     * @param file     the file
+     * @param knownBad whether the file is known bad, then the hits are posted
+     *                 for the similar files, else for the file
+     * @param similar  the similarity scores of the files, by object id
+     */
+    private void postHits(AbstractFile file, boolean knownBad, Map<Long, Integer> similar) {
+        for (Map.Entry<Long, Integer> entry : similar.entrySet()) {
+            try {
+                AbstractFile other = skCase.getAbstractFileById(entry.getKey());
+                if (other == null) {
+                    continue;
+                }
+                if (knownBad) {
+                    // flag the files hashed so far that are similar to this known bad file
+                    if (other.getKnown() != TskData.FileKnown.BAD) {
+                        postHit(other, file, entry.getValue());
+                    }
+                } else {
+                    postHit(file, other, entry.getValue());
+                }
+            } catch (TskCoreException ex) {
+                logger.log(Level.WARNING, "Error posting fuzzy hash hit for file " + file.getId(), ex); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * Posts an interesting file hit for a file similar to a known bad file
+     */
+    @Messages({"FuzzyHashIngestModule.indexError.message=Failed to index fuzzy hash hit artifact for keyword search."})
+    private void postHit(AbstractFile file, AbstractFile knownBadFile, int score) throws TskCoreException {
+        final String moduleName = FuzzyHashModuleFactory.getModuleName();
+        BlackboardArtifact artifact = file.newArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT);
+        artifact.addAttribute(new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME, moduleName, Bundle.FuzzyHashIngestModule_setName()));
+        artifact.addAttribute(new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_COMMENT, moduleName,
+                Bundle.FuzzyHashIngestModule_comment(knownBadFile.getUniquePath(), score)));
+        try {
+            // index the artifact for keyword search
+            blackboard.indexArtifact(artifact);
+        } catch (Blackboard.BlackboardException ex) {
+            logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex); //NON-NLS
+            MessageNotifyUtil.Notify.error(Bundle.FuzzyHashIngestModule_indexError_message(), artifact.getDisplayName());
+        }
+        services.fireModuleDataEvent(new ModuleDataEvent(moduleName, BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT, Collections.singletonList(artifact)));
+    }
+
+    @Override
+    public void shutDown() {
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.fuzzyhash;
+
+import org.openide.util.NbBundle.Messages;
+import org.openide.util.lookup.ServiceProvider;
+import org.sleuthkit.autopsy.coreutils.Version;
+import org.sleuthkit.autopsy.ingest.FileIngestModule;
+import org.sleuthkit.autopsy.ingest.IngestModuleFactory;
+import org.sleuthkit.autopsy.ingest.IngestModuleFactoryAdapter;
+import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettings;
+
+/**
+ * A factory that creates file ingest modules that compute fuzzy hashes of
+ * files and flag files similar to known bad files.
+ */
+@ServiceProvider(service = IngestModuleFactory.class)
+@Messages({"FuzzyHashModuleFactory.moduleName=Fuzzy Hash Similarity",
+    "FuzzyHashModuleFactory.moduleDescription=Computes a fuzzy (ssdeep style) hash of each file and flags files that are similar to known bad files."})
+public class FuzzyHashModuleFactory extends IngestModuleFactoryAdapter {
+
+    @Override
+    public String getModuleDisplayName() {
+        return getModuleName();
+    }
+
+    static String getModuleName() {
+        return Bundle.FuzzyHashModuleFactory_moduleName();
+    }
+
+    @Override
+    public String getModuleDescription() {
+        return Bundle.FuzzyHashModuleFactory_moduleDescription();
+    }
+
+    @Override
+    public String getModuleVersionNumber() {
+        return Version.getVersion();
+    }
+
+    @Override
+    public boolean isFileIngestModuleFactory() {
+        return true;
+    }
+
+    @Override
+    public FileIngestModule createFileIngestModule(IngestModuleIngestJobSettings ingestOptions) {
+        return new FuzzyHashIngestModule();
+    }
+}
@@ -296,6 +296,8 @@ private void cancelButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-
         this.dispose();
     }//GEN-LAST:event_cancelButtonActionPerformed
 
+    @NbBundle.Messages({"# {0} - database file name", "HashDbImportDatabaseDialog.importTextHashSet.message=Import the hashes of this text hash set into a new hash database ({0})?\nImporting is faster than indexing the text file, but only the MD5 hashes are kept.",
+        "HashDbImportDatabaseDialog.importTextHashSet.title=Import Text Hash Set"})
     private void okButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_okButtonActionPerformed
         // Note that the error handlers in this method call return without disposing of the 
         // dialog to allow the user to try again, if desired.
@@ -341,7 +343,17 @@ private void okButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRS
                 "HashDbImportDatabaseDialog.errorMessage.failedToOpenHashDbMsg",
                 selectedFilePath);
         try {
-            selectedHashDb = HashDbManager.getInstance().addExistingHashDatabaseNoSave(hashSetNameTextField.getText(), selectedFilePath, true, sendIngestMessagesCheckbox.isSelected(), type);
+            String databasePath = FilenameUtils.removeExtension(selectedFilePath) + "." + HashDbManager.getHashDatabaseFileExtension();
+            if (FilenameUtils.getExtension(selectedFilePath).equalsIgnoreCase("txt") //NON-NLS
+                    && !new File(databasePath).exists()
+                    && JOptionPane.showConfirmDialog(this,
+                            Bundle.HashDbImportDatabaseDialog_importTextHashSet_message(new File(databasePath).getName()),
+                            Bundle.HashDbImportDatabaseDialog_importTextHashSet_title(),
+                            JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                selectedHashDb = HashDbManager.getInstance().importHashSetNoSave(hashSetNameTextField.getText(), selectedFilePath, databasePath, true, sendIngestMessagesCheckbox.isSelected(), type);
+            } else {
+                selectedHashDb = HashDbManager.getInstance().addExistingHashDatabaseNoSave(hashSetNameTextField.getText(), selectedFilePath, true, sendIngestMessagesCheckbox.isSelected(), type);
+            }
         } catch (HashDbManagerException ex) {
             Logger.getLogger(HashDbImportDatabaseDialog.class.getName()).log(Level.WARNING, errorMessage, ex);
             JOptionPane.showMessageDialog(this,
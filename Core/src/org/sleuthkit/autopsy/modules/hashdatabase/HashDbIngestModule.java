@@ -29,6 +29,7 @@
 import org.openide.util.NbBundle.Messages;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.casemodule.services.Blackboard;
+import org.sleuthkit.autopsy.casemodule.services.CorrelationIndex;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
 import org.sleuthkit.autopsy.ingest.FileIngestModule;
@@ -65,6 +66,9 @@ public class HashDbIngestModule implements FileIngestModule {
     private final HashLookupModuleSettings settings;
     private List<HashDb> knownBadHashSets = new ArrayList<>();
     private List<HashDb> knownHashSets = new ArrayList<>();
+    private HashSetLookupIndex lookupIndex;
+    private CorrelationIndex correlationIndex;
+    private long dataSourceId;
     private long jobId;
     private static final HashMap<Long, IngestJobTotals> totalsForIngestJobs = new HashMap<>();
     private static final IngestModuleReferenceCounter refCounter = new IngestModuleReferenceCounter();
@@ -93,11 +97,16 @@ private static synchronized IngestJobTotals getTotalsForIngestJobs(long ingestJo
     @Override
     public void startUp(org.sleuthkit.autopsy.ingest.IngestJobContext context) throws IngestModuleException {
         jobId = context.getJobId();
+        dataSourceId = context.getDataSource().getId();
+        correlationIndex = Case.getCurrentCase().getServices().getCorrelationIndex();
         if (!hashDbManager.verifyAllDatabasesLoadedCorrectly()) {
             throw new IngestModuleException("Could not load all hash databases");
         }
         updateEnabledHashSets(hashDbManager.getKnownBadFileHashSets(), knownBadHashSets);
         updateEnabledHashSets(hashDbManager.getKnownFileHashSets(), knownHashSets);
+        List<HashDb> enabledHashSets = new ArrayList<>(knownBadHashSets);
+        enabledHashSets.addAll(knownHashSets);
+        lookupIndex = HashSetLookupIndex.getIndex(enabledHashSets);
 
         if (refCounter.incrementAndGet(jobId) == 1) {
             // initialize job totals
@@ -177,6 +186,7 @@ public ProcessResult process(AbstractFile file) {
                 md5Hash = HashUtility.calculateMd5(file);
                 long delta = (System.currentTimeMillis() - calcstart);
                 totals.totalCalctime.addAndGet(delta);
+                correlationIndex.addFile(file, dataSourceId, md5Hash);
 
             } catch (IOException ex) {
                 logger.log(Level.WARNING, "Error calculating hash of file " + name, ex); //NON-NLS
@@ -192,12 +202,28 @@ public ProcessResult process(AbstractFile file) {
             }
         }
 
+        if (settings.shouldRecordInCentralStore()) {
+            correlationIndex.recordInCentralStore(file, dataSourceId, md5Hash);
+        }
+
+        // find the sets that have the hash in one lookup, the sets it is not in are skipped below
+        long indexHits = 0;
+        if (lookupIndex != null) {
+            long lookupstart = System.currentTimeMillis();
+            indexHits = lookupIndex.lookup(md5Hash);
+            totals.totalLookuptime.addAndGet(System.currentTimeMillis() - lookupstart);
+        }
+
         // look up in known bad first
         boolean foundBad = false;
         ProcessResult ret = ProcessResult.OK;
         for (HashDb db : knownBadHashSets) {
+            if (lookupIndex != null && !lookupIndex.mayContain(db, indexHits)) {
+                continue;
+            }
             try {
                 long lookupstart = System.currentTimeMillis();
+                // also gets the comments of the hit
                 HashHitInfo hashInfo = db.lookupMD5(file);
                 if (null != hashInfo) {
                     foundBad = true;
@@ -257,9 +283,12 @@ public ProcessResult process(AbstractFile file) {
         // a hit artifact or send a message to the application inbox.
         if (!foundBad) {
             for (HashDb db : knownHashSets) {
+                if (lookupIndex != null && !lookupIndex.mayContain(db, indexHits)) {
+                    continue;
+                }
                 try {
                     long lookupstart = System.currentTimeMillis();
-                    if (db.lookupMD5Quick(file)) {
+                    if ((lookupIndex != null && lookupIndex.contains(db, indexHits)) || db.lookupMD5Quick(file)) {
                         try {
                             skCase.setKnown(file, TskData.FileKnown.KNOWN);
                             break;
@@ -401,6 +430,7 @@ private static synchronized void postSummary(long jobId,
     @Override
     public void shutDown() {
         if (refCounter.decrementAndGet(jobId) == 0) {
+            correlationIndex.flush();
             postSummary(jobId, knownBadHashSets, knownHashSets);
         }
     }
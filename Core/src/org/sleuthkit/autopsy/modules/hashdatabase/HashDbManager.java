@@ -29,6 +29,7 @@
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
@@ -270,6 +271,39 @@ private HashDb addHashDatabase(int handle, String hashSetName, boolean searchDur
         return hashDb;
     }
 
+    /**
+     * Creates a new hash database and imports the hashes of a text hash set
+     * file into it in the background, see HashSetImporter. The database is
+     * indexing until the import is done, and is removed again if the import
+     * fails or is cancelled.
+     *
+     * @param hashSetName        Hash set name used to represent the hash
+     *                           database in user interface components.
+     * @param sourcePath         Full path to the text hash set file.
+     * @param path               Full path to the database file to be created.
+     * @param searchDuringIngest A flag indicating whether or not the hash
+     *                           database should be searched during ingest.
+     * @param sendIngestMessages A flag indicating whether hash set hit messages
+     *                           should be sent as ingest messages.
+     * @param knownFilesType     The classification to apply to files whose
+     *                           hashes are found in the hash database.
+     *
+     * @return A HashDb representing the hash database.
+     *
+     * @throws HashDbManagerException
+     */
+    synchronized HashDb importHashSetNoSave(String hashSetName, String sourcePath, String path, boolean searchDuringIngest, boolean sendIngestMessages,
+            HashDb.KnownFilesType knownFilesType) throws HashDbManagerException {
+        if (!new File(sourcePath).exists()) {
+            throw new HashDbManagerException(NbBundle.getMessage(HashDbManager.class, "HashDbManager.hashDbDoesNotExistExceptionMsg", sourcePath));
+        }
+        HashDb hashDb = addNewHashDatabaseNoSave(hashSetName, path, searchDuringIngest, sendIngestMessages, knownFilesType);
+        hashDb.addPropertyChangeListener(this);
+        hashDb.indexing = true;
+        new HashDbImporter(hashDb, new File(sourcePath)).execute();
+        return hashDb;
+    }
+
     synchronized void indexHashDatabase(HashDb hashDb) {
         hashDb.addPropertyChangeListener(this);
         HashDbIndexer creator = new HashDbIndexer(hashDb);
@@ -589,6 +623,7 @@ public enum Event {
         private boolean sendIngestMessages;
         private final KnownFilesType knownFilesType;
         private boolean indexing;
+        private final AtomicLong updateCount = new AtomicLong(0);
         private final PropertyChangeSupport propertyChangeSupport = new PropertyChangeSupport(this);
 
         private HashDb(int handle, String hashSetName, boolean useForIngest, boolean sendHitMessages, KnownFilesType knownFilesType) {
@@ -690,6 +725,7 @@ public void addHashes(Content content, String comment) throws TskCoreException {
                 AbstractFile file = (AbstractFile) content;
                 if (null != file.getMd5Hash()) {
                     SleuthkitJNI.addToHashDatabase(null, file.getMd5Hash(), null, null, comment, handle);
+                    updateCount.incrementAndGet();
                 }
             }
         }
@@ -703,6 +739,17 @@ public void addHashes(Content content, String comment) throws TskCoreException {
          */
         public void addHashes(List<HashEntry> hashes) throws TskCoreException {
             SleuthkitJNI.addToHashDatabase(hashes, handle);
+            updateCount.incrementAndGet();
+        }
+
+        /**
+         * Gets the number of times hashes were added to the database, to tell
+         * whether a copy of its hashes is still current.
+         *
+         * @return the count
+         */
+        long getUpdateCount() {
+            return updateCount.get();
         }
 
         /**
@@ -742,12 +789,25 @@ public HashHitInfo lookupMD5(Content content) throws TskCoreException {
             if (content instanceof AbstractFile) {
                 AbstractFile file = (AbstractFile) content;
                 if (null != file.getMd5Hash()) {
-                    result = SleuthkitJNI.lookupInHashDatabaseVerbose(file.getMd5Hash(), handle);
+                    result = lookupMD5(file.getMd5Hash());
                 }
             }
             return result;
         }
 
+        /**
+         * Lookup hash value in DB and provide details on it.
+         *
+         * @param md5Hash
+         *
+         * @return null if the hash is not in database.
+         *
+         * @throws TskCoreException
+         */
+        HashHitInfo lookupMD5(String md5Hash) throws TskCoreException {
+            return SleuthkitJNI.lookupInHashDatabaseVerbose(md5Hash, handle);
+        }
+
         boolean hasIndex() throws TskCoreException {
             return SleuthkitJNI.hashDatabaseHasLookupIndex(handle);
         }
@@ -803,6 +863,106 @@ public boolean equals(Object obj) {
         }
     }
 
+    /**
+     * Worker thread to import a text hash set file into a database
+     */
+    @Messages({"# {0} - hash set name", "HashDbManager.progress.importingHashSet=Importing {0}",
+        "# {0} - hash set name", "HashDbManager.errorImportingHashSet.msg=Error importing hashes into {0}. See the log for details.",
+        "# {0} - hash set name", "HashDbManager.importCancelled.title=Import into {0} cancelled",
+        "HashDbManager.importCancelled.msg=The incomplete hash database was removed.",
+        "# {0} - hash set name", "HashDbManager.incompleteHashDbNotRemoved.msg=The hash database {0} is incomplete and could not be removed. Remove it in the hash lookup options."})
+    private class HashDbImporter extends SwingWorker<Long, Void> {
+
+        private final HashDb hashDb;
+        private final File source;
+        private final ProgressHandle progress;
+        /*
+         * Polled by the import instead of cancelling the worker, so that the
+         * database is only removed after the import stopped using it.
+         */
+        private volatile boolean cancelRequested = false;
+
+        HashDbImporter(HashDb hashDb, File source) {
+            this.hashDb = hashDb;
+            this.source = source;
+            this.progress = ProgressHandle.createHandle(Bundle.HashDbManager_progress_importingHashSet(hashDb.getHashSetName()), () -> {
+                cancelRequested = true;
+                return true;
+            });
+        }
+
+        @Override
+        protected Long doInBackground() throws Exception {
+            progress.start();
+            progress.switchToDeterminate(100);
+            return new HashSetImporter(source).importInto(hashDb, progress, () -> cancelRequested);
+        }
+
+        @Override
+        protected void done() {
+            hashDb.indexing = false;
+            progress.finish();
+            try {
+                get();
+                if (cancelRequested) {
+                    logger.log(Level.INFO, "Import into hash database {0} cancelled", hashDb.getHashSetName()); //NON-NLS
+                    if (removeIncompleteDatabase()) {
+                        MessageNotifyUtil.Notify.info(Bundle.HashDbManager_importCancelled_title(hashDb.getHashSetName()),
+                                Bundle.HashDbManager_importCancelled_msg());
+                        return;
+                    }
+                }
+            } catch (InterruptedException | ExecutionException ex) {
+                logger.log(Level.SEVERE, "Error importing " + source + " into hash database " + hashDb.getHashSetName(), ex); //NON-NLS
+                MessageNotifyUtil.Notify.show(
+                        NbBundle.getMessage(this.getClass(), "HashDbManager.hashDbIndexingErr"),
+                        Bundle.HashDbManager_errorImportingHashSet_msg(hashDb.getHashSetName()),
+                        MessageNotifyUtil.MessageType.ERROR);
+                if (removeIncompleteDatabase()) {
+                    return;
+                }
+            }
+
+            try {
+                hashDb.propertyChangeSupport.firePropertyChange(HashDb.Event.INDEXING_DONE.toString(), null, hashDb);
+                hashDb.propertyChangeSupport.firePropertyChange(HashDbManager.SetEvt.DB_INDEXED.toString(), null, hashDb.getHashSetName());
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "HashDbManager listener threw exception", e); //NON-NLS
+                MessageNotifyUtil.Notify.show(
+                        NbBundle.getMessage(this.getClass(), "HashDbManager.moduleErr"),
+                        NbBundle.getMessage(this.getClass(), "HashDbManager.moduleErrorListeningToUpdatesMsg"),
+                        MessageNotifyUtil.MessageType.ERROR);
+            }
+        }
+
+        /**
+         * Removes the hash database of a cancelled or failed import and
+         * deletes its file, so that a partial set is not used for lookups. If
+         * it cannot be removed, for instance while ingest is running, tells
+         * the user to remove it.
+         *
+         * @return true if the database was removed
+         */
+        private boolean removeIncompleteDatabase() {
+            String databasePath = null;
+            try {
+                databasePath = hashDb.getDatabasePath();
+                removeHashDatabase(hashDb);
+            } catch (TskCoreException | HashDbManagerException ex) {
+                logger.log(Level.SEVERE, "Could not remove incomplete hash database " + hashDb.getHashSetName(), ex); //NON-NLS
+                MessageNotifyUtil.Notify.show(
+                        NbBundle.getMessage(this.getClass(), "HashDbManager.hashDbIndexingErr"),
+                        Bundle.HashDbManager_incompleteHashDbNotRemoved_msg(hashDb.getHashSetName()),
+                        MessageNotifyUtil.MessageType.ERROR);
+                return false;
+            }
+            if (!new File(databasePath).delete()) {
+                logger.log(Level.WARNING, "Could not delete incomplete hash database file {0}", databasePath); //NON-NLS
+            }
+            return true;
+        }
+    }
+
     /**
      * Worker thread to make an index of a database
      */
@@ -34,6 +34,7 @@ final class HashLookupModuleSettings implements IngestModuleIngestJobSettings {
     private HashSet<String> namesOfEnabledKnownBadHashSets;
     private HashSet<String> namesOfDisabledKnownBadHashSets; // Added in version 1.1
     private boolean shouldCalculateHashes = true;
+    private boolean shouldRecordInCentralStore = false;  // Added in version 1.2
 
     /**
      * Constructs ingest job settings for the hash lookup module.
@@ -68,7 +69,34 @@ final class HashLookupModuleSettings implements IngestModuleIngestJobSettings {
             List<String> namesOfEnabledKnownBadHashSets,
             List<String> namesOfDisabledKnownHashSets,
             List<String> namesOfDisabledKnownBadHashSets) {
+        this(shouldCalculateHashes, namesOfEnabledKnownHashSets, namesOfEnabledKnownBadHashSets,
+                namesOfDisabledKnownHashSets, namesOfDisabledKnownBadHashSets, false);
+    }
+
+    /**
+     * Constructs ingest job settings for the hash lookup module.
+     *
+     * @param shouldCalculateHashes           Whether or not hashes should be
+     *                                        calculated.
+     * @param namesOfEnabledKnownHashSets     A list of enabled known hash sets.
+     * @param namesOfEnabledKnownBadHashSets  A list of enabled known bad hash
+     *                                        sets.
+     * @param namesOfDisabledKnownHashSets    A list of disabled known hash
+     *                                        sets.
+     * @param namesOfDisabledKnownBadHashSets A list of disabled known bad hash
+     *                                        sets.
+     * @param shouldRecordInCentralStore      Whether or not the hashes should
+     *                                        be recorded in the correlation
+     *                                        central store.
+     */
+    HashLookupModuleSettings(boolean shouldCalculateHashes,
+            List<String> namesOfEnabledKnownHashSets,
+            List<String> namesOfEnabledKnownBadHashSets,
+            List<String> namesOfDisabledKnownHashSets,
+            List<String> namesOfDisabledKnownBadHashSets,
+            boolean shouldRecordInCentralStore) {
         this.shouldCalculateHashes = shouldCalculateHashes;
+        this.shouldRecordInCentralStore = shouldRecordInCentralStore;
         this.namesOfEnabledKnownHashSets = new HashSet<>(namesOfEnabledKnownHashSets);
         this.namesOfEnabledKnownBadHashSets = new HashSet<>(namesOfEnabledKnownBadHashSets);
         this.namesOfDisabledKnownHashSets = new HashSet<>(namesOfDisabledKnownHashSets);
@@ -95,6 +123,18 @@ boolean shouldCalculateHashes() {
         return this.shouldCalculateHashes;
     }
 
+    /**
+     * Checks the setting that specifies whether or not the hashes of the files
+     * are to be recorded in the central store of the correlation index, for
+     * finding them in later cases.
+     *
+     * @return True if hashes are to be recorded, false otherwise.
+     */
+    boolean shouldRecordInCentralStore() {
+        this.upgradeFromOlderVersions();
+        return this.shouldRecordInCentralStore;
+    }
+
     /**
      * Checks whether or not a hash set is enabled. If there is no setting for
      * the requested hash set, it is deemed to be enabled.
@@ -69,6 +69,7 @@ private void customizeComponents(HashLookupModuleSettings settings) {
         customizeHashSetsTable(jScrollPane1, knownHashTable, knownHashSetsTableModel);
         customizeHashSetsTable(jScrollPane2, knownBadHashTable, knownBadHashSetsTableModel);
         alwaysCalcHashesCheckbox.setSelected(settings.shouldCalculateHashes());
+        recordInCentralStoreCheckbox.setSelected(settings.shouldRecordInCentralStore());
         hashDbManager.addPropertyChangeListener(this);
         alwaysCalcHashesCheckbox.setText("<html>" + org.openide.util.NbBundle.getMessage(HashLookupModuleSettingsPanel.class, "HashLookupModuleSettingsPanel.alwaysCalcHashesCheckbox.text") + "</html>"); // NOI18N NON-NLS
     }
@@ -109,7 +110,8 @@ public IngestModuleIngestJobSettings getSettings() {
         getHashSetNames(knownBadHashSetModels, enabledKnownBadHashSetNames, disabledKnownBadHashSetNames);
         return new HashLookupModuleSettings(alwaysCalcHashesCheckbox.isSelected(),
                 enabledKnownHashSetNames, enabledKnownBadHashSetNames,
-                disabledKnownHashSetNames, disabledKnownBadHashSetNames);
+                disabledKnownHashSetNames, disabledKnownBadHashSetNames,
+                recordInCentralStoreCheckbox.isSelected());
     }
 
     private void getHashSetNames(List<HashSetModel> hashSetModels, List<String> enabledHashSetNames, List<String> disabledHashSetNames) {
@@ -167,6 +169,7 @@ void updateHashSetModels(List<HashDb> hashDbs, List<HashSetModel> hashSetModels)
     void reset(HashLookupModuleSettings newSettings) {
         initializeHashSetModels(newSettings);
         alwaysCalcHashesCheckbox.setSelected(newSettings.shouldCalculateHashes());
+        recordInCentralStoreCheckbox.setSelected(newSettings.shouldRecordInCentralStore());
         knownHashSetsTableModel.fireTableDataChanged();
         knownBadHashSetsTableModel.fireTableDataChanged();
     }
@@ -273,10 +276,11 @@ private void initComponents() {
         knownBadHashDbsLabel = new javax.swing.JLabel();
         knownHashDbsLabel = new javax.swing.JLabel();
         alwaysCalcHashesCheckbox = new javax.swing.JCheckBox();
+        recordInCentralStoreCheckbox = new javax.swing.JCheckBox();
         jScrollPane2 = new javax.swing.JScrollPane();
         knownBadHashTable = new javax.swing.JTable();
 
-        setPreferredSize(new java.awt.Dimension(292, 150));
+        setPreferredSize(new java.awt.Dimension(292, 175));
 
         jScrollPane1.setBorder(javax.swing.BorderFactory.createEtchedBorder());
 
@@ -297,6 +301,9 @@ private void initComponents() {
         alwaysCalcHashesCheckbox.setVerticalAlignment(javax.swing.SwingConstants.TOP);
         alwaysCalcHashesCheckbox.setVerticalTextPosition(javax.swing.SwingConstants.TOP);
 
+        recordInCentralStoreCheckbox.setText(org.openide.util.NbBundle.getMessage(HashLookupModuleSettingsPanel.class, "HashLookupModuleSettingsPanel.recordInCentralStoreCheckbox.text")); // NOI18N
+        recordInCentralStoreCheckbox.setToolTipText(org.openide.util.NbBundle.getMessage(HashLookupModuleSettingsPanel.class, "HashLookupModuleSettingsPanel.recordInCentralStoreCheckbox.toolTipText")); // NOI18N
+
         jScrollPane2.setBorder(javax.swing.BorderFactory.createEtchedBorder());
 
         knownBadHashTable.setBackground(new java.awt.Color(240, 240, 240));
@@ -328,7 +335,8 @@ private void initComponents() {
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(jScrollPane1, javax.swing.GroupLayout.PREFERRED_SIZE, 0, Short.MAX_VALUE)
                             .addComponent(jScrollPane2, javax.swing.GroupLayout.PREFERRED_SIZE, 0, Short.MAX_VALUE)))
-                    .addComponent(alwaysCalcHashesCheckbox, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+                    .addComponent(alwaysCalcHashesCheckbox, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                    .addComponent(recordInCentralStoreCheckbox, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
                 .addContainerGap())
         );
         layout.setVerticalGroup(
@@ -344,6 +352,8 @@ private void initComponents() {
                 .addComponent(jScrollPane2, javax.swing.GroupLayout.DEFAULT_SIZE, 53, Short.MAX_VALUE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(alwaysCalcHashesCheckbox, javax.swing.GroupLayout.PREFERRED_SIZE, 27, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addGap(0, 0, 0)
+                .addComponent(recordInCentralStoreCheckbox)
                 .addGap(0, 0, 0))
         );
     }// </editor-fold>//GEN-END:initComponents
@@ -356,5 +366,6 @@ private void initComponents() {
     private javax.swing.JTable knownBadHashTable;
     private javax.swing.JLabel knownHashDbsLabel;
     private javax.swing.JTable knownHashTable;
+    private javax.swing.JCheckBox recordInCentralStoreCheckbox;
     // End of variables declaration//GEN-END:variables
 }
@@ -0,0 +1,436 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.hashdatabase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.util.NbBundle.Messages;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.modules.hashdatabase.HashDbManager.HashDb;
+import org.sleuthkit.datamodel.HashEntry;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Imports the MD5s of a text hash set file (NSRL, HashKeeper or md5sum
+ * format) into a hash database, as a faster alternative to indexing the text
+ * file with the Sleuth Kit.
+ *
+ * The file is split into ranges that are parsed in parallel. Each parser sorts
+ * the hashes it finds in runs that fit in memory and writes them to temporary
+ * files. The runs are then merged (external merge sort), and the sorted unique
+ * hashes are written to the database in large batches, so that the database
+ * index is built by sequential inserts.
+ *
+ * Only MD5s are imported, file names and other columns are not kept. Binary
+ * (EnCase) hash sets are not supported and are still indexed by the Sleuth
+ * Kit.
+ */
+class HashSetImporter {
+
+    private static final Logger logger = Logger.getLogger(HashSetImporter.class.getName());
+    // hashes sorted in memory per run, per parser (two longs each)
+    private static final int RUN_SIZE = 1 << 19;
+    private static final int WRITE_BATCH_SIZE = 50000;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MD5_HEX_LENGTH = 32;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File source;
+    private final int numParsers;
+    private final List<File> runs = new ArrayList<>();
+    private final AtomicLong bytesParsed = new AtomicLong(0);
+    private final AtomicLong hashesParsed = new AtomicLong(0);
+    private long hashesWritten = 0;
+
+    /**
+     * @param source the text hash set file
+     */
+    HashSetImporter(File source) {
+        this.source = source;
+        this.numParsers = Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Imports the hashes of the file into a hash database
+     *
+     * @param hashDb    an updateable hash database
+     * @param progress  progress to report to, in determinate mode with 100
+     *                  units
+     * @param cancelled tells whether the import was cancelled
+     *
+     * @return the number of unique hashes imported
+     *
+     * @throws IOException          if the file cannot be read or the runs
+     *                              cannot be written
+     * @throws TskCoreException     if the hashes cannot be added to the
+     *                              database
+     * @throws InterruptedException if interrupted while parsing
+     */
+    @Messages({"# {0} - hashes per second", "HashSetImporter.progress.parsing=Reading hashes ({0} hashes/s)",
+        "# {0} - hashes per second", "HashSetImporter.progress.writing=Writing hashes ({0} hashes/s)"})
+    long importInto(HashDb hashDb, ProgressHandle progress, Cancellable cancelled) throws IOException, TskCoreException, InterruptedException {
+        final long start = System.currentTimeMillis();
+        try {
+            parse(progress, cancelled);
+            final long parseMs = System.currentTimeMillis() - start;
+            logger.log(Level.INFO, "Parsed {0} hashes from {1} in {2} ms with {3} threads, {4} sorted runs", //NON-NLS
+                    new Object[]{hashesParsed.get(), source, parseMs, numParsers, runs.size()});
+            if (cancelled.isCancelled()) {
+                return hashesWritten;
+            }
+            merge(hashDb, progress, cancelled);
+            logger.log(Level.INFO, "Imported {0} unique hashes from {1} in {2} ms ({3} hashes/s)", //NON-NLS
+                    new Object[]{hashesWritten, source, System.currentTimeMillis() - start, getRate(hashesParsed.get(), start)});
+            return hashesWritten;
+        } finally {
+            for (File run : runs) {
+                if (!run.delete()) {
+                    logger.log(Level.WARNING, "Could not delete hash import run {0}", run); //NON-NLS
+                }
+            }
+        }
+    }
+
+    private void parse(ProgressHandle progress, Cancellable cancelled) throws IOException, InterruptedException {
+        final long length = source.length();
+        final long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(numParsers);
+        try {
+            List<Future<List<File>>> results = new ArrayList<>();
+            for (int i = 0; i < numParsers; ++i) {
+                final long rangeStart = length * i / numParsers;
+                final long rangeEnd = length * (i + 1) / numParsers;
+                results.add(executor.submit(() -> parseRange(rangeStart, rangeEnd, cancelled)));
+            }
+            for (Future<List<File>> result : results) {
+                while (true) {
+                    try {
+                        runs.addAll(result.get(1, TimeUnit.SECONDS));
+                        break;
+                    } catch (TimeoutException ex) {
+                        progress.progress(Bundle.HashSetImporter_progress_parsing(getRate(hashesParsed.get(), start)),
+                                (int) (50 * bytesParsed.get() / Math.max(1, length)));
+                    }
+                }
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Error parsing hash set " + source, ex.getCause()); //NON-NLS
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses the lines that start in a range of the file. A line that starts
+     * before the range and ends in it belongs to the previous range.
+     *
+     * @return the sorted runs of the hashes found
+     */
+    private List<File> parseRange(long rangeStart, long rangeEnd, Cancellable cancelled) throws IOException {
+        List<File> rangeRuns = new ArrayList<>();
+        long[] hashes = new long[2 * RUN_SIZE];
+        int numHashes = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(source), BUFFER_SIZE)) {
+            long position = 0;
+            if (rangeStart > 0) {
+                // start after the end of the line the range starts in
+                position = skipFully(in, rangeStart - 1);
+                int b;
+                while ((b = in.read()) != -1) {
+                    ++position;
+                    if (b == '\n') {
+                        break;
+                    }
+                }
+            }
+            final char[] line = new char[1024];
+            long reported = position;
+            while (position < rangeEnd && !cancelled.isCancelled()) {
+                int lineLength = 0;
+                int b;
+                while ((b = in.read()) != -1) {
+                    ++position;
+                    if (b == '\n') {
+                        break;
+                    }
+                    if (lineLength < line.length) {
+                        line[lineLength++] = (char) b;
+                    }
+                }
+                if (findMd5(line, lineLength, hashes, numHashes)) {
+                    if (++numHashes == RUN_SIZE) {
+                        rangeRuns.add(writeRun(hashes, numHashes));
+                        hashesParsed.addAndGet(numHashes);
+                        numHashes = 0;
+                    }
+                }
+                if (position - reported > BUFFER_SIZE) {
+                    bytesParsed.addAndGet(position - reported);
+                    reported = position;
+                }
+                if (b == -1) {
+                    break;
+                }
+            }
+            bytesParsed.addAndGet(position - reported);
+        }
+        if (numHashes > 0) {
+            rangeRuns.add(writeRun(hashes, numHashes));
+            hashesParsed.addAndGet(numHashes);
+        }
+        return rangeRuns;
+    }
+
+    private static long skipFully(InputStream in, long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count) {
+            long n = in.skip(count - skipped);
+            if (n <= 0) {
+                break;
+            }
+            skipped += n;
+        }
+        return skipped;
+    }
+
+    /**
+     * Finds the first MD5 in a line: a run of exactly 32 hex digits, which
+     * tells it apart from the SHA-1s, SHA-256s and CRCs of NSRL lines. Header
+     * and comment lines have none.
+     *
+     * @return true if an MD5 was found and stored at index numHashes
+     */
+    private static boolean findMd5(char[] line, int lineLength, long[] hashes, int numHashes) {
+        int runStart = 0;
+        for (int i = 0; i <= lineLength; ++i) {
+            if (i < lineLength && Character.digit(line[i], 16) >= 0) {
+                continue;
+            }
+            if (i - runStart == MD5_HEX_LENGTH) {
+                hashes[2 * numHashes] = parseHex(line, runStart);
+                hashes[2 * numHashes + 1] = parseHex(line, runStart + MD5_HEX_LENGTH / 2);
+                return true;
+            }
+            runStart = i + 1;
+        }
+        return false;
+    }
+
+    private static long parseHex(char[] hex, int start) {
+        long value = 0;
+        for (int i = start; i < start + MD5_HEX_LENGTH / 2; ++i) {
+            value = (value << 4) | Character.digit(hex[i], 16);
+        }
+        return value;
+    }
+
+    /**
+     * Sorts hashes and writes them, without duplicates, to a temporary file
+     */
+    private File writeRun(long[] hashes, int numHashes) throws IOException {
+        sort(hashes, 0, numHashes - 1);
+        File run = File.createTempFile("autopsy-hashimport", ".run"); //NON-NLS
+        run.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+            for (int i = 0; i < numHashes; ++i) {
+                if (i > 0 && hashes[2 * i] == hashes[2 * i - 2] && hashes[2 * i + 1] == hashes[2 * i - 1]) {
+                    continue;
+                }
+                out.writeLong(hashes[2 * i]);
+                out.writeLong(hashes[2 * i + 1]);
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Sorts hashes stored as pairs of longs, as unsigned 128-bit numbers
+     * (quicksort)
+     */
+    private static void sort(long[] hashes, int lo, int hi) {
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final long pivotHigh = hashes[2 * mid];
+            final long pivotLow = hashes[2 * mid + 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compare(hashes, i, pivotHigh, pivotLow) < 0) {
+                    ++i;
+                }
+                while (compare(hashes, j, pivotHigh, pivotLow) > 0) {
+                    --j;
+                }
+                if (i <= j) {
+                    swap(hashes, i++, j--);
+                }
+            }
+            // recurse into the smaller part to bound the stack
+            if (j - lo < hi - i) {
+                sort(hashes, lo, j);
+                lo = i;
+            } else {
+                sort(hashes, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    private static int compare(long[] hashes, int index, long high, long low) {
+        int cmp = Long.compareUnsigned(hashes[2 * index], high);
+        return cmp != 0 ? cmp : Long.compareUnsigned(hashes[2 * index + 1], low);
+    }
+
+    private static void swap(long[] hashes, int i, int j) {
+        long high = hashes[2 * i];
+        long low = hashes[2 * i + 1];
+        hashes[2 * i] = hashes[2 * j];
+        hashes[2 * i + 1] = hashes[2 * j + 1];
+        hashes[2 * j] = high;
+        hashes[2 * j + 1] = low;
+    }
+
+    /**
+     * Merges the sorted runs and writes the unique hashes to the database in
+     * order
+     */
+    private void merge(HashDb hashDb, ProgressHandle progress, Cancellable cancelled) throws IOException, TskCoreException {
+        final long start = System.currentTimeMillis();
+        final long total = Math.max(1, hashesParsed.get());
+        long merged = 0;
+        PriorityQueue<RunReader> readers = new PriorityQueue<>(Math.max(1, runs.size()),
+                (RunReader r1, RunReader r2) -> {
+                    int cmp = Long.compareUnsigned(r1.high, r2.high);
+                    return cmp != 0 ? cmp : Long.compareUnsigned(r1.low, r2.low);
+                });
+        List<RunReader> openReaders = new ArrayList<>();
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                openReaders.add(reader);
+                if (reader.next()) {
+                    readers.add(reader);
+                }
+            }
+            List<HashEntry> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+            boolean first = true;
+            long lastHigh = 0;
+            long lastLow = 0;
+            while (!readers.isEmpty() && !cancelled.isCancelled()) {
+                RunReader reader = readers.poll();
+                ++merged;
+                if (first || reader.high != lastHigh || reader.low != lastLow) {
+                    first = false;
+                    lastHigh = reader.high;
+                    lastLow = reader.low;
+                    batch.add(new HashEntry(null, toHex(lastHigh, lastLow), null, null, null));
+                    if (batch.size() == WRITE_BATCH_SIZE) {
+                        write(hashDb, batch);
+                        progress.progress(Bundle.HashSetImporter_progress_writing(getRate(hashesWritten, start)),
+                                (int) (50 + 50 * merged / total));
+                    }
+                }
+                if (reader.next()) {
+                    readers.add(reader);
+                }
+            }
+            if (!batch.isEmpty() && !cancelled.isCancelled()) {
+                write(hashDb, batch);
+            }
+        } finally {
+            for (RunReader reader : openReaders) {
+                reader.close();
+            }
+        }
+    }
+
+    private void write(HashDb hashDb, List<HashEntry> batch) throws TskCoreException {
+        hashDb.addHashes(batch);
+        hashesWritten += batch.size();
+        batch.clear();
+    }
+
+    private static String toHex(long high, long low) {
+        char[] hex = new char[MD5_HEX_LENGTH];
+        for (int i = 0; i < MD5_HEX_LENGTH / 2; ++i) {
+            hex[MD5_HEX_LENGTH / 2 - 1 - i] = HEX_DIGITS[(int) (high >>> (4 * i)) & 0xF];
+            hex[MD5_HEX_LENGTH - 1 - i] = HEX_DIGITS[(int) (low >>> (4 * i)) & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static long getRate(long count, long startMs) {
+        return count * 1000 / Math.max(1, System.currentTimeMillis() - startMs);
+    }
+
+    /**
+     * Reads the hashes of a sorted run
+     */
+    private static class RunReader {
+
+        private final DataInputStream in;
+        private long high;
+        private long low;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+        }
+
+        boolean next() throws IOException {
+            try {
+                high = in.readLong();
+                low = in.readLong();
+                return true;
+            } catch (EOFException ex) {
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Error closing hash import run", ex); //NON-NLS
+            }
+        }
+    }
+}
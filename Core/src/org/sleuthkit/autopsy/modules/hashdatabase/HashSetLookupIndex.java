@@ -0,0 +1,681 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.hashdatabase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.PlatformUtil;
+import org.sleuthkit.autopsy.modules.hashdatabase.HashDbManager.HashDb;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * MD5 lookup in all the enabled hash sets, without calling into the Sleuth
+ * Kit. The MD5s of each set are kept in a lookup file next to the set: a
+ * sorted array of 128-bit keys and a Bloom filter that rejects most misses
+ * without touching the array. The files are memory-mapped, and one lookup
+ * tells which sets have a hash.
+ *
+ * A lookup file is built from the lookup index of its set (the sorted index
+ * file of a text database, or the hashes table of a SQLite database) the first
+ * time the set is used, and is named after the size and modification time of
+ * that index, so it is only rebuilt when the set changes on disk. Files are
+ * never overwritten or deleted while they may be mapped: a rebuilt set gets a
+ * new file, and outdated files are deleted when they are no longer in use, on
+ * the next rebuild. If the directory of a set is read-only, its lookup file is
+ * kept in the user config directory.
+ *
+ * A set that cannot be read, or that is changed after its lookup file is
+ * mapped (hashes added to it), is not covered by the index and is still looked
+ * up through the Sleuth Kit, see mayContain(). Hits are exact, but the Sleuth
+ * Kit lookup is still needed to get the comments of a hit.
+ *
+ * The index is opened by the first hash lookup module of an ingest job and
+ * shared by all modules until the enabled sets change. Thread safe once
+ * opened.
+ */
+final class HashSetLookupIndex {
+
+    private static final Logger logger = Logger.getLogger(HashSetLookupIndex.class.getName());
+    // one bit per set in the result of a lookup
+    private static final int MAX_INDEXED_SETS = Long.SIZE;
+    // MD5 key (two longs)
+    private static final int RECORD_SIZE = 2 * Long.BYTES;
+    // magic, version, number of records, number of Bloom filter words
+    private static final int HEADER_SIZE = 4 * Long.BYTES;
+    private static final long MAGIC = 0x4155544d44354c4bL; // "AUTMD5LK" NON-NLS
+    private static final long VERSION = 1;
+    // mapped regions are limited to 2GB, a multiple of 8 so that no long spans two
+    private static final int REGION_SIZE = 1 << 30;
+    private static final int BLOOM_BITS_PER_HASH = 10;
+    private static final int BLOOM_NUM_PROBES = 7;
+    private static final int MD5_HEX_LENGTH = 32;
+    private static final String SQLITE_HEADER = "SQLite format 3"; //NON-NLS
+    private static final String LOOKUP_FILE_EXTENSION = ".md5lookup"; //NON-NLS
+    private static final String LOOKUP_FILE_DIR = "HashSetLookup"; //NON-NLS
+
+    private static HashSetLookupIndex currentIndex = null; //guarded by HashSetLookupIndex.class
+
+    private final List<HashDb> hashSets;
+    private final Map<HashDb, IndexedSet> indexedSets = new IdentityHashMap<>();
+
+    /**
+     * Gets an index of the given hash sets, reusing the current one if it was
+     * opened for the same sets and they did not change since.
+     *
+     * @param hashSets the enabled hash sets
+     *
+     * @return the index, or null if no set could be indexed
+     */
+    static synchronized HashSetLookupIndex getIndex(List<HashDb> hashSets) {
+        if (currentIndex != null && currentIndex.isCurrent(hashSets)) {
+            return currentIndex;
+        }
+        currentIndex = create(hashSets);
+        return currentIndex;
+    }
+
+    /**
+     * Opens an index of the given hash sets that is not shared, for one-off
+     * lookups. The lookup files are shared with the other indexes.
+     *
+     * @param hashSets the hash sets
+     *
+     * @return the index, or null if no set could be indexed
+     */
+    static HashSetLookupIndex create(List<HashDb> hashSets) {
+        HashSetLookupIndex index = new HashSetLookupIndex(hashSets);
+        return index.indexedSets.isEmpty() ? null : index;
+    }
+
+    private HashSetLookupIndex(List<HashDb> hashSets) {
+        this.hashSets = new ArrayList<>(hashSets);
+        long start = System.currentTimeMillis();
+        long numHashes = 0;
+        for (HashDb hashDb : hashSets) {
+            if (indexedSets.size() == MAX_INDEXED_SETS) {
+                logger.log(Level.INFO, "More than {0} hash sets enabled, {1} is not indexed", new Object[]{MAX_INDEXED_SETS, hashDb.getHashSetName()}); //NON-NLS
+                continue;
+            }
+            try {
+                IndexedSet indexedSet = new IndexedSet(hashDb, 1L << indexedSets.size());
+                indexedSets.put(hashDb, indexedSet);
+                numHashes += indexedSet.lookupFile.numRecords;
+            } catch (IOException | SQLException | TskCoreException ex) {
+                logger.log(Level.WARNING, "Could not index hash set " + hashDb.getHashSetName() + ", looking up hashes in it directly", ex); //NON-NLS
+            }
+        }
+        logger.log(Level.INFO, "Opened hash set lookup index of {0} hashes from {1} of {2} hash sets in {3} ms", //NON-NLS
+                new Object[]{numHashes, indexedSets.size(), hashSets.size(), System.currentTimeMillis() - start});
+    }
+
+    /**
+     * Looks up an MD5 in all the indexed sets
+     *
+     * @param md5Hash the MD5, in hex
+     *
+     * @return the sets that have the hash, to pass to mayContain() and
+     *         contains()
+     */
+    long lookup(String md5Hash) {
+        if (md5Hash == null || md5Hash.length() != MD5_HEX_LENGTH) {
+            return 0;
+        }
+        final long high;
+        final long low;
+        try {
+            high = parseHex(md5Hash, 0);
+            low = parseHex(md5Hash, MD5_HEX_LENGTH / 2);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+        long hits = 0;
+        for (IndexedSet indexedSet : indexedSets.values()) {
+            if (indexedSet.lookupFile.contains(high, low)) {
+                hits |= indexedSet.bit;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Tells whether a set may have a hash, given the result of lookup() for the
+     * hash. A set that is not covered by the index may have any hash.
+     *
+     * @param hashDb the set
+     * @param hits   the sets that have the hash, from lookup()
+     *
+     * @return false if the set does not have the hash, true if it does or if
+     *         it has to be looked up in the set itself
+     */
+    boolean mayContain(HashDb hashDb, long hits) {
+        IndexedSet indexedSet = indexedSets.get(hashDb);
+        return indexedSet == null || indexedSet.isChanged() || (hits & indexedSet.bit) != 0;
+    }
+
+    /**
+     * Tells whether a set has a hash, given the result of lookup() for the
+     * hash.
+     *
+     * @param hashDb the set
+     * @param hits   the sets that have the hash, from lookup()
+     *
+     * @return true if the set has the hash, false if it does not or if it has
+     *         to be looked up in the set itself
+     */
+    boolean contains(HashDb hashDb, long hits) {
+        IndexedSet indexedSet = indexedSets.get(hashDb);
+        return indexedSet != null && !indexedSet.isChanged() && (hits & indexedSet.bit) != 0;
+    }
+
+    private boolean isCurrent(List<HashDb> enabledHashSets) {
+        if (enabledHashSets.size() != hashSets.size()) {
+            return false;
+        }
+        for (HashDb hashDb : enabledHashSets) {
+            // the sets are reopened as new objects when the hash lookup settings change
+            boolean found = false;
+            for (HashDb indexed : hashSets) {
+                if (indexed == hashDb) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+            IndexedSet indexedSet = indexedSets.get(hashDb);
+            if (indexedSet != null && (indexedSet.isChanged() || indexedSet.isFileChanged())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static SortedHashReader openReader(IndexedSet indexedSet) throws IOException, SQLException {
+        File indexFile = indexedSet.indexFile;
+        byte[] header = new byte[SQLITE_HEADER.length()];
+        int read;
+        try (InputStream in = new FileInputStream(indexFile)) {
+            read = in.read(header);
+        }
+        if (read == header.length && SQLITE_HEADER.equals(new String(header, StandardCharsets.US_ASCII))) {
+            return new SqliteHashReader(indexedSet);
+        }
+        return new IdxFileHashReader(indexedSet);
+    }
+
+    /**
+     * MD5s are uniformly distributed already, the probes are derived from the
+     * two halves of the hash (double hashing)
+     */
+    private static long bloomBit(long high, long low, int probe, long bloomBits) {
+        return Long.remainderUnsigned(low + probe * high, bloomBits);
+    }
+
+    /**
+     * Compares MD5s as unsigned 128-bit numbers, the order of the hex strings
+     * and of the blobs in the hash set indexes
+     */
+    private static int compare(long high1, long low1, long high2, long low2) {
+        int cmp = Long.compareUnsigned(high1, high2);
+        return cmp != 0 ? cmp : Long.compareUnsigned(low1, low2);
+    }
+
+    private static long parseHex(CharSequence hex, int start) {
+        long value = 0;
+        for (int i = start; i < start + MD5_HEX_LENGTH / 2; ++i) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw new NumberFormatException(hex.toString());
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static long getLong(byte[] bytes, int start) {
+        long value = 0;
+        for (int i = start; i < start + Long.BYTES; ++i) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * A set covered by the index
+     */
+    private static class IndexedSet {
+
+        private final HashDb hashDb;
+        private final long bit;
+        private final File indexFile;
+        private final long indexFileLength;
+        private final long indexFileModified;
+        private final long updateCount;
+        private final LookupFile lookupFile;
+
+        private IndexedSet(HashDb hashDb, long bit) throws TskCoreException, IOException, SQLException {
+            this.hashDb = hashDb;
+            this.bit = bit;
+            this.updateCount = hashDb.getUpdateCount();
+            this.indexFile = new File(hashDb.getIndexPath());
+            this.indexFileLength = indexFile.length();
+            this.indexFileModified = indexFile.lastModified();
+            this.lookupFile = LookupFile.openOrBuild(this);
+        }
+
+        /**
+         * @return true if hashes were added to the set since it was indexed
+         */
+        private boolean isChanged() {
+            return hashDb.getUpdateCount() != updateCount;
+        }
+
+        /**
+         * @return true if the set was re-indexed or changed on disk since it
+         *         was indexed
+         */
+        private boolean isFileChanged() {
+            return indexFile.length() != indexFileLength || indexFile.lastModified() != indexFileModified;
+        }
+    }
+
+    /**
+     * The mapped lookup file of a set: a header, the sorted MD5s, then the
+     * Bloom filter
+     */
+    private static final class LookupFile {
+
+        private final MappedByteBuffer[] regions;
+        private final long numRecords;
+        private final long bloomOffset;
+        private final long bloomBits;
+
+        private LookupFile(File file, long numRecords, long numBloomWords) throws IOException {
+            this.numRecords = numRecords;
+            this.bloomOffset = HEADER_SIZE + numRecords * RECORD_SIZE;
+            this.bloomBits = numBloomWords * Long.SIZE;
+            final long length = bloomOffset + numBloomWords * Long.BYTES;
+            regions = new MappedByteBuffer[(int) ((length + REGION_SIZE - 1) / REGION_SIZE)];
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); //NON-NLS
+                    FileChannel channel = raf.getChannel()) {
+                for (int i = 0; i < regions.length; ++i) {
+                    final long position = (long) i * REGION_SIZE;
+                    regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, length - position));
+                }
+            }
+        }
+
+        private boolean contains(long high, long low) {
+            for (int probe = 0; probe < BLOOM_NUM_PROBES; ++probe) {
+                final long bit = bloomBit(high, low, probe, bloomBits);
+                if ((getLong(bloomOffset + (bit >>> 6) * Long.BYTES) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            long lo = 0;
+            long hi = numRecords - 1;
+            while (lo <= hi) {
+                final long mid = (lo + hi) >>> 1;
+                final long offset = HEADER_SIZE + mid * RECORD_SIZE;
+                int cmp = compare(getLong(offset), getLong(offset + Long.BYTES), high, low);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private long getLong(long offset) {
+            return regions[(int) (offset / REGION_SIZE)].getLong((int) (offset % REGION_SIZE));
+        }
+
+        /**
+         * Maps the lookup file of a set, building it first if the set has none
+         * for its current index
+         */
+        private static LookupFile openOrBuild(IndexedSet indexedSet) throws IOException, SQLException {
+            final File indexFile = indexedSet.indexFile;
+            File dir = indexFile.getAbsoluteFile().getParentFile();
+            String prefix = indexFile.getName() + "."; //NON-NLS
+            if (dir == null || !Files.isWritable(dir.toPath())) {
+                dir = Paths.get(PlatformUtil.getUserConfigDirectory(), LOOKUP_FILE_DIR).toFile();
+                prefix = indexFile.getName() + "-" + Integer.toHexString(indexFile.getAbsolutePath().hashCode()) + "."; //NON-NLS
+                Files.createDirectories(dir.toPath());
+            }
+            final File file = new File(dir, prefix + Long.toHexString(indexedSet.indexFileLength) + "-"
+                    + Long.toHexString(indexedSet.indexFileModified) + LOOKUP_FILE_EXTENSION);
+
+            LookupFile lookupFile = open(file);
+            if (lookupFile != null) {
+                return lookupFile;
+            }
+            final long start = System.currentTimeMillis();
+            File tempFile = File.createTempFile(prefix, ".tmp", dir); //NON-NLS
+            try {
+                build(indexedSet, tempFile);
+                try {
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException ex) {
+                    // built at the same time for another index, or an invalid file that is in use
+                    lookupFile = open(file);
+                    if (lookupFile == null) {
+                        throw ex;
+                    }
+                    return lookupFile;
+                }
+            } finally {
+                if (tempFile.exists() && !tempFile.delete()) {
+                    logger.log(Level.WARNING, "Could not delete {0}", tempFile); //NON-NLS
+                }
+            }
+            lookupFile = open(file);
+            if (lookupFile == null) {
+                throw new IOException("Could not read the lookup file just built for hash set " + indexedSet.hashDb.getHashSetName()); //NON-NLS
+            }
+            logger.log(Level.INFO, "Built lookup file {0} of {1} hashes in {2} ms", //NON-NLS
+                    new Object[]{file, lookupFile.numRecords, System.currentTimeMillis() - start});
+            deleteOutdated(dir, prefix, file);
+            return lookupFile;
+        }
+
+        /**
+         * Maps a lookup file
+         *
+         * @return the file, or null if it does not exist or is not valid
+         */
+        private static LookupFile open(File file) throws IOException {
+            if (!file.exists()) {
+                return null;
+            }
+            final long numRecords;
+            final long numBloomWords;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), HEADER_SIZE))) {
+                if (in.readLong() != MAGIC || in.readLong() != VERSION) {
+                    return null;
+                }
+                numRecords = in.readLong();
+                numBloomWords = in.readLong();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not read hash set lookup file " + file, ex); //NON-NLS
+                return null;
+            }
+            if (numRecords < 0 || numBloomWords <= 0
+                    || file.length() != HEADER_SIZE + numRecords * RECORD_SIZE + numBloomWords * Long.BYTES) {
+                return null;
+            }
+            return new LookupFile(file, numRecords, numBloomWords);
+        }
+
+        /**
+         * Writes the lookup file of a set: the hashes of its index, without
+         * duplicates, then a Bloom filter sized for them
+         */
+        private static void build(IndexedSet indexedSet, File file) throws IOException, SQLException {
+            long numRecords = 0;
+            SortedHashReader reader = openReader(indexedSet);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+                // header is written last, when the sizes are known
+                for (int i = 0; i < HEADER_SIZE / Long.BYTES; ++i) {
+                    out.writeLong(0);
+                }
+                boolean first = true;
+                long previousHigh = 0;
+                long previousLow = 0;
+                while (reader.next()) {
+                    if (first || reader.high != previousHigh || reader.low != previousLow) {
+                        out.writeLong(reader.high);
+                        out.writeLong(reader.low);
+                        ++numRecords;
+                    }
+                    first = false;
+                    previousHigh = reader.high;
+                    previousLow = reader.low;
+                }
+            } finally {
+                reader.close();
+            }
+            if (reader.outOfOrder) {
+                throw new IOException("Hashes of hash set " + indexedSet.hashDb.getHashSetName() + " are not sorted"); //NON-NLS
+            }
+
+            final long numBloomWords = Math.max(1, Math.min((long) Integer.MAX_VALUE - 8, (numRecords * BLOOM_BITS_PER_HASH + Long.SIZE - 1) / Long.SIZE));
+            final long bloomBits = numBloomWords * Long.SIZE;
+            long[] bloomFilter = new long[(int) numBloomWords];
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                in.skipBytes(HEADER_SIZE);
+                for (long i = 0; i < numRecords; ++i) {
+                    final long high = in.readLong();
+                    final long low = in.readLong();
+                    for (int probe = 0; probe < BLOOM_NUM_PROBES; ++probe) {
+                        final long bit = bloomBit(high, low, probe, bloomBits);
+                        bloomFilter[(int) (bit >>> 6)] |= 1L << bit;
+                    }
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16))) {
+                for (long word : bloomFilter) {
+                    out.writeLong(word);
+                }
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) { //NON-NLS
+                raf.writeLong(MAGIC);
+                raf.writeLong(VERSION);
+                raf.writeLong(numRecords);
+                raf.writeLong(numBloomWords);
+            }
+        }
+
+        /**
+         * Deletes the lookup files of older versions of a set. Files still
+         * mapped by a running job cannot be deleted on some platforms, they
+         * are deleted by a later rebuild.
+         */
+        private static void deleteOutdated(File dir, String prefix, File current) {
+            File[] files = dir.listFiles((File d, String name) -> name.startsWith(prefix) && name.endsWith(LOOKUP_FILE_EXTENSION)
+                    && name.substring(prefix.length(), name.length() - LOOKUP_FILE_EXTENSION.length()).matches("[0-9a-f]+-[0-9a-f]+")); //NON-NLS
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (!file.equals(current) && !file.delete()) {
+                    logger.log(Level.INFO, "Could not delete outdated hash set lookup file {0}", file); //NON-NLS
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the MD5s of a set in ascending order. Hashes out of order are
+     * skipped and flagged.
+     */
+    private static abstract class SortedHashReader {
+
+        final IndexedSet indexedSet;
+        long high;
+        long low;
+        boolean outOfOrder = false;
+        private boolean first = true;
+
+        SortedHashReader(IndexedSet indexedSet) {
+            this.indexedSet = indexedSet;
+        }
+
+        /**
+         * Moves to the next hash
+         *
+         * @return false if there are no more hashes
+         *
+         * @throws IOException
+         */
+        final boolean next() throws IOException {
+            final long previousHigh = high;
+            final long previousLow = low;
+            while (readNext()) {
+                if (first || compare(previousHigh, previousLow, high, low) <= 0) {
+                    first = false;
+                    return true;
+                }
+                outOfOrder = true;
+            }
+            return false;
+        }
+
+        /**
+         * Reads the next hash into high and low
+         *
+         * @return false if there are no more hashes
+         *
+         * @throws IOException
+         */
+        abstract boolean readNext() throws IOException;
+
+        abstract void close();
+    }
+
+    /**
+     * Reads the index file of a text hash database, sorted lines of
+     * "hash|offset" after header lines
+     */
+    private static class IdxFileHashReader extends SortedHashReader {
+
+        private final BufferedReader reader;
+
+        IdxFileHashReader(IndexedSet indexedSet) throws IOException {
+            super(indexedSet);
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexedSet.indexFile), StandardCharsets.US_ASCII), 1 << 16);
+        }
+
+        @Override
+        boolean readNext() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // header lines have longer keys, and indexes of other hash types too
+                if (line.length() > MD5_HEX_LENGTH && line.charAt(MD5_HEX_LENGTH) == '|') {
+                    try {
+                        high = parseHex(line, 0);
+                        low = parseHex(line, MD5_HEX_LENGTH / 2);
+                        return true;
+                    } catch (NumberFormatException ex) {
+                        // not a hash
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        void close() {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Error closing index of hash set " + indexedSet.hashDb.getHashSetName(), ex); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * Reads the hashes table of a SQLite hash database, in the order of its
+     * unique MD5 index
+     */
+    private static class SqliteHashReader extends SortedHashReader {
+
+        private final Connection connection;
+        private final Statement statement;
+        private final ResultSet resultSet;
+
+        SqliteHashReader(IndexedSet indexedSet) throws SQLException {
+            super(indexedSet);
+            connection = DriverManager.getConnection("jdbc:sqlite:" + indexedSet.indexFile.getAbsolutePath()); //NON-NLS
+            try {
+                statement = connection.createStatement();
+                resultSet = statement.executeQuery("SELECT md5 FROM hashes WHERE md5 IS NOT NULL ORDER BY md5"); //NON-NLS
+            } catch (SQLException ex) {
+                connection.close();
+                throw ex;
+            }
+        }
+
+        @Override
+        boolean readNext() throws IOException {
+            try {
+                while (resultSet.next()) {
+                    byte[] md5 = resultSet.getBytes(1);
+                    if (md5 != null && md5.length == 2 * Long.BYTES) {
+                        high = getLong(md5, 0);
+                        low = getLong(md5, Long.BYTES);
+                        return true;
+                    } else if (md5 != null && md5.length == MD5_HEX_LENGTH) {
+                        String hex = new String(md5, StandardCharsets.US_ASCII);
+                        try {
+                            high = parseHex(hex, 0);
+                            low = parseHex(hex, MD5_HEX_LENGTH / 2);
+                            return true;
+                        } catch (NumberFormatException ex) {
+                            // not a hash
+                        }
+                    }
+                }
+                return false;
+            } catch (SQLException ex) {
+                throw new IOException("Error reading hashes of hash set " + indexedSet.hashDb.getHashSetName(), ex); //NON-NLS
+            }
+        }
+
+        @Override
+        void close() {
+            try {
+                connection.close();
+            } catch (SQLException ex) {
+                logger.log(Level.WARNING, "Error closing hash set " + indexedSet.hashDb.getHashSetName(), ex); //NON-NLS
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.hashdatabase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionRegistration;
+import org.openide.util.HelpCtx;
+import org.openide.util.NbBundle.Messages;
+import org.openide.util.actions.CallableSystemAction;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
+import org.sleuthkit.autopsy.modules.hashdatabase.HashDbManager.HashDb;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Action in the tools menu to check the already hashed files of the current
+ * case against a hash set, see HashSetRescanner.
+ */
+@ActionRegistration(displayName = "#CTL_HashSetRescanAction", lazy = false)
+@ActionReference(path = "Menu/Tools", position = 202)
+@ActionID(id = "org.sleuthkit.autopsy.modules.hashdatabase.HashSetRescanAction", category = "Tools")
+@Messages({"CTL_HashSetRescanAction=Check Case Files Against Hash Set...",
+    "HashSetRescanAction.noHashSets.message=There are no indexed hash sets to check the files against.",
+    "HashSetRescanAction.noHashedFiles.message=No files currently have an MD5 hash calculated, run the hash lookup module first.",
+    "HashSetRescanAction.chooseHashSet.message=Check the hashed files of the case against:",
+    "# {0} - hash set name", "HashSetRescanAction.progress.message=Checking files against {0}",
+    "# {0} - hash set name", "HashSetRescanAction.done.title=Checked files against {0}",
+    "# {0} - files checked", "# {1} - hits", "HashSetRescanAction.done.message={0} files checked, {1} found in the hash set.",
+    "# {0} - hash set name", "HashSetRescanAction.error.title=Error checking files against {0}",
+    "HashSetRescanAction.error.message=See the log for details."})
+public final class HashSetRescanAction extends CallableSystemAction {
+
+    private static final Logger logger = Logger.getLogger(HashSetRescanAction.class.getName());
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void performAction() {
+        List<HashDb> hashSets = new ArrayList<>();
+        for (HashDb hashDb : HashDbManager.getInstance().getAllHashSets()) {
+            try {
+                if (hashDb.hasIndex()) {
+                    hashSets.add(hashDb);
+                }
+            } catch (TskCoreException ex) {
+                logger.log(Level.WARNING, "Error getting index status for " + hashDb.getHashSetName() + " hash database", ex); //NON-NLS
+            }
+        }
+        if (hashSets.isEmpty()) {
+            JOptionPane.showMessageDialog(null, Bundle.HashSetRescanAction_noHashSets_message(), getName(), JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        if (HashDbSearcher.countFilesMd5Hashed() == 0) {
+            JOptionPane.showMessageDialog(null, Bundle.HashSetRescanAction_noHashedFiles_message(), getName(), JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        String[] names = new String[hashSets.size()];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = hashSets.get(i).getHashSetName();
+        }
+        Object choice = JOptionPane.showInputDialog(null, Bundle.HashSetRescanAction_chooseHashSet_message(), getName(),
+                JOptionPane.QUESTION_MESSAGE, null, names, names[0]);
+        if (choice == null) {
+            return;
+        }
+        new RescanWorker(hashSets.get(Arrays.asList(names).indexOf(choice))).execute();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return Case.isCaseOpen();
+    }
+
+    @Override
+    public String getName() {
+        return Bundle.CTL_HashSetRescanAction();
+    }
+
+    @Override
+    public HelpCtx getHelpCtx() {
+        return HelpCtx.DEFAULT_HELP;
+    }
+
+    @Override
+    public boolean asynchronous() {
+        return false; // run on edt
+    }
+
+    /**
+     * Runs a re-scan in the background with a cancellable progress bar
+     */
+    private static class RescanWorker extends SwingWorker<Void, Void> {
+
+        private final HashDb hashDb;
+        private final HashSetRescanner rescanner;
+        private final ProgressHandle progress;
+
+        RescanWorker(HashDb hashDb) {
+            this.hashDb = hashDb;
+            this.rescanner = new HashSetRescanner(hashDb);
+            this.progress = ProgressHandle.createHandle(Bundle.HashSetRescanAction_progress_message(hashDb.getHashSetName()), () -> cancel(true));
+        }
+
+        @Override
+        protected Void doInBackground() throws Exception {
+            progress.start();
+            progress.switchToDeterminate(Math.max(1, HashDbSearcher.countFilesMd5Hashed()));
+            rescanner.rescan(progress, this::isCancelled);
+            return null;
+        }
+
+        @Override
+        protected void done() {
+            progress.finish();
+            try {
+                get();
+                MessageNotifyUtil.Notify.info(Bundle.HashSetRescanAction_done_title(hashDb.getHashSetName()),
+                        Bundle.HashSetRescanAction_done_message(rescanner.getFilesChecked(), rescanner.getHits()));
+            } catch (CancellationException ex) {
+                logger.log(Level.INFO, "Checking files against hash set {0} cancelled", hashDb.getHashSetName()); //NON-NLS
+            } catch (InterruptedException | ExecutionException ex) {
+                logger.log(Level.SEVERE, "Error checking files against hash set " + hashDb.getHashSetName(), ex); //NON-NLS
+                MessageNotifyUtil.Notify.error(Bundle.HashSetRescanAction_error_title(hashDb.getHashSetName()),
+                        Bundle.HashSetRescanAction_error_message());
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.hashdatabase;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.util.NbBundle;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.services.Blackboard;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.autopsy.ingest.ModuleDataEvent;
+import org.sleuthkit.autopsy.modules.hashdatabase.HashDbManager.HashDb;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.BlackboardArtifact.ARTIFACT_TYPE;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.BlackboardAttribute.ATTRIBUTE_TYPE;
+import org.sleuthkit.datamodel.HashHitInfo;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * Checks the files of the current case that already have an MD5 against a
+ * hash set, without ingesting them again. Used after a hash set is added in the
+ * middle of a case.
+ *
+ * The (obj_id, md5) pairs are read from the case database in batches in
+ * obj_id order, and each batch is probed against a lookup index of the set
+ * (see HashSetLookupIndex), so that only the hits go through the Sleuth Kit
+ * lookup, for their comments. Hits are posted like the hash lookup module
+ * does, a batch at a time: hits of a known bad set get a hash set hit artifact
+ * and the known bad status, hits of a known set get the known status. Files
+ * that already have a hit artifact for the set are skipped.
+ */
+class HashSetRescanner {
+
+    private static final Logger logger = Logger.getLogger(HashSetRescanner.class.getName());
+    private static final int READ_BATCH_SIZE = 100000;
+    private static final int POST_BATCH_SIZE = 1000;
+    private static final int MAX_COMMENT_SIZE = 500;
+
+    private final HashDb hashDb;
+    private final SleuthkitCase skCase;
+    private final String moduleName = NbBundle.getMessage(HashDbIngestModule.class, "HashDbIngestModule.moduleName");
+    private long filesChecked = 0;
+    private long hits = 0;
+
+    /**
+     * @param hashDb the hash set to check the files of the current case
+     *               against
+     */
+    HashSetRescanner(HashDb hashDb) {
+        this.hashDb = hashDb;
+        this.skCase = Case.getCurrentCase().getSleuthkitCase();
+    }
+
+    /**
+     * Checks the files of the case against the hash set
+     *
+     * @param progress progress to report the number of files checked to, in
+     *                 determinate mode
+     * @param cancelled tells whether the re-scan was cancelled, checked
+     *                  between batches
+     *
+     * @throws TskCoreException
+     */
+    void rescan(ProgressHandle progress, Cancellable cancelled) throws TskCoreException {
+        final long start = System.currentTimeMillis();
+        final boolean knownBad = hashDb.getKnownFilesType() == HashDb.KnownFilesType.KNOWN_BAD;
+        final Set<Long> filesWithHits = knownBad ? getFilesWithHits() : Collections.<Long>emptySet();
+
+        final HashSetLookupIndex lookupIndex = HashSetLookupIndex.create(Collections.singletonList(hashDb));
+
+        Map<Long, String> pending = new LinkedHashMap<>();
+        long lastObjId = -1;
+        while (!cancelled.isCancelled()) {
+            Map<Long, String> batch = readBatch(lastObjId);
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (Map.Entry<Long, String> entry : batch.entrySet()) {
+                lastObjId = entry.getKey();
+                if (filesWithHits.contains(entry.getKey())) {
+                    continue;
+                }
+                final String md5Hash = entry.getValue();
+                final boolean mayBeHit;
+                if (lookupIndex != null) {
+                    mayBeHit = lookupIndex.mayContain(hashDb, lookupIndex.lookup(md5Hash));
+                } else {
+                    mayBeHit = true;
+                }
+                if (mayBeHit) {
+                    pending.put(entry.getKey(), md5Hash);
+                    if (pending.size() >= POST_BATCH_SIZE) {
+                        postHits(pending, knownBad);
+                        pending.clear();
+                    }
+                }
+            }
+            filesChecked += batch.size();
+            progress.progress((int) Math.min(Integer.MAX_VALUE, filesChecked));
+        }
+        if (!pending.isEmpty() && !cancelled.isCancelled()) {
+            postHits(pending, knownBad);
+        }
+        logger.log(Level.INFO, "Checked {0} files against hash set {1} in {2} ms, {3} hits", //NON-NLS
+                new Object[]{filesChecked, hashDb.getHashSetName(), System.currentTimeMillis() - start, hits});
+    }
+
+    long getFilesChecked() {
+        return filesChecked;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    /**
+     * Reads the next batch of hashed files
+     *
+     * @param lastObjId the last object id of the previous batch
+     *
+     * @return the MD5s of the files, by object id in ascending order
+     */
+    private Map<Long, String> readBatch(long lastObjId) throws TskCoreException {
+        final String query = "SELECT obj_id, md5 FROM tsk_files WHERE md5 IS NOT NULL AND obj_id > " + lastObjId //NON-NLS
+                + " ORDER BY obj_id LIMIT " + READ_BATCH_SIZE; //NON-NLS
+        Map<Long, String> batch = new LinkedHashMap<>();
+        try (SleuthkitCase.CaseDbQuery dbQuery = skCase.executeQuery(query)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            while (resultSet.next()) {
+                batch.put(resultSet.getLong("obj_id"), resultSet.getString("md5")); //NON-NLS
+            }
+        } catch (SQLException ex) {
+            throw new TskCoreException("Error reading hashes of case files", ex); //NON-NLS
+        }
+        return batch;
+    }
+
+    /**
+     * Gets the files that already have a hit artifact for the hash set
+     */
+    private Set<Long> getFilesWithHits() throws TskCoreException {
+        final String query = "SELECT art.obj_id AS obj_id FROM blackboard_artifacts AS art, blackboard_attributes AS att " //NON-NLS
+                + "WHERE att.artifact_id = art.artifact_id " //NON-NLS
+                + "AND art.artifact_type_id = " + ARTIFACT_TYPE.TSK_HASHSET_HIT.getTypeID() + " " //NON-NLS
+                + "AND att.attribute_type_id = " + ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID() + " " //NON-NLS
+                + "AND att.value_text = '" + hashDb.getHashSetName().replace("'", "''") + "'"; //NON-NLS
+        Set<Long> files = new HashSet<>();
+        try (SleuthkitCase.CaseDbQuery dbQuery = skCase.executeQuery(query)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            while (resultSet.next()) {
+                files.add(resultSet.getLong("obj_id")); //NON-NLS
+            }
+        } catch (SQLException ex) {
+            throw new TskCoreException("Error reading hash set hits of " + hashDb.getHashSetName(), ex); //NON-NLS
+        }
+        return files;
+    }
+
+    /**
+     * Confirms the possible hits of a batch in the hash set and posts them
+     *
+     * @param candidates the MD5s of the files that may be in the set, by object
+     *                   id, at most POST_BATCH_SIZE of them so that the query
+     *                   for the files stays small
+     * @param knownBad   whether the set is a known bad set
+     */
+    private void postHits(Map<Long, String> candidates, boolean knownBad) throws TskCoreException {
+        Map<Long, HashHitInfo> confirmed = new LinkedHashMap<>();
+        for (Map.Entry<Long, String> entry : candidates.entrySet()) {
+            HashHitInfo hashInfo = hashDb.lookupMD5(entry.getValue());
+            if (hashInfo != null) {
+                confirmed.put(entry.getKey(), hashInfo);
+            }
+        }
+        if (confirmed.isEmpty()) {
+            return;
+        }
+
+        StringBuilder objIds = new StringBuilder();
+        for (Long objId : confirmed.keySet()) {
+            if (objIds.length() > 0) {
+                objIds.append(',');
+            }
+            objIds.append(objId);
+        }
+        List<AbstractFile> files = skCase.findAllFilesWhere("obj_id IN (" + objIds + ")"); //NON-NLS
+
+        Blackboard blackboard = Case.getCurrentCase().getServices().getBlackboard();
+        List<BlackboardArtifact> artifacts = new ArrayList<>();
+        for (AbstractFile file : files) {
+            HashHitInfo hashInfo = confirmed.get(file.getId());
+            if (hashInfo == null) {
+                continue;
+            }
+            ++hits;
+            if (!knownBad) {
+                // any hit is enough to classify a file as known, unless it is known bad
+                if (file.getKnown() != TskData.FileKnown.BAD) {
+                    skCase.setKnown(file, TskData.FileKnown.KNOWN);
+                }
+                continue;
+            }
+            skCase.setKnown(file, TskData.FileKnown.BAD);
+            BlackboardArtifact artifact = file.newArtifact(ARTIFACT_TYPE.TSK_HASHSET_HIT);
+            List<BlackboardAttribute> attributes = new ArrayList<>();
+            attributes.add(new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_SET_NAME, moduleName, hashDb.getHashSetName()));
+            attributes.add(new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_HASH_MD5, moduleName, candidates.get(file.getId())));
+            attributes.add(new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_COMMENT, moduleName, getComment(hashInfo)));
+            artifact.addAttributes(attributes);
+            artifacts.add(artifact);
+            try {
+                // index the artifact for keyword search
+                blackboard.indexArtifact(artifact);
+            } catch (Blackboard.BlackboardException ex) {
+                logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex); //NON-NLS
+            }
+        }
+        if (!artifacts.isEmpty()) {
+            IngestServices.getInstance().fireModuleDataEvent(new ModuleDataEvent(moduleName, ARTIFACT_TYPE.TSK_HASHSET_HIT, artifacts));
+        }
+    }
+
+    private static String getComment(HashHitInfo hashInfo) {
+        String comment = "";
+        int i = 0;
+        for (String c : hashInfo.getComments()) {
+            if (++i > 1) {
+                comment += " ";
+            }
+            comment += c;
+            if (comment.length() > MAX_COMMENT_SIZE) {
+                comment = comment.substring(0, MAX_COMMENT_SIZE) + "...";
+                break;
+            }
+        }
+        return comment;
+    }
+}
@@ -52,7 +52,7 @@ final class FilesIdentifierIngestModule implements FileIngestModule {
     private static final Object sharedResourcesLock = new Object();
     private static final Logger logger = Logger.getLogger(FilesIdentifierIngestModule.class.getName());
     private static final IngestModuleReferenceCounter refCounter = new IngestModuleReferenceCounter();
-    private static final Map<Long, List<FilesSet>> interestingFileSetsByJob = new ConcurrentHashMap<>();
+    private static final Map<Long, FilesSetMatcher> interestingFileSetsByJob = new ConcurrentHashMap<>();
     private final FilesIdentifierIngestJobSettings settings;
     private IngestJobContext context;
     private Blackboard blackboard;
@@ -80,6 +80,8 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
                 // for the job. Note that getting this snapshot atomically via a 
                 // synchronized definitions manager method eliminates the need 
                 // to disable the interesting files set definition UI during ingest.
+                // The rules of the sets are compiled once for all the
+                // instances.
                 List<FilesSet> filesSets = new ArrayList<>();
                 try {
                     for (FilesSet set : InterestingItemDefsManager.getInstance().getInterestingFilesSets().values()) {
@@ -90,7 +92,7 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
                 } catch (InterestingItemDefsManager.InterestingItemDefsManagerException ex) {
                     throw new IngestModuleException(Bundle.FilesIdentifierIngestModule_getFilesError(), ex);
                 }
-                FilesIdentifierIngestModule.interestingFileSetsByJob.put(context.getJobId(), filesSets);
+                FilesIdentifierIngestModule.interestingFileSetsByJob.put(context.getJobId(), new FilesSetMatcher(filesSets));
             }
         }
     }
@@ -104,42 +106,41 @@ public ProcessResult process(AbstractFile file) {
         blackboard = Case.getCurrentCase().getServices().getBlackboard();
 
         // See if the file belongs to any defined interesting files set.
-        List<FilesSet> filesSets = FilesIdentifierIngestModule.interestingFileSetsByJob.get(this.context.getJobId());
-        for (FilesSet filesSet : filesSets) {
-            String ruleSatisfied = filesSet.fileIsMemberOf(file);
-            if (ruleSatisfied != null) {
-                try {
-                    // Post an interesting files set hit artifact to the 
-                    // blackboard.
-                    String moduleName = InterestingItemsIngestModuleFactory.getModuleName();
-                    BlackboardArtifact artifact = file.newArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT);
+        FilesSetMatcher matcher = FilesIdentifierIngestModule.interestingFileSetsByJob.get(this.context.getJobId());
+        for (Map.Entry<FilesSet, String> membership : matcher.match(file).entrySet()) {
+            FilesSet filesSet = membership.getKey();
+            String ruleSatisfied = membership.getValue();
+            try {
+                // Post an interesting files set hit artifact to the 
+                // blackboard.
+                String moduleName = InterestingItemsIngestModuleFactory.getModuleName();
+                BlackboardArtifact artifact = file.newArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT);
 
-                    // Add a set name attribute to the artifact. This adds a 
-                    // fair amount of redundant data to the attributes table 
-                    // (i.e., rows that differ only in artifact id), but doing
-                    // otherwise would requires reworking the interesting files
-                    // set hit artifact.
-                    BlackboardAttribute setNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME, moduleName, filesSet.getName());
-                    artifact.addAttribute(setNameAttribute);
+                // Add a set name attribute to the artifact. This adds a 
+                // fair amount of redundant data to the attributes table 
+                // (i.e., rows that differ only in artifact id), but doing
+                // otherwise would requires reworking the interesting files
+                // set hit artifact.
+                BlackboardAttribute setNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME, moduleName, filesSet.getName());
+                artifact.addAttribute(setNameAttribute);
 
-                    // Add a category attribute to the artifact to record the 
-                    // interesting files set membership rule that was satisfied.
-                    BlackboardAttribute ruleNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_CATEGORY, moduleName, ruleSatisfied);
-                    artifact.addAttribute(ruleNameAttribute);
+                // Add a category attribute to the artifact to record the 
+                // interesting files set membership rule that was satisfied.
+                BlackboardAttribute ruleNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_CATEGORY, moduleName, ruleSatisfied);
+                artifact.addAttribute(ruleNameAttribute);
 
-                    try {
-                        // index the artifact for keyword search
-                        blackboard.indexArtifact(artifact);
-                    } catch (Blackboard.BlackboardException ex) {
-                        logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex); //NON-NLS
-                        MessageNotifyUtil.Notify.error(Bundle.FilesIdentifierIngestModule_indexError_message(), artifact.getDisplayName());
-                    }
+                try {
+                    // index the artifact for keyword search
+                    blackboard.indexArtifact(artifact);
+                } catch (Blackboard.BlackboardException ex) {
+                    logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex); //NON-NLS
+                    MessageNotifyUtil.Notify.error(Bundle.FilesIdentifierIngestModule_indexError_message(), artifact.getDisplayName());
+                }
 
-                    IngestServices.getInstance().fireModuleDataEvent(new ModuleDataEvent(moduleName, BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT, Collections.singletonList(artifact)));
+                IngestServices.getInstance().fireModuleDataEvent(new ModuleDataEvent(moduleName, BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT, Collections.singletonList(artifact)));
 
-                } catch (TskCoreException ex) {
-                    FilesIdentifierIngestModule.logger.log(Level.SEVERE, "Error posting to the blackboard", ex); //NOI18N NON-NLS
-                }
+            } catch (TskCoreException ex) {
+                FilesIdentifierIngestModule.logger.log(Level.SEVERE, "Error posting to the blackboard", ex); //NOI18N NON-NLS
             }
         }
         return ProcessResult.OK;
@@ -0,0 +1,418 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.interestingitems;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.ExtensionCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.FileNameCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.FullNameCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.ParentPathCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.TextCondition;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * The rules of a list of interesting files sets compiled for testing a file
+ * against all of them at once. The name and path conditions of the rules, the
+ * expensive ones, are indexed: exact file names and extensions are looked up
+ * in hash maps, the path substrings are matched in a single pass over the path
+ * by an Aho-Corasick automaton, and the regular expressions of the name
+ * conditions, and of the path conditions, are first tried as one alternation
+ * so that they are only tried one by one when one of them matches. The other
+ * conditions of a rule are only tested when its name and path conditions are
+ * satisfied.
+ *
+ * Built by the interesting files identifier ingest module for each ingest job.
+ * <p>
+ * Thread-safe (immutable).
+ */
+final class FilesSetMatcher {
+
+    private final List<FilesSet> filesSets;
+    private final List<Rule> rules = new ArrayList<>(); // grouped by set
+    private final List<Integer> ruleSetIndexes = new ArrayList<>();
+    private final Map<String, BitSet> rulesByName = new HashMap<>();
+    private final Map<String, BitSet> rulesByExtension = new HashMap<>();
+    private final BitSet rulesWithoutNameCondition = new BitSet();
+    private final BitSet rulesWithoutPathCondition = new BitSet();
+    private final RegexGroup nameRegexes;
+    private final RegexGroup pathRegexes;
+    private final SubstringAutomaton pathSubstrings;
+
+    /**
+     * Compiles the rules of interesting files sets
+     *
+     * @param filesSets the sets
+     */
+    FilesSetMatcher(List<FilesSet> filesSets) {
+        this.filesSets = Collections.unmodifiableList(new ArrayList<>(filesSets));
+        List<Integer> nameRegexRuleIds = new ArrayList<>();
+        List<TextCondition> nameRegexConditions = new ArrayList<>();
+        List<Integer> pathRegexRuleIds = new ArrayList<>();
+        List<TextCondition> pathRegexConditions = new ArrayList<>();
+        SubstringAutomaton.Builder pathSubstringsBuilder = new SubstringAutomaton.Builder();
+
+        for (int setIndex = 0; setIndex < this.filesSets.size(); ++setIndex) {
+            for (Rule rule : this.filesSets.get(setIndex).getRules().values()) {
+                final int id = rules.size();
+                rules.add(rule);
+                ruleSetIndexes.add(setIndex);
+
+                FileNameCondition nameCondition = rule.getFileNameCondition();
+                if (nameCondition == null) {
+                    rulesWithoutNameCondition.set(id);
+                } else if (nameCondition instanceof ExtensionCondition) {
+                    // extension conditions are never regular expressions
+                    addRule(rulesByExtension, foldCase(nameCondition.getTextToMatch()), id);
+                } else if (nameCondition instanceof FullNameCondition && !nameCondition.isRegex()) {
+                    addRule(rulesByName, foldCase(nameCondition.getTextToMatch()), id);
+                } else {
+                    nameRegexRuleIds.add(id);
+                    nameRegexConditions.add(nameCondition);
+                }
+
+                ParentPathCondition pathCondition = rule.getPathCondition();
+                if (pathCondition == null) {
+                    rulesWithoutPathCondition.set(id);
+                } else if (pathCondition.isRegex()) {
+                    pathRegexRuleIds.add(id);
+                    pathRegexConditions.add(pathCondition);
+                } else if (pathCondition.getTextToMatch().isEmpty()) {
+                    rulesWithoutPathCondition.set(id);
+                } else {
+                    pathSubstringsBuilder.add(pathCondition.getTextToMatch(), id);
+                }
+            }
+        }
+        nameRegexes = new RegexGroup(nameRegexRuleIds, nameRegexConditions);
+        pathRegexes = new RegexGroup(pathRegexRuleIds, pathRegexConditions);
+        pathSubstrings = pathSubstringsBuilder.build();
+    }
+
+    private static void addRule(Map<String, BitSet> rulesByKey, String key, int id) {
+        BitSet ids = rulesByKey.get(key);
+        if (ids == null) {
+            ids = new BitSet();
+            rulesByKey.put(key, ids);
+        }
+        ids.set(id);
+    }
+
+    /**
+     * Gets the interesting files sets that were compiled
+     *
+     * @return the sets
+     */
+    List<FilesSet> getFilesSets() {
+        return filesSets;
+    }
+
+    /**
+     * Determines the interesting files sets a file is a member of
+     *
+     * @param file the file to test for set membership
+     *
+     * @return the sets the file is a member of, in the order they were
+     *         compiled, mapped to the name of the first set membership rule
+     *         of the set satisfied by the file
+     */
+    Map<FilesSet, String> match(AbstractFile file) {
+        if (rules.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final String name = file.getName();
+        BitSet candidates = (BitSet) rulesWithoutNameCondition.clone();
+        BitSet ids = rulesByName.get(foldCase(name));
+        if (ids != null) {
+            candidates.or(ids);
+        }
+        ids = rulesByExtension.get(foldCase(file.getNameExtension()));
+        if (ids != null) {
+            candidates.or(ids);
+        }
+        nameRegexes.match(name, null, candidates);
+        if (candidates.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final String path = file.getParentPath() + "/";
+        BitSet pathMatches = (BitSet) rulesWithoutPathCondition.clone();
+        pathSubstrings.match(path, pathMatches);
+        pathRegexes.match(path, candidates, pathMatches);
+        candidates.and(pathMatches);
+
+        Map<FilesSet, String> matches = new LinkedHashMap<>();
+        final boolean known = file.getKnown() == TskData.FileKnown.KNOWN;
+        for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+            final FilesSet filesSet = filesSets.get(ruleSetIndexes.get(id));
+            if (matches.containsKey(filesSet) || (known && filesSet.ignoresKnownFiles())) {
+                continue;
+            }
+            final Rule rule = rules.get(id);
+            if (passesOtherConditions(rule, file)) {
+                matches.put(filesSet, rule.getName());
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Tests the conditions of a rule other than its name and path conditions
+     */
+    private static boolean passesOtherConditions(Rule rule, AbstractFile file) {
+        if (!rule.getMetaTypeCondition().passes(file)) {
+            return false;
+        }
+        if (rule.getFileSizeCondition() != null && !rule.getFileSizeCondition().passes(file)) {
+            return false;
+        }
+        return rule.getMimeTypeCondition() == null || rule.getMimeTypeCondition().passes(file);
+    }
+
+    /**
+     * Folds the case of a string so that two strings are equal ignoring case,
+     * as String.equalsIgnoreCase compares them, if and only if their folded
+     * strings are equal.
+     */
+    private static String foldCase(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; ++i) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The regular expression conditions of a kind, tried first as one
+     * alternation
+     */
+    private static final class RegexGroup {
+
+        private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\([1-9]|k<)"); //NON-NLS
+        private final int[] ruleIds;
+        private final List<TextCondition> conditions;
+        private final Pattern alternation; // null if the expressions cannot be combined
+
+        RegexGroup(List<Integer> ruleIds, List<TextCondition> conditions) {
+            this.ruleIds = new int[ruleIds.size()];
+            for (int i = 0; i < this.ruleIds.length; ++i) {
+                this.ruleIds[i] = ruleIds.get(i);
+            }
+            this.conditions = new ArrayList<>(conditions);
+            this.alternation = compileAlternation(conditions);
+        }
+
+        /**
+         * Combines regular expressions into an alternation, which finds a
+         * match if and only if one of them does. The expressions of the rules
+         * are compiled without flags, and back references would refer to the
+         * wrong groups once combined.
+         */
+        private static Pattern compileAlternation(List<TextCondition> conditions) {
+            if (conditions.size() < 2) {
+                return null;
+            }
+            StringBuilder regex = new StringBuilder();
+            for (TextCondition condition : conditions) {
+                final String expression = condition.getTextToMatch();
+                if (!condition.isRegex() || BACK_REFERENCE.matcher(expression).find()) {
+                    return null;
+                }
+                if (regex.length() > 0) {
+                    regex.append('|');
+                }
+                regex.append("(?:").append(expression).append(')'); //NON-NLS
+            }
+            try {
+                return Pattern.compile(regex.toString());
+            } catch (PatternSyntaxException ex) {
+                // e.g., the same named group in two expressions
+                return null;
+            }
+        }
+
+        /**
+         * Marks the rules whose expression matches a text
+         *
+         * @param text       the text
+         * @param candidates the rules worth testing, or null for all
+         * @param matches    the matched rules
+         */
+        void match(String text, BitSet candidates, BitSet matches) {
+            if (ruleIds.length == 0 || (alternation != null && !alternation.matcher(text).find())) {
+                return;
+            }
+            for (int i = 0; i < ruleIds.length; ++i) {
+                if ((candidates == null || candidates.get(ruleIds[i])) && conditions.get(i).textMatches(text)) {
+                    matches.set(ruleIds[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * An Aho-Corasick automaton that finds all the substrings of a text that
+     * are among a set of strings, ignoring the case of US-ASCII letters as the
+     * case-insensitive partial matches of the rules do.
+     */
+    private static final class SubstringAutomaton {
+
+        private final char[][] keys; // sorted, by state
+        private final int[][] targets;
+        private final int[] failures;
+        private final BitSet[] outputs; // null if no string ends at the state
+
+        private SubstringAutomaton(char[][] keys, int[][] targets, int[] failures, BitSet[] outputs) {
+            this.keys = keys;
+            this.targets = targets;
+            this.failures = failures;
+            this.outputs = outputs;
+        }
+
+        /**
+         * Marks the rules whose string is a substring of a text
+         */
+        void match(String text, BitSet matches) {
+            if (keys.length == 1) {
+                return;
+            }
+            int state = 0;
+            for (int i = 0; i < text.length(); ++i) {
+                final char c = foldAscii(text.charAt(i));
+                int next = transition(state, c);
+                while (next < 0 && state != 0) {
+                    state = failures[state];
+                    next = transition(state, c);
+                }
+                state = next < 0 ? 0 : next;
+                if (outputs[state] != null) {
+                    matches.or(outputs[state]);
+                }
+            }
+        }
+
+        private int transition(int state, char c) {
+            final int i = Arrays.binarySearch(keys[state], c);
+            return i < 0 ? -1 : targets[state][i];
+        }
+
+        private static char foldAscii(char c) {
+            return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+
+        /**
+         * Builds an automaton
+         */
+        static final class Builder {
+
+            private final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+            private final List<BitSet> outputs = new ArrayList<>();
+
+            Builder() {
+                addState();
+            }
+
+            private int addState() {
+                children.add(new TreeMap<>());
+                outputs.add(null);
+                return children.size() - 1;
+            }
+
+            void add(String text, int ruleId) {
+                int state = 0;
+                for (int i = 0; i < text.length(); ++i) {
+                    final char c = foldAscii(text.charAt(i));
+                    Integer next = children.get(state).get(c);
+                    if (next == null) {
+                        next = addState();
+                        children.get(state).put(c, next);
+                    }
+                    state = next;
+                }
+                if (outputs.get(state) == null) {
+                    outputs.set(state, new BitSet());
+                }
+                outputs.get(state).set(ruleId);
+            }
+
+            SubstringAutomaton build() {
+                final int size = children.size();
+                char[][] keys = new char[size][];
+                int[][] targets = new int[size][];
+                for (int state = 0; state < size; ++state) {
+                    TreeMap<Character, Integer> next = children.get(state);
+                    keys[state] = new char[next.size()];
+                    targets[state] = new int[next.size()];
+                    int i = 0;
+                    for (Map.Entry<Character, Integer> entry : next.entrySet()) {
+                        keys[state][i] = entry.getKey();
+                        targets[state][i] = entry.getValue();
+                        ++i;
+                    }
+                }
+
+                // breadth first, so the failure state of a state is done before it
+                int[] failures = new int[size];
+                BitSet[] stateOutputs = outputs.toArray(new BitSet[size]);
+                SubstringAutomaton automaton = new SubstringAutomaton(keys, targets, failures, stateOutputs);
+                Queue<Integer> queue = new ArrayDeque<>();
+                for (int child : targets[0]) {
+                    queue.add(child);
+                }
+                while (!queue.isEmpty()) {
+                    final int state = queue.remove();
+                    for (int i = 0; i < keys[state].length; ++i) {
+                        final char c = keys[state][i];
+                        final int child = targets[state][i];
+                        int failure = failures[state];
+                        int next = automaton.transition(failure, c);
+                        while (next < 0 && failure != 0) {
+                            failure = failures[failure];
+                            next = automaton.transition(failure, c);
+                        }
+                        failures[child] = next < 0 ? 0 : next;
+                        BitSet inherited = stateOutputs[failures[child]];
+                        if (inherited != null) {
+                            if (stateOutputs[child] == null) {
+                                stateOutputs[child] = (BitSet) inherited.clone();
+                            } else {
+                                stateOutputs[child].or(inherited);
+                            }
+                        }
+                        queue.add(child);
+                    }
+                }
+                return automaton;
+            }
+        }
+    }
+}
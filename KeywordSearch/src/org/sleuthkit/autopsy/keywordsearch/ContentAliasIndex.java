@@ -0,0 +1,307 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest.METHOD;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Content de-duplication for indexing by MD5. The text of the first file of a
+ * data source with a given MD5 is indexed as usual (the canonical file, whose
+ * parent document gets the content_md5 field). Every other file of the data
+ * source with that MD5 only gets an alias document: its metadata plus an
+ * alias_of field with the id of the canonical file.
+ *
+ * Searches add a hit for each alias of an object with a hit in its text, and
+ * the text viewers show the chunks of the canonical file for an alias. Hits in
+ * the parent document of the canonical file, e.g., on its name, are not copied
+ * to the aliases: each alias has its own parent document, which the searches
+ * match on their own. Files are only
+ * de-duplicated within a data source, so the data source filters of the
+ * searches still apply to both.
+ *
+ * An instance tracks the canonical files of one ingest job and the savings;
+ * the static methods are used by searches and viewers.
+ */
+class ContentAliasIndex {
+
+    private static final Logger logger = Logger.getLogger(ContentAliasIndex.class.getName());
+    // number of objects whose aliases are looked up with one query
+    private static final int ALIAS_QUERY_BATCH_SIZE = 512;
+    // how long a check that found no aliases in the index is trusted
+    private static final long ALIAS_CHECK_INTERVAL_MS = 60 * 1000L;
+    private static final Object aliasCheckLock = new Object();
+    private static String checkedCaseDirectory = null; //guarded by aliasCheckLock
+    private static boolean indexHasAliases = false; //guarded by aliasCheckLock
+    private static long lastAliasCheckTime = 0; //guarded by aliasCheckLock
+    // (data source id, md5) -> object id of the canonical file
+    private final Map<String, Long> canonicalFiles = new ConcurrentHashMap<>();
+    private final AtomicLong aliasedFiles = new AtomicLong(0);
+    private final AtomicLong aliasedBytes = new AtomicLong(0);
+
+    /**
+     * Gets the canonical file to alias the given file to, or makes the given
+     * file the canonical file for its content.
+     *
+     * @param file file about to be indexed, with an MD5
+     *
+     * @return the object id of the canonical file, which is the id of the
+     *         given file if its text should be indexed
+     */
+    long getCanonicalFile(AbstractFile file) {
+        final String md5 = file.getMd5Hash();
+        long dataSourceId;
+        try {
+            dataSourceId = file.getDataSource().getId();
+        } catch (TskCoreException ex) {
+            logger.log(Level.WARNING, "Could not get data source of file " + file.getId(), ex); //NON-NLS
+            return file.getId();
+        }
+        final String key = dataSourceId + ":" + md5;
+
+        Long canonicalId = canonicalFiles.get(key);
+        if (canonicalId == null) {
+            // indexed by an earlier job?
+            Long indexedId = queryCanonicalFile(dataSourceId, md5);
+            Long previousId = canonicalFiles.putIfAbsent(key, indexedId != null ? indexedId : file.getId());
+            canonicalId = previousId != null ? previousId : canonicalFiles.get(key);
+        }
+        if (canonicalId != file.getId()) {
+            aliasedFiles.incrementAndGet();
+            aliasedBytes.addAndGet(file.getSize());
+        }
+        return canonicalId;
+    }
+
+    /**
+     * @return the number of files indexed as aliases by this job
+     */
+    long getAliasedFiles() {
+        return aliasedFiles.get();
+    }
+
+    /**
+     * @return the size of the files indexed as aliases by this job, i.e. the
+     *         bytes not extracted and indexed
+     */
+    long getAliasedBytes() {
+        return aliasedBytes.get();
+    }
+
+    private static Long queryCanonicalFile(long dataSourceId, String md5) {
+        SolrQuery q = new SolrQuery();
+        q.setQuery(Server.Schema.CONTENT_MD5.toString() + ":" + KeywordSearchUtil.escapeLuceneQuery(md5));
+        q.addFilterQuery(Server.Schema.IMAGE_ID.toString() + ":" + dataSourceId);
+        Server.routeToDataSources(q, Collections.singleton(dataSourceId));
+        q.setFields(Server.Schema.ID.toString());
+        q.setRows(1);
+        try {
+            SolrDocumentList results = KeywordSearch.getServer().query(q).getResults();
+            if (!results.isEmpty()) {
+                return Long.parseLong(results.get(0).getFieldValue(Server.Schema.ID.toString()).toString());
+            }
+        } catch (KeywordSearchModuleException | NoOpenCoreException | NumberFormatException ex) {
+            logger.log(Level.WARNING, "Error querying the index for content " + md5, ex); //NON-NLS
+        }
+        return null;
+    }
+
+    /**
+     * Records that an alias was added to the index of the current case.
+     */
+    static void aliasAdded() {
+        synchronized (aliasCheckLock) {
+            try {
+                checkedCaseDirectory = Case.getCurrentCase().getCaseDirectory();
+            } catch (IllegalStateException ex) {
+                return; //no case open
+            }
+            indexHasAliases = true;
+        }
+    }
+
+    /**
+     * Checks if the index of the current case has any alias documents, so
+     * that searches of cases indexed without de-duplication do not have to
+     * look for aliases of each hit.
+     *
+     * @return true if there are (or may be) aliases in the index
+     *
+     * @throws NoOpenCoreException
+     */
+    private static boolean indexHasAliases() throws NoOpenCoreException {
+        final String caseDirectory;
+        try {
+            caseDirectory = Case.getCurrentCase().getCaseDirectory();
+        } catch (IllegalStateException ex) {
+            return false; //no case open
+        }
+        synchronized (aliasCheckLock) {
+            final long now = System.currentTimeMillis();
+            if (caseDirectory.equals(checkedCaseDirectory)
+                    && (indexHasAliases || now - lastAliasCheckTime < ALIAS_CHECK_INTERVAL_MS)) {
+                return indexHasAliases;
+            }
+            SolrQuery q = new SolrQuery();
+            q.setQuery(Server.Schema.ALIAS_OF.toString() + ":[* TO *]"); //NON-NLS
+            q.setRows(0);
+            try {
+                indexHasAliases = KeywordSearch.getServer().query(q).getResults().getNumFound() > 0;
+            } catch (KeywordSearchModuleException ex) {
+                logger.log(Level.WARNING, "Error checking the index for content aliases", ex); //NON-NLS
+                return true;
+            }
+            checkedCaseDirectory = caseDirectory;
+            lastAliasCheckTime = now;
+            return indexHasAliases;
+        }
+    }
+
+    /**
+     * Adds a hit for each alias of the objects with a hit in a chunk of text.
+     * The hit of an alias has the chunk id and snippet of the hit of its
+     * canonical file.
+     *
+     * @param hits        hits, one per object
+     * @param contentHits hits in chunks of text, at most one per object
+     *
+     * @return the given list of hits, with the hits of the aliases appended
+     *
+     * @throws NoOpenCoreException
+     */
+    static List<KeywordHit> addAliasHits(List<KeywordHit> hits, List<KeywordHit> contentHits) throws NoOpenCoreException {
+        if (contentHits.isEmpty() || !indexHasAliases()) {
+            return hits;
+        }
+        // objects with a hit of their own, e.g., an alias with a hit on its name
+        Set<Long> objectsWithHits = new HashSet<>();
+        for (KeywordHit hit : hits) {
+            objectsWithHits.add(hit.getSolrObjectId());
+        }
+        final int numHits = contentHits.size();
+        for (int start = 0; start < numHits; start += ALIAS_QUERY_BATCH_SIZE) {
+            Map<Long, KeywordHit> hitsByObject = new HashMap<>();
+            StringBuilder sb = new StringBuilder();
+            for (KeywordHit hit : contentHits.subList(start, Math.min(numHits, start + ALIAS_QUERY_BATCH_SIZE))) {
+                if (hit.isArtifactHit() || hit.getChunkId() == 0) {
+                    // the parent document of an alias is indexed on its own
+                    continue;
+                }
+                hitsByObject.put(hit.getSolrObjectId(), hit);
+                sb.append(sb.length() == 0 ? "" : " OR ").append(hit.getSolrObjectId()); //NON-NLS
+            }
+            if (hitsByObject.isEmpty()) {
+                continue;
+            }
+
+            SolrQuery q = new SolrQuery();
+            q.setQuery(Server.Schema.ALIAS_OF.toString() + ":(" + sb.toString() + ")"); //NON-NLS
+            q.setFields(Server.Schema.ID.toString(), Server.Schema.ALIAS_OF.toString());
+            q.setRows(ALIAS_QUERY_BATCH_SIZE);
+            q.setSort(SolrQuery.SortClause.asc(Server.Schema.ID.toString()));
+
+            List<KeywordHit> aliasHits = new ArrayList<>();
+            String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+            boolean allAliasesFetched = false;
+            while (!allAliasesFetched) {
+                q.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                QueryResponse response;
+                try {
+                    response = KeywordSearch.getServer().query(q, METHOD.POST);
+                } catch (KeywordSearchModuleException ex) {
+                    logger.log(Level.WARNING, "Error querying content aliases", ex); //NON-NLS
+                    return hits;
+                }
+
+                for (SolrDocument alias : response.getResults()) {
+                    KeywordHit canonicalHit = hitsByObject.get(Long.parseLong(alias.getFieldValue(Server.Schema.ALIAS_OF.toString()).toString()));
+                    if (canonicalHit == null) {
+                        continue;
+                    }
+                    final long aliasId = Long.parseLong(alias.getFieldValue(Server.Schema.ID.toString()).toString());
+                    if (!objectsWithHits.add(aliasId)) {
+                        continue;
+                    }
+                    try {
+                        aliasHits.add(new KeywordHit(Server.getChunkIdString(aliasId, canonicalHit.getChunkId()), canonicalHit.getSnippet()));
+                    } catch (TskCoreException ex) {
+                        logger.log(Level.WARNING, "Error creating keyword hit for content alias " + aliasId, ex); //NON-NLS
+                    }
+                }
+
+                final String nextCursorMark = response.getNextCursorMark();
+                allAliasesFetched = nextCursorMark == null || nextCursorMark.equals(cursorMark);
+                cursorMark = nextCursorMark;
+            }
+            hits.addAll(aliasHits);
+        }
+        return hits;
+    }
+
+    /**
+     * Gets the object whose chunks hold the text of the given object.
+     *
+     * @param objectId a file or artifact id
+     *
+     * @return the id of the canonical file if the given object is indexed as
+     *         an alias, otherwise the given id
+     */
+    static long resolveAlias(long objectId) {
+        if (objectId < 0) {
+            return objectId; // artifacts are never aliased
+        }
+        SolrQuery q = new SolrQuery();
+        q.setQuery(Server.Schema.ID.toString() + ":" + objectId);
+        q.setFields(Server.Schema.ALIAS_OF.toString());
+        q.setRows(1);
+        try {
+            if (!indexHasAliases()) {
+                return objectId;
+            }
+            SolrDocumentList results = KeywordSearch.getServer().query(q).getResults();
+            if (!results.isEmpty()) {
+                Object aliasOf = results.get(0).getFieldValue(Server.Schema.ALIAS_OF.toString());
+                if (aliasOf != null) {
+                    return Long.parseLong(aliasOf.toString());
+                }
+            }
+        } catch (KeywordSearchModuleException | NoOpenCoreException | NumberFormatException ex) {
+            logger.log(Level.WARNING, "Error resolving content alias of " + objectId, ex); //NON-NLS
+        }
+        return objectId;
+    }
+}
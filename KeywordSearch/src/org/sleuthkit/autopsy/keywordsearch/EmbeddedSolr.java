@@ -0,0 +1,207 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.CoreDescriptor;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.schema.CopyField;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Solr running inside the Autopsy process, for single-user cases. Uses the
+ * same Solr home, configset and schema as the Solr server process, but
+ * documents are added to the index writer and queries are run without HTTP
+ * and without a separate JVM. Soft commits open near-real-time searchers on
+ * the index writer, as with the server.
+ *
+ * Core admin is done through the core container, since core admin requests to
+ * an embedded server need an existing core.
+ */
+class EmbeddedSolr {
+
+    private static final Logger logger = Logger.getLogger(EmbeddedSolr.class.getName());
+    private final CoreContainer coreContainer;
+
+    /**
+     * Loads the core container. Cores are created or loaded when a case is
+     * opened, see createCore().
+     *
+     * @param solrHome         the Solr home directory, with solr.xml and the
+     *                         configsets
+     * @param systemProperties the properties referred to by solrconfig.xml
+     *
+     * @throws KeywordSearchModuleException if the container cannot be loaded
+     */
+    EmbeddedSolr(File solrHome, Map<String, String> systemProperties) throws KeywordSearchModuleException {
+        // solrconfig.xml reads these when a core is loaded
+        for (Map.Entry<String, String> property : systemProperties.entrySet()) {
+            System.setProperty(property.getKey(), property.getValue());
+        }
+        try {
+            coreContainer = new CoreContainer(solrHome.getAbsolutePath());
+            coreContainer.load();
+        } catch (SolrException ex) {
+            throw new KeywordSearchModuleException("Could not load embedded Solr from " + solrHome, ex); //NON-NLS
+        }
+        logger.log(Level.INFO, "Embedded Solr loaded from {0}", solrHome); //NON-NLS
+    }
+
+    /**
+     * Closes all cores and releases the container
+     */
+    void shutdown() {
+        coreContainer.shutdown();
+        logger.log(Level.INFO, "Embedded Solr shut down"); //NON-NLS
+    }
+
+    /**
+     * Gets a client for a loaded core
+     *
+     * @param coreName the core
+     *
+     * @return a client that runs requests in this process
+     */
+    SolrServer getCoreServer(String coreName) {
+        return new EmbeddedSolrServer(coreContainer, coreName);
+    }
+
+    boolean coreIsLoaded(String coreName) {
+        return coreContainer.getCoreNames().contains(coreName);
+    }
+
+    /**
+     * Creates a core with the Autopsy configset, or loads it if its data
+     * directory already has an index.
+     *
+     * @param coreName the core
+     * @param dataDir  the data directory of the core
+     *
+     * @throws KeywordSearchModuleException
+     */
+    void createCore(String coreName, File dataDir) throws KeywordSearchModuleException {
+        Properties coreProperties = new Properties();
+        coreProperties.setProperty(CoreDescriptor.CORE_DATADIR, dataDir.getAbsolutePath());
+        coreProperties.setProperty(CoreDescriptor.CORE_CONFIGSET, "AutopsyConfig"); //NON-NLS
+        coreProperties.setProperty(CoreDescriptor.CORE_LOADONSTARTUP, "false"); //NON-NLS
+        coreProperties.setProperty(CoreDescriptor.CORE_TRANSIENT, "true"); //NON-NLS
+        try {
+            CoreDescriptor descriptor = new CoreDescriptor(coreContainer, coreName, coreName, coreProperties);
+            SolrCore core = coreContainer.create(descriptor);
+            coreContainer.register(coreName, core, false);
+        } catch (SolrException ex) {
+            throw new KeywordSearchModuleException("Could not create embedded Solr core " + coreName, ex); //NON-NLS
+        }
+    }
+
+    /**
+     * Closes a core, keeping its index
+     *
+     * @param coreName the core
+     */
+    void unloadCore(String coreName) {
+        coreContainer.unload(coreName);
+    }
+
+    /**
+     * Gets the index directory of a loaded core
+     *
+     * @param coreName the core
+     *
+     * @return the directory, or null if the core is not loaded
+     */
+    File getIndexDir(String coreName) {
+        SolrCore core = coreContainer.getCore(coreName);
+        if (core == null) {
+            return null;
+        }
+        try {
+            return new File(core.getIndexDir());
+        } finally {
+            core.close();
+        }
+    }
+
+    /**
+     * Checks whether the schema of a loaded core copies a field to another
+     *
+     * @param coreName the core
+     * @param source   the field copied
+     * @param dest     the field copied to
+     *
+     * @return true if the schema has the copy field
+     */
+    boolean schemaCopiesField(String coreName, String source, String dest) {
+        SolrCore core = coreContainer.getCore(coreName);
+        if (core == null) {
+            return false;
+        }
+        try {
+            for (CopyField copyField : core.getLatestSchema().getCopyFieldsList(source)) {
+                if (copyField.getDestination().getName().equals(dest)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            core.close();
+        }
+    }
+
+    /**
+     * Gets the size of the index of a core on disk
+     *
+     * @param coreName the core
+     *
+     * @return size in bytes
+     *
+     * @throws IOException
+     */
+    long getIndexSize(String coreName) throws IOException {
+        File indexDir = getIndexDir(coreName);
+        if (indexDir == null || !indexDir.exists()) {
+            return 0;
+        }
+        long size = 0;
+        try (Stream<Path> files = Files.list(indexDir.toPath())) {
+            Iterator<Path> it = files.iterator();
+            while (it.hasNext()) {
+                try {
+                    size += Files.size(it.next());
+                } catch (NoSuchFileException ex) {
+                    // removed by a merge while listing
+                }
+            }
+        }
+        return size;
+    }
+}
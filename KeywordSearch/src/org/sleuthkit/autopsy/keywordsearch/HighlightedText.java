@@ -47,6 +47,7 @@ class HighlightedText implements IndexedText, TextMarkupLookup {
     private static final String ANCHOR_PREFIX = HighlightedText.class.getName() + "_";
 
     private long objectId;
+    private long solrObjectId; // object whose chunks hold the text, differs from objectId for content aliases
     private String keywordHitQuery;
     private Server solrServer;
     private int numberPages;
@@ -104,8 +105,9 @@ private void loadPageInfo() {
         if (isPageInfoLoaded) {
             return;
         }
+        this.solrObjectId = ContentAliasIndex.resolveAlias(this.objectId);
         try {
-            this.numberPages = solrServer.queryNumFileChunks(this.objectId);
+            this.numberPages = TextViewerCache.getNumChunks(solrServer, this.solrObjectId);
         } catch (KeywordSearchModuleException ex) {
             logger.log(Level.WARNING, "Could not get number pages for content: " + this.objectId); //NON-NLS
             return;
@@ -128,7 +130,12 @@ private void loadPageInfo() {
              * If this is being called from the artifacts / dir tree, then we
              * need to perform the search to get the highlights.
              */
+            List<Integer> cachedPages = null;
             if (hits == null) {
+                cachedPages = TextViewerCache.getHitChunks(getHitChunksKey(), this.solrObjectId);
+            }
+            if (hits == null && cachedPages == null) {
+                final long cacheGeneration = TextViewerCache.getGeneration();
                 String queryStr = KeywordSearchUtil.escapeLuceneQuery(this.keywordHitQuery);
                 if (isRegex) {
                     //use white-space sep. field to get exact matches only of regex query result
@@ -140,25 +147,18 @@ private void loadPageInfo() {
                 keywords.add(keywordQuery);
                 KeywordSearchQuery chunksQuery = new LuceneQuery(new KeywordList(keywords), keywordQuery);
 
-                chunksQuery.addFilter(new KeywordQueryFilter(FilterType.CHUNK, this.objectId));
+                chunksQuery.addFilter(new KeywordQueryFilter(FilterType.CHUNK, this.solrObjectId));
                 try {
                     hits = chunksQuery.performQuery();
                 } catch (NoOpenCoreException ex) {
                     logger.log(Level.INFO, "Could not get chunk info and get highlights", ex); //NON-NLS
                     return;
                 }
+                TextViewerCache.putHitChunks(getHitChunksKey(), this.solrObjectId, new ArrayList<>(getHitChunks(hits)), cacheGeneration);
             }
 
             //organize the hits by page, filter as needed
-            TreeSet<Integer> pagesSorted = new TreeSet<>();
-            for (Keyword k : hits.getKeywords()) {
-                for (KeywordHit hit : hits.getResults(k)) {
-                    int chunkID = hit.getChunkId();
-                    if (chunkID != 0 && this.objectId == hit.getSolrObjectId()) {
-                        pagesSorted.add(chunkID);
-                    }
-                }
-            }
+            TreeSet<Integer> pagesSorted = cachedPages != null ? new TreeSet<>(cachedPages) : getHitChunks(hits);
 
             //set page to first page having highlights
             if (pagesSorted.isEmpty()) {
@@ -184,6 +184,30 @@ private void loadPageInfo() {
         isPageInfoLoaded = true;
     }
 
+    /**
+     * Gets the sorted chunks of this object with hits
+     *
+     * @param hits hits of the query
+     *
+     * @return the ids of the chunks with hits
+     */
+    private TreeSet<Integer> getHitChunks(QueryResults hits) {
+        TreeSet<Integer> pagesSorted = new TreeSet<>();
+        for (Keyword k : hits.getKeywords()) {
+            for (KeywordHit hit : hits.getResults(k)) {
+                int chunkID = hit.getChunkId();
+                if (chunkID != 0 && (this.objectId == hit.getSolrObjectId() || this.solrObjectId == hit.getSolrObjectId())) {
+                    pagesSorted.add(chunkID);
+                }
+            }
+        }
+        return pagesSorted;
+    }
+
+    private String getHitChunksKey() {
+        return isRegex + ":" + keywordHitQuery;
+    }
+
     //constructor for dummy singleton factory instance for Lookup
     private HighlightedText() {
     }
@@ -296,6 +320,62 @@ public LinkedHashMap<Integer, Integer> getHitsPages() {
     public String getText() {
         loadPageInfo(); //inits once
 
+        final int page = this.currentPage;
+        String highlightedContent;
+        try {
+            highlightedContent = getHighlightedPage(page);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Error executing Solr highlighting query: " + keywordHitQuery, ex); //NON-NLS
+            return NbBundle.getMessage(this.getClass(), "HighlightedMatchesSource.getMarkup.queryFailedMsg");
+        }
+
+        //the examiner is likely to go to the next page with hits, get it ready
+        if (hasChunks && hasNextPage()) {
+            final int nextPage = pages.get(pages.indexOf(page) + 1);
+            if (!TextViewerCache.containsPage(getPageKey(nextPage))) {
+                TextViewerCache.prefetch(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            getHighlightedPage(nextPage);
+                        } catch (Exception ex) {
+                            logger.log(Level.INFO, "Error prefetching highlighted page " + nextPage + " of " + objectId, ex); //NON-NLS
+                        }
+                    }
+                });
+            }
+        }
+
+        if (highlightedContent.isEmpty()) {
+            return NbBundle.getMessage(this.getClass(), "HighlightedMatchesSource.getMarkup.noMatchMsg");
+        }
+        // extracted content (minus highlight tags) is HTML-escaped
+        return "<html><pre>" + insertAnchors(highlightedContent) + "</pre></html>"; //NON-NLS
+    }
+
+    private String getPageKey(int page) {
+        return solrObjectId + "_" + (hasChunks ? page : 0) + ":" + getHitChunksKey();
+    }
+
+    /**
+     * Gets the highlighted content of a page, from the viewer cache if there.
+     *
+     * @param page the page (chunk) number
+     *
+     * @return the highlighted content, or an empty string if the page has no
+     *         highlights
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    private String getHighlightedPage(int page) throws KeywordSearchModuleException, NoOpenCoreException {
+        final String pageKey = getPageKey(page);
+        String highlightedContent = TextViewerCache.getPage(pageKey);
+        if (highlightedContent != null) {
+            return highlightedContent;
+        }
+        final long cacheGeneration = TextViewerCache.getGeneration();
+
         String highLightField = null;
 
         if (isRegex) {
@@ -310,9 +390,9 @@ public String getText() {
         // input query has already been properly constructed and escaped
         q.setQuery(keywordHitQuery);
 
-        String contentIdStr = Long.toString(this.objectId);
+        String contentIdStr = Long.toString(this.solrObjectId);
         if (hasChunks) {
-            contentIdStr += "_" + Integer.toString(this.currentPage);
+            contentIdStr += "_" + Integer.toString(page);
         }
 
         final String filterQuery = Server.Schema.ID.toString() + ":" + KeywordSearchUtil.escapeLuceneQuery(contentIdStr);
@@ -332,28 +412,19 @@ public String getText() {
         //docs says makes sense for the original Highlighter only, but not really
         q.setParam("hl.maxAnalyzedChars", Server.HL_ANALYZE_CHARS_UNLIMITED); //NON-NLS
 
-        try {
-            QueryResponse response = solrServer.query(q, METHOD.POST);
-            Map<String, Map<String, List<String>>> responseHighlight = response.getHighlighting();
+        QueryResponse response = solrServer.query(q, METHOD.POST);
+        Map<String, Map<String, List<String>>> responseHighlight = response.getHighlighting();
 
-            Map<String, List<String>> responseHighlightID = responseHighlight.get(contentIdStr);
-            if (responseHighlightID == null) {
-                return NbBundle.getMessage(this.getClass(), "HighlightedMatchesSource.getMarkup.noMatchMsg");
-            }
+        highlightedContent = "";
+        Map<String, List<String>> responseHighlightID = responseHighlight.get(contentIdStr);
+        if (responseHighlightID != null) {
             List<String> contentHighlights = responseHighlightID.get(highLightField);
-            if (contentHighlights == null) {
-                return NbBundle.getMessage(this.getClass(), "HighlightedMatchesSource.getMarkup.noMatchMsg");
-            } else {
-                // extracted content (minus highlight tags) is HTML-escaped
-                String highlightedContent = contentHighlights.get(0).trim();
-                highlightedContent = insertAnchors(highlightedContent);
-
-                return "<html><pre>" + highlightedContent + "</pre></html>"; //NON-NLS
+            if (contentHighlights != null) {
+                highlightedContent = contentHighlights.get(0).trim();
             }
-        } catch (Exception ex) {
-            logger.log(Level.WARNING, "Error executing Solr highlighting query: " + keywordHitQuery, ex); //NON-NLS
-            return NbBundle.getMessage(this.getClass(), "HighlightedMatchesSource.getMarkup.queryFailedMsg");
         }
+        TextViewerCache.putPage(pageKey, highlightedContent, cacheGeneration);
+        return highlightedContent;
     }
 
     @Override
@@ -51,6 +51,8 @@ class HtmlTextExtractor implements TextExtractor {
     private final char[] textChunkBuf = new char[MAX_EXTR_TEXT_CHARS];
     private AbstractFile sourceFile;
     private int numChunks = 0;
+    private InStreamKeywordMatcher.FileScan keywordScan;
+    private boolean indexByContentHash = false;
 
     static final List<String> WEB_MIME_TYPES = Arrays.asList(
             "application/javascript", //NON-NLS
@@ -86,6 +88,21 @@ public Map<String, String> getOptions() {
     public void setOptions(Map<String, String> options) {
     }
 
+    @Override
+    public void setKeywordScan(InStreamKeywordMatcher.FileScan keywordScan) {
+        this.keywordScan = keywordScan;
+    }
+
+    @Override
+    public void setIndexByContentHash(boolean indexByContentHash) {
+        this.indexByContentHash = indexByContentHash;
+    }
+
+    @Override
+    public boolean isIndexedByContentHash() {
+        return indexByContentHash;
+    }
+
     @Override
     public int getNumChunks() {
         return numChunks;
@@ -176,6 +193,9 @@ public boolean index(AbstractFile sourceFile, IngestJobContext context) throws I
                 try {
                     chunk.index(ingester, encodedBytes, encodedBytes.length, outCharset);
                     ++this.numChunks;
+                    if (keywordScan != null) {
+                        keywordScan.scanChunk(chunk.getChunkId(), extracted);
+                    }
                 } catch (Ingester.IngesterException ingEx) {
                     success = false;
                     logger.log(Level.WARNING, "Ingester had a problem with extracted HTML from file '" //NON-NLS
@@ -0,0 +1,369 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.autopsy.ingest.ModuleDataEvent;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Matches the literal keywords of a set of keyword lists against the text of
+ * each chunk as it is extracted, before it is committed to the index. The
+ * keywords are compiled into an Aho-Corasick automaton, so each chunk is
+ * scanned once regardless of the number of keywords.
+ *
+ * Text and keywords are lower cased and runs of whitespace are collapsed, and
+ * a match has to start and end on a word boundary. This approximates the
+ * quoted phrase queries used for literal keywords by LuceneQuery. Hits found
+ * here are marked as already found for the job in SearchRunner, so the
+ * periodic Solr searches do not report them again; anything missed here is
+ * still found by those searches.
+ *
+ * The automaton is immutable once built, and is built once per ingest job
+ * and shared by the threads of the job (see KeywordSearchIngestModule). The
+ * per file state lives in FileScan objects.
+ */
+class InStreamKeywordMatcher {
+
+    private static final Logger logger = Logger.getLogger(InStreamKeywordMatcher.class.getName());
+    private static final int ROOT = 0;
+    private static final int SNIPPET_CONTEXT_CHARS = LuceneQuery.SNIPPET_LENGTH / 2;
+    // the markers of the Solr snippets of LuceneQuery once they are unescaped
+    private static final String SNIPPET_HIGHLIGHT_PRE = "\u00AB"; //NON-NLS
+    private static final String SNIPPET_HIGHLIGHT_POST = "\u00AB"; //NON-NLS
+
+    private final long jobId;
+    private final List<Keyword> keywords = new ArrayList<>();
+    private final List<KeywordList> keywordLists = new ArrayList<>();
+    private final List<Integer> keywordLengths = new ArrayList<>();
+
+    // automaton, one entry per state
+    private char[][] transitionChars;
+    private int[][] transitionStates;
+    private int[] failureStates;
+    private int[][] outputs; // indices of keywords ending in the state, including via failure links
+
+    /**
+     * Builds the automaton for the literal keywords of the given lists.
+     *
+     * @param jobId        the ingest job the hits are reported for
+     * @param keywordLists the enabled keyword lists of the job
+     */
+    InStreamKeywordMatcher(long jobId, List<KeywordList> keywordLists) {
+        this.jobId = jobId;
+
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> trieOutputs = new ArrayList<>();
+        trie.add(new HashMap<Character, Integer>());
+        trieOutputs.add(new ArrayList<Integer>());
+
+        for (KeywordList list : keywordLists) {
+            for (Keyword keyword : list.getKeywords()) {
+                if (!keyword.isLiteral()) {
+                    continue;
+                }
+                String normalized = normalizeKeyword(keyword.getQuery());
+                if (normalized.isEmpty()) {
+                    continue;
+                }
+                int state = ROOT;
+                for (int i = 0; i < normalized.length(); ++i) {
+                    Character c = normalized.charAt(i);
+                    Integer next = trie.get(state).get(c);
+                    if (next == null) {
+                        next = trie.size();
+                        trie.add(new HashMap<Character, Integer>());
+                        trieOutputs.add(new ArrayList<Integer>());
+                        trie.get(state).put(c, next);
+                    }
+                    state = next;
+                }
+                trieOutputs.get(state).add(keywords.size());
+                keywords.add(keyword);
+                this.keywordLists.add(list);
+                keywordLengths.add(normalized.length());
+            }
+        }
+
+        compile(trie, trieOutputs);
+    }
+
+    /**
+     * @return true if there are no literal keywords to match
+     */
+    boolean isEmpty() {
+        return keywords.isEmpty();
+    }
+
+    /**
+     * Starts the scan of a file.
+     *
+     * @param file the file whose chunks will be passed to the scan
+     *
+     * @return the scan
+     */
+    FileScan startFileScan(AbstractFile file) {
+        return new FileScan(file);
+    }
+
+    /**
+     * Converts the trie into arrays with sorted transitions, and computes the
+     * failure links and merged outputs breadth first.
+     */
+    private void compile(List<Map<Character, Integer>> trie, List<List<Integer>> trieOutputs) {
+        final int numStates = trie.size();
+        transitionChars = new char[numStates][];
+        transitionStates = new int[numStates][];
+        failureStates = new int[numStates];
+        outputs = new int[numStates][];
+
+        for (int state = 0; state < numStates; ++state) {
+            Map<Character, Integer> transitions = trie.get(state);
+            char[] chars = new char[transitions.size()];
+            int i = 0;
+            for (Character c : transitions.keySet()) {
+                chars[i++] = c;
+            }
+            Arrays.sort(chars);
+            int[] states = new int[chars.length];
+            for (i = 0; i < chars.length; ++i) {
+                states[i] = transitions.get(chars[i]);
+            }
+            transitionChars[state] = chars;
+            transitionStates[state] = states;
+        }
+
+        List<List<Integer>> mergedOutputs = new ArrayList<>();
+        for (List<Integer> stateOutputs : trieOutputs) {
+            mergedOutputs.add(new ArrayList<>(stateOutputs));
+        }
+
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : transitionStates[ROOT]) {
+            failureStates[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < transitionChars[state].length; ++i) {
+                char c = transitionChars[state][i];
+                int child = transitionStates[state][i];
+                int failure = failureStates[state];
+                while (failure != ROOT && nextState(failure, c) < 0) {
+                    failure = failureStates[failure];
+                }
+                int failureTarget = nextState(failure, c);
+                failureStates[child] = (failureTarget < 0 || failureTarget == child) ? ROOT : failureTarget;
+                mergedOutputs.get(child).addAll(mergedOutputs.get(failureStates[child]));
+                queue.add(child);
+            }
+        }
+
+        for (int state = 0; state < numStates; ++state) {
+            List<Integer> stateOutputs = mergedOutputs.get(state);
+            outputs[state] = new int[stateOutputs.size()];
+            for (int i = 0; i < stateOutputs.size(); ++i) {
+                outputs[state][i] = stateOutputs.get(i);
+            }
+        }
+    }
+
+    /**
+     * @return the state reached from the given state with the given char
+     *         using goto transitions only, or -1 if there is none
+     */
+    private int nextState(int state, char c) {
+        int i = Arrays.binarySearch(transitionChars[state], c);
+        return i < 0 ? -1 : transitionStates[state][i];
+    }
+
+    private static String normalizeKeyword(String keyword) {
+        StringBuilder sb = new StringBuilder(keyword.length());
+        boolean lastWasSpace = true; // also trims leading whitespace
+        for (int i = 0; i < keyword.length(); ++i) {
+            char c = keyword.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (!lastWasSpace) {
+                    sb.append(' ');
+                }
+                lastWasSpace = true;
+            } else {
+                sb.append(Character.toLowerCase(c));
+                lastWasSpace = false;
+            }
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == ' ') {
+            sb.setLength(length - 1);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Per file state of a scan: the first chunk and snippet of each keyword
+     * found in the file. Used by a single ingest thread.
+     */
+    class FileScan {
+
+        private final AbstractFile file;
+        private final Map<Integer, KeywordHitLocation> firstHits = new HashMap<>();
+
+        private FileScan(AbstractFile file) {
+            this.file = file;
+        }
+
+        /**
+         * Scans the text of one chunk of the file.
+         *
+         * @param chunkId the id of the chunk
+         * @param text    the text of the chunk as it is sent to the index
+         */
+        void scanChunk(int chunkId, String text) {
+            if (firstHits.size() == keywords.size()) {
+                return; // everything already found in this file
+            }
+
+            // normalized text, and the offset of each normalized char in the original text
+            final int length = text.length();
+            char[] normalized = new char[length];
+            int[] offsets = new int[length];
+            int normalizedLength = 0;
+            boolean lastWasSpace = false;
+            for (int i = 0; i < length; ++i) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    if (lastWasSpace) {
+                        continue;
+                    }
+                    c = ' ';
+                    lastWasSpace = true;
+                } else {
+                    c = Character.toLowerCase(c);
+                    lastWasSpace = false;
+                }
+                normalized[normalizedLength] = c;
+                offsets[normalizedLength] = i;
+                ++normalizedLength;
+            }
+
+            int state = ROOT;
+            for (int i = 0; i < normalizedLength; ++i) {
+                char c = normalized[i];
+                int next;
+                while ((next = nextState(state, c)) < 0 && state != ROOT) {
+                    state = failureStates[state];
+                }
+                state = next < 0 ? ROOT : next;
+
+                for (int keywordIndex : outputs[state]) {
+                    if (firstHits.containsKey(keywordIndex)) {
+                        continue;
+                    }
+                    int start = i - keywordLengths.get(keywordIndex) + 1;
+                    boolean startsWord = start == 0 || !Character.isLetterOrDigit(normalized[start - 1]);
+                    boolean endsWord = i == normalizedLength - 1 || !Character.isLetterOrDigit(normalized[i + 1]);
+                    if (startsWord && endsWord) {
+                        firstHits.put(keywordIndex, new KeywordHitLocation(chunkId, getSnippet(text, offsets[start], offsets[i] + 1)));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Finishes the scan of the file: posts a keyword hit artifact for each
+         * keyword found that has not been reported for the file in this job
+         * yet, and marks it as found so the Solr searches skip it.
+         */
+        void finish() {
+            if (firstHits.isEmpty()) {
+                return;
+            }
+            Collection<BlackboardArtifact> newArtifacts = new ArrayList<>();
+            for (Map.Entry<Integer, KeywordHitLocation> entry : firstHits.entrySet()) {
+                final Keyword keyword = keywords.get(entry.getKey());
+                final KeywordList list = keywordLists.get(entry.getKey());
+                final KeywordHitLocation location = entry.getValue();
+
+                // the Solr searches report literal hits under a literal keyword with the same query
+                if (!SearchRunner.getInstance().markKeywordHit(jobId, new Keyword(keyword.getQuery(), true), file.getId())) {
+                    continue;
+                }
+
+                KeywordHit hit;
+                try {
+                    hit = new KeywordHit(Server.getChunkIdString(file.getId(), location.chunkId), location.snippet);
+                } catch (TskCoreException ex) {
+                    logger.log(Level.WARNING, "Error creating keyword hit for file " + file.getId(), ex); //NON-NLS
+                    continue;
+                }
+                LuceneQuery query = new LuceneQuery(list, keyword);
+                KeywordCachedArtifact written = query.writeSingleFileHitsToBlackBoard(keyword.getQuery(), hit, location.snippet, list.getName());
+                if (written == null) {
+                    logger.log(Level.WARNING, "BB artifact for in-stream keyword hit not written, file: {0}, hit: {1}", new Object[]{file.getId(), keyword.toString()}); //NON-NLS
+                    continue;
+                }
+                newArtifacts.add(written.getArtifact());
+                if (list.getIngestMessages()) {
+                    new QueryResults(query, list).writeSingleFileInboxMessage(written, hit.getContent());
+                }
+            }
+            firstHits.clear();
+
+            if (!newArtifacts.isEmpty()) {
+                IngestServices.getInstance().fireModuleDataEvent(new ModuleDataEvent(KeywordSearchModuleFactory.getModuleName(), BlackboardArtifact.ARTIFACT_TYPE.TSK_KEYWORD_HIT, newArtifacts));
+            }
+        }
+
+        private String getSnippet(String text, int start, int end) {
+            int snippetStart = Math.max(0, start - SNIPPET_CONTEXT_CHARS);
+            int snippetEnd = Math.min(text.length(), end + SNIPPET_CONTEXT_CHARS);
+            StringBuilder sb = new StringBuilder();
+            sb.append(text, snippetStart, start);
+            sb.append(SNIPPET_HIGHLIGHT_PRE).append(text, start, end).append(SNIPPET_HIGHLIGHT_POST);
+            sb.append(text, end, snippetEnd);
+            return sb.toString().replaceAll("\\s+", " ").trim(); //NON-NLS
+        }
+    }
+
+    /**
+     * Chunk and snippet of the first hit of a keyword in a file.
+     */
+    private static class KeywordHitLocation {
+
+        private final int chunkId;
+        private final String snippet;
+
+        KeywordHitLocation(int chunkId, String snippet) {
+            this.chunkId = chunkId;
+            this.snippet = snippet;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import org.openide.util.NbBundle;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Determines which fields the text of each chunk is indexed in, and so which
+ * queries the index of a case can serve. The profile of a case is chosen when
+ * its index is created (see KeywordSearchSettings.getIndexProfile()) and kept
+ * in a file next to the index, since a case indexed without a field cannot be
+ * searched with it later.
+ *
+ * The profile only has an effect if the schema of the core does not copy the
+ * content to content_ws itself, as the schema of older Solr servers does (see
+ * Server.isContentWsCopiedBySchema()).
+ */
+enum IndexProfile {
+
+    /**
+     * Text is indexed and stored in the text field only (with term vectors
+     * for highlighting). Whole word literal searches only: ad-hoc substring
+     * searches match the terms of content_ws like regular expressions do, so
+     * they are refused too. Ingest searches query literal keywords as whole
+     * words either way.
+     */
+    LITERAL_ONLY(false),
+    /**
+     * Text is also indexed in the whitespace-tokenized content_ws field used
+     * for regular expression and exact matching. The only profile of cases
+     * created before profiles were added.
+     */
+    LITERAL_AND_REGEX(true);
+
+    private static final Logger logger = Logger.getLogger(IndexProfile.class.getName());
+    private static final String PROFILE_FILE = "index_profile.properties"; //NON-NLS
+    private static final String PROFILE_KEY = "profile"; //NON-NLS
+    private final boolean regexSupported;
+
+    private IndexProfile(boolean regexSupported) {
+        this.regexSupported = regexSupported;
+    }
+
+    /**
+     * @return true if the content_ws field is indexed, needed for regular
+     *         expression and substring searches
+     */
+    boolean supportsRegex() {
+        return regexSupported;
+    }
+
+    /**
+     * Checks if a query can be served by an index with this profile
+     *
+     * @param query the query
+     *
+     * @return true if the query can be served
+     */
+    boolean canServe(KeywordSearchQuery query) {
+        return query.isLiteral() || regexSupported;
+    }
+
+    /**
+     * Checks if a keyword can be searched for in an index with this profile
+     *
+     * @param keyword the keyword
+     *
+     * @return true if the keyword can be searched for
+     */
+    boolean canServe(Keyword keyword) {
+        return keyword.isLiteral() || regexSupported;
+    }
+
+    String getDisplayName() {
+        return NbBundle.getMessage(IndexProfile.class, "IndexProfile." + name() + ".displayName");
+    }
+
+    /**
+     * Gets the profile of the index in the given directory, saving the profile
+     * of a new index
+     *
+     * @param indexDir     the directory of the index of a case, parent of the
+     *                     core data directory
+     * @param indexIsEmpty true if nothing was indexed yet, the profile is then
+     *                     taken from the settings
+     *
+     * @return the profile
+     */
+    static IndexProfile loadForIndex(File indexDir, boolean indexIsEmpty) {
+        File profileFile = new File(indexDir, PROFILE_FILE);
+        if (profileFile.exists()) {
+            Properties props = new Properties();
+            try (InputStream in = new FileInputStream(profileFile)) {
+                props.load(in);
+                return valueOf(props.getProperty(PROFILE_KEY));
+            } catch (IOException | IllegalArgumentException | NullPointerException ex) {
+                logger.log(Level.WARNING, "Could not read index profile from " + profileFile + ", assuming " + LITERAL_AND_REGEX, ex); //NON-NLS
+                return LITERAL_AND_REGEX;
+            }
+        }
+
+        // indexes created before profiles were added have all fields
+        IndexProfile profile = indexIsEmpty ? KeywordSearchSettings.getIndexProfile() : LITERAL_AND_REGEX;
+        Properties props = new Properties();
+        props.setProperty(PROFILE_KEY, profile.name());
+        try (OutputStream out = new FileOutputStream(profileFile)) {
+            props.store(out, null);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not save index profile to " + profileFile, ex); //NON-NLS
+        }
+        return profile;
+    }
+}
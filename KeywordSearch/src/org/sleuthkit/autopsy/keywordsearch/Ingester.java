@@ -23,14 +23,17 @@
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.util.ContentStream;
 import org.apache.solr.common.SolrInputDocument;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.StopWatch;
 import org.sleuthkit.autopsy.coreutils.TextUtil;
 import org.sleuthkit.autopsy.datamodel.ContentUtils;
 import org.sleuthkit.datamodel.AbstractContent;
@@ -61,6 +64,27 @@ class Ingester {
     private static final int MAX_DOC_CHUNK_SIZE = 1024 * 1024;
     private static final String docContentEncoding = "UTF-8"; //NON-NLS
 
+    // commit scheduling: soft commits make added documents searchable, hard
+    // commits flush them to disk. Both are done early when a lot of content is
+    // pending, and never more often than the time the last soft commit took
+    // (i.e. reopening the searcher) allows.
+    private static final long SOFT_COMMIT_MAX_PENDING_DOCS = 5000;
+    private static final long SOFT_COMMIT_MAX_PENDING_BYTES = 64 * 1024 * 1024L;
+    private static final long HARD_COMMIT_MAX_PENDING_DOCS = 50000;
+    private static final long HARD_COMMIT_MAX_PENDING_BYTES = 512 * 1024 * 1024L;
+    private static final long HARD_COMMIT_MAX_INTERVAL_MS = 10 * 60 * 1000L;
+    private static final long MIN_COMMIT_INTERVAL_MS = 10 * 1000L;
+    private static final int COMMIT_LATENCY_FACTOR = 10;
+    private final AtomicLong docsSinceSoftCommit = new AtomicLong(0);
+    private final AtomicLong bytesSinceSoftCommit = new AtomicLong(0);
+    private final AtomicLong docsSinceHardCommit = new AtomicLong(0);
+    private final AtomicLong bytesSinceHardCommit = new AtomicLong(0);
+    private volatile long lastSoftCommitTime = System.currentTimeMillis();
+    private volatile long lastHardCommitTime = System.currentTimeMillis();
+    private volatile long lastSoftCommitLatencyMs = 0;
+    private final CommitStats softCommitStats = new CommitStats();
+    private final CommitStats hardCommitStats = new CommitStats();
+
     private Ingester() {
     }
 
@@ -112,6 +136,10 @@ void ingest(TextExtractor fe) throws IngesterException {
         Map<String, String> params = getContentFields(fe.getSourceFile());
 
         params.put(Server.Schema.NUM_CHUNKS.toString(), Integer.toString(fe.getNumChunks()));
+        if (fe.isIndexedByContentHash() && fe.getSourceFile().getMd5Hash() != null) {
+            // makes the file the canonical file for its content, see ContentAliasIndex
+            params.put(Server.Schema.CONTENT_MD5.toString(), fe.getSourceFile().getMd5Hash());
+        }
 
         ingest(new NullContentStream(fe.getSourceFile()), params, 0);
     }
@@ -160,6 +188,24 @@ void ingest(AbstractFile file, boolean ingestContent) throws IngesterException {
         }
     }
 
+    /**
+     * Sends the metadata of a file to Solr as an alias of another file with the
+     * same content, whose text is indexed instead. commit() should be called
+     * once you're done ingesting files.
+     *
+     * @param file              File to ingest
+     * @param canonicalObjectId id of the file whose text is indexed
+     *
+     * @throws IngesterException if there was an error processing a specific
+     *                           file, but the Solr server is probably fine.
+     */
+    void ingestAlias(AbstractFile file, long canonicalObjectId) throws IngesterException {
+        Map<String, String> params = getContentFields(file);
+        params.put(Server.Schema.ALIAS_OF.toString(), Long.toString(canonicalObjectId));
+        ingest(new NullContentStream(file), params, 0);
+        ContentAliasIndex.aliasAdded();
+    }
+
     /**
      * Creates a field map from FsContent, that is later sent to Solr
      *
@@ -256,6 +302,58 @@ private Map<String, String> getCommonFields(AbstractFile af) {
      * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException
      */
     void ingest(ContentStream cs, Map<String, String> fields, final long size) throws IngesterException {
+        SolrInputDocument updateDoc = createDocument(cs, fields, size);
+
+        try {
+            //TODO consider timeout thread, or vary socket timeout based on size of indexed content
+            solrServer.addDocument(updateDoc);
+            documentsAdded(1, size > 0 ? size : 0);
+        } catch (KeywordSearchModuleException ex) {
+            throw new IngesterException(
+                    NbBundle.getMessage(this.getClass(), "Ingester.ingest.exception.err.msg", cs.getName()), ex);
+        }
+
+    }
+
+    /**
+     * Indexes documents made with createDocument() with one update request
+     * per core
+     *
+     * @param docs the documents
+     * @param size the total size of their content
+     *
+     * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException
+     */
+    void ingest(Collection<SolrInputDocument> docs, final long size) throws IngesterException {
+        try {
+            solrServer.addDocuments(docs);
+            documentsAdded(docs.size(), size);
+        } catch (KeywordSearchModuleException ex) {
+            throw new IngesterException(
+                    NbBundle.getMessage(this.getClass(), "Ingester.ingest.exception.err.msg", docs.size() + " documents"), ex); //NON-NLS
+        }
+    }
+
+    private void documentsAdded(int numDocs, long docBytes) {
+        uncommitedIngests = true;
+        docsSinceSoftCommit.addAndGet(numDocs);
+        bytesSinceSoftCommit.addAndGet(docBytes);
+        docsSinceHardCommit.addAndGet(numDocs);
+        bytesSinceHardCommit.addAndGet(docBytes);
+    }
+
+    /**
+     * Makes the document to index for a content stream, see ingest()
+     *
+     * @param cs
+     * @param fields
+     * @param size
+     *
+     * @return the document
+     *
+     * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException
+     */
+    SolrInputDocument createDocument(ContentStream cs, Map<String, String> fields, final long size) throws IngesterException {
 
         if (fields.get(Server.Schema.IMAGE_ID.toString()) == null) {
             //skip the file, image id unknown
@@ -326,15 +424,18 @@ void ingest(ContentStream cs, Map<String, String> fields, final long size) throw
             updateDoc.addField(Server.Schema.CONTENT.toString(), "");
         }
 
-        try {
-            //TODO consider timeout thread, or vary socket timeout based on size of indexed content
-            solrServer.addDocument(updateDoc);
-            uncommitedIngests = true;
-        } catch (KeywordSearchModuleException ex) {
-            throw new IngesterException(
-                    NbBundle.getMessage(this.getClass(), "Ingester.ingest.exception.err.msg", cs.getName()), ex);
+        // content is copied to the text field by the schema, content_ws (for
+        // regex and exact matching) is only added if the index profile has it
+        // and the schema does not copy it already
+        if (solrServer.getIndexProfile().supportsRegex() && !solrServer.isContentWsCopiedBySchema()) {
+            updateDoc.addField(Server.Schema.CONTENT_WS.toString(), updateDoc.getFieldValue(Server.Schema.CONTENT.toString()));
+            String fileName = fields.get(Server.Schema.FILE_NAME.toString());
+            if (fileName != null) {
+                updateDoc.addField(Server.Schema.CONTENT_WS.toString(), fileName);
+            }
         }
 
+        return updateDoc;
     }
 
     /**
@@ -365,11 +466,134 @@ static int getTimeout(long size) {
      * searches)
      */
     void commit() {
+        // taken before the commit, documents added during it are pending after it
+        final long docs = docsSinceHardCommit.getAndSet(0);
+        final long bytes = bytesSinceHardCommit.getAndSet(0);
+        final long softDocs = docsSinceSoftCommit.getAndSet(0);
+        final long softBytes = bytesSinceSoftCommit.getAndSet(0);
+        final StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
         try {
             solrServer.commit();
             uncommitedIngests = false;
         } catch (NoOpenCoreException | SolrServerException ex) {
             logger.log(Level.WARNING, "Error commiting index", ex); //NON-NLS
+            // still pending, so that the commit is retried when it is due
+            docsSinceHardCommit.addAndGet(docs);
+            bytesSinceHardCommit.addAndGet(bytes);
+            docsSinceSoftCommit.addAndGet(softDocs);
+            bytesSinceSoftCommit.addAndGet(softBytes);
+            return;
+        }
+        stopWatch.stop();
+        lastHardCommitTime = lastSoftCommitTime = System.currentTimeMillis();
+        lastSoftCommitLatencyMs = stopWatch.getElapsedTime();
+        hardCommitStats.add(stopWatch.getElapsedTime());
+        logger.log(Level.INFO, "Hard commit of {0} documents ({1} bytes) took {2} ms, {3}", new Object[]{docs, bytes, stopWatch.getElapsedTime(), hardCommitStats}); //NON-NLS
+    }
+
+    /**
+     * Tells Solr to soft commit: ingested files will appear in searches, but
+     * are not flushed to disk until the next commit().
+     */
+    void softCommit() {
+        final long docs = docsSinceSoftCommit.getAndSet(0);
+        final long bytes = bytesSinceSoftCommit.getAndSet(0);
+        final StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        try {
+            solrServer.softCommit();
+        } catch (NoOpenCoreException | SolrServerException ex) {
+            logger.log(Level.WARNING, "Error soft commiting index", ex); //NON-NLS
+            docsSinceSoftCommit.addAndGet(docs);
+            bytesSinceSoftCommit.addAndGet(bytes);
+            return;
+        }
+        stopWatch.stop();
+        lastSoftCommitTime = System.currentTimeMillis();
+        lastSoftCommitLatencyMs = stopWatch.getElapsedTime();
+        softCommitStats.add(stopWatch.getElapsedTime());
+        logger.log(Level.INFO, "Soft commit of {0} documents ({1} bytes) took {2} ms, {3}", new Object[]{docs, bytes, stopWatch.getElapsedTime(), softCommitStats}); //NON-NLS
+    }
+
+    /**
+     * Checks if documents were added since the last (soft or hard) commit
+     *
+     * @return true if there are documents not yet visible to searches
+     */
+    boolean hasPendingDocuments() {
+        return docsSinceSoftCommit.get() > 0;
+    }
+
+    /**
+     * Checks if enough documents are pending, or enough time has passed, to
+     * warrant a soft commit.
+     *
+     * @param maxIntervalMs the longest time added documents should wait to
+     *                      become searchable
+     *
+     * @return true if a soft commit should be done now
+     */
+    boolean isSoftCommitDue(long maxIntervalMs) {
+        final long docs = docsSinceSoftCommit.get();
+        if (docs == 0) {
+            return false;
+        }
+        final long sinceLastCommit = System.currentTimeMillis() - lastSoftCommitTime;
+        if (sinceLastCommit < getMinCommitIntervalMs()) {
+            return false;
+        }
+        return docs >= SOFT_COMMIT_MAX_PENDING_DOCS
+                || bytesSinceSoftCommit.get() >= SOFT_COMMIT_MAX_PENDING_BYTES
+                || sinceLastCommit >= maxIntervalMs;
+    }
+
+    /**
+     * Checks if enough documents are pending, or enough time has passed, to
+     * warrant a hard commit.
+     *
+     * @return true if a hard commit should be done now
+     */
+    boolean isHardCommitDue() {
+        final long docs = docsSinceHardCommit.get();
+        if (docs == 0) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - lastSoftCommitTime < getMinCommitIntervalMs()) {
+            return false;
+        }
+        return docs >= HARD_COMMIT_MAX_PENDING_DOCS
+                || bytesSinceHardCommit.get() >= HARD_COMMIT_MAX_PENDING_BYTES
+                || now - lastHardCommitTime >= HARD_COMMIT_MAX_INTERVAL_MS;
+    }
+
+    /**
+     * @return the shortest time between two commits, longer when reopening
+     *         the searcher got slow
+     */
+    private long getMinCommitIntervalMs() {
+        return Math.max(MIN_COMMIT_INTERVAL_MS, COMMIT_LATENCY_FACTOR * lastSoftCommitLatencyMs);
+    }
+
+    /**
+     * Running count, average and maximum of commit latencies
+     */
+    private static class CommitStats {
+
+        private long count = 0;
+        private long totalMs = 0;
+        private long maxMs = 0;
+
+        synchronized void add(long latencyMs) {
+            ++count;
+            totalMs += latencyMs;
+            maxMs = Math.max(maxMs, latencyMs);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("commits: %d, avg: %d ms, max: %d ms", count, count == 0 ? 0 : totalMs / count, maxMs); //NON-NLS
         }
     }
 
@@ -85,6 +85,27 @@ class KeywordHit {
         this.snippet = snippet;
     }
 
+    private KeywordHit(KeywordHit hit, String snippet) {
+        this.solrDocumentId = hit.solrDocumentId;
+        this.solrObjectId = hit.solrObjectId;
+        this.chunkId = hit.chunkId;
+        this.content = hit.content;
+        this.artifact = hit.artifact;
+        this.snippet = snippet;
+    }
+
+    /**
+     * Makes a copy of this hit with a snippet, without looking up the content
+     * again
+     *
+     * @param snippet the snippet
+     *
+     * @return the copy
+     */
+    KeywordHit withSnippet(String snippet) {
+        return new KeywordHit(this, snippet);
+    }
+
     String getSolrDocumentId() {
         return this.solrDocumentId;
     }
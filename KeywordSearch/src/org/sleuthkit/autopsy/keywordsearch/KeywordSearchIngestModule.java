@@ -23,9 +23,11 @@
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.services.Blackboard;
 import org.sleuthkit.autopsy.core.UserPreferences;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
@@ -91,6 +93,7 @@ int getTime() {
     private boolean startedSearching = false;
     private List<TextExtractor> textExtractors;
     private StringsTextExtractor stringExtractor;
+    private InStreamKeywordMatcher keywordMatcher;
     private final KeywordSearchJobSettings settings;
     private boolean initialized = false;
     private long jobId;
@@ -105,31 +108,73 @@ private enum IngestStatus {
         TEXT_INGESTED, /// Text was extracted by knowing file type and text_ingested
         STRINGS_INGESTED, ///< Strings were extracted from file 
         METADATA_INGESTED, ///< No content, so we just text_ingested metadata
+        ALIAS_INGESTED, ///< Same content as an already indexed file, so we just text_ingested metadata and an alias
         SKIPPED_ERROR_INDEXING, ///< File was skipped because index engine had problems
         SKIPPED_ERROR_TEXTEXTRACT, ///< File was skipped because of text extraction issues
         SKIPPED_ERROR_IO    ///< File was skipped because of IO issues reading it
     };
-    private static final Map<Long, Map<Long, IngestStatus>> ingestStatus = new HashMap<>(); //guarded by itself
+    private static final Map<Long, IngestStatusCounts> ingestStatus = new HashMap<>(); //guarded by itself
+    private static final Map<Long, ContentAliasIndex> contentAliasIndexes = new HashMap<>(); //guarded by itself
+    private static final Map<Long, InStreamKeywordMatcher> keywordMatchers = new HashMap<>(); //guarded by itself
+    private ContentAliasIndex contentAliasIndex;
+    private IngestStatusCounts ingestStatusCounts;
+    // status of the file being processed, the last one set wins (e.g. strings after a text extraction error)
+    private IngestStatus fileIngestStatus;
 
     /**
-     * Records the ingest status for a given file for a given ingest job. Used
-     * for final statistics at the end of the job.
-     * @param ingestJobId id of ingest job
-     * @param fileId      id of file
-     * @param status      ingest status of the file
+     * Number of files with each ingest status in an ingest job, used for final
+     * statistics at the end of the job. The counters are striped, so the
+     * threads of the job do not contend on them.
      */
-    private static void putIngestStatus(long ingestJobId, long fileId, IngestStatus status) {
-        synchronized (ingestStatus) {
-            Map<Long, IngestStatus> ingestStatusForJob = ingestStatus.get(ingestJobId);
-            if (ingestStatusForJob == null) {
-                ingestStatusForJob = new HashMap<>();
-                ingestStatus.put(ingestJobId, ingestStatusForJob);
+    private static class IngestStatusCounts {
+
+        private final LongAdder[] counts = new LongAdder[IngestStatus.values().length];
+        private final LongAdder indexingTimeNanos = new LongAdder();
+
+        IngestStatusCounts() {
+            for (int i = 0; i < counts.length; ++i) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void increment(IngestStatus status) {
+            counts[status.ordinal()].increment();
+        }
+
+        int get(IngestStatus status) {
+            return counts[status.ordinal()].intValue();
+        }
+
+        void addIndexingTime(long nanos) {
+            indexingTimeNanos.add(nanos);
+        }
+
+        /**
+         * @return the time spent indexing files, summed over all threads
+         */
+        long getIndexingTimeMs() {
+            return indexingTimeNanos.sum() / 1000000;
+        }
+
+        long getTotal() {
+            long total = 0;
+            for (LongAdder count : counts) {
+                total += count.sum();
             }
-            ingestStatusForJob.put(fileId, status);
-            ingestStatus.put(ingestJobId, ingestStatusForJob);
+            return total;
         }
     }
 
+    /**
+     * Records the ingest status of the file being processed. Counted once the
+     * file is done, see process().
+     *
+     * @param status ingest status of the file
+     */
+    private void putIngestStatus(IngestStatus status) {
+        fileIngestStatus = status;
+    }
+
     KeywordSearchIngestModule(KeywordSearchJobSettings settings) {
         this.settings = settings;
         instanceNum = instanceCount.getAndIncrement();
@@ -209,6 +254,25 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
                             NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.init.onlyIdxKwSkipMsg")));
                 }
             }
+
+            // check if the index of the case can serve the regex keywords of this job
+            IndexProfile indexProfile = server.getIndexProfile();
+            boolean hasUnsupportedKeywords = false;
+            for (KeywordList keywordList : XmlKeywordSearchList.getCurrent().getListsL()) {
+                if (settings.keywordListIsEnabled(keywordList.getName())) {
+                    for (Keyword keyword : keywordList.getKeywords()) {
+                        hasUnsupportedKeywords |= !indexProfile.canServe(keyword);
+                    }
+                }
+            }
+            if (hasUnsupportedKeywords) {
+                services.postMessage(IngestMessage.createWarningMessage(KeywordSearchModuleFactory.getModuleName(), NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.init.regexNotIndexedMsg"),
+                        NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.init.regexNotIndexedDetails", indexProfile.getDisplayName())));
+            }
+            if (!indexProfile.supportsRegex() && server.isContentWsCopiedBySchema()) {
+                services.postMessage(IngestMessage.createWarningMessage(KeywordSearchModuleFactory.getModuleName(), NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.init.profileHasNoEffectMsg"),
+                        NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.init.profileHasNoEffectDetails", indexProfile.getDisplayName())));
+            }
         }
 
         //initialize extractors
@@ -221,6 +285,53 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
         textExtractors.add(new HtmlTextExtractor());
         textExtractors.add(new TikaTextExtractor());
 
+        keywordMatcher = null;
+        if (KeywordSearchSettings.getInStreamKeywordMatching()) {
+            // the automaton is built by the first module of the job and shared by all
+            InStreamKeywordMatcher matcher;
+            synchronized (keywordMatchers) {
+                matcher = keywordMatchers.get(jobId);
+                if (matcher == null) {
+                    List<KeywordList> enabledLists = new ArrayList<>();
+                    for (KeywordList keywordList : XmlKeywordSearchList.getCurrent().getListsL()) {
+                        if (settings.keywordListIsEnabled(keywordList.getName())) {
+                            enabledLists.add(keywordList);
+                        }
+                    }
+                    matcher = new InStreamKeywordMatcher(jobId, enabledLists);
+                    keywordMatchers.put(jobId, matcher);
+                }
+            }
+            if (!matcher.isEmpty()) {
+                keywordMatcher = matcher;
+            }
+        }
+
+        contentAliasIndex = null;
+        final boolean indexByContentHash = KeywordSearchSettings.getIndexByContentHash();
+        // per extractor, so that concurrent jobs can have different settings
+        stringExtractor.setIndexByContentHash(indexByContentHash);
+        for (TextExtractor extractor : textExtractors) {
+            extractor.setIndexByContentHash(indexByContentHash);
+        }
+        if (indexByContentHash) {
+            synchronized (contentAliasIndexes) {
+                contentAliasIndex = contentAliasIndexes.get(jobId);
+                if (contentAliasIndex == null) {
+                    contentAliasIndex = new ContentAliasIndex();
+                    contentAliasIndexes.put(jobId, contentAliasIndex);
+                }
+            }
+        }
+
+        synchronized (ingestStatus) {
+            ingestStatusCounts = ingestStatus.get(jobId);
+            if (ingestStatusCounts == null) {
+                ingestStatusCounts = new IngestStatusCounts();
+                ingestStatus.put(jobId, ingestStatusCounts);
+            }
+        }
+
         indexer = new Indexer();
         initialized = true;
     }
@@ -230,7 +341,9 @@ public ProcessResult process(AbstractFile abstractFile) {
         if (initialized == false) //error initializing indexing/Solr
         {
             logger.log(Level.WARNING, "Skipping processing, module not initialized, file: {0}", abstractFile.getName());  //NON-NLS
-            putIngestStatus(jobId, abstractFile.getId(), IngestStatus.SKIPPED_ERROR_INDEXING);
+            if (ingestStatusCounts != null) {
+                ingestStatusCounts.increment(IngestStatus.SKIPPED_ERROR_INDEXING);
+            }
             return ProcessResult.OK;
         }
 
@@ -244,17 +357,12 @@ public ProcessResult process(AbstractFile abstractFile) {
             if (context.fileIngestIsCancelled()) {
                 return ProcessResult.OK;
             }
-            indexer.indexFile(abstractFile, false);
+            indexFile(abstractFile, false);
             return ProcessResult.OK;
         }
 
-        //index the file and content (if the content is supported)
-        if (context.fileIngestIsCancelled()) {
-            return ProcessResult.OK;
-        }
-        indexer.indexFile(abstractFile, true);
-
         // Start searching if it hasn't started already
+        // (before indexing, so that hits found while indexing are known to the job)
         if (!startedSearching) {
             if (context.fileIngestIsCancelled()) {
                 return ProcessResult.OK;
@@ -264,9 +372,45 @@ public ProcessResult process(AbstractFile abstractFile) {
             startedSearching = true;
         }
 
+        //index the file and content (if the content is supported)
+        if (context.fileIngestIsCancelled()) {
+            return ProcessResult.OK;
+        }
+        if (keywordMatcher == null) {
+            indexFile(abstractFile, true);
+        } else {
+            InStreamKeywordMatcher.FileScan keywordScan = keywordMatcher.startFileScan(abstractFile);
+            indexer.setKeywordScan(keywordScan);
+            try {
+                indexFile(abstractFile, true);
+            } finally {
+                indexer.setKeywordScan(null);
+            }
+            keywordScan.finish();
+        }
+
         return ProcessResult.OK;
     }
 
+    /**
+     * Indexes a file and counts its final ingest status
+     *
+     * @param file         file to index
+     * @param indexContent false if only metadata should be indexed
+     */
+    private void indexFile(AbstractFile file, boolean indexContent) {
+        fileIngestStatus = null;
+        final long start = System.nanoTime();
+        try {
+            indexer.indexFile(file, indexContent);
+        } finally {
+            ingestStatusCounts.addIndexingTime(System.nanoTime() - start);
+            if (fileIngestStatus != null) {
+                ingestStatusCounts.increment(fileIngestStatus);
+            }
+        }
+    }
+
     /**
      * After all files are ingested, execute final index commit and final search
      * Cleanup resources, threads, timers
@@ -284,6 +428,14 @@ public void shutDown() {
             return;
         }
 
+        // artifacts posted by the other modules are indexed in the background,
+        // have them in the index for the final commit and final search
+        try {
+            Case.getCurrentCase().getServices().getBlackboard().awaitIndexing();
+        } catch (Blackboard.BlackboardException | IllegalStateException ex) {
+            logger.log(Level.WARNING, "Could not wait for artifacts to be indexed", ex); //NON-NLS
+        }
+
         // Remove from the search list and trigger final commit and final search
         SearchRunner.getInstance().endJob(jobId);
 
@@ -293,6 +445,12 @@ public void shutDown() {
             synchronized (ingestStatus) {
                 ingestStatus.remove(jobId);
             }
+            synchronized (contentAliasIndexes) {
+                contentAliasIndexes.remove(jobId);
+            }
+            synchronized (keywordMatchers) {
+                keywordMatchers.remove(jobId);
+            }
         }
 
         //log number of files / chunks in index
@@ -335,54 +493,32 @@ private void cleanup() {
      * Posts inbox message with summary of text_ingested files
      */
     private void postIndexSummary() {
-        int text_ingested = 0;
-        int metadata_ingested = 0;
-        int strings_ingested = 0;
-        int error_text = 0;
-        int error_index = 0;
-        int error_io = 0;
-
-        synchronized (ingestStatus) {
-            Map<Long, IngestStatus> ingestStatusForJob = ingestStatus.get(jobId);
-            if (ingestStatusForJob == null) {
-                return;
-            }
-            for (IngestStatus s : ingestStatusForJob.values()) {
-                switch (s) {
-                    case TEXT_INGESTED:
-                        text_ingested++;
-                        break;
-                    case METADATA_INGESTED:
-                        metadata_ingested++;
-                        break;
-                    case STRINGS_INGESTED:
-                        strings_ingested++;
-                        break;
-                    case SKIPPED_ERROR_TEXTEXTRACT:
-                        error_text++;
-                        break;
-                    case SKIPPED_ERROR_INDEXING:
-                        error_index++;
-                        break;
-                    case SKIPPED_ERROR_IO:
-                        error_io++;
-                        break;
-                    default:
-                       ;
-                }
-            }
+        if (ingestStatusCounts == null || ingestStatusCounts.getTotal() == 0) {
+            return;
         }
+        int text_ingested = ingestStatusCounts.get(IngestStatus.TEXT_INGESTED);
+        int metadata_ingested = ingestStatusCounts.get(IngestStatus.METADATA_INGESTED);
+        int alias_ingested = ingestStatusCounts.get(IngestStatus.ALIAS_INGESTED);
+        int strings_ingested = ingestStatusCounts.get(IngestStatus.STRINGS_INGESTED);
+        int error_text = ingestStatusCounts.get(IngestStatus.SKIPPED_ERROR_TEXTEXTRACT);
+        int error_index = ingestStatusCounts.get(IngestStatus.SKIPPED_ERROR_INDEXING);
+        int error_io = ingestStatusCounts.get(IngestStatus.SKIPPED_ERROR_IO);
 
         StringBuilder msg = new StringBuilder();
         msg.append("<table border=0><tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.knowFileHeaderLbl")).append("</td><td>").append(text_ingested).append("</td></tr>"); //NON-NLS
         msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.fileGenStringsHead")).append("</td><td>").append(strings_ingested).append("</td></tr>"); //NON-NLS
         msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.mdOnlyLbl")).append("</td><td>").append(metadata_ingested).append("</td></tr>"); //NON-NLS
+        if (contentAliasIndex != null) {
+            msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.aliasedLbl")).append("</td><td>").append(alias_ingested).append("</td></tr>"); //NON-NLS
+            msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.aliasedBytesLbl")).append("</td><td>").append(contentAliasIndex.getAliasedBytes()).append("</td></tr>"); //NON-NLS
+        }
         msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.idxErrLbl")).append("</td><td>").append(error_index).append("</td></tr>"); //NON-NLS
         msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.errTxtLbl")).append("</td><td>").append(error_text).append("</td></tr>"); //NON-NLS
         msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.errIoLbl")).append("</td><td>").append(error_io).append("</td></tr>"); //NON-NLS
         msg.append("</table>"); //NON-NLS
         String indexStats = msg.toString();
         logger.log(Level.INFO, "Keyword Indexing Completed: {0}", indexStats); //NON-NLS
+        logIndexProfileStats();
         services.postMessage(IngestMessage.createMessage(MessageType.INFO, KeywordSearchModuleFactory.getModuleName(), NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.kwIdxResultsLbl"), indexStats));
         if (error_index > 0) {
             MessageNotifyUtil.Notify.error(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.kwIdxErrsTitle"),
@@ -393,6 +529,23 @@ private void postIndexSummary() {
         }
     }
 
+    /**
+     * Logs the cost of indexing with the index profile of the case, to compare
+     * profiles: the time spent indexing files and the resulting index size
+     */
+    private void logIndexProfileStats() {
+        long indexSize;
+        try {
+            indexSize = KeywordSearch.getServer().queryIndexSize();
+        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+            logger.log(Level.WARNING, "Could not get the size of the index", ex); //NON-NLS
+            indexSize = -1;
+        }
+        logger.log(Level.INFO, "Index profile {0} (content_ws copied by schema: {1}): {2} files indexed in {3} ms (sum over all threads), index size {4} bytes", //NON-NLS
+                new Object[]{KeywordSearch.getServer().getIndexProfile(), KeywordSearch.getServer().isContentWsCopiedBySchema(),
+                    ingestStatusCounts.getTotal(), ingestStatusCounts.getIndexingTimeMs(), indexSize});
+    }
+
     /**
      * File indexer, processes and indexes known/allocated files,
      * unknown/unallocated files and directories accordingly
@@ -401,6 +554,18 @@ private class Indexer {
 
         private final Logger logger = Logger.getLogger(Indexer.class.getName());
 
+        /**
+         * Sets the in-stream keyword scan on all extractors
+         *
+         * @param keywordScan scan of the file about to be indexed, or null
+         */
+        private void setKeywordScan(InStreamKeywordMatcher.FileScan keywordScan) {
+            stringExtractor.setKeywordScan(keywordScan);
+            for (TextExtractor extractor : textExtractors) {
+                extractor.setKeywordScan(keywordScan);
+            }
+        }
+
         /**
          * Extract text with Tika or other text extraction modules (by
          * streaming) from the file Divide the file into chunks and index the
@@ -438,27 +603,28 @@ private boolean extractTextAndIndex(AbstractFile aFile, String detectedFormat) t
         /**
          * Extract strings using heuristics from the file and add to index.
          *
-         * @param aFile file to extract strings from, divide into chunks and
-         *              index
+         * @param aFile          file to extract strings from, divide into
+         *                       chunks and index
+         * @param detectedFormat mime-type detected, or null if none detected
          *
          * @return true if the file was text_ingested, false otherwise
          */
-        private boolean extractStringsAndIndex(AbstractFile aFile) {
+        private boolean extractStringsAndIndex(AbstractFile aFile, String detectedFormat) {
             try {
                 if (context.fileIngestIsCancelled()) {
                     return true;
                 }
-                if (stringExtractor.index(aFile, KeywordSearchIngestModule.this.context)) {
-                    putIngestStatus(jobId, aFile.getId(), IngestStatus.STRINGS_INGESTED);
+                if (stringExtractor.index(aFile, detectedFormat, KeywordSearchIngestModule.this.context)) {
+                    putIngestStatus(IngestStatus.STRINGS_INGESTED);
                     return true;
                 } else {
                     logger.log(Level.WARNING, "Failed to extract strings and ingest, file ''{0}'' (id: {1}).", new Object[]{aFile.getName(), aFile.getId()});  //NON-NLS
-                    putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_TEXTEXTRACT);
+                    putIngestStatus(IngestStatus.SKIPPED_ERROR_TEXTEXTRACT);
                     return false;
                 }
             } catch (IngesterException ex) {
                 logger.log(Level.WARNING, "Failed to extract strings and ingest, file '" + aFile.getName() + "' (id: " + aFile.getId() + ").", ex);  //NON-NLS
-                putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_INDEXING);
+                putIngestStatus(IngestStatus.SKIPPED_ERROR_INDEXING);
                 return false;
             }
         }
@@ -500,7 +666,7 @@ private void indexFile(AbstractFile aFile, boolean indexContent) {
                 if (context.fileIngestIsCancelled()) {
                     return;
                 }
-                extractStringsAndIndex(aFile);
+                extractStringsAndIndex(aFile, null);
                 return;
             }
 
@@ -513,14 +679,32 @@ private void indexFile(AbstractFile aFile, boolean indexContent) {
                         return;
                     }
                     ingester.ingest(aFile, false); //meta-data only
-                    putIngestStatus(jobId, aFile.getId(), IngestStatus.METADATA_INGESTED);
+                    putIngestStatus(IngestStatus.METADATA_INGESTED);
                 } catch (IngesterException ex) {
-                    putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_INDEXING);
+                    putIngestStatus(IngestStatus.SKIPPED_ERROR_INDEXING);
                     logger.log(Level.WARNING, "Unable to index meta-data for file: " + aFile.getId(), ex); //NON-NLS
                 }
                 return;
             }
 
+            // if the same content was already indexed, only index an alias to it
+            if (contentAliasIndex != null && aFile.getMd5Hash() != null) {
+                final long canonicalFileId = contentAliasIndex.getCanonicalFile(aFile);
+                if (canonicalFileId != aFile.getId()) {
+                    try {
+                        if (context.fileIngestIsCancelled()) {
+                            return;
+                        }
+                        ingester.ingestAlias(aFile, canonicalFileId);
+                        putIngestStatus(IngestStatus.ALIAS_INGESTED);
+                    } catch (IngesterException ex) {
+                        putIngestStatus(IngestStatus.SKIPPED_ERROR_INDEXING);
+                        logger.log(Level.WARNING, "Unable to index content alias for file: " + aFile.getId(), ex); //NON-NLS
+                    }
+                    return;
+                }
+            }
+
             String fileType;
             try {
                 if (context.fileIngestIsCancelled()) {
@@ -540,9 +724,9 @@ private void indexFile(AbstractFile aFile, boolean indexContent) {
                         return;
                     }
                     ingester.ingest(aFile, false); //meta-data only
-                    putIngestStatus(jobId, aFile.getId(), IngestStatus.METADATA_INGESTED);
+                    putIngestStatus(IngestStatus.METADATA_INGESTED);
                 } catch (IngesterException ex) {
-                    putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_INDEXING);
+                    putIngestStatus(IngestStatus.SKIPPED_ERROR_INDEXING);
                     logger.log(Level.WARNING, "Unable to index meta-data for file: " + aFile.getId(), ex); //NON-NLS
                 }
                 return;
@@ -557,30 +741,30 @@ private void indexFile(AbstractFile aFile, boolean indexContent) {
                     return;
                 }
                 if (fileType.equals("application/octet-stream")) {
-                    extractStringsAndIndex(aFile);
+                    extractStringsAndIndex(aFile, fileType);
                     return;
                 }
                 if (!extractTextAndIndex(aFile, fileType)) {
                     logger.log(Level.WARNING, "Text extractor not found for file. Extracting strings only. File: ''{0}'' (id:{1}).", new Object[]{aFile.getName(), aFile.getId()}); //NON-NLS
-                    putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_TEXTEXTRACT);
+                    putIngestStatus(IngestStatus.SKIPPED_ERROR_TEXTEXTRACT);
                 } else {
-                    putIngestStatus(jobId, aFile.getId(), IngestStatus.TEXT_INGESTED);
+                    putIngestStatus(IngestStatus.TEXT_INGESTED);
                     wasTextAdded = true;
                 }
 
             } catch (IngesterException e) {
                 logger.log(Level.INFO, "Could not extract text with Tika, " + aFile.getId() + ", " //NON-NLS
                         + aFile.getName(), e);
-                putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_INDEXING);
+                putIngestStatus(IngestStatus.SKIPPED_ERROR_INDEXING);
             } catch (Exception e) {
                 logger.log(Level.WARNING, "Error extracting text with Tika, " + aFile.getId() + ", " //NON-NLS
                         + aFile.getName(), e);
-                putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_TEXTEXTRACT);
+                putIngestStatus(IngestStatus.SKIPPED_ERROR_TEXTEXTRACT);
             }
 
             // if it wasn't supported or had an error, default to strings
             if (wasTextAdded == false) {
-                extractStringsAndIndex(aFile);
+                extractStringsAndIndex(aFile, fileType);
             }
         }
     }
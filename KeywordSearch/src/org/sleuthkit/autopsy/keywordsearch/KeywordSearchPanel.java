@@ -121,6 +121,13 @@ public void search() {
         }
         man = new KeywordSearchQueryDelegator(keywordLists);
 
+        if (!man.isSupportedByIndex()) {
+            KeywordSearchUtil.displayDialog(keywordSearchErrorDialogHeader, NbBundle.getMessage(this.getClass(),
+                    "AbstractKeywordSearchPerformer.search.unsupportedByIndexBody",
+                    KeywordSearch.getServer().getIndexProfile().getDisplayName()), KeywordSearchUtil.DIALOG_MESSAGE_TYPE.ERROR);
+            return;
+        }
+
         if (man.validate()) {
             man.execute();
         } else {
@@ -18,6 +18,7 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
+import java.util.List;
 import org.sleuthkit.datamodel.AbstractFile;
 
 /**
@@ -53,6 +54,13 @@ interface KeywordSearchQuery {
      */
     public void addFilter(KeywordQueryFilter filter);
 
+    /**
+     * Get the filters set on the query
+     *
+     * @return the filters, ANDed together
+     */
+    public List<KeywordQueryFilter> getFilters();
+
     /**
      * Set an optional SOLR field to narrow down the search
      *
@@ -113,6 +113,24 @@ public void execute() {
         searchResultWin.requestActive();
     }
 
+    /**
+     * Checks that the index of the case can serve the queries, see
+     * IndexProfile
+     *
+     * @return false if any query needs a field the index does not have, i.e.
+     *         a regular expression or substring query in a literal only index
+     */
+    public boolean isSupportedByIndex() {
+        IndexProfile profile = KeywordSearch.getServer().getIndexProfile();
+        for (KeywordSearchQuery tcq : queryDelegates) {
+            if (!profile.canServe(tcq)) {
+                logger.log(Level.WARNING, "Query cannot be served by an index with profile {0}: {1}", new Object[]{profile, tcq.getQueryString()}); //NON-NLS
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * validate the queries before they are run
      *
@@ -157,7 +157,7 @@ private boolean createFlatKeys(QueryRequest queryRequest, List<KeyValueQueryCont
          */
         QueryResults queryResults;
         try {
-            queryResults = keywordSearchQuery.performQuery();
+            queryResults = QueryResultCache.performQuery(keywordSearchQuery);
         } catch (NoOpenCoreException ex) {
             logger.log(Level.SEVERE, "Could not perform the query " + keywordSearchQuery.getQueryString(), ex); //NON-NLS
             return false;
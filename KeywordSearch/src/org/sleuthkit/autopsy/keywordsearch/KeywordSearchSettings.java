@@ -40,6 +40,27 @@ class KeywordSearchSettings {
     static final String PROPERTIES_SCRIPTS = NbBundle.getMessage(KeywordSearchSettings.class, "KeywordSearchSettings.propertiesScripts.text", MODULE_NAME);
     static final String SHOW_SNIPPETS = "showSnippets"; //NON-NLS
     static final boolean DEFAULT_SHOW_SNIPPETS = true;
+    static final String SEARCH_THREADS = "SearchThreads"; //NON-NLS
+    static final int DEFAULT_SEARCH_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    static final String COMBINED_REGEX_SEARCH = "CombinedRegexSearch"; //NON-NLS
+    static final boolean DEFAULT_COMBINED_REGEX_SEARCH = true;
+    static final String IN_STREAM_KEYWORD_MATCHING = "InStreamKeywordMatching"; //NON-NLS
+    static final boolean DEFAULT_IN_STREAM_KEYWORD_MATCHING = false;
+    static final String INDEX_BY_CONTENT_HASH = "IndexByContentHash"; //NON-NLS
+    static final boolean DEFAULT_INDEX_BY_CONTENT_HASH = false;
+    static final String SHARD_BY_DATA_SOURCE = "ShardByDataSource"; //NON-NLS
+    static final String INDEX_PROFILE = "IndexProfile"; //NON-NLS
+    static final IndexProfile DEFAULT_INDEX_PROFILE = IndexProfile.LITERAL_AND_REGEX;
+    static final boolean DEFAULT_SHARD_BY_DATA_SOURCE = false;
+    static final String EMBEDDED_SOLR = "EmbeddedSolr"; //NON-NLS
+    static final boolean DEFAULT_EMBEDDED_SOLR = false;
+    static final String SAMPLE_STRING_EXTRACT_SCRIPTS = "SampleStringExtractScripts"; //NON-NLS
+    static final boolean DEFAULT_SAMPLE_STRING_EXTRACT_SCRIPTS = false;
+    static final String SOLR_MAX_HEAP_MB = "SolrMaxHeapMB"; //NON-NLS
+    static final String SOLR_RAM_BUFFER_SIZE_MB = "SolrRamBufferSizeMB"; //NON-NLS
+    static final String SOLR_MERGE_FACTOR = "SolrMergeFactor"; //NON-NLS
+    static final String SOLR_CACHE_SIZE = "SolrCacheSize"; //NON-NLS
+    static final String SOLR_DOCUMENT_CACHE_SIZE = "SolrDocumentCacheSize"; //NON-NLS
     private static boolean skipKnown = true;
     private static final Logger logger = Logger.getLogger(KeywordSearchSettings.class.getName());
     private static UpdateFrequency UpdateFreq = UpdateFrequency.DEFAULT;
@@ -141,6 +162,309 @@ static boolean getShowSnippets() {
         }
     }
 
+    /**
+     * Sets the maximum number of keyword queries that may be sent to Solr
+     * concurrently. Takes effect the next time the search executor is created.
+     *
+     * @param numThreads number of search threads, at least 1
+     */
+    static void setSearchThreads(int numThreads) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, SEARCH_THREADS, Integer.toString(Math.max(1, numThreads)));
+    }
+
+    /**
+     * Gets the maximum number of keyword queries that may be sent to Solr
+     * concurrently.
+     *
+     * @return number of search threads, at least 1
+     */
+    static int getSearchThreads() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, SEARCH_THREADS)) {
+            try {
+                return Math.max(1, Integer.parseInt(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, SEARCH_THREADS)));
+            } catch (NumberFormatException ex) {
+                logger.log(Level.WARNING, "Could not parse property for SearchThreads, returning default value.", ex); //NON-NLS
+            }
+        }
+        return DEFAULT_SEARCH_THREADS;
+    }
+
+    /**
+     * Sets whether the regex keywords of a search are matched against the
+     * terms dictionary with one combined terms query, or with one terms query
+     * per regex.
+     *
+     * @param combined true to use one combined terms query
+     */
+    static void setCombinedRegexSearch(boolean combined) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, COMBINED_REGEX_SEARCH, Boolean.toString(combined));
+    }
+
+    /**
+     * Gets whether the regex keywords of a search are matched against the
+     * terms dictionary with one combined terms query.
+     *
+     * @return true if one combined terms query is used
+     */
+    static boolean getCombinedRegexSearch() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, COMBINED_REGEX_SEARCH)) {
+            return Boolean.parseBoolean(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, COMBINED_REGEX_SEARCH));
+        }
+        return DEFAULT_COMBINED_REGEX_SEARCH;
+    }
+
+    /**
+     * Sets whether literal keywords are matched against the text of each
+     * chunk while it is being indexed, in addition to the periodic searches.
+     *
+     * @param enabled true to match keywords while indexing
+     */
+    static void setInStreamKeywordMatching(boolean enabled) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, IN_STREAM_KEYWORD_MATCHING, Boolean.toString(enabled));
+    }
+
+    /**
+     * Gets whether literal keywords are matched against the text of each
+     * chunk while it is being indexed.
+     *
+     * @return true if keywords are matched while indexing
+     */
+    static boolean getInStreamKeywordMatching() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, IN_STREAM_KEYWORD_MATCHING)) {
+            return Boolean.parseBoolean(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, IN_STREAM_KEYWORD_MATCHING));
+        }
+        return DEFAULT_IN_STREAM_KEYWORD_MATCHING;
+    }
+
+    /**
+     * Sets whether the text of files with the same MD5 in a data source is
+     * indexed only once, with the other files indexed as aliases.
+     *
+     * @param enabled true to index by content hash
+     */
+    static void setIndexByContentHash(boolean enabled) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, INDEX_BY_CONTENT_HASH, Boolean.toString(enabled));
+    }
+
+    /**
+     * Gets whether the text of files with the same MD5 in a data source is
+     * indexed only once.
+     *
+     * @return true if indexing by content hash
+     */
+    static boolean getIndexByContentHash() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, INDEX_BY_CONTENT_HASH)) {
+            return Boolean.parseBoolean(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, INDEX_BY_CONTENT_HASH));
+        }
+        return DEFAULT_INDEX_BY_CONTENT_HASH;
+    }
+
+    /**
+     * Sets whether each data source of a single-user case is indexed in its
+     * own Solr core.
+     *
+     * @param enabled true to index data sources in separate cores
+     */
+    static void setShardByDataSource(boolean enabled) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, SHARD_BY_DATA_SOURCE, Boolean.toString(enabled));
+    }
+
+    /**
+     * Gets whether each data source of a single-user case is indexed in its
+     * own Solr core. Cases that already have data source cores keep using
+     * them regardless of this setting.
+     *
+     * @return true if indexing data sources in separate cores
+     */
+    static boolean getShardByDataSource() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, SHARD_BY_DATA_SOURCE)) {
+            return Boolean.parseBoolean(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, SHARD_BY_DATA_SOURCE));
+        }
+        return DEFAULT_SHARD_BY_DATA_SOURCE;
+    }
+
+    /**
+     * Sets the index profile of cases created from now on
+     *
+     * @param profile the profile
+     */
+    static void setIndexProfile(IndexProfile profile) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, INDEX_PROFILE, profile.name());
+    }
+
+    /**
+     * Gets the index profile of new cases. Existing cases keep the profile
+     * their index was created with.
+     *
+     * @return the profile
+     */
+    static IndexProfile getIndexProfile() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, INDEX_PROFILE)) {
+            try {
+                return IndexProfile.valueOf(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, INDEX_PROFILE));
+            } catch (IllegalArgumentException ex) {
+                logger.log(Level.WARNING, "Invalid index profile setting, using default", ex); //NON-NLS
+            }
+        }
+        return DEFAULT_INDEX_PROFILE;
+    }
+
+    /**
+     * Sets whether the indexes of single-user cases are run inside the Autopsy
+     * process instead of by a local Solr server. Takes effect on restart.
+     *
+     * @param enabled true to use embedded Solr
+     */
+    static void setEmbeddedSolr(boolean enabled) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, EMBEDDED_SOLR, Boolean.toString(enabled));
+    }
+
+    /**
+     * Gets whether the indexes of single-user cases are run inside the
+     * Autopsy process instead of by a local Solr server.
+     *
+     * @return true if using embedded Solr
+     */
+    static boolean getEmbeddedSolr() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, EMBEDDED_SOLR)) {
+            return Boolean.parseBoolean(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, EMBEDDED_SOLR));
+        }
+        return DEFAULT_EMBEDDED_SOLR;
+    }
+
+    /**
+     * Sets whether the scripts to extract strings of are chosen per file from
+     * samples of the file, among the configured scripts.
+     *
+     * @param enabled true to sample files, false to always extract all
+     *                configured scripts
+     */
+    static void setSampleStringExtractScripts(boolean enabled) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, SAMPLE_STRING_EXTRACT_SCRIPTS, Boolean.toString(enabled));
+    }
+
+    /**
+     * Gets whether the scripts to extract strings of are chosen per file from
+     * samples of the file, see ScriptSampler.
+     *
+     * @return true if sampling files
+     */
+    static boolean getSampleStringExtractScripts() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, SAMPLE_STRING_EXTRACT_SCRIPTS)) {
+            return Boolean.parseBoolean(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, SAMPLE_STRING_EXTRACT_SCRIPTS));
+        }
+        return DEFAULT_SAMPLE_STRING_EXTRACT_SCRIPTS;
+    }
+
+    /**
+     * Gets the maximum heap size of the local Solr server, overriding the size
+     * derived from the RAM of the machine.
+     *
+     * @return heap size in MB, or 0 if it is derived automatically
+     */
+    static int getSolrMaxHeapMb() {
+        return getSolrResourceOverride(SOLR_MAX_HEAP_MB);
+    }
+
+    /**
+     * Sets the maximum heap size of the local Solr server. Takes effect the
+     * next time the server is started.
+     *
+     * @param heapMb heap size in MB, or 0 to derive it automatically
+     */
+    static void setSolrMaxHeapMb(int heapMb) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, SOLR_MAX_HEAP_MB, Integer.toString(heapMb));
+    }
+
+    /**
+     * Gets the indexing RAM buffer size of the local Solr server.
+     *
+     * @return buffer size in MB, or 0 if it is derived automatically
+     */
+    static int getSolrRamBufferSizeMb() {
+        return getSolrResourceOverride(SOLR_RAM_BUFFER_SIZE_MB);
+    }
+
+    /**
+     * Sets the indexing RAM buffer size of the local Solr server. Takes effect
+     * the next time the server is started.
+     *
+     * @param bufferMb buffer size in MB, or 0 to derive it automatically
+     */
+    static void setSolrRamBufferSizeMb(int bufferMb) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, SOLR_RAM_BUFFER_SIZE_MB, Integer.toString(bufferMb));
+    }
+
+    /**
+     * Gets the merge factor of the local Solr server.
+     *
+     * @return merge factor, or 0 if it is derived automatically
+     */
+    static int getSolrMergeFactor() {
+        return getSolrResourceOverride(SOLR_MERGE_FACTOR);
+    }
+
+    /**
+     * Sets the merge factor of the local Solr server. Takes effect the next
+     * time the server is started.
+     *
+     * @param mergeFactor merge factor, or 0 to derive it automatically
+     */
+    static void setSolrMergeFactor(int mergeFactor) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, SOLR_MERGE_FACTOR, Integer.toString(mergeFactor));
+    }
+
+    /**
+     * Gets the number of entries of the filter and query result caches of the
+     * local Solr server.
+     *
+     * @return cache size, or 0 if it is derived automatically
+     */
+    static int getSolrCacheSize() {
+        return getSolrResourceOverride(SOLR_CACHE_SIZE);
+    }
+
+    /**
+     * Sets the number of entries of the filter and query result caches of the
+     * local Solr server. Takes effect the next time the server is started.
+     *
+     * @param cacheSize cache size, or 0 to derive it automatically
+     */
+    static void setSolrCacheSize(int cacheSize) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, SOLR_CACHE_SIZE, Integer.toString(cacheSize));
+    }
+
+    /**
+     * Gets the number of entries of the document cache of the local Solr
+     * server.
+     *
+     * @return cache size, or 0 if it is derived automatically
+     */
+    static int getSolrDocumentCacheSize() {
+        return getSolrResourceOverride(SOLR_DOCUMENT_CACHE_SIZE);
+    }
+
+    /**
+     * Sets the number of entries of the document cache of the local Solr
+     * server. Takes effect the next time the server is started.
+     *
+     * @param cacheSize cache size, or 0 to derive it automatically
+     */
+    static void setSolrDocumentCacheSize(int cacheSize) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, SOLR_DOCUMENT_CACHE_SIZE, Integer.toString(cacheSize));
+    }
+
+    private static int getSolrResourceOverride(String key) {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, key)) {
+            try {
+                return Math.max(0, Integer.parseInt(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, key)));
+            } catch (NumberFormatException ex) {
+                logger.log(Level.WARNING, "Could not parse property for " + key + ", using automatic value.", ex); //NON-NLS
+            }
+        }
+        return 0;
+    }
+
     /**
      * gets the currently set scripts to use
      *
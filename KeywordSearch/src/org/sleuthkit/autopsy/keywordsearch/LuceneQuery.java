@@ -21,18 +21,19 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.EscapeUtil;
@@ -42,7 +43,7 @@
 import org.sleuthkit.datamodel.BlackboardArtifact.ARTIFACT_TYPE;
 import org.sleuthkit.datamodel.BlackboardAttribute;
 import org.sleuthkit.datamodel.BlackboardAttribute.ATTRIBUTE_TYPE;
-import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
 import org.sleuthkit.datamodel.TskException;
 
 /**
@@ -61,6 +62,10 @@ class LuceneQuery implements KeywordSearchQuery {
     private String field = null;
     private static final int MAX_RESULTS = 20000;
     static final int SNIPPET_LENGTH = 50;
+    // the hits of a group of keywords are assigned by query() pseudo-fields
+    private static final String GROUP_KEYWORD_PARAM = "kwq"; //NON-NLS
+    private static final String GROUP_KEYWORD_FIELD = "kwf"; //NON-NLS
+    private static final int SNIPPET_BATCH_SIZE = 256;
     //can use different highlight schema fields for regex and literal search
     static final String HIGHLIGHT_FIELD_LITERAL = Server.Schema.TEXT.toString();
     static final String HIGHLIGHT_FIELD_REGEX = Server.Schema.TEXT.toString();
@@ -89,6 +94,11 @@ public void addFilter(KeywordQueryFilter filter) {
         this.filters.add(filter);
     }
 
+    @Override
+    public List<KeywordQueryFilter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
     @Override
     public void setField(String field) {
         this.field = field;
@@ -132,7 +142,9 @@ public QueryResults performQuery() throws NoOpenCoreException {
         QueryResults results = new QueryResults(this, keywordList);
         //in case of single term literal query there is only 1 term
         boolean showSnippets = KeywordSearchSettings.getShowSnippets();
-        results.addResult(new Keyword(keywordString, true), performLuceneQuery(showSnippets));
+        List<KeywordHit> contentHits = new ArrayList<>();
+        List<KeywordHit> hits = performLuceneQuery(showSnippets, contentHits);
+        results.addResult(new Keyword(keywordString, true), ContentAliasIndex.addAliasHits(hits, contentHits));
 
         return results;
     }
@@ -190,69 +202,290 @@ public KeywordCachedArtifact writeSingleFileHitsToBlackBoard(String termHit, Key
     }
 
     /**
-     * Perform the query and return results of unique files.
+     * Perform the query and return results of unique files. Results are
+     * fetched in pages of MAX_RESULTS using a cursor, so Solr does not have to
+     * collect and skip the previous pages for each page, and only one page is
+     * held in memory at a time.
      *
-     * @param snippets True if results should have a snippet
+     * @param snippets    True if results should have a snippet
+     * @param contentHits Filled with the first hit in a chunk of text of each
+     *                    file with such a hit, i.e., not in the parent
+     *                    document of the file, for the hits of its aliases
      *
      * @return list of ContentHit objects. One per file with hit (ignores
      *         multiple hits of the word in the same doc)
      *
      * @throws NoOpenCoreException
      */
-    private List<KeywordHit> performLuceneQuery(boolean snippets) throws NoOpenCoreException {
+    private List<KeywordHit> performLuceneQuery(boolean snippets, List<KeywordHit> contentHits) throws NoOpenCoreException {
         List<KeywordHit> matches = new ArrayList<>();
-        boolean allMatchesFetched = false;
         final Server solrServer = KeywordSearch.getServer();
 
-        SolrQuery q = createAndConfigureSolrQuery(snippets);
-        QueryResponse response;
-        SolrDocumentList resultList;
-        Map<String, Map<String, List<String>>> highlightResponse;
-        Set<SolrDocument> uniqueSolrDocumentsWithHits;
-
         try {
-            response = solrServer.query(q, METHOD.POST);
-
-            resultList = response.getResults();
-
-            // objectId_chunk -> "text" -> List of previews
-            highlightResponse = response.getHighlighting();
-
-            // get the unique set of files with hits
-            uniqueSolrDocumentsWithHits = filterOneHitPerDocument(resultList);
-        } catch (KeywordSearchModuleException ex) {
-            logger.log(Level.SEVERE, "Error executing Lucene Solr Query: " + keywordString, ex); //NON-NLS            
-            MessageNotifyUtil.Notify.error(NbBundle.getMessage(Server.class, "Server.query.exception.msg", keywordString), ex.getCause().getMessage());
+            Case.getCurrentCase().getSleuthkitCase();
+        } catch (IllegalStateException ex) {
+            //no case open, must be just closed
             return matches;
         }
 
-        // cycle through results in sets of MAX_RESULTS
-        for (int start = 0; !allMatchesFetched; start = start + MAX_RESULTS) {
-            q.setStart(start);
-
-            allMatchesFetched = start + MAX_RESULTS >= resultList.getNumFound();
+        SolrQuery q = createAndConfigureSolrQuery(snippets);
+        // a cursor requires a sort on the unique key. This is a string
+        // comparison, so chunk 10 comes before chunk 9, but it means that the
+        // same chunk is consistently picked for an object each time.
+        q.setSort(SolrQuery.SortClause.asc(Server.Schema.ID.toString()));
+
+        // objects that already have a hit, only the first chunk is kept
+        Set<Long> objectsWithHits = new HashSet<>();
+        Set<Long> objectsWithContentHits = new HashSet<>();
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        boolean allMatchesFetched = false;
+        while (!allMatchesFetched) {
+            q.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
 
-            SleuthkitCase sleuthkitCase;
+            QueryResponse response;
             try {
-                sleuthkitCase = Case.getCurrentCase().getSleuthkitCase();
-            } catch (IllegalStateException ex) {
-                //no case open, must be just closed
+                response = solrServer.query(q, METHOD.POST);
+            } catch (KeywordSearchModuleException ex) {
+                logger.log(Level.SEVERE, "Error executing Lucene Solr Query: " + keywordString, ex); //NON-NLS            
+                MessageNotifyUtil.Notify.error(NbBundle.getMessage(Server.class, "Server.query.exception.msg", keywordString), ex.getCause().getMessage());
                 return matches;
             }
 
-            for (SolrDocument resultDoc : uniqueSolrDocumentsWithHits) {
+            // objectId_chunk -> "text" -> List of previews
+            Map<String, Map<String, List<String>>> highlightResponse = response.getHighlighting();
+
+            for (SolrDocument resultDoc : response.getResults()) {
+                final String docId = resultDoc.getFieldValue(Server.Schema.ID.toString()).toString();
+                final long objectId = getSolrObjectId(docId);
+                final boolean isContentChunk = docId.indexOf(Server.ID_CHUNK_SEP) != -1;
+                final boolean isFirstHit = objectsWithHits.add(objectId);
+                final boolean isFirstContentHit = isContentChunk && objectsWithContentHits.add(objectId);
+                if (!isFirstHit && !isFirstContentHit) {
+                    continue;
+                }
                 KeywordHit contentHit;
                 try {
-                    contentHit = createKeywordtHit(resultDoc, highlightResponse, sleuthkitCase);
+                    contentHit = createKeywordtHit(resultDoc, highlightResponse);
                 } catch (TskException ex) {
                     return matches;
                 }
-                matches.add(contentHit);
+                if (isFirstHit) {
+                    matches.add(contentHit);
+                }
+                if (isFirstContentHit) {
+                    contentHits.add(contentHit);
+                }
             }
+
+            // the cursor does not move once all results have been returned
+            final String nextCursorMark = response.getNextCursorMark();
+            allMatchesFetched = nextCursorMark == null || nextCursorMark.equals(cursorMark);
+            cursorMark = nextCursorMark;
         }
         return matches;
     }
 
+    /**
+     * Gets the object id from a Solr document id of the form ObjectId_Chunk
+     *
+     * @param solrDocumentId the Solr document id
+     *
+     * @return the object id
+     */
+    private static long getSolrObjectId(String solrDocumentId) {
+        final int separatorIndex = solrDocumentId.indexOf(Server.ID_CHUNK_SEP);
+        if (separatorIndex != -1) {
+            return Long.parseLong(solrDocumentId.substring(0, separatorIndex));
+        }
+        return Long.parseLong(solrDocumentId);
+    }
+
+    /**
+     * Checks whether any of the given literal keywords has a hit, using a
+     * single OR query. Each keyword is escaped and quoted the same way
+     * performQuery() does it for a single keyword, so a false result means that
+     * none of the individual queries would return anything.
+     *
+     * @param keywords literal keywords to check
+     * @param filters  filters to apply, ANDed together
+     *
+     * @return true if at least one of the keywords has a hit, or if the check
+     *         could not be performed
+     *
+     * @throws NoOpenCoreException
+     */
+    static boolean hasAnyHits(Collection<Keyword> keywords, List<KeywordQueryFilter> filters) throws NoOpenCoreException {
+        StringBuilder sb = new StringBuilder();
+        for (Keyword keyword : keywords) {
+            if (sb.length() > 0) {
+                sb.append(" OR "); //NON-NLS
+            }
+            sb.append(KeywordSearchUtil.quoteQuery(KeywordSearchUtil.escapeLuceneQuery(keyword.getQuery())));
+        }
+
+        SolrQuery q = new SolrQuery();
+        q.setShowDebugInfo(DEBUG);
+        q.setQuery(sb.toString());
+        q.setRows(0);
+        for (KeywordQueryFilter filter : filters) {
+            q.addFilterQuery(filter.toString());
+            if (filter.getFilterType() == KeywordQueryFilter.FilterType.DATA_SOURCE) {
+                Server.routeToDataSources(q, filter.getIdFilters());
+            }
+        }
+
+        try {
+            return KeywordSearch.getServer().query(q, METHOD.POST).getResults().getNumFound() > 0;
+        } catch (KeywordSearchModuleException ex) {
+            // let the caller fall back to one query per keyword
+            logger.log(Level.WARNING, "Error executing grouped Lucene Solr Query", ex); //NON-NLS
+            return true;
+        }
+    }
+
+    /**
+     * Gets the hits of each of a group of literal keywords with a single OR
+     * query, paged with a cursor like performQuery(). The score of each
+     * keyword query for a document is returned with the document as a
+     * query() pseudo-field, so the hits are assigned to the keywords here
+     * instead of querying each keyword. Each keyword is escaped and quoted the
+     * same way performQuery() does it for a single keyword, and as there only
+     * the first hit of each object is kept, and the hits of the aliases of the
+     * objects are added.
+     *
+     * @param keywords literal keywords
+     * @param filters  filters to apply, ANDed together
+     * @param snippets true if the hits should have snippets. They are queried
+     *                 and cached as querySnippets() does it for regex hits,
+     *                 one query per keyword with hits.
+     *
+     * @return the hits of each keyword, in the order of the keywords, or null
+     *         if the query failed and the caller should fall back to one
+     *         query per keyword
+     *
+     * @throws NoOpenCoreException
+     */
+    static List<List<KeywordHit>> queryHitsOfEach(List<Keyword> keywords, List<KeywordQueryFilter> filters, boolean snippets) throws NoOpenCoreException {
+        final int numKeywords = keywords.size();
+        List<List<KeywordHit>> hitsOfEach = new ArrayList<>();
+        List<List<KeywordHit>> contentHitsOfEach = new ArrayList<>();
+        List<Set<Long>> objectsWithHits = new ArrayList<>();
+        List<Set<Long>> objectsWithContentHits = new ArrayList<>();
+        for (int i = 0; i < numKeywords; ++i) {
+            hitsOfEach.add(new ArrayList<>());
+            contentHitsOfEach.add(new ArrayList<>());
+            objectsWithHits.add(new HashSet<>());
+            objectsWithContentHits.add(new HashSet<>());
+        }
+        try {
+            Case.getCurrentCase().getSleuthkitCase();
+        } catch (IllegalStateException ex) {
+            //no case open, must be just closed
+            return hitsOfEach;
+        }
+
+        SolrQuery q = new SolrQuery();
+        q.setShowDebugInfo(DEBUG);
+        StringBuilder sb = new StringBuilder();
+        List<String> fields = new ArrayList<>();
+        fields.add(Server.Schema.ID.toString());
+        for (int i = 0; i < numKeywords; ++i) {
+            final String keywordQueryStr = KeywordSearchUtil.quoteQuery(KeywordSearchUtil.escapeLuceneQuery(keywords.get(i).getQuery()));
+            sb.append(i == 0 ? "" : " OR ").append(keywordQueryStr); //NON-NLS
+            // 0 if the document does not match the keyword
+            q.set(GROUP_KEYWORD_PARAM + i, keywordQueryStr);
+            fields.add(GROUP_KEYWORD_FIELD + i + ":query($" + GROUP_KEYWORD_PARAM + i + ",0)"); //NON-NLS
+        }
+        q.setQuery(sb.toString());
+        q.setFields(fields.toArray(new String[fields.size()]));
+        q.setRows(MAX_RESULTS);
+        q.setSort(SolrQuery.SortClause.asc(Server.Schema.ID.toString()));
+        for (KeywordQueryFilter filter : filters) {
+            q.addFilterQuery(filter.toString());
+            if (filter.getFilterType() == KeywordQueryFilter.FilterType.DATA_SOURCE) {
+                Server.routeToDataSources(q, filter.getIdFilters());
+            }
+        }
+
+        final Server solrServer = KeywordSearch.getServer();
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        boolean allMatchesFetched = false;
+        while (!allMatchesFetched) {
+            q.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+
+            QueryResponse response;
+            try {
+                response = solrServer.query(q, METHOD.POST);
+            } catch (KeywordSearchModuleException | RuntimeException ex) {
+                logger.log(Level.WARNING, "Error executing grouped Lucene Solr Query", ex); //NON-NLS
+                return null;
+            }
+
+            for (SolrDocument resultDoc : response.getResults()) {
+                final String docId = resultDoc.getFieldValue(Server.Schema.ID.toString()).toString();
+                final long objectId = getSolrObjectId(docId);
+                final boolean isContentChunk = docId.indexOf(Server.ID_CHUNK_SEP) != -1;
+                KeywordHit hit = null;
+                for (int i = 0; i < numKeywords; ++i) {
+                    final Object score = resultDoc.getFieldValue(GROUP_KEYWORD_FIELD + i);
+                    if (!(score instanceof Number) || ((Number) score).floatValue() <= 0) {
+                        continue;
+                    }
+                    final boolean isFirstHit = objectsWithHits.get(i).add(objectId);
+                    final boolean isFirstContentHit = isContentChunk && objectsWithContentHits.get(i).add(objectId);
+                    if (!isFirstHit && !isFirstContentHit) {
+                        continue;
+                    }
+                    if (hit == null) {
+                        try {
+                            hit = new KeywordHit(docId, "");
+                        } catch (TskCoreException ex) {
+                            logger.log(Level.WARNING, "Error getting the content of keyword hit " + docId, ex); //NON-NLS
+                            break;
+                        }
+                    }
+                    if (isFirstHit) {
+                        hitsOfEach.get(i).add(hit);
+                    }
+                    if (isFirstContentHit) {
+                        contentHitsOfEach.get(i).add(hit);
+                    }
+                }
+            }
+
+            // the cursor does not move once all results have been returned
+            final String nextCursorMark = response.getNextCursorMark();
+            allMatchesFetched = nextCursorMark == null || nextCursorMark.equals(cursorMark);
+            cursorMark = nextCursorMark;
+        }
+
+        for (int i = 0; i < numKeywords; ++i) {
+            List<KeywordHit> hits = hitsOfEach.get(i);
+            List<KeywordHit> contentHits = contentHitsOfEach.get(i);
+            if (snippets && !hits.isEmpty()) {
+                // before the alias hits are added, they copy the snippets
+                final String snippetQuery = KeywordSearchUtil.escapeLuceneQuery(keywords.get(i).getQuery());
+                hits = addSnippets(snippetQuery, hits);
+                contentHits = addSnippets(snippetQuery, contentHits);
+            }
+            hitsOfEach.set(i, ContentAliasIndex.addAliasHits(hits, contentHits));
+        }
+        return hitsOfEach;
+    }
+
+    private static List<KeywordHit> addSnippets(String snippetQuery, List<KeywordHit> hits) throws NoOpenCoreException {
+        List<KeywordHit> hitsWithSnippets = new ArrayList<>();
+        for (int start = 0; start < hits.size(); start += SNIPPET_BATCH_SIZE) {
+            List<KeywordHit> batch = hits.subList(start, Math.min(hits.size(), start + SNIPPET_BATCH_SIZE));
+            Map<KeywordHit, String> batchSnippets = querySnippets(snippetQuery, new LinkedHashSet<>(batch), true, true);
+            for (KeywordHit hit : batch) {
+                final String snippet = batchSnippets.get(hit);
+                hitsWithSnippets.add(snippet == null || snippet.isEmpty() ? hit : hit.withSnippet(snippet));
+            }
+        }
+        return hitsWithSnippets;
+    }
+
     /**
      * Create the query object for the stored keyword
      *
@@ -279,6 +512,9 @@ private SolrQuery createAndConfigureSolrQuery(boolean snippets) {
 
         for (KeywordQueryFilter filter : filters) {
             q.addFilterQuery(filter.toString());
+            if (filter.getFilterType() == KeywordQueryFilter.FilterType.DATA_SOURCE) {
+                Server.routeToDataSources(q, filter.getIdFilters());
+            }
         }
 
         if (snippets) {
@@ -305,37 +541,7 @@ private SolrQuery createAndConfigureSolrQuery(boolean snippets) {
         return q;
     }
 
-    /**
-     * Create the minimum set of documents. Ignores chunk IDs. Only one hit per
-     * file in results.
-     *
-     * @param resultList
-     *
-     * @return
-     */
-    private Set<SolrDocument> filterOneHitPerDocument(SolrDocumentList resultList) {
-        // sort the list so that we consistently pick the same chunk each time.
-        // note this sort is doing a string comparison and not an integer comparison, so 
-        // chunk 10 will be smaller than chunk 9. 
-        Collections.sort(resultList, new Comparator<SolrDocument>() {
-            @Override
-            public int compare(SolrDocument left, SolrDocument right) {
-                // ID is in the form of ObjectId_Chunk
-                String leftID = left.getFieldValue(Server.Schema.ID.toString()).toString();
-                String rightID = right.getFieldValue(Server.Schema.ID.toString()).toString();
-                return leftID.compareTo(rightID);
-            }
-        });
-
-        // NOTE: We could probably just iterate through the list and compare each ID with the
-        // previous ID to get the unique documents faster than using this set now that the list
-        // is sorted.
-        Set<SolrDocument> solrDocumentsWithMatches = new TreeSet<>(new SolrDocumentComparatorIgnoresChunkId());
-        solrDocumentsWithMatches.addAll(resultList);
-        return solrDocumentsWithMatches;
-    }
-
-    private KeywordHit createKeywordtHit(SolrDocument solrDoc, Map<String, Map<String, List<String>>> highlightResponse, SleuthkitCase caseDb) throws TskException {
+    private KeywordHit createKeywordtHit(SolrDocument solrDoc, Map<String, Map<String, List<String>>> highlightResponse) throws TskException {
         /**
          * Get the first snippet from the document if keyword search is
          * configured to use snippets.
@@ -386,8 +592,101 @@ public static String querySnippet(String query, long solrObjectId, boolean isReg
      * @return
      */
     public static String querySnippet(String query, long solrObjectId, int chunkID, boolean isRegex, boolean group) throws NoOpenCoreException {
+        final String snippetKey = isRegex + ":" + group + ":" + solrObjectId + "_" + chunkID + ":" + query;
+        String snippet = TextViewerCache.getSnippet(snippetKey);
+        if (snippet != null) {
+            return snippet;
+        }
+        final long cacheGeneration = TextViewerCache.getGeneration();
         Server solrServer = KeywordSearch.getServer();
 
+        final String highlightField = isRegex ? LuceneQuery.HIGHLIGHT_FIELD_REGEX : LuceneQuery.HIGHLIGHT_FIELD_LITERAL;
+        SolrQuery q = createSnippetQuery(query, isRegex, group);
+
+        final String contentIDStr = getSnippetDocumentId(solrObjectId, chunkID);
+        String idQuery = Server.Schema.ID.toString() + ":" + KeywordSearchUtil.escapeLuceneQuery(contentIDStr);
+        q.addFilterQuery(idQuery);
+
+        try {
+            QueryResponse response = solrServer.query(q, METHOD.POST);
+            snippet = getSnippet(response.getHighlighting(), contentIDStr, highlightField);
+            TextViewerCache.putSnippet(snippetKey, snippet, cacheGeneration);
+            return snippet;
+        } catch (NoOpenCoreException ex) {
+            logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex); //NON-NLS
+            throw ex;
+        } catch (KeywordSearchModuleException ex) {
+            logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex); //NON-NLS
+            return "";
+        }
+    }
+
+    /**
+     * Gets the snippets of a query for a batch of hits with one Solr query,
+     * see querySnippet()
+     *
+     * @param query   the keyword query for text to highlight. Lucene special
+     *                chars should already be escaped.
+     * @param hits    the hits, at most MAX_RESULTS
+     * @param isRegex whether the query is a regular expression
+     * @param group   whether the query should look for all terms grouped
+     *                together in the query order, or not
+     *
+     * @return the snippet of each hit, empty if there is none
+     *
+     * @throws NoOpenCoreException
+     */
+    static Map<KeywordHit, String> querySnippets(String query, Collection<KeywordHit> hits, boolean isRegex, boolean group) throws NoOpenCoreException {
+        Map<KeywordHit, String> snippets = new HashMap<>();
+        Map<KeywordHit, String> snippetKeys = new HashMap<>();
+        StringBuilder idQuery = new StringBuilder();
+        for (KeywordHit hit : hits) {
+            final String snippetKey = isRegex + ":" + group + ":" + hit.getSolrObjectId() + "_" + hit.getChunkId() + ":" + query;
+            String snippet = TextViewerCache.getSnippet(snippetKey);
+            if (snippet != null) {
+                snippets.put(hit, snippet);
+            } else {
+                snippetKeys.put(hit, snippetKey);
+                idQuery.append(idQuery.length() == 0 ? "" : " OR ") //NON-NLS
+                        .append(KeywordSearchUtil.escapeLuceneQuery(getSnippetDocumentId(hit.getSolrObjectId(), hit.getChunkId())));
+            }
+        }
+        if (snippetKeys.isEmpty()) {
+            return snippets;
+        }
+        final long cacheGeneration = TextViewerCache.getGeneration();
+
+        final String highlightField = isRegex ? LuceneQuery.HIGHLIGHT_FIELD_REGEX : LuceneQuery.HIGHLIGHT_FIELD_LITERAL;
+        SolrQuery q = createSnippetQuery(query, isRegex, group);
+        q.addFilterQuery(Server.Schema.ID.toString() + ":(" + idQuery.toString() + ")"); //NON-NLS
+        q.setFields(Server.Schema.ID.toString());
+        q.setRows(snippetKeys.size());
+
+        Map<String, Map<String, List<String>>> responseHighlight;
+        try {
+            responseHighlight = KeywordSearch.getServer().query(q, METHOD.POST).getHighlighting();
+        } catch (KeywordSearchModuleException | RuntimeException ex) {
+            // e.g. a SolrException for a bad highlight, the hits are written without snippets
+            logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex); //NON-NLS
+            responseHighlight = null;
+        }
+        for (Map.Entry<KeywordHit, String> entry : snippetKeys.entrySet()) {
+            final KeywordHit hit = entry.getKey();
+            String snippet = "";
+            if (responseHighlight != null) {
+                snippet = getSnippet(responseHighlight, getSnippetDocumentId(hit.getSolrObjectId(), hit.getChunkId()), highlightField);
+                TextViewerCache.putSnippet(entry.getValue(), snippet, cacheGeneration);
+            }
+            snippets.put(hit, snippet);
+        }
+        return snippets;
+    }
+
+    /**
+     * Creates a query that highlights the snippet of a query, without the
+     * filter on the documents
+     */
+    private static SolrQuery createSnippetQuery(String query, boolean isRegex, boolean group) {
         String highlightField;
         if (isRegex) {
             highlightField = LuceneQuery.HIGHLIGHT_FIELD_REGEX;
@@ -418,18 +717,7 @@ public static String querySnippet(String query, long solrObjectId, int chunkID,
         }
 
         q.setQuery(queryStr);
-
-        String contentIDStr;
-
-        if (chunkID == 0) {
-            contentIDStr = Long.toString(solrObjectId);
-        } else {
-            contentIDStr = Server.getChunkIdString(solrObjectId, chunkID);
-        }
-
-        String idQuery = Server.Schema.ID.toString() + ":" + KeywordSearchUtil.escapeLuceneQuery(contentIDStr);
         q.setShowDebugInfo(DEBUG); //debug
-        q.addFilterQuery(idQuery);
         q.addHighlightField(highlightField);
         //q.setHighlightSimplePre("&laquo;"); //original highlighter only
         //q.setHighlightSimplePost("&raquo;");  //original highlighter only
@@ -448,28 +736,27 @@ public static String querySnippet(String query, long solrObjectId, int chunkID,
         //docs says makes sense for the original Highlighter only, but not really
         //analyze all content SLOW! consider lowering
         q.setParam("hl.maxAnalyzedChars", Server.HL_ANALYZE_CHARS_UNLIMITED);  //NON-NLS
+        return q;
+    }
 
-        try {
-            QueryResponse response = solrServer.query(q, METHOD.POST);
-            Map<String, Map<String, List<String>>> responseHighlight = response.getHighlighting();
-            Map<String, List<String>> responseHighlightID = responseHighlight.get(contentIDStr);
-            if (responseHighlightID == null) {
-                return "";
-            }
+    private static String getSnippetDocumentId(long solrObjectId, int chunkID) {
+        if (chunkID == 0) {
+            return Long.toString(solrObjectId);
+        } else {
+            return Server.getChunkIdString(solrObjectId, chunkID);
+        }
+    }
+
+    private static String getSnippet(Map<String, Map<String, List<String>>> responseHighlight, String contentIDStr, String highlightField) {
+        Map<String, List<String>> responseHighlightID = responseHighlight.get(contentIDStr);
+        if (responseHighlightID != null) {
             List<String> contentHighlights = responseHighlightID.get(highlightField);
-            if (contentHighlights == null) {
-                return "";
-            } else {
+            if (contentHighlights != null) {
                 // extracted content is HTML-escaped, but snippet goes in a plain text field
                 return EscapeUtil.unEscapeHtml(contentHighlights.get(0)).trim();
             }
-        } catch (NoOpenCoreException ex) {
-            logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex); //NON-NLS
-            throw ex;
-        } catch (KeywordSearchModuleException ex) {
-            logger.log(Level.WARNING, "Error executing Lucene Solr Query: " + query, ex); //NON-NLS
-            return "";
         }
+        return "";
     }
 
     @Override
@@ -477,36 +764,4 @@ public KeywordList getKeywordList() {
         return keywordList;
     }
 
-    /**
-     * Compares SolrDocuments based on their ID's. Two SolrDocuments with
-     * different chunk numbers are considered equal.
-     */
-    private class SolrDocumentComparatorIgnoresChunkId implements Comparator<SolrDocument> {
-
-        @Override
-        public int compare(SolrDocument left, SolrDocument right) {
-            // ID is in the form of ObjectId_Chunk
-
-            final String idName = Server.Schema.ID.toString();
-
-            // get object id of left doc
-            String leftID = left.getFieldValue(idName).toString();
-            int index = leftID.indexOf(Server.ID_CHUNK_SEP);
-            if (index != -1) {
-                leftID = leftID.substring(0, index);
-            }
-
-            // get object id of right doc
-            String rightID = right.getFieldValue(idName).toString();
-            index = rightID.indexOf(Server.ID_CHUNK_SEP);
-            if (index != -1) {
-                rightID = rightID.substring(0, index);
-            }
-
-            Long leftLong = new Long(leftID);
-            Long rightLong = new Long(rightID);
-            return leftLong.compareTo(rightLong);
-        }
-    }
-
 }
@@ -0,0 +1,177 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Caches the results of the queries of ad-hoc keyword searches. Running the
+ * same search again uses the results of the first run, without querying Solr.
+ *
+ * Results are keyed by the kind of query, its escaped query string and its
+ * filters. The cache is cleared whenever the index changes (commit) or the
+ * core is opened or closed (case change), like TextViewerCache.
+ */
+class QueryResultCache {
+
+    private static final Logger logger = Logger.getLogger(QueryResultCache.class.getName());
+    private static final int MAX_QUERIES = 64;
+    // cached results can hold a Content per hit, also bound the total number of hits
+    private static final int MAX_HITS = 200000;
+
+    private static final Object lock = new Object();
+    private static long generation = 0; //guarded by lock
+    private static int cachedHits = 0; //guarded by lock
+    private static final Map<String, CachedResults> results = new LinkedHashMap<>(16, 0.75f, true); //guarded by lock
+    private static long exactHits = 0; //guarded by lock
+    private static long misses = 0; //guarded by lock
+
+    private QueryResultCache() {
+    }
+
+    /**
+     * Clears the cache. Called when the index changes or the core is opened or
+     * closed.
+     */
+    static void invalidate() {
+        synchronized (lock) {
+            ++generation;
+            results.clear();
+            cachedHits = 0;
+        }
+    }
+
+    /**
+     * Gets the results of a query, from the cache if possible, else by running
+     * the query.
+     *
+     * @param query the query, validated
+     *
+     * @return the results, for the given query
+     *
+     * @throws NoOpenCoreException
+     */
+    static QueryResults performQuery(KeywordSearchQuery query) throws NoOpenCoreException {
+        final String key = getQueryKey(query) + getFiltersKey(query.getFilters());
+
+        final long queryGeneration;
+        synchronized (lock) {
+            queryGeneration = generation;
+            CachedResults cached = results.get(key);
+            if (cached != null) {
+                ++exactHits;
+                logStats(query);
+                return cached.copyFor(query);
+            }
+            ++misses;
+            logStats(query);
+        }
+
+        final QueryResults queryResults = query.performQuery();
+
+        synchronized (lock) {
+            if (queryGeneration == generation) {
+                put(key, new CachedResults(queryResults));
+            }
+        }
+        return queryResults;
+    }
+
+    private static void put(String key, CachedResults cached) {
+        if (cached.numHits > MAX_HITS) {
+            return;
+        }
+        CachedResults previous = results.put(key, cached);
+        if (previous != null) {
+            cachedHits -= previous.numHits;
+        }
+        cachedHits += cached.numHits;
+        Iterator<CachedResults> it = results.values().iterator();
+        while ((results.size() > MAX_QUERIES || cachedHits > MAX_HITS) && it.hasNext()) {
+            cachedHits -= it.next().numHits;
+            it.remove();
+        }
+    }
+
+    private static void logStats(KeywordSearchQuery query) {
+        final long lookups = exactHits + misses;
+        logger.log(Level.INFO, "Query result cache for {0}: {1} lookups, {2} cached, {3} run ({4}% from cache)", //NON-NLS
+                new Object[]{query.getQueryString(), lookups, exactHits, misses, exactHits * 100 / lookups});
+    }
+
+    private static String getQueryKey(KeywordSearchQuery query) {
+        return query.getClass().getSimpleName() + ":" + query.isLiteral() + ":" + query.getEscapedQueryString().trim(); //NON-NLS
+    }
+
+    private static String getFiltersKey(List<KeywordQueryFilter> filters) {
+        if (filters.isEmpty()) {
+            return "";
+        }
+        List<String> filterStrings = new ArrayList<>();
+        for (KeywordQueryFilter filter : filters) {
+            List<Long> ids = new ArrayList<>(filter.getIdFilters());
+            Collections.sort(ids);
+            filterStrings.add(filter.getFilterType() + ids.toString());
+        }
+        Collections.sort(filterStrings);
+        return filterStrings.toString();
+    }
+
+    /**
+     * Results of a query, shared by the copies made for later queries
+     */
+    private static class CachedResults {
+
+        private final Map<Keyword, List<KeywordHit>> hits = new HashMap<>();
+        private final int numHits;
+
+        private CachedResults(QueryResults queryResults) {
+            int count = 0;
+            for (Keyword keyword : queryResults.getKeywords()) {
+                List<KeywordHit> keywordHits = Collections.unmodifiableList(new ArrayList<>(queryResults.getResults(keyword)));
+                hits.put(keyword, keywordHits);
+                count += keywordHits.size();
+            }
+            numHits = count;
+        }
+
+        /**
+         * Makes results for the given query from the cached results
+         *
+         * @param query the query
+         *
+         * @return the results
+         */
+        private QueryResults copyFor(KeywordSearchQuery query) {
+            QueryResults queryResults = new QueryResults(query, query.getKeywordList());
+            for (Map.Entry<Keyword, List<KeywordHit>> entry : hits.entrySet()) {
+                queryResults.addResult(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            return queryResults;
+        }
+    }
+}
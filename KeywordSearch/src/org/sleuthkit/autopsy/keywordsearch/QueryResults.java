@@ -21,6 +21,7 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,6 +48,10 @@
 class QueryResults {
 
     private static final Logger logger = Logger.getLogger(QueryResults.class.getName());
+    // hits whose snippets are queried together, see LuceneQuery.querySnippets()
+    private static final int WRITE_BATCH_SIZE = 256;
+    // keywords listed in the summary inbox message
+    private static final int MAX_SUMMARY_ROWS = 20;
 
     /**
      * The query that generated the results.
@@ -94,7 +99,8 @@ Set<Keyword> getKeywords() {
      * Writes the keyword hits encapsulated in this query result to the
      * blackboard. Makes one artifact per keyword per searched object (file or
      * artifact), i.e., if a keyword is found several times in the object, only
-     * one artifact is created.
+     * one artifact is created. The snippets of the hits are queried in batches,
+     * and a single inbox message summarizes all the artifacts written.
      *
      * @param progress    Can be null.
      * @param subProgress Can be null.
@@ -111,6 +117,10 @@ Collection<BlackboardArtifact> writeAllHitsToBlackBoard(ProgressHandle progress,
             progress.start(getKeywords().size());
         }
         int unitProgress = 0;
+        // for the inbox, the artifacts written per keyword, and the first artifact
+        Map<String, Integer> writtenPerKeyword = new LinkedHashMap<>();
+        KeywordCachedArtifact firstWritten = null;
+        Content firstWrittenContent = null;
 
         for (final Keyword keyword : getKeywords()) {
             if (worker.isCancelled()) {
@@ -130,35 +140,55 @@ Collection<BlackboardArtifact> writeAllHitsToBlackBoard(ProgressHandle progress,
                 subProgress.progress(keywordList.getName() + ": " + hitDisplayStr, unitProgress);
             }
 
-            for (KeywordHit hit : getOneHitPerObject(keyword)) {
-                String termString = keyword.getQuery();
-                final String snippetQuery = KeywordSearchUtil.escapeLuceneQuery(termString);
-                String snippet;
+            final String termString = keyword.getQuery();
+            final String snippetQuery = KeywordSearchUtil.escapeLuceneQuery(termString);
+            List<KeywordHit> hits = new ArrayList<>(getOneHitPerObject(keyword));
+            int numWritten = 0;
+            for (int start = 0; start < hits.size(); start += WRITE_BATCH_SIZE) {
+                if (worker.isCancelled()) {
+                    logger.log(Level.INFO, "Cancel detected, bailing before new batch of hits processed: {0}", keyword.getQuery()); //NON-NLS
+                    break;
+                }
+                List<KeywordHit> batch = hits.subList(start, Math.min(hits.size(), start + WRITE_BATCH_SIZE));
+                Map<KeywordHit, String> snippets;
                 try {
-                    snippet = LuceneQuery.querySnippet(snippetQuery, hit.getSolrObjectId(), hit.getChunkId(), !keywordSearchQuery.isLiteral(), true);
+                    snippets = LuceneQuery.querySnippets(snippetQuery, batch, !keywordSearchQuery.isLiteral(), true);
                 } catch (NoOpenCoreException e) {
                     logger.log(Level.WARNING, "Error querying snippet: " + snippetQuery, e); //NON-NLS
                     //no reason to continue
                     break;
-                } catch (Exception e) {
-                    logger.log(Level.WARNING, "Error querying snippet: " + snippetQuery, e); //NON-NLS
-                    continue;
                 }
-                if (snippet != null) {
-                    KeywordCachedArtifact writeResult = keywordSearchQuery.writeSingleFileHitsToBlackBoard(termString, hit, snippet, keywordList.getName());
-                    if (writeResult != null) {
-                        newArtifacts.add(writeResult.getArtifact());
-                        if (notifyInbox) {
-                            writeSingleFileInboxMessage(writeResult, hit.getContent());
+                for (KeywordHit hit : batch) {
+                    String snippet = snippets.get(hit);
+                    if (snippet != null) {
+                        KeywordCachedArtifact writeResult = keywordSearchQuery.writeSingleFileHitsToBlackBoard(termString, hit, snippet, keywordList.getName());
+                        if (writeResult != null) {
+                            newArtifacts.add(writeResult.getArtifact());
+                            ++numWritten;
+                            if (notifyInbox && firstWritten == null) {
+                                firstWritten = writeResult;
+                                firstWrittenContent = hit.getContent();
+                            }
+                        } else {
+                            logger.log(Level.WARNING, "BB artifact for keyword hit not written, file: {0}, hit: {1}", new Object[]{hit.getContent(), keyword.toString()}); //NON-NLS
                         }
-                    } else {
-                        logger.log(Level.WARNING, "BB artifact for keyword hit not written, file: {0}, hit: {1}", new Object[]{hit.getContent(), keyword.toString()}); //NON-NLS
                     }
                 }
             }
+            if (numWritten > 0) {
+                writtenPerKeyword.put(keyword.getQuery(), numWritten);
+            }
             ++unitProgress;
         }
 
+        if (notifyInbox && firstWritten != null) {
+            if (newArtifacts.size() == 1) {
+                writeSingleFileInboxMessage(firstWritten, firstWrittenContent);
+            } else {
+                writeSummaryInboxMessage(writtenPerKeyword, newArtifacts.size());
+            }
+        }
+
         // Update artifact browser
         if (!newArtifacts.isEmpty()) {
             IngestServices.getInstance().fireModuleDataEvent(new ModuleDataEvent(KeywordSearchModuleFactory.getModuleName(), BlackboardArtifact.ARTIFACT_TYPE.TSK_KEYWORD_HIT, newArtifacts));
@@ -192,13 +222,47 @@ private Collection<KeywordHit> getOneHitPerObject(Keyword keyword) {
         return hits.values();
     }
 
+    /**
+     * Generate one ingest inbox message for all the hits written at once,
+     * instead of a message per hit
+     *
+     * @param writtenPerKeyword the number of artifacts written per keyword
+     * @param numArtifacts      the total number of artifacts written
+     */
+    private void writeSummaryInboxMessage(Map<String, Integer> writtenPerKeyword, int numArtifacts) {
+        final String subject = NbBundle.getMessage(this.getClass(), "QueryResults.summaryInboxMessage.subject",
+                numArtifacts, writtenPerKeyword.size(), keywordList.getName());
+
+        StringBuilder detailsSb = new StringBuilder();
+        detailsSb.append("<table border='0' cellpadding='4' width='280'>"); //NON-NLS
+        detailsSb.append("<tr><th>") //NON-NLS
+                .append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.kwHitThLbl"))
+                .append("</th><th>") //NON-NLS
+                .append(NbBundle.getMessage(this.getClass(), "QueryResults.summaryInboxMessage.numHitsThLbl"))
+                .append("</th></tr>"); //NON-NLS
+        int row = 0;
+        for (Map.Entry<String, Integer> entry : writtenPerKeyword.entrySet()) {
+            if (++row > MAX_SUMMARY_ROWS) {
+                detailsSb.append("<tr><td colspan='2'>") //NON-NLS
+                        .append(NbBundle.getMessage(this.getClass(), "QueryResults.summaryInboxMessage.moreKeywords", writtenPerKeyword.size() - MAX_SUMMARY_ROWS))
+                        .append("</td></tr>"); //NON-NLS
+                break;
+            }
+            detailsSb.append("<tr><td>").append(EscapeUtil.escapeHtml(entry.getKey())).append("</td>"); //NON-NLS
+            detailsSb.append("<td>").append(entry.getValue()).append("</td></tr>"); //NON-NLS
+        }
+        detailsSb.append("</table>"); //NON-NLS
+
+        IngestServices.getInstance().postMessage(IngestMessage.createMessage(IngestMessage.MessageType.INFO, KeywordSearchModuleFactory.getModuleName(), subject, detailsSb.toString()));
+    }
+
     /**
      * Generate an ingest inbox message for given keyword in given file
      *
      * @param written
      * @param hitFile
      */
-    private void writeSingleFileInboxMessage(KeywordCachedArtifact written, Content hitContent) {
+    void writeSingleFileInboxMessage(KeywordCachedArtifact written, Content hitContent) {
         StringBuilder subjectSb = new StringBuilder();
         StringBuilder detailsSb = new StringBuilder();
 
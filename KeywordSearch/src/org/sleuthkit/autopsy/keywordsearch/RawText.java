@@ -41,6 +41,7 @@ class RawText implements IndexedText {
     private final Content content;
     private final BlackboardArtifact blackboardArtifact;
     private final long objectId;
+    private long solrObjectId; // object whose chunks hold the text, differs from objectId for content aliases
     //keep last content cached
     private String cachedString;
     private int cachedChunk;
@@ -203,8 +204,9 @@ private void initialize() {
         final Server solrServer = KeywordSearch.getServer();
 
         try {
+            solrObjectId = ContentAliasIndex.resolveAlias(this.objectId);
             //add to page tracking if not there yet		
-            numPages = solrServer.queryNumFileChunks(this.objectId);
+            numPages = TextViewerCache.getNumChunks(solrServer, this.solrObjectId);
             if (numPages == 0) {
                 numPages = 1;
                 hasChunks = false;
@@ -267,7 +269,7 @@ private String getContentText(int currentPage, boolean hasChunks) throws SolrSer
 
         //not cached
         try {
-            String indexedText = solrServer.getSolrContent(this.objectId, chunkId);
+            String indexedText = solrServer.getSolrContent(this.solrObjectId, chunkId);
             cachedString = EscapeUtil.escapeHtml(indexedText).trim();
             StringBuilder sb = new StringBuilder(cachedString.length() + 20);
             sb.append("<pre>").append(cachedString).append("</pre>"); //NON-NLS
@@ -0,0 +1,189 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.TermsResponse;
+import org.apache.solr.client.solrj.response.TermsResponse.Term;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.StopWatch;
+
+/**
+ * Matches several regex keywords against the terms dictionary of the index in
+ * one pass. The regexes are combined into a single alternation that is sent to
+ * the terms component, so the dictionary is walked once instead of once per
+ * regex. The returned terms are then attributed to the individual keywords by
+ * matching them against each keyword's own pattern. If the combined request
+ * reaches its terms limit, the keywords that may have lost terms to the others
+ * are queried on their own.
+ */
+class RegexTermsScan {
+
+    private static final Logger logger = Logger.getLogger(RegexTermsScan.class.getName());
+    // back references are numbered, they would point to the wrong group once combined
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]|\\\\k<"); //NON-NLS
+    private final List<Keyword> keywords;
+    private final List<Pattern> patterns;
+
+    /**
+     * Constructs a scan for the given regex keywords. All keywords must pass
+     * canCombine().
+     *
+     * @param keywords the regex keywords
+     */
+    RegexTermsScan(List<Keyword> keywords) {
+        this.keywords = new ArrayList<>(keywords);
+        this.patterns = new ArrayList<>();
+        for (Keyword keyword : keywords) {
+            // same flag as the "case_insensitive" terms regex flag
+            patterns.add(Pattern.compile(keyword.getQuery(), Pattern.CASE_INSENSITIVE));
+        }
+    }
+
+    /**
+     * Checks whether a keyword can be part of a combined scan. Literal
+     * keywords, invalid regexes and regexes with back references have to be
+     * queried on their own.
+     *
+     * @param keyword the keyword to check
+     *
+     * @return true if the keyword can be combined with others
+     */
+    static boolean canCombine(Keyword keyword) {
+        if (keyword.isLiteral() || keyword.getQuery().isEmpty()) {
+            return false;
+        }
+        if (BACK_REFERENCE.matcher(keyword.getQuery()).find()) {
+            return false;
+        }
+        try {
+            Pattern.compile(keyword.getQuery());
+        } catch (PatternSyntaxException ex) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs the scan.
+     *
+     * @return for each keyword, in the order passed to the constructor, the
+     *         terms that match it (at most MAX_TERMS_RESULTS per keyword)
+     *
+     * @throws NoOpenCoreException
+     */
+    List<List<Term>> matchTerms() throws NoOpenCoreException {
+        if (!KeywordSearch.getServer().getIndexProfile().supportsRegex()) {
+            logger.log(Level.WARNING, "Regex terms scan refused, the index profile does not support it"); //NON-NLS
+            List<List<Term>> noTerms = new ArrayList<>();
+            for (int i = 0; i < keywords.size(); ++i) {
+                noTerms.add(new ArrayList<Term>());
+            }
+            return noTerms;
+        }
+        StringBuilder combinedRegex = new StringBuilder();
+        for (Keyword keyword : keywords) {
+            if (combinedRegex.length() > 0) {
+                combinedRegex.append('|');
+            }
+            combinedRegex.append("(?:").append(keyword.getQuery()).append(')'); //NON-NLS
+        }
+
+        List<List<Term>> matches = new ArrayList<>();
+        for (int i = 0; i < keywords.size(); ++i) {
+            matches.add(new ArrayList<Term>());
+        }
+
+        final StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        final int combinedLimit = TermComponentQuery.MAX_TERMS_RESULTS * keywords.size();
+        List<Term> terms;
+        try {
+            terms = queryTerms(combinedRegex.toString(), combinedLimit);
+        } catch (KeywordSearchModuleException ex) {
+            logger.log(Level.WARNING, "Error executing the combined regex terms query", ex); //NON-NLS
+            return matches;
+        }
+        if (terms == null) {
+            return matches;
+        }
+
+        for (Term term : terms) {
+            for (int i = 0; i < patterns.size(); ++i) {
+                List<Term> keywordMatches = matches.get(i);
+                if (keywordMatches.size() < TermComponentQuery.MAX_TERMS_RESULTS && patterns.get(i).matcher(term.getTerm()).matches()) {
+                    keywordMatches.add(term);
+                }
+            }
+        }
+
+        /*
+         * The limit is on the combined terms, so if it was reached, a keyword
+         * whose terms were crowded out by the terms of the others may have
+         * fewer terms than it would have on its own. Query the terms of those
+         * keywords on their own, each with its own limit.
+         */
+        if (terms.size() >= combinedLimit) {
+            for (int i = 0; i < keywords.size(); ++i) {
+                if (matches.get(i).size() >= TermComponentQuery.MAX_TERMS_RESULTS) {
+                    continue;
+                }
+                try {
+                    List<Term> keywordTerms = queryTerms(keywords.get(i).getQuery(), TermComponentQuery.MAX_TERMS_RESULTS);
+                    if (keywordTerms != null) {
+                        matches.set(i, new ArrayList<>(keywordTerms));
+                    }
+                } catch (KeywordSearchModuleException ex) {
+                    logger.log(Level.WARNING, "Error executing the regex terms query: " + keywords.get(i).getQuery(), ex); //NON-NLS
+                }
+            }
+        }
+        stopWatch.stop();
+        logger.log(Level.INFO, "Combined terms scan for {0} regexes matched {1} terms in {2} ms", new Object[]{keywords.size(), terms.size(), stopWatch.getElapsedTime()}); //NON-NLS
+
+        return matches;
+    }
+
+    /**
+     * Gets the terms of the index matching a regex, with the same options as
+     * TermComponentQuery
+     *
+     * @param regex the regex
+     * @param limit the maximum number of terms
+     *
+     * @return the terms, or null if none
+     */
+    private static List<Term> queryTerms(String regex, int limit) throws KeywordSearchModuleException, NoOpenCoreException {
+        final SolrQuery q = new SolrQuery();
+        q.setRequestHandler(TermComponentQuery.TERMS_HANDLER);
+        q.setTerms(true);
+        q.setTermsLimit(limit);
+        q.setTermsRegexFlag("case_insensitive"); //NON-NLS
+        q.setTermsRegex(regex);
+        q.addTermsField(TermComponentQuery.TERMS_SEARCH_FIELD);
+        q.setTimeAllowed(TermComponentQuery.TERMS_TIMEOUT);
+        TermsResponse tr = KeywordSearch.getServer().queryTerms(q);
+        return tr.getTerms(TermComponentQuery.TERMS_SEARCH_FIELD);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.StringExtract;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractResult;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Picks the scripts to extract strings of from a file by looking at a few
+ * samples spread across the file instead of the whole file. Strings extraction
+ * then skips the scripts that do not appear in the samples, and a file with
+ * only basic Latin strings in the samples uses the faster Latin-only stream
+ * (see StringsTextExtractor).
+ *
+ * The scripts are only ever narrowed down from the configured ones. A file that
+ * fits in the samples is read whole, so the choice is exact for it; for larger
+ * files a script only present between the samples is not extracted.
+ *
+ * Because of that, sampling is off unless enabled in the settings (see
+ * KeywordSearchSettings.getSampleStringExtractScripts()).
+ *
+ * Choices are cached per MIME type once enough files of the type had the same
+ * scripts. Not thread safe, used by one extractor.
+ */
+class ScriptSampler {
+
+    private static final Logger logger = Logger.getLogger(ScriptSampler.class.getName());
+    private static final int NUM_SAMPLES = 8;
+    private static final int SAMPLE_SIZE = 4 * 1024;
+    // characters of a script needed in the samples to extract it
+    private static final int MIN_SCRIPT_CHARS = StringExtract.MIN_CHARS_STRING;
+    // files of a MIME type sampled with the same result before using the result for the type
+    private static final int MIME_TYPE_SAMPLE_FILES = 16;
+
+    private final StringExtractUnicodeTable unicodeTable = StringExtractUnicodeTable.getInstance();
+    private final List<SCRIPT> configuredScripts;
+    private final StringExtract stringExtract = new StringExtract();
+    private final byte[] sampleBuf = new byte[NUM_SAMPLES * SAMPLE_SIZE];
+    private final Map<String, MimeTypeScripts> mimeTypeScripts = new HashMap<>();
+
+    /**
+     * @param configuredScripts the scripts set in the options, all scripts
+     *                          chosen are among them
+     * @param extractUTF8       whether strings are extracted as UTF-8
+     * @param extractUTF16      whether strings are extracted as UTF-16
+     */
+    ScriptSampler(List<SCRIPT> configuredScripts, boolean extractUTF8, boolean extractUTF16) {
+        this.configuredScripts = new ArrayList<>(configuredScripts);
+        stringExtract.setEnabledScripts(this.configuredScripts);
+        stringExtract.setEnableUTF8(extractUTF8);
+        stringExtract.setEnableUTF16(extractUTF16);
+    }
+
+    /**
+     * Gets the scripts to extract strings of from a file
+     *
+     * @param file     the file
+     * @param mimeType the detected MIME type of the file, or null if not
+     *                 known
+     *
+     * @return the scripts, a subset of the configured scripts
+     */
+    List<SCRIPT> getScripts(AbstractFile file, String mimeType) {
+        // octet-stream is everything that was not recognized, its files have nothing in common
+        final boolean cachePerMimeType = mimeType != null && !mimeType.equals("application/octet-stream"); //NON-NLS
+        MimeTypeScripts mimeTypeResult = null;
+        if (cachePerMimeType) {
+            mimeTypeResult = mimeTypeScripts.get(mimeType);
+            if (mimeTypeResult == null) {
+                mimeTypeResult = new MimeTypeScripts();
+                mimeTypeScripts.put(mimeType, mimeTypeResult);
+            } else if (mimeTypeResult.isDecided()) {
+                return mimeTypeResult.scripts;
+            }
+        }
+
+        List<SCRIPT> scripts = sampleScripts(file);
+        if (mimeTypeResult != null) {
+            mimeTypeResult.add(scripts);
+        }
+        return scripts;
+    }
+
+    private List<SCRIPT> sampleScripts(AbstractFile file) {
+        if (unicodeTable == null) {
+            return configuredScripts;
+        }
+        final long size = file.getSize();
+        Map<SCRIPT, Integer> charCounts = new EnumMap<>(SCRIPT.class);
+        try {
+            if (size <= sampleBuf.length) {
+                // small file, look at all of it
+                int read = file.read(sampleBuf, 0, size);
+                countScripts(read, charCounts);
+            } else {
+                for (int i = 0; i < NUM_SAMPLES; ++i) {
+                    final long offset = (size - SAMPLE_SIZE) * i / (NUM_SAMPLES - 1);
+                    int read = file.read(sampleBuf, offset, SAMPLE_SIZE);
+                    countScripts(read, charCounts);
+                }
+            }
+        } catch (TskCoreException ex) {
+            logger.log(Level.WARNING, "Could not read samples of file " + file.getId() + ", using all configured scripts", ex); //NON-NLS
+            return configuredScripts;
+        }
+
+        List<SCRIPT> scripts = new ArrayList<>();
+        for (SCRIPT script : configuredScripts) {
+            if (script == SCRIPT.LATIN_2) {
+                // extended Latin includes basic Latin, see StringExtract.isExtractionEnabled()
+                if (getCount(charCounts, SCRIPT.LATIN_2) >= MIN_SCRIPT_CHARS) {
+                    scripts.add(SCRIPT.LATIN_2);
+                } else if (getCount(charCounts, SCRIPT.LATIN_1) >= MIN_SCRIPT_CHARS && !configuredScripts.contains(SCRIPT.LATIN_1)) {
+                    scripts.add(SCRIPT.LATIN_1);
+                }
+            } else if (getCount(charCounts, script) >= MIN_SCRIPT_CHARS) {
+                scripts.add(script);
+            }
+        }
+        if (scripts.isEmpty()) {
+            // no strings in the samples, nothing to go by
+            return configuredScripts;
+        }
+        return scripts;
+    }
+
+    private void countScripts(int numBytes, Map<SCRIPT, Integer> charCounts) {
+        if (numBytes <= 0) {
+            return;
+        }
+        StringExtractResult result = stringExtract.extract(sampleBuf, numBytes, 0);
+        final String text = result.getText();
+        if (result.getNumBytes() == 0 || text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); ++i) {
+            SCRIPT script = unicodeTable.getScript(text.charAt(i));
+            if (!StringExtractUnicodeTable.isGeneric(script)) {
+                charCounts.put(script, getCount(charCounts, script) + 1);
+            }
+        }
+    }
+
+    private static int getCount(Map<SCRIPT, Integer> charCounts, SCRIPT script) {
+        Integer count = charCounts.get(script);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Scripts found in the files of a MIME type so far
+     */
+    private static class MimeTypeScripts {
+
+        private List<SCRIPT> scripts = null;
+        private int numFiles = 0;
+        private boolean varies = false;
+
+        private void add(List<SCRIPT> fileScripts) {
+            if (scripts == null) {
+                scripts = fileScripts;
+            } else if (!scripts.equals(fileScripts)) {
+                varies = true;
+            }
+            ++numFiles;
+        }
+
+        /**
+         * @return true if enough files of the type were sampled and all had
+         *         the same scripts
+         */
+        private boolean isDecided() {
+            return !varies && numFiles >= MIME_TYPE_SAMPLE_FILES;
+        }
+    }
+}
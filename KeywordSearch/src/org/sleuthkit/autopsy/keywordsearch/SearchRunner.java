@@ -20,12 +20,24 @@
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import javax.swing.SwingUtilities;
@@ -35,17 +47,17 @@
 import org.netbeans.api.progress.aggregate.AggregateProgressFactory;
 import org.netbeans.api.progress.aggregate.AggregateProgressHandle;
 import org.netbeans.api.progress.aggregate.ProgressContributor;
+import org.apache.solr.client.solrj.response.TermsResponse.Term;
 import org.openide.util.Cancellable;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.StopWatch;
 import org.sleuthkit.autopsy.ingest.IngestMessage;
 import org.sleuthkit.autopsy.ingest.IngestServices;
-import org.sleuthkit.datamodel.BlackboardArtifact;
 
 /**
- * Singleton keyword search manager: Launches search threads for each job and
- * performs commits, both on timed intervals.
+ * Singleton keyword search manager: Launches search threads for each job on
+ * timed intervals, and performs commits as documents are added.
  */
 public final class SearchRunner {
 
@@ -55,6 +67,12 @@ public final class SearchRunner {
     private Ingester ingester = null;
     private volatile boolean updateTimerRunning = false;
     private Timer updateTimer;
+    // how often the timer checks whether a commit or a search is due
+    private static final long COMMIT_CHECK_INTERVAL_MS = 30 * 1000L;
+    // maximum number of literal keywords checked with a single OR query
+    private static final int MAX_KEYWORDS_PER_GROUP = 64;
+    // runs the keyword queries of all searchers, bounded by the search threads setting
+    private final ExecutorService searchExecutor;
 
     // maps a jobID to the search
     private Map<Long, SearchJobInfo> jobs = new HashMap<>(); //guarded by "this"
@@ -62,6 +80,16 @@ public final class SearchRunner {
     SearchRunner() {
         ingester = Server.getIngester();
         updateTimer = new Timer(NbBundle.getMessage(this.getClass(), "SearchRunner.updateTimer.title.text"), true); // run as a daemon
+        searchExecutor = Executors.newFixedThreadPool(KeywordSearchSettings.getSearchThreads(), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "KWS-search-" + threadCount.getAndIncrement()); //NON-NLS
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
     /**
@@ -98,11 +126,35 @@ public synchronized void startJob(long jobId, long dataSourceId, List<String> ke
         // start the timer, if needed
         if ((jobs.size() > 0) && (updateTimerRunning == false)) {
             final long updateIntervalMs = ((long) KeywordSearchSettings.getUpdateFrequency().getTime()) * 60 * 1000;
-            updateTimer.scheduleAtFixedRate(new UpdateTimerTask(), updateIntervalMs, updateIntervalMs);
+            final long checkIntervalMs = Math.min(updateIntervalMs, COMMIT_CHECK_INTERVAL_MS);
+            updateTimer.scheduleAtFixedRate(new UpdateTimerTask(updateIntervalMs), checkIntervalMs, checkIntervalMs);
             updateTimerRunning = true;
         }
     }
 
+    /**
+     * Records a hit for a keyword that was found outside of the periodic
+     * searches (i.e., while the file was being indexed), so the searches of
+     * the job do not report it again.
+     *
+     * @param jobId    Job ID that the hit is associated with
+     * @param keyword  the keyword that was found
+     * @param objectId the object the keyword was found in
+     *
+     * @return true if the hit is new for the job and should be reported by
+     *         the caller, false if it was already reported
+     */
+    boolean markKeywordHit(long jobId, Keyword keyword, long objectId) {
+        SearchJobInfo job;
+        synchronized (this) {
+            job = jobs.get(jobId);
+        }
+        if (job == null) {
+            return true;
+        }
+        return !job.addKeywordResults(keyword, Collections.singletonList(objectId)).isEmpty();
+    }
+
     /**
      * Perform normal finishing of searching for this job, including one last
      * commit and search. Blocks until the final search is complete.
@@ -178,7 +230,19 @@ public synchronized void addKeywordListsToAllJobs(List<String> keywordListNames)
      */
     private void commit() {
         ingester.commit();
+        fireNumIndexedFilesChange();
+    }
+
+    /**
+     * Soft commits index, making new files searchable, and notifies listeners
+     * of index update
+     */
+    private void softCommit() {
+        ingester.softCommit();
+        fireNumIndexedFilesChange();
+    }
 
+    private void fireNumIndexedFilesChange() {
         // Signal a potential change in number of text_ingested files
         try {
             final int numIndexedFiles = KeywordSearch.getServer().queryNumIndexedFiles();
@@ -216,11 +280,22 @@ private void doFinalSearch(SearchJobInfo job) {
     }
 
     /**
-     * Timer triggered re-search for each job (does a single index commit first)
+     * Timer triggered commits and re-search for each job. Runs more often than
+     * the searches, and commits based on the volume of documents added since
+     * the last commit: a soft commit makes them searchable, a hard commit
+     * (less frequent) flushes them to disk. Each search is preceded by a soft
+     * commit if anything was added.
      */
     private class UpdateTimerTask extends TimerTask {
 
         private final Logger logger = Logger.getLogger(SearchRunner.UpdateTimerTask.class.getName());
+        private final long searchIntervalMs;
+        private long lastSearchTime;
+
+        UpdateTimerTask(long searchIntervalMs) {
+            this.searchIntervalMs = searchIntervalMs;
+            this.lastSearchTime = System.currentTimeMillis();
+        }
 
         @Override
         public void run() {
@@ -231,7 +306,18 @@ public void run() {
                 return;
             }
 
-            commit();
+            final long now = System.currentTimeMillis();
+            final boolean searchDue = now - lastSearchTime >= searchIntervalMs;
+            if (ingester.isHardCommitDue()) {
+                commit();
+            } else if (searchDue ? ingester.hasPendingDocuments() : ingester.isSoftCommitDue(searchIntervalMs)) {
+                softCommit();
+            }
+
+            if (!searchDue) {
+                return;
+            }
+            lastSearchTime = now;
 
             synchronized (SearchRunner.this) {
                 // Spawn a search thread for each job
@@ -260,7 +346,7 @@ private class SearchJobInfo {
         // mutable state:
         private volatile boolean workerRunning;
         private List<String> keywordListNames; //guarded by SearchJobInfo.this
-        private Map<Keyword, List<Long>> currentResults; //guarded by SearchJobInfo.this
+        private Map<Keyword, Set<Long>> currentResults; //guarded by SearchJobInfo.this
         private SearchRunner.Searcher currentSearcher;
         private AtomicLong moduleReferenceCount = new AtomicLong(0);
         private final Object finalSearchLock = new Object(); //used for a condition wait
@@ -292,12 +378,27 @@ public synchronized void addKeywordListName(String keywordListName) {
             }
         }
 
-        public synchronized List<Long> currentKeywordResults(Keyword k) {
-            return currentResults.get(k);
-        }
-
-        public synchronized void addKeywordResults(Keyword k, List<Long> resultsIDs) {
-            currentResults.put(k, resultsIDs);
+        /**
+         * Records objects that have hits for a keyword.
+         *
+         * @param k          the keyword
+         * @param resultsIDs ids of the objects with hits
+         *
+         * @return the ids that had not been recorded for the keyword before
+         */
+        public synchronized Set<Long> addKeywordResults(Keyword k, Collection<Long> resultsIDs) {
+            Set<Long> curResults = currentResults.get(k);
+            if (curResults == null) {
+                curResults = new HashSet<>();
+                currentResults.put(k, curResults);
+            }
+            Set<Long> newResults = new HashSet<>();
+            for (Long id : resultsIDs) {
+                if (curResults.add(id)) {
+                    newResults.add(id);
+                }
+            }
+            return newResults;
         }
 
         public boolean isWorkerRunning() {
@@ -353,6 +454,11 @@ public void searchNotify() {
      * to blackboard and the inbox. Also, posts results to listeners as Ingest
      * data events. Searches entire index, and keeps track of only new results
      * to report and save. Runs as a background thread.
+     *
+     * The keyword queries themselves run concurrently on the shared search
+     * executor, while the searcher thread writes the results of completed
+     * queries to the blackboard, so that query latency and artifact creation
+     * overlap.
      */
     private final class Searcher extends SwingWorker<Object, Void> {
 
@@ -412,98 +518,95 @@ public boolean cancel() {
 
             final StopWatch stopWatch = new StopWatch();
             stopWatch.start();
+            final CompletionService<KeywordQueryResult> completionService = new ExecutorCompletionService<>(searchExecutor);
+            final List<Future<KeywordQueryResult>> queryFutures = new ArrayList<>();
             try {
                 progressGroup.setDisplayName(displayName);
 
-                int keywordsSearched = 0;
+                // Filtering
+                //limit search to currently ingested data sources
+                //set up a filter with 1 or more image ids OR'ed
+                final KeywordQueryFilter dataSourceFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.DATA_SOURCE, job.getDataSourceId());
+
+                // Query stage: the queries run on the search executor, while
+                // this thread writes the results of completed queries to the
+                // blackboard as they come in.
+                int pendingQueries = 0;
+                for (Callable<KeywordQueryResult> task : createQueryTasks(dataSourceFilter, subProgresses)) {
+                    queryFutures.add(completionService.submit(task));
+                    ++pendingQueries;
+                }
 
-                for (Keyword keywordQuery : keywords) {
+                while (pendingQueries > 0) {
                     if (this.isCancelled()) {
-                        logger.log(Level.INFO, "Cancel detected, bailing before new keyword processed: {0}", keywordQuery.getQuery()); //NON-NLS
+                        logger.log(Level.INFO, "Cancel detected, bailing before next keyword result processed"); //NON-NLS
                         return null;
                     }
 
-                    final String queryStr = keywordQuery.getQuery();
-                    final KeywordList list = keywordToList.get(queryStr);
-
-                    //new subProgress will be active after the initial query
-                    //when we know number of hits to start() with
-                    if (keywordsSearched > 0) {
-                        subProgresses[keywordsSearched - 1].finish();
-                    }
-
-                    KeywordSearchQuery keywordSearchQuery = null;
-
-                    boolean isRegex = !keywordQuery.isLiteral();
-                    if (isRegex) {
-                        keywordSearchQuery = new TermComponentQuery(list, keywordQuery);
-                    } else {
-                        keywordSearchQuery = new LuceneQuery(list, keywordQuery);
-                        keywordSearchQuery.escape();
-                    }
-
-                    // Filtering
-                    //limit search to currently ingested data sources
-                    //set up a filter with 1 or more image ids OR'ed
-                    final KeywordQueryFilter dataSourceFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.DATA_SOURCE, job.getDataSourceId());
-                    keywordSearchQuery.addFilter(dataSourceFilter);
-
-                    QueryResults queryResults;
-
-                    // Do the actual search
+                    KeywordQueryResult result;
                     try {
-                        queryResults = keywordSearchQuery.performQuery();
-                    } catch (NoOpenCoreException ex) {
-                        logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), ex); //NON-NLS
-                        //no reason to continue with next query if recovery failed
-                        //or wait for recovery to kick in and run again later
-                        //likely case has closed and threads are being interrupted
+                        result = completionService.take().get();
+                    } catch (InterruptedException ex) {
+                        logger.log(Level.INFO, "Cancel detected, bailing while waiting for keyword queries"); //NON-NLS
                         return null;
-                    } catch (CancellationException e) {
-                        logger.log(Level.INFO, "Cancel detected, bailing during keyword query: {0}", keywordQuery.getQuery()); //NON-NLS
+                    } catch (ExecutionException ex) {
+                        if (ex.getCause() instanceof CancellationException) {
+                            logger.log(Level.INFO, "Cancel detected, bailing during keyword query"); //NON-NLS
+                        } else {
+                            //no reason to continue with next query if recovery failed
+                            //or wait for recovery to kick in and run again later
+                            //likely case has closed and threads are being interrupted
+                            logger.log(Level.WARNING, "Error performing query", ex.getCause()); //NON-NLS
+                        }
                         return null;
-                    } catch (Exception e) {
-                        logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), e); //NON-NLS
-                        continue;
                     }
-
-                    // calculate new results by substracting results already obtained in this ingest
-                    // this creates a map of each keyword to the list of unique files that have that hit. 
-                    QueryResults newResults = filterResults(queryResults);
-
-                    if (!newResults.getKeywords().isEmpty()) {
-
-                        // Write results to BB
-                        //new artifacts created, to report to listeners
-                        Collection<BlackboardArtifact> newArtifacts = new ArrayList<>();
-
-                        //scale progress bar more more granular, per result sub-progress, within per keyword
-                        int totalUnits = newResults.getKeywords().size();
-                        subProgresses[keywordsSearched].start(totalUnits);
-                        int unitProgress = 0;
-                        String queryDisplayStr = keywordQuery.getQuery();
-                        if (queryDisplayStr.length() > 50) {
-                            queryDisplayStr = queryDisplayStr.substring(0, 49) + "...";
+                    --pendingQueries;
+
+                    if (result.getType() == KeywordQueryResult.Type.LITERAL_GROUP) {
+                        // queries for the keywords of a group only need to run if the group has hits
+                        for (int keywordIndex : result.getKeywordIndices()) {
+                            if (result.groupHasHits()) {
+                                queryFutures.add(completionService.submit(new KeywordQueryTask(keywordIndex, dataSourceFilter, null)));
+                                ++pendingQueries;
+                            } else {
+                                subProgresses[keywordIndex].finish();
+                            }
                         }
-                        subProgresses[keywordsSearched].progress(list.getName() + ": " + queryDisplayStr, unitProgress);
-
-                        // Create blackboard artifacts                
-                        newArtifacts = newResults.writeAllHitsToBlackBoard(null, subProgresses[keywordsSearched], this, list.getIngestMessages());
+                        continue;
+                    } else if (result.getType() == KeywordQueryResult.Type.REGEX_TERMS) {
+                        // resolve the terms matched by each regex to documents
+                        for (int termsIndex = 0; termsIndex < result.getKeywordIndices().size(); ++termsIndex) {
+                            int keywordIndex = result.getKeywordIndices().get(termsIndex);
+                            List<Term> terms = result.getMatchedTerms().get(termsIndex);
+                            if (!terms.isEmpty()) {
+                                queryFutures.add(completionService.submit(new KeywordQueryTask(keywordIndex, dataSourceFilter, terms)));
+                                ++pendingQueries;
+                            } else {
+                                subProgresses[keywordIndex].finish();
+                            }
+                        }
+                        continue;
+                    }
 
-                    } //if has results
+                    final int keywordIndex = result.getKeywordIndices().get(0);
+                    if (result.getQueryResults() != null) {
+                        writeResults(keywords.get(keywordIndex), result.getQueryResults(), subProgresses[keywordIndex]);
+                    }
 
                     //reset the status text before it goes away
-                    subProgresses[keywordsSearched].progress("");
-
-                    ++keywordsSearched;
-
-                } //for each keyword
+                    subProgresses[keywordIndex].progress("");
+                    subProgresses[keywordIndex].finish();
+                }
 
             } //end try block
             catch (Exception ex) {
                 logger.log(Level.WARNING, "searcher exception occurred", ex); //NON-NLS
             } finally {
                 try {
+                    // stop any queries still running or waiting if we bailed early
+                    for (Future<KeywordQueryResult> future : queryFutures) {
+                        future.cancel(true);
+                    }
                     finalizeSearcher();
                     stopWatch.stop();
 
@@ -517,6 +620,100 @@ public boolean cancel() {
             return null;
         }
 
+        /**
+         * Creates the initial query tasks for the keywords of this searcher.
+         * Literal keywords from the same list are grouped into OR queries that
+         * only check whether any of the keywords has a hit, regex keywords are
+         * queried one at a time.
+         *
+         * @param dataSourceFilter filter restricting the search to the data
+         *                         source of the job
+         * @param subProgresses    progress contributors of the keywords, the
+         *                         ones of keywords that are not searched are
+         *                         finished
+         *
+         * @return the query tasks
+         */
+        private List<Callable<KeywordQueryResult>> createQueryTasks(KeywordQueryFilter dataSourceFilter, ProgressContributor[] subProgresses) {
+            List<Callable<KeywordQueryResult>> tasks = new ArrayList<>();
+            Map<KeywordList, List<Integer>> literalsByList = new LinkedHashMap<>();
+            List<Integer> combinableRegexes = new ArrayList<>();
+            final boolean combineRegexes = KeywordSearchSettings.getCombinedRegexSearch();
+            final IndexProfile indexProfile = KeywordSearch.getServer().getIndexProfile();
+            for (int i = 0; i < keywords.size(); ++i) {
+                Keyword keyword = keywords.get(i);
+                if (!indexProfile.canServe(keyword)) {
+                    // the ingest module warned about it when the job started
+                    subProgresses[i].finish();
+                    continue;
+                }
+                if (keyword.isLiteral()) {
+                    KeywordList list = keywordToList.get(keyword.getQuery());
+                    List<Integer> literals = literalsByList.get(list);
+                    if (literals == null) {
+                        literals = new ArrayList<>();
+                        literalsByList.put(list, literals);
+                    }
+                    literals.add(i);
+                } else if (combineRegexes && RegexTermsScan.canCombine(keyword)) {
+                    combinableRegexes.add(i);
+                } else {
+                    tasks.add(new KeywordQueryTask(i, dataSourceFilter, null));
+                }
+            }
+
+            if (combinableRegexes.size() == 1) {
+                tasks.add(new KeywordQueryTask(combinableRegexes.get(0), dataSourceFilter, null));
+            } else if (combinableRegexes.size() > 1) {
+                tasks.add(new RegexTermsScanTask(combinableRegexes));
+            }
+
+            for (List<Integer> literals : literalsByList.values()) {
+                for (int start = 0; start < literals.size(); start += MAX_KEYWORDS_PER_GROUP) {
+                    List<Integer> group = literals.subList(start, Math.min(start + MAX_KEYWORDS_PER_GROUP, literals.size()));
+                    if (group.size() == 1) {
+                        tasks.add(new KeywordQueryTask(group.get(0), dataSourceFilter, null));
+                    } else {
+                        tasks.add(new KeywordGroupQueryTask(new ArrayList<>(group), dataSourceFilter));
+                    }
+                }
+            }
+            return tasks;
+        }
+
+        /**
+         * Writes the hits of a keyword query that were not already found by
+         * an earlier search of this job to the blackboard.
+         *
+         * @param keyword      the keyword that was searched for
+         * @param queryResults the results of the keyword query
+         * @param subProgress  progress contributor of the keyword
+         */
+        private void writeResults(Keyword keyword, QueryResults queryResults, ProgressContributor subProgress) {
+            final KeywordList list = keywordToList.get(keyword.getQuery());
+
+            // calculate new results by substracting results already obtained in this ingest
+            // this creates a map of each keyword to the list of unique files that have that hit. 
+            QueryResults newResults = filterResults(queryResults);
+
+            if (!newResults.getKeywords().isEmpty()) {
+
+                //scale progress bar more more granular, per result sub-progress, within per keyword
+                int totalUnits = newResults.getKeywords().size();
+                subProgress.start(totalUnits);
+                int unitProgress = 0;
+                String queryDisplayStr = keyword.getQuery();
+                if (queryDisplayStr.length() > 50) {
+                    queryDisplayStr = queryDisplayStr.substring(0, 49) + "...";
+                }
+                subProgress.progress(list.getName() + ": " + queryDisplayStr, unitProgress);
+
+                // Create blackboard artifacts                
+                newResults.writeAllHitsToBlackBoard(null, subProgress, this, list.getIngestMessages());
+
+            } //if has results
+        }
+
         @Override
         protected void done() {
             // call get to see if there were any errors
@@ -581,28 +778,187 @@ private QueryResults filterResults(QueryResults queryResult) {
                     queryTermResultsIDs.add(ch.getSolrObjectId());
                 }
 
-                List<Long> curTermResults = job.currentKeywordResults(keyword);
-                if (curTermResults == null) {
-                    job.addKeywordResults(keyword, queryTermResultsIDs);
-                    newResults.addResult(keyword, queryTermResults);
-                } else {
-                    //some AbstractFile hits already exist for this keyword
-                    for (KeywordHit res : queryTermResults) {
-                        if (!curTermResults.contains(res.getSolrObjectId())) {
-                            //add to new results
-                            List<KeywordHit> newResultsFs = newResults.getResults(keyword);
-                            if (newResultsFs == null) {
-                                newResultsFs = new ArrayList<>();
-                                newResults.addResult(keyword, newResultsFs);
-                            }
-                            newResultsFs.add(res);
-                            curTermResults.add(res.getSolrObjectId());
-                        }
+                //keep all hits of objects that had no hits for this keyword yet,
+                //so the hit with the lowest chunk id is still the one reported
+                Set<Long> newResultsIDs = job.addKeywordResults(keyword, queryTermResultsIDs);
+                if (newResultsIDs.isEmpty()) {
+                    continue;
+                }
+                List<KeywordHit> newResultsFs = new ArrayList<>();
+                for (KeywordHit res : queryTermResults) {
+                    if (newResultsIDs.contains(res.getSolrObjectId())) {
+                        newResultsFs.add(res);
                     }
                 }
+                newResults.addResult(keyword, newResultsFs);
             }
 
             return newResults;
         }
+
+        /**
+         * Runs the query for a single keyword on the search executor.
+         */
+        private final class KeywordQueryTask implements Callable<KeywordQueryResult> {
+
+            private final int keywordIndex;
+            private final KeywordQueryFilter dataSourceFilter;
+            private final List<Term> matchedTerms;
+
+            /**
+             * @param keywordIndex     index of the keyword to query
+             * @param dataSourceFilter filter for the data source of the job
+             * @param matchedTerms     for a regex keyword, the terms already
+             *                         found by a combined terms scan, or null
+             *                         to query the terms component
+             */
+            KeywordQueryTask(int keywordIndex, KeywordQueryFilter dataSourceFilter, List<Term> matchedTerms) {
+                this.keywordIndex = keywordIndex;
+                this.dataSourceFilter = dataSourceFilter;
+                this.matchedTerms = matchedTerms;
+            }
+
+            @Override
+            public KeywordQueryResult call() throws NoOpenCoreException {
+                final Keyword keywordQuery = keywords.get(keywordIndex);
+                final KeywordList list = keywordToList.get(keywordQuery.getQuery());
+
+                KeywordSearchQuery keywordSearchQuery;
+                boolean isRegex = !keywordQuery.isLiteral();
+                if (isRegex) {
+                    keywordSearchQuery = new TermComponentQuery(list, keywordQuery);
+                } else {
+                    keywordSearchQuery = new LuceneQuery(list, keywordQuery);
+                    keywordSearchQuery.escape();
+                }
+                keywordSearchQuery.addFilter(dataSourceFilter);
+
+                // Do the actual search
+                try {
+                    if (matchedTerms != null) {
+                        return new KeywordQueryResult(keywordIndex, ((TermComponentQuery) keywordSearchQuery).performQuery(matchedTerms));
+                    }
+                    return new KeywordQueryResult(keywordIndex, keywordSearchQuery.performQuery());
+                } catch (NoOpenCoreException | CancellationException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, "Error performing query: " + keywordQuery.getQuery(), ex); //NON-NLS
+                    return new KeywordQueryResult(keywordIndex, null);
+                }
+            }
+        }
+
+        /**
+         * Checks with a single OR query whether any of a group of literal
+         * keywords from the same list has a hit.
+         */
+        private final class KeywordGroupQueryTask implements Callable<KeywordQueryResult> {
+
+            private final List<Integer> keywordIndices;
+            private final KeywordQueryFilter dataSourceFilter;
+
+            KeywordGroupQueryTask(List<Integer> keywordIndices, KeywordQueryFilter dataSourceFilter) {
+                this.keywordIndices = keywordIndices;
+                this.dataSourceFilter = dataSourceFilter;
+            }
+
+            @Override
+            public KeywordQueryResult call() throws NoOpenCoreException {
+                List<Keyword> groupKeywords = new ArrayList<>();
+                for (int keywordIndex : keywordIndices) {
+                    groupKeywords.add(keywords.get(keywordIndex));
+                }
+                List<KeywordQueryFilter> filters = new ArrayList<>();
+                filters.add(dataSourceFilter);
+                return new KeywordQueryResult(keywordIndices, LuceneQuery.hasAnyHits(groupKeywords, filters));
+            }
+        }
+
+        /**
+         * Matches a set of regex keywords against the terms dictionary with a
+         * single combined terms component request.
+         */
+        private final class RegexTermsScanTask implements Callable<KeywordQueryResult> {
+
+            private final List<Integer> keywordIndices;
+
+            RegexTermsScanTask(List<Integer> keywordIndices) {
+                this.keywordIndices = keywordIndices;
+            }
+
+            @Override
+            public KeywordQueryResult call() throws NoOpenCoreException {
+                List<Keyword> regexKeywords = new ArrayList<>();
+                for (int keywordIndex : keywordIndices) {
+                    regexKeywords.add(keywords.get(keywordIndex));
+                }
+                return new KeywordQueryResult(keywordIndices, new RegexTermsScan(regexKeywords).matchTerms());
+            }
+        }
+    }
+
+    /**
+     * Result of a query task: the results of a single keyword query, whether
+     * any keyword of a group of literals has hits, or the terms matched by each
+     * keyword of a combined regex terms scan.
+     */
+    private static final class KeywordQueryResult {
+
+        enum Type {
+
+            KEYWORD, LITERAL_GROUP, REGEX_TERMS
+        };
+        private final Type type;
+        private final List<Integer> keywordIndices;
+        private final QueryResults queryResults;
+        private final boolean groupHasHits;
+        private final List<List<Term>> matchedTerms;
+
+        KeywordQueryResult(int keywordIndex, QueryResults queryResults) {
+            this(Type.KEYWORD, Collections.singletonList(keywordIndex), queryResults, false, null);
+        }
+
+        KeywordQueryResult(List<Integer> keywordIndices, boolean groupHasHits) {
+            this(Type.LITERAL_GROUP, keywordIndices, null, groupHasHits, null);
+        }
+
+        KeywordQueryResult(List<Integer> keywordIndices, List<List<Term>> matchedTerms) {
+            this(Type.REGEX_TERMS, keywordIndices, null, false, matchedTerms);
+        }
+
+        private KeywordQueryResult(Type type, List<Integer> keywordIndices, QueryResults queryResults, boolean groupHasHits, List<List<Term>> matchedTerms) {
+            this.type = type;
+            this.keywordIndices = keywordIndices;
+            this.queryResults = queryResults;
+            this.groupHasHits = groupHasHits;
+            this.matchedTerms = matchedTerms;
+        }
+
+        Type getType() {
+            return type;
+        }
+
+        List<Integer> getKeywordIndices() {
+            return keywordIndices;
+        }
+
+        /**
+         * @return the query results, or null if the query failed or this is
+         *         not a single keyword result
+         */
+        QueryResults getQueryResults() {
+            return queryResults;
+        }
+
+        boolean groupHasHits() {
+            return groupHasHits;
+        }
+
+        /**
+         * @return for each keyword index, the terms it matched
+         */
+        List<List<Term>> getMatchedTerms() {
+            return matchedTerms;
+        }
     }
 }
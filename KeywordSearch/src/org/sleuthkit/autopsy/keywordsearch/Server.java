@@ -37,13 +37,17 @@
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import javax.swing.AbstractAction;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.request.CoreAdminRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -63,6 +67,7 @@
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ShardParams;
 import org.sleuthkit.autopsy.casemodule.Case.CaseType;
 import org.sleuthkit.autopsy.coreutils.UNCPathUtilities;
 import org.sleuthkit.autopsy.core.UserPreferences;
@@ -149,6 +154,20 @@ public String toString() {
                 return "num_chunks"; //NON-NLS
             }
         },
+        // md5 of a file whose text is indexed, when indexing by content hash
+        CONTENT_MD5 {
+            @Override
+            public String toString() {
+                return "content_md5"; //NON-NLS
+            }
+        },
+        // for a file indexed as an alias, the id of the file with the same content whose text is indexed
+        ALIAS_OF {
+            @Override
+            public String toString() {
+                return "alias_of"; //NON-NLS
+            }
+        },
     };
 
     public static final String HL_ANALYZE_CHARS_UNLIMITED = "500000"; //max 1MB in a chunk. use -1 for unlimited, but -1 option may not be supported (not documented)
@@ -160,7 +179,6 @@ public String toString() {
     public static final char ID_CHUNK_SEP = '_';
     private String javaPath = "java"; //NON-NLS
     public static final Charset DEFAULT_INDEXED_TEXT_CHARSET = Charset.forName("UTF-8"); ///< default Charset to index text as
-    private static final int MAX_SOLR_MEM_MB = 512; //TODO set dynamically based on avail. system resources
     private Process curSolrProcess = null;
     static final String PROPERTIES_FILE = KeywordSearchSettings.MODULE_NAME;
     static final String PROPERTIES_CURRENT_SERVER_PORT = "IndexingServerPort"; //NON-NLS
@@ -175,6 +193,11 @@ public String toString() {
     private UNCPathUtilities uncPathUtilities = null;
     private static final String SOLR = "solr";
     private static final String CORE_PROPERTIES = "core.properties";
+    // data source cores are in <core data dir>/../shards/<prefix><data source id>/data
+    private static final String SHARDS_FOLDER = "shards"; //NON-NLS
+    private static final String SHARD_PREFIX = "ds"; //NON-NLS
+    // request parameter with the data sources a query is restricted to, see routeToDataSources()
+    private static final String DATA_SOURCES_PARAM = "autopsy.dataSources"; //NON-NLS
 
     public enum CORE_EVT_STATES {
 
@@ -191,6 +214,17 @@ public enum CORE_EVT_STATES {
     private Core currentCore;
     private final ReentrantReadWriteLock currentCoreLock;
 
+    // set while the index of single-user cases runs in this process instead of a Solr server process
+    private EmbeddedSolr embeddedSolr = null;
+
+    // cores of the data sources of the current case, if it is sharded by data source
+    private final Map<Long, Core> dataSourceCores = new ConcurrentHashMap<>();
+    private boolean shardByDataSource = false; //guarded by currentCoreLock
+    private File shardsDir = null; //guarded by currentCoreLock
+    private volatile IndexProfile indexProfile = IndexProfile.LITERAL_AND_REGEX;
+    // true if the schema of the current core fills content_ws, as older schemas did
+    private volatile boolean contentWsCopiedBySchema = false;
+
     private final File solrFolder;
     private final ServerAction serverAction;
     private InputStreamPrinterThread errorRedirectThread;
@@ -366,6 +400,11 @@ void start() throws KeywordSearchModuleException, SolrServerNoPortException {
             stop();
         }
 
+        if (KeywordSearchSettings.getEmbeddedSolr()) {
+            startEmbedded();
+            return;
+        }
+
         if (!isPortAvailable(currentSolrServerPort)) {
             // There is something already listening on our port. Let's see if
             // this is from an earlier run that didn't successfully shut down
@@ -397,15 +436,19 @@ void start() throws KeywordSearchModuleException, SolrServerNoPortException {
         if (isPortAvailable(currentSolrServerPort)) {
             logger.log(Level.INFO, "Port [{0}] available, starting Solr", currentSolrServerPort); //NON-NLS
             try {
-                final String MAX_SOLR_MEM_MB_PAR = "-Xmx" + Integer.toString(MAX_SOLR_MEM_MB) + "m"; //NON-NLS
+                SolrResourceSettings resourceSettings = new SolrResourceSettings();
+                resourceSettings.log();
                 List<String> commandLine = new ArrayList<>();
                 commandLine.add(javaPath);
-                commandLine.add(MAX_SOLR_MEM_MB_PAR);
+                commandLine.add(resourceSettings.getMaxHeapOption());
                 commandLine.add("-DSTOP.PORT=" + currentSolrStopPort); //NON-NLS
                 commandLine.add("-Djetty.port=" + currentSolrServerPort); //NON-NLS
                 commandLine.add("-DSTOP.KEY=" + KEY); //NON-NLS
                 commandLine.add("-jar"); //NON-NLS
                 commandLine.add("start.jar"); //NON-NLS
+                // start.jar sets these as system properties; they go last so the
+                // argument positions used to find running Solr processes stay the same
+                commandLine.addAll(resourceSettings.getSystemPropertyOptions());
 
                 ProcessBuilder solrProcessBuilder = new ProcessBuilder(commandLine);
                 solrProcessBuilder.directory(solrFolder);
@@ -443,6 +486,19 @@ void start() throws KeywordSearchModuleException, SolrServerNoPortException {
         }
     }
 
+    /**
+     * Loads Solr in this process for the indexes of single-user cases. Nothing
+     * listens on the Solr port, multi-user cases still use their server.
+     *
+     * @throws KeywordSearchModuleException
+     */
+    private synchronized void startEmbedded() throws KeywordSearchModuleException {
+        SolrResourceSettings resourceSettings = new SolrResourceSettings();
+        resourceSettings.log();
+        // the heap setting does not apply, the index uses the heap of this process
+        embeddedSolr = new EmbeddedSolr(Paths.get(solrFolder.getAbsolutePath(), SOLR).toFile(), resourceSettings.getSystemProperties());
+    }
+
     /**
      * Checks to see if a specific port is available.
      *
@@ -508,6 +564,12 @@ synchronized void stop() {
             logger.log(Level.WARNING, "Failed to close core: ", e); //NON-NLS
         }
 
+        if (embeddedSolr != null) {
+            embeddedSolr.shutdown();
+            embeddedSolr = null;
+            return;
+        }
+
         try {
             logger.log(Level.INFO, "Stopping Solr server from: {0}", solrFolder.getAbsolutePath()); //NON-NLS
 
@@ -555,6 +617,9 @@ synchronized void stop() {
      *         true
      */
     synchronized boolean isRunning() throws KeywordSearchModuleException {
+        if (embeddedSolr != null) {
+            return true;
+        }
         try {
 
             if (isPortAvailable(currentSolrServerPort)) {
@@ -613,6 +678,25 @@ void openCoreForCase(Case theCase) throws KeywordSearchModuleException {
         currentCoreLock.writeLock().lock();
         try {
             currentCore = openCore(theCase);
+            openDataSourceCores(theCase);
+            try {
+                File indexDir = new File(geCoreDataDirPath(theCase)).getParentFile();
+                indexProfile = IndexProfile.loadForIndex(indexDir, currentCore.queryNumIndexedDocuments() == 0);
+            } catch (SolrServerException ex) {
+                throw new KeywordSearchModuleException(NbBundle.getMessage(this.getClass(), "Server.queryNumIdxDocs.exception.msg"), ex);
+            }
+            logger.log(Level.INFO, "Index profile of the case: {0}", indexProfile); //NON-NLS
+            try {
+                contentWsCopiedBySchema = currentCore.schemaCopiesContentWs();
+            } catch (SolrServerException | SolrException ex) {
+                logger.log(Level.WARNING, "Could not get the copy fields of the schema, assuming content_ws is not copied", ex); //NON-NLS
+                contentWsCopiedBySchema = false;
+            }
+            if (contentWsCopiedBySchema && !indexProfile.supportsRegex()) {
+                logger.log(Level.WARNING, "The schema of the core copies the content to content_ws, the {0} index profile does not make the index smaller", indexProfile); //NON-NLS
+            }
+            TextViewerCache.invalidate();
+            QueryResultCache.invalidate();
             serverAction.putValue(CORE_EVT, CORE_EVT_STATES.STARTED);
         } finally {
             currentCoreLock.writeLock().unlock();
@@ -637,8 +721,15 @@ void closeCore() throws KeywordSearchModuleException {
         currentCoreLock.writeLock().lock();
         try {
             if (null != currentCore) {
+                for (Core dataSourceCore : dataSourceCores.values()) {
+                    dataSourceCore.close();
+                }
+                dataSourceCores.clear();
+                shardByDataSource = false;
                 currentCore.close();
                 currentCore = null;
+                TextViewerCache.invalidate();
+                QueryResultCache.invalidate();
                 serverAction.putValue(CORE_EVT, CORE_EVT_STATES.STOPPED);
             }
         } finally {
@@ -649,12 +740,144 @@ void closeCore() throws KeywordSearchModuleException {
     void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
         currentCoreLock.readLock().lock();
         try {
-            currentCore.addDocument(doc);
+            getCoreForDocument(doc).addDocument(doc);
         } finally {
             currentCoreLock.readLock().unlock();
         }
     }
 
+    /**
+     * Adds documents to the index with one update request per core
+     *
+     * @param docs the documents
+     *
+     * @throws KeywordSearchModuleException
+     */
+    void addDocuments(Collection<SolrInputDocument> docs) throws KeywordSearchModuleException {
+        currentCoreLock.readLock().lock();
+        try {
+            Map<Core, List<SolrInputDocument>> docsPerCore = new HashMap<>();
+            for (SolrInputDocument doc : docs) {
+                Core core = getCoreForDocument(doc);
+                List<SolrInputDocument> coreDocs = docsPerCore.get(core);
+                if (coreDocs == null) {
+                    coreDocs = new ArrayList<>();
+                    docsPerCore.put(core, coreDocs);
+                }
+                coreDocs.add(doc);
+            }
+            for (Map.Entry<Core, List<SolrInputDocument>> entry : docsPerCore.entrySet()) {
+                entry.getKey().addDocuments(entry.getValue());
+            }
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the data source cores of a single-user case, if the case is
+     * sharded by data source. A case is sharded if it already has data source
+     * cores, or if it is new and sharding is enabled.
+     *
+     * @param theCase the case whose main core was just opened
+     *
+     * @throws KeywordSearchModuleException
+     */
+    private void openDataSourceCores(Case theCase) throws KeywordSearchModuleException {
+        dataSourceCores.clear();
+        shardByDataSource = false;
+        if (theCase.getCaseType() != CaseType.SINGLE_USER_CASE) {
+            // other nodes would not know about cores added by this one
+            return;
+        }
+        if (embeddedSolr != null) {
+            // distributed queries over the data source cores need a server
+            if (KeywordSearchSettings.getShardByDataSource()) {
+                logger.log(Level.WARNING, "Indexing data sources in separate cores is not supported by embedded Solr, using a single core"); //NON-NLS
+            }
+            return;
+        }
+        shardsDir = new File(new File(geCoreDataDirPath(theCase)).getParentFile(), SHARDS_FOLDER);
+        File[] shardDirs = shardsDir.listFiles();
+        if (shardDirs != null) {
+            for (File shardDir : shardDirs) {
+                if (shardDir.getName().startsWith(SHARD_PREFIX)) {
+                    try {
+                        long dataSourceId = Long.parseLong(shardDir.getName().substring(SHARD_PREFIX.length()));
+                        dataSourceCores.put(dataSourceId, openDataSourceCore(dataSourceId));
+                    } catch (NumberFormatException ex) {
+                        logger.log(Level.WARNING, "Ignoring unexpected folder in " + shardsDir, ex); //NON-NLS
+                    }
+                }
+            }
+        }
+        shardByDataSource = !dataSourceCores.isEmpty() || KeywordSearchSettings.getShardByDataSource();
+        if (shardByDataSource) {
+            logger.log(Level.INFO, "Indexing data sources in separate cores, {0} data source cores opened", dataSourceCores.size()); //NON-NLS
+        }
+    }
+
+    private Core openDataSourceCore(long dataSourceId) throws KeywordSearchModuleException {
+        File dataDir = new File(new File(shardsDir, SHARD_PREFIX + dataSourceId), "data"); //NON-NLS
+        return openCore(currentCore.getName() + "_" + SHARD_PREFIX + dataSourceId, dataDir, CaseType.SINGLE_USER_CASE);
+    }
+
+    /**
+     * Gets the core to add a document to: the core of its data source if the
+     * case is sharded by data source, otherwise the main core. The core of a
+     * data source is created with its first document.
+     *
+     * @param doc the document
+     *
+     * @return the core
+     *
+     * @throws KeywordSearchModuleException
+     */
+    private Core getCoreForDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
+        Object imageId = doc.getFieldValue(Schema.IMAGE_ID.toString());
+        if (!shardByDataSource || imageId == null) {
+            return currentCore;
+        }
+        final long dataSourceId;
+        try {
+            dataSourceId = Long.parseLong(imageId.toString());
+        } catch (NumberFormatException ex) {
+            return currentCore;
+        }
+        if (dataSourceId < 0) {
+            return currentCore;
+        }
+        Core core = dataSourceCores.get(dataSourceId);
+        if (core == null) {
+            synchronized (dataSourceCores) {
+                core = dataSourceCores.get(dataSourceId);
+                if (core == null) {
+                    core = openDataSourceCore(dataSourceId);
+                    dataSourceCores.put(dataSourceId, core);
+                    logger.log(Level.INFO, "Created core {0} for data source {1}", new Object[]{core.getName(), dataSourceId}); //NON-NLS
+                }
+            }
+        }
+        return core;
+    }
+
+    /**
+     * Restricts a query to the cores of the given data sources, if the case is
+     * sharded by data source. The main core is always searched, since it holds
+     * the documents indexed before the case was sharded. The query still needs
+     * the data source filter.
+     *
+     * @param sq            the query
+     * @param dataSourceIds the data sources the query is filtered to
+     */
+    static void routeToDataSources(SolrQuery sq, Collection<Long> dataSourceIds) {
+        StringBuilder sb = new StringBuilder();
+        for (Long dataSourceId : dataSourceIds) {
+            sb.append(sb.length() == 0 ? "" : ",").append(dataSourceId);
+        }
+        sq.set(DATA_SOURCES_PARAM, sb.toString());
+    }
+
     /**
      * Get index dir location for the case
      *
@@ -694,14 +917,18 @@ String geCoreDataDirPath(Case theCase) {
      */
     private Core openCore(Case theCase) throws KeywordSearchModuleException {
         try {
-            if (theCase.getCaseType() == CaseType.SINGLE_USER_CASE) {
+            if (theCase.getCaseType() == CaseType.SINGLE_USER_CASE && embeddedSolr != null) {
+                currentSolrServer = null; // no server to connect to
+            } else if (theCase.getCaseType() == CaseType.SINGLE_USER_CASE) {
                 currentSolrServer = this.localSolrServer;
             } else {
                 String host = UserPreferences.getIndexingServerHost();
                 String port = UserPreferences.getIndexingServerPort();
                 currentSolrServer = new HttpSolrServer("http://" + host + ":" + port + "/solr"); //NON-NLS
             }
-            connectToSolrServer(currentSolrServer);
+            if (currentSolrServer != null) {
+                connectToSolrServer(currentSolrServer);
+            }
 
         } catch (SolrServerException | IOException ex) {
             throw new KeywordSearchModuleException(NbBundle.getMessage(Server.class, "Server.connect.exception.msg"), ex);
@@ -723,7 +950,35 @@ void commit() throws SolrServerException, NoOpenCoreException {
             if (null == currentCore) {
                 throw new NoOpenCoreException();
             }
-            currentCore.commit();
+            currentCore.commit(false);
+            for (Core dataSourceCore : dataSourceCores.values()) {
+                dataSourceCore.commit(false);
+            }
+            TextViewerCache.invalidate();
+            QueryResultCache.invalidate();
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Soft commits current core if it exists. Makes the added documents
+     * visible to searches without flushing them to disk.
+     *
+     * @throws SolrServerException, NoOpenCoreException
+     */
+    void softCommit() throws SolrServerException, NoOpenCoreException {
+        currentCoreLock.readLock().lock();
+        try {
+            if (null == currentCore) {
+                throw new NoOpenCoreException();
+            }
+            currentCore.commit(true);
+            for (Core dataSourceCore : dataSourceCores.values()) {
+                dataSourceCore.commit(true);
+            }
+            TextViewerCache.invalidate();
+            QueryResultCache.invalidate();
         } finally {
             currentCoreLock.readLock().unlock();
         }
@@ -792,6 +1047,57 @@ public int queryNumIndexedChunks() throws KeywordSearchModuleException, NoOpenCo
         }
     }
 
+    /**
+     * Gets the profile of the index of the current case, which determines the
+     * queries it can serve
+     *
+     * @return the profile
+     */
+    IndexProfile getIndexProfile() {
+        return indexProfile;
+    }
+
+    /**
+     * Checks whether the schema of the current core copies the content to the
+     * content_ws field itself, as the schema did before index profiles were
+     * added. It is then filled whatever the index profile, and must not be
+     * added by the client as well.
+     *
+     * @return true if the schema fills content_ws
+     */
+    boolean isContentWsCopiedBySchema() {
+        return contentWsCopiedBySchema;
+    }
+
+    /**
+     * Gets the size of the index of the current case on disk, as reported by
+     * Solr
+     *
+     * @return size in bytes, including the data source cores
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    long queryIndexSize() throws KeywordSearchModuleException, NoOpenCoreException {
+        currentCoreLock.readLock().lock();
+        try {
+            if (null == currentCore) {
+                throw new NoOpenCoreException();
+            }
+            try {
+                long size = currentCore.queryIndexSize();
+                for (Core dataSourceCore : dataSourceCores.values()) {
+                    size += dataSourceCore.queryIndexSize();
+                }
+                return size;
+            } catch (SolrServerException | IOException ex) {
+                throw new KeywordSearchModuleException(NbBundle.getMessage(this.getClass(), "Server.queryIndexSize.exception.msg"), ex);
+            }
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
     /**
      * Execute query that gets only number of all Solr documents indexed (files
      * and chunks) without actually returning the documents
@@ -1075,6 +1381,16 @@ public static String getChunkIdString(long parentID, int childID) {
      */
     private Core openCore(String coreName, File dataDir, CaseType caseType) throws KeywordSearchModuleException {
 
+        if (caseType == CaseType.SINGLE_USER_CASE && embeddedSolr != null) {
+            if (!dataDir.exists()) {
+                dataDir.mkdirs();
+            }
+            if (!embeddedSolr.coreIsLoaded(coreName)) {
+                embeddedSolr.createCore(coreName, dataDir);
+            }
+            return new Core(coreName, caseType);
+        }
+
         try {
             if (!dataDir.exists()) {
                 dataDir.mkdirs();
@@ -1183,27 +1499,45 @@ class Core {
 
         private final CaseType caseType;
 
+        // true if the core runs in this process, see EmbeddedSolr
+        private final boolean embedded;
+
         // the server to access a core needs to be built from a URL with the
         // core in it, and is only good for core-specific operations
-        private final HttpSolrServer solrCore;
+        private final SolrServer solrCore;
+
+        // address of the core in distributed queries, null if embedded
+        private final String shardAddress;
 
         private Core(String name, CaseType caseType) {
             this.name = name;
             this.caseType = caseType;
+            this.embedded = (caseType == CaseType.SINGLE_USER_CASE && embeddedSolr != null);
+
+            if (embedded) {
+                this.solrCore = embeddedSolr.getCoreServer(name);
+                this.shardAddress = null;
+                return;
+            }
 
-            this.solrCore = new HttpSolrServer(currentSolrServer.getBaseURL() + "/" + name);
+            HttpSolrServer httpSolrCore = new HttpSolrServer(currentSolrServer.getBaseURL() + "/" + name);
+            this.solrCore = httpSolrCore;
+            this.shardAddress = httpSolrCore.getBaseURL().replaceFirst("^[a-z]+://", ""); //NON-NLS
 
             //TODO test these settings
             //solrCore.setSoTimeout(1000 * 60);  // socket read timeout, make large enough so can index larger files
             //solrCore.setConnectionTimeout(1000);
-            solrCore.setDefaultMaxConnectionsPerHost(2);
-            solrCore.setMaxTotalConnections(5);
-            solrCore.setFollowRedirects(false);  // defaults to false
+            // keyword queries are sent concurrently by the search executor,
+            // leave room for indexing and commit requests on top of those
+            final int searchThreads = KeywordSearchSettings.getSearchThreads();
+            httpSolrCore.setDefaultMaxConnectionsPerHost(searchThreads + 2);
+            httpSolrCore.setMaxTotalConnections(searchThreads + 5);
+            httpSolrCore.setFollowRedirects(false);  // defaults to false
             // allowCompression defaults to false.
             // Server side must support gzip or deflate for this to have any effect.
-            solrCore.setAllowCompression(true);
-            solrCore.setMaxRetries(1); // defaults to 0.  > 1 not recommended.
-            solrCore.setParser(new XMLResponseParser()); // binary parser is used by default
+            httpSolrCore.setAllowCompression(true);
+            httpSolrCore.setMaxRetries(1); // defaults to 0.  > 1 not recommended.
+            httpSolrCore.setParser(new XMLResponseParser()); // binary parser is used by default
 
         }
 
@@ -1216,7 +1550,51 @@ String getName() {
             return name;
         }
 
+        /**
+         * Gets the address of the core as used in the shards parameter of a
+         * distributed query
+         *
+         * @return host:port/path/name of the core
+         */
+        private String getShardAddress() {
+            return shardAddress;
+        }
+
+        /**
+         * Makes the query a distributed query over the data source cores if
+         * the case is sharded. Solr sends it to the cores in parallel and
+         * merges the results (paging, sorting, highlighting, terms).
+         *
+         * @param sq the query
+         */
+        private void addShards(SolrQuery sq) {
+            if (dataSourceCores.isEmpty()) {
+                return;
+            }
+            Collection<Core> shards = dataSourceCores.values();
+            String route = sq.get(DATA_SOURCES_PARAM);
+            if (route != null) {
+                shards = new ArrayList<>();
+                for (String dataSourceId : route.split(",")) {
+                    Core shard = route.isEmpty() ? null : dataSourceCores.get(Long.parseLong(dataSourceId));
+                    if (shard != null) {
+                        shards.add(shard);
+                    }
+                }
+            }
+            StringBuilder sb = new StringBuilder(getShardAddress());
+            for (Core shard : shards) {
+                sb.append(',').append(shard.getShardAddress());
+            }
+            sq.set(ShardParams.SHARDS, sb.toString());
+            if (sq.getRequestHandler() != null) {
+                // e.g. the terms handler, sub-requests would go to /select otherwise
+                sq.set(ShardParams.SHARDS_QT, sq.getRequestHandler());
+            }
+        }
+
         private QueryResponse query(SolrQuery sq) throws SolrServerException {
+            addShards(sq);
             return solrCore.query(sq);
         }
 
@@ -1232,18 +1610,19 @@ private NamedList<Object> request(SolrRequest request) throws SolrServerExceptio
         }
 
         private QueryResponse query(SolrQuery sq, SolrRequest.METHOD method) throws SolrServerException {
+            addShards(sq);
             return solrCore.query(sq, method);
         }
 
         private TermsResponse queryTerms(SolrQuery sq) throws SolrServerException {
-            QueryResponse qres = solrCore.query(sq);
+            QueryResponse qres = query(sq);
             return qres.getTermsResponse();
         }
 
-        private void commit() throws SolrServerException {
+        private void commit(boolean softCommit) throws SolrServerException {
             try {
                 //commit and block
-                solrCore.commit(true, true);
+                solrCore.commit(true, true, softCommit);
             } catch (IOException e) {
                 logger.log(Level.WARNING, "Could not commit index. ", e); //NON-NLS
                 throw new SolrServerException(NbBundle.getMessage(this.getClass(), "Server.commit.exception.msg"), e);
@@ -1264,6 +1643,24 @@ void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
             }
         }
 
+        void addDocuments(Collection<SolrInputDocument> docs) throws KeywordSearchModuleException {
+            if (docs.isEmpty()) {
+                return;
+            }
+            final Object firstId = docs.iterator().next().getField("id"); //NON-NLS
+            try {
+                solrCore.add(docs);
+            } catch (SolrServerException ex) {
+                logger.log(Level.SEVERE, "Could not add " + docs.size() + " documents to index via update handler, first: " + firstId, ex); //NON-NLS
+                throw new KeywordSearchModuleException(
+                        NbBundle.getMessage(this.getClass(), "Server.addDoc.exception.msg", firstId), ex); //NON-NLS
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Could not add " + docs.size() + " documents to index via update handler, first: " + firstId, ex); //NON-NLS
+                throw new KeywordSearchModuleException(
+                        NbBundle.getMessage(this.getClass(), "Server.addDoc.exception.msg2", firstId), ex); //NON-NLS
+            }
+        }
+
         /**
          * get the text from the content field for the given file
          *
@@ -1283,7 +1680,7 @@ private String getSolrContent(long contentID, int chunkID) {
             q.setFields(Schema.TEXT.toString());
             try {
                 // Get the first result. 
-                SolrDocumentList solrDocuments = solrCore.query(q).getResults();
+                SolrDocumentList solrDocuments = query(q).getResults();
 
                 if (!solrDocuments.isEmpty()) {
                     SolrDocument solrDocument = solrDocuments.get(0);
@@ -1312,6 +1709,10 @@ synchronized void close() throws KeywordSearchModuleException {
             if (this.caseType == CaseType.MULTI_USER_CASE) {
                 return;
             }
+            if (embedded) {
+                embeddedSolr.unloadCore(this.name);
+                return;
+            }
 
             try {
                 CoreAdminRequest.unloadCore(this.name, currentSolrServer);
@@ -1368,6 +1769,49 @@ private int queryNumIndexedDocuments() throws SolrServerException {
             return (int) query(q).getResults().getNumFound();
         }
 
+        /**
+         * Checks whether the schema of the core copies the content to the
+         * content_ws field
+         *
+         * @return true if the schema has the copy field
+         *
+         * @throws SolrServerException
+         */
+        private boolean schemaCopiesContentWs() throws SolrServerException {
+            if (embedded) {
+                return embeddedSolr.schemaCopiesField(name, Schema.CONTENT.toString(), Schema.CONTENT_WS.toString());
+            }
+            SolrQuery q = new SolrQuery();
+            q.setRequestHandler("/schema/copyfields"); //NON-NLS
+            q.set("source.fl", Schema.CONTENT.toString()); //NON-NLS
+            q.set("dest.fl", Schema.CONTENT_WS.toString()); //NON-NLS
+            Object copyFields = solrCore.query(q).getResponse().get("copyFields"); //NON-NLS
+            return copyFields instanceof Collection && !((Collection<?>) copyFields).isEmpty();
+        }
+
+        /**
+         * Gets the size of the index of the core on disk
+         *
+         * @return size in bytes, or 0 if not reported
+         *
+         * @throws SolrServerException
+         * @throws IOException
+         */
+        private long queryIndexSize() throws SolrServerException, IOException {
+            if (embedded) {
+                return embeddedSolr.getIndexSize(name);
+            }
+            NamedList<Object> status = CoreAdminRequest.getStatus(name, currentSolrServer).getCoreStatus(name);
+            Object index = status.get("index"); //NON-NLS
+            if (index instanceof NamedList) {
+                Object size = ((NamedList<?>) index).get("sizeInBytes"); //NON-NLS
+                if (size instanceof Number) {
+                    return ((Number) size).longValue();
+                }
+            }
+            return 0;
+        }
+
         /**
          * Return true if the file is indexed (either as a whole as a chunk)
          *
@@ -0,0 +1,172 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.PlatformUtil;
+
+/**
+ * Memory and index settings of the local Solr server, derived from the RAM and
+ * number of processors of the machine unless overridden in
+ * KeywordSearchSettings. The index settings are passed to Solr as system
+ * properties that solrconfig.xml refers to, with the previous fixed values as
+ * defaults there.
+ */
+class SolrResourceSettings {
+
+    private static final Logger logger = Logger.getLogger(SolrResourceSettings.class.getName());
+    private static final int MB = 1024 * 1024;
+    private static final int MIN_HEAP_MB = 512;
+    // largest heap that still uses compressed object pointers
+    private static final int MAX_HEAP_MB = 31 * 1024;
+    private static final int MAX_HEAP_MB_32_BIT = 1024;
+    // part of the machine's RAM given to Solr, the rest is for Autopsy, the OS and its file cache
+    private static final int RAM_TO_HEAP_RATIO = 8;
+    private static final int MIN_RAM_BUFFER_MB = 32;
+    private static final int MAX_RAM_BUFFER_MB = 512;
+    // documents are chunks of up to 1 MB of text, buffered docs grow with the RAM buffer from the fixed 200 per 32 MB
+    private static final int MIN_MAX_BUFFERED_DOCS = 200;
+    private static final int DEFAULT_MERGE_FACTOR = 10;
+    private static final int LARGE_MERGE_FACTOR = 20;
+    private static final int MIN_CACHE_SIZE = 512;
+    private static final int MAX_CACHE_SIZE = 4096;
+    private static final int MIN_DOCUMENT_CACHE_SIZE = 32;
+    private static final int MAX_DOCUMENT_CACHE_SIZE = 512;
+
+    private final long physicalMemoryMb;
+    private final int processors;
+    private final int maxHeapMb;
+    private final int ramBufferSizeMb;
+    private final int maxBufferedDocs;
+    private final int mergeFactor;
+    private final int cacheSize;
+    private final int documentCacheSize;
+
+    /**
+     * Derives the settings from the current machine and the overrides in
+     * KeywordSearchSettings.
+     */
+    SolrResourceSettings() {
+        physicalMemoryMb = getPhysicalMemoryMb();
+        processors = Runtime.getRuntime().availableProcessors();
+
+        int heapMb = KeywordSearchSettings.getSolrMaxHeapMb();
+        if (heapMb == 0) {
+            heapMb = MIN_HEAP_MB;
+            if (physicalMemoryMb > 0) {
+                heapMb = (int) clamp(physicalMemoryMb / RAM_TO_HEAP_RATIO, MIN_HEAP_MB, MAX_HEAP_MB);
+            }
+            if (!PlatformUtil.is64BitJVM()) {
+                heapMb = Math.min(heapMb, MAX_HEAP_MB_32_BIT);
+            }
+        }
+        maxHeapMb = heapMb;
+
+        int bufferMb = KeywordSearchSettings.getSolrRamBufferSizeMb();
+        if (bufferMb == 0) {
+            bufferMb = (int) clamp(maxHeapMb / 16, MIN_RAM_BUFFER_MB, MAX_RAM_BUFFER_MB);
+        }
+        ramBufferSizeMb = bufferMb;
+        maxBufferedDocs = Math.max(MIN_MAX_BUFFERED_DOCS, MIN_MAX_BUFFERED_DOCS * ramBufferSizeMb / MIN_RAM_BUFFER_MB);
+
+        int factor = KeywordSearchSettings.getSolrMergeFactor();
+        if (factor == 0) {
+            // with a large buffer and spare cores, merge less often but more at once
+            factor = (ramBufferSizeMb >= 256 && processors >= 8) ? LARGE_MERGE_FACTOR : DEFAULT_MERGE_FACTOR;
+        }
+        mergeFactor = factor;
+
+        int size = KeywordSearchSettings.getSolrCacheSize();
+        if (size == 0) {
+            size = (int) clamp(maxHeapMb / 2, MIN_CACHE_SIZE, MAX_CACHE_SIZE);
+        }
+        cacheSize = size;
+
+        size = KeywordSearchSettings.getSolrDocumentCacheSize();
+        if (size == 0) {
+            // stored documents are large (up to 1 MB of text each), keep this one small
+            size = (int) clamp(maxHeapMb / 32, MIN_DOCUMENT_CACHE_SIZE, MAX_DOCUMENT_CACHE_SIZE);
+        }
+        documentCacheSize = size;
+    }
+
+    /**
+     * @return the JVM option setting the heap size of the Solr process
+     */
+    String getMaxHeapOption() {
+        return "-Xmx" + maxHeapMb + "m"; //NON-NLS
+    }
+
+    /**
+     * @return the system properties referred to by solrconfig.xml
+     */
+    Map<String, String> getSystemProperties() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("solr.ramBufferSizeMB", Integer.toString(ramBufferSizeMb)); //NON-NLS
+        properties.put("solr.maxBufferedDocs", Integer.toString(maxBufferedDocs)); //NON-NLS
+        properties.put("solr.mergeFactor", Integer.toString(mergeFactor)); //NON-NLS
+        properties.put("solr.filterCache.size", Integer.toString(cacheSize)); //NON-NLS
+        properties.put("solr.queryResultCache.size", Integer.toString(cacheSize)); //NON-NLS
+        properties.put("solr.documentCache.size", Integer.toString(documentCacheSize)); //NON-NLS
+        return properties;
+    }
+
+    /**
+     * @return the system properties referred to by solrconfig.xml, as -D
+     *         options
+     */
+    List<String> getSystemPropertyOptions() {
+        List<String> options = new ArrayList<>();
+        for (Map.Entry<String, String> property : getSystemProperties().entrySet()) {
+            options.add("-D" + property.getKey() + "=" + property.getValue()); //NON-NLS
+        }
+        return options;
+    }
+
+    /**
+     * Logs the effective settings and what they were derived from
+     */
+    void log() {
+        logger.log(Level.INFO, "Solr resource settings (physical memory: {0} MB, processors: {1}): heap: {2} MB, RAM buffer: {3} MB, max buffered docs: {4}, merge factor: {5}, filter/query result cache size: {6}, document cache size: {7}", //NON-NLS
+                new Object[]{physicalMemoryMb, processors, maxHeapMb, ramBufferSizeMb, maxBufferedDocs, mergeFactor, cacheSize, documentCacheSize});
+    }
+
+    /**
+     * @return the physical memory of the machine in MB, or 0 if unknown
+     */
+    private static long getPhysicalMemoryMb() {
+        OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osBean).getTotalPhysicalMemorySize() / MB;
+        }
+        logger.log(Level.WARNING, "Could not determine the physical memory size, using minimum Solr settings"); //NON-NLS
+        return 0;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -19,9 +19,14 @@
 package org.sleuthkit.autopsy.keywordsearch;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.SolrInputDocument;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardAttribute;
 import org.sleuthkit.datamodel.TskCoreException;
@@ -51,18 +56,6 @@ public class SolrSearchService implements KeywordSearchService {
 
     @Override
     public void indexArtifact(BlackboardArtifact artifact) throws TskCoreException {
-        if (artifact == null) {
-            return;
-        }
-
-        // We only support artifact indexing for Autopsy versions that use
-        // the negative range for artifact ids.
-        long artifactId = artifact.getArtifactID();
-
-        if (artifactId > 0) {
-            return;
-        }
-
         Case currentCase;
         try {
             currentCase = Case.getCurrentCase();
@@ -70,11 +63,61 @@ public void indexArtifact(BlackboardArtifact artifact) throws TskCoreException {
             // thorown by Case.getCurrentCase() if currentCase is null
             return;
         }
+        indexArtifacts(currentCase.getSleuthkitCase(), Collections.singletonList(artifact));
+    }
 
-        SleuthkitCase sleuthkitCase = currentCase.getSleuthkitCase();
-        if (sleuthkitCase == null) {
+    /**
+     * Indexes the artifacts with one update request
+     *
+     * @param caseDb    the case database of the artifacts
+     * @param artifacts the artifacts
+     *
+     * @throws TskCoreException if an artifact cannot be read or the documents
+     *                          cannot be indexed
+     */
+    @Override
+    public void indexArtifacts(SleuthkitCase caseDb, Collection<BlackboardArtifact> artifacts) throws TskCoreException {
+        if (caseDb == null) {
             return;
         }
+        List<SolrInputDocument> docs = new ArrayList<>();
+        long size = 0;
+        for (BlackboardArtifact artifact : artifacts) {
+            size += createArtifactDocuments(caseDb, artifact, docs);
+        }
+        if (docs.isEmpty()) {
+            return;
+        }
+        try {
+            Ingester.getDefault().ingest(docs, size);
+        } catch (Ingester.IngesterException ex) {
+            throw new TskCoreException(ex.getCause().getMessage(), ex);
+        }
+    }
+
+    /**
+     * Makes the documents to index for an artifact
+     *
+     * @param sleuthkitCase the case database of the artifact
+     * @param artifact      the artifact
+     * @param docs          the documents are added to this list
+     *
+     * @return the size of the indexed content
+     *
+     * @throws TskCoreException
+     */
+    private long createArtifactDocuments(SleuthkitCase sleuthkitCase, BlackboardArtifact artifact, List<SolrInputDocument> docs) throws TskCoreException {
+        if (artifact == null) {
+            return 0;
+        }
+
+        // We only support artifact indexing for Autopsy versions that use
+        // the negative range for artifact ids.
+        long artifactId = artifact.getArtifactID();
+
+        if (artifactId > 0) {
+            return 0;
+        }
 
         Content dataSource;
         AbstractFile abstractFile = sleuthkitCase.getAbstractFileById(artifact.getObjectID());
@@ -85,7 +128,7 @@ public void indexArtifact(BlackboardArtifact artifact) throws TskCoreException {
         }
 
         if (dataSource == null) {
-            return;
+            return 0;
         }
 
         // Concatenate the string values of all attributes into a single 
@@ -125,7 +168,7 @@ public void indexArtifact(BlackboardArtifact artifact) throws TskCoreException {
         }
 
         if (artifactContents.length() == 0) {
-            return;
+            return 0;
         }
 
         // To play by the rules of the existing text markup implementations,
@@ -143,9 +186,9 @@ public void indexArtifact(BlackboardArtifact artifact) throws TskCoreException {
         solrFields.put(Server.Schema.IMAGE_ID.toString(), Long.toString(dataSource.getId()));
 
         try {
-            Ingester.getDefault().ingest(new StringStream(""), solrFields, 0);
+            docs.add(Ingester.getDefault().createDocument(new StringStream(""), solrFields, 0));
         } catch (Ingester.IngesterException ex) {
-            throw new TskCoreException(ex.getCause().getMessage(), ex);
+            throw new TskCoreException(ex.getMessage(), ex);
         }
 
         // Next create the index entry for the document content.
@@ -159,10 +202,11 @@ public void indexArtifact(BlackboardArtifact artifact) throws TskCoreException {
         StringStream contentStream = new StringStream(artifactContents.toString());
 
         try {
-            Ingester.getDefault().ingest(contentStream, solrFields, contentStream.getSize());
+            docs.add(Ingester.getDefault().createDocument(contentStream, solrFields, contentStream.getSize()));
         } catch (Ingester.IngesterException ex) {
-            throw new TskCoreException(ex.getCause().getMessage(), ex);
+            throw new TskCoreException(ex.getMessage(), ex);
         }
+        return contentStream.getSize();
     }
 
     /**
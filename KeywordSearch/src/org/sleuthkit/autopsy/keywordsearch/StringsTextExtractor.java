@@ -47,8 +47,12 @@ class StringsTextExtractor implements TextExtractor {
     private static final SCRIPT DEFAULT_SCRIPT = SCRIPT.LATIN_2;
     private AbstractFile sourceFile;
     private int numChunks = 0;
+    private InStreamKeywordMatcher.FileScan keywordScan;
+    private boolean indexByContentHash = false;
     private final List<SCRIPT> extractScripts = new ArrayList<>();
     private Map<String, String> extractOptions = new HashMap<>();
+    private final boolean sampleScripts;
+    private ScriptSampler scriptSampler = null; //created for the current scripts and options when needed
 
     //disabled prepending of BOM
     //static {
@@ -60,12 +64,14 @@ class StringsTextExtractor implements TextExtractor {
     public StringsTextExtractor() {
         ingester = Server.getIngester();
         extractScripts.add(DEFAULT_SCRIPT);
+        sampleScripts = KeywordSearchSettings.getSampleStringExtractScripts();
     }
 
     @Override
     public boolean setScripts(List<SCRIPT> extractScripts) {
         this.extractScripts.clear();
         this.extractScripts.addAll(extractScripts);
+        this.scriptSampler = null;
         return true;
     }
 
@@ -74,6 +80,21 @@ public List<SCRIPT> getScripts() {
         return new ArrayList<>(extractScripts);
     }
 
+    @Override
+    public void setKeywordScan(InStreamKeywordMatcher.FileScan keywordScan) {
+        this.keywordScan = keywordScan;
+    }
+
+    @Override
+    public void setIndexByContentHash(boolean indexByContentHash) {
+        this.indexByContentHash = indexByContentHash;
+    }
+
+    @Override
+    public boolean isIndexedByContentHash() {
+        return indexByContentHash;
+    }
+
     @Override
     public int getNumChunks() {
         return this.numChunks;
@@ -92,10 +113,27 @@ public Map<String, String> getOptions() {
     @Override
     public void setOptions(Map<String, String> options) {
         this.extractOptions = options;
+        this.scriptSampler = null;
     }
 
     @Override
     public boolean index(AbstractFile sourceFile, IngestJobContext context) throws IngesterException {
+        return index(sourceFile, null, context);
+    }
+
+    /**
+     * Extracts strings from the file and indexes them
+     *
+     * @param sourceFile     the file
+     * @param detectedFormat mime-type detected, or null if none detected or
+     *                       not known
+     * @param context        the ingest job context
+     *
+     * @return true if the file was indexed
+     *
+     * @throws IngesterException
+     */
+    boolean index(AbstractFile sourceFile, String detectedFormat, IngestJobContext context) throws IngesterException {
         this.sourceFile = sourceFile;
         this.numChunks = 0; //unknown until indexing is done
         boolean success = false;
@@ -111,14 +149,22 @@ public boolean index(AbstractFile sourceFile, IngestJobContext context) throws I
             return true;
         }
 
+        List<SCRIPT> scripts = extractScripts;
+        if (sampleScripts) {
+            if (scriptSampler == null) {
+                scriptSampler = new ScriptSampler(extractScripts, extractUTF8, extractUTF16);
+            }
+            scripts = scriptSampler.getScripts(sourceFile, detectedFormat);
+        }
+
         InputStream stringStream;
         //check which extract stream to use
-        if (extractScripts.size() == 1 && extractScripts.get(0).equals(SCRIPT.LATIN_1)) {
+        if (scripts.size() == 1 && scripts.get(0).equals(SCRIPT.LATIN_1)) {
             //optimal for english, english only
             stringStream = new AbstractFileStringStream(sourceFile, INDEX_CHARSET);
         } else {
             stringStream = new AbstractFileStringIntStream(
-                    sourceFile, extractScripts, extractUTF8, extractUTF16, INDEX_CHARSET);
+                    sourceFile, scripts, extractUTF8, extractUTF16, INDEX_CHARSET);
         }
 
         try {
@@ -140,6 +186,9 @@ public boolean index(AbstractFile sourceFile, IngestJobContext context) throws I
                 try {
                     chunk.index(ingester, stringChunkBuf, readSize + BOM_LEN, INDEX_CHARSET);
                     ++this.numChunks;
+                    if (keywordScan != null) {
+                        keywordScan.scanChunk(chunk.getChunkId(), new String(stringChunkBuf, BOM_LEN, (int) readSize, INDEX_CHARSET));
+                    }
                 } catch (IngesterException ingEx) {
                     success = false;
                     logger.log(Level.WARNING, "Ingester had a problem with extracted strings from file '" + sourceFile.getName() + "' (id: " + sourceFile.getId() + ").", ingEx); //NON-NLS
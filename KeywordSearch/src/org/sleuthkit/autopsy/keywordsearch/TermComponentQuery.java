@@ -21,6 +21,7 @@
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -31,6 +32,7 @@
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.response.TermsResponse;
 import org.apache.solr.client.solrj.response.TermsResponse.Term;
+import org.sleuthkit.autopsy.coreutils.StopWatch;
 import org.sleuthkit.autopsy.coreutils.Version;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
@@ -44,11 +46,11 @@
  */
 class TermComponentQuery implements KeywordSearchQuery {
 
-    private static final int TERMS_UNLIMITED = -1;
+    static final int TERMS_UNLIMITED = -1;
     //corresponds to field in Solr schema, analyzed with white-space tokenizer only
-    private static final String TERMS_SEARCH_FIELD = Server.Schema.CONTENT_WS.toString();
-    private static final String TERMS_HANDLER = "/terms"; //NON-NLS
-    private static final int TERMS_TIMEOUT = 90 * 1000; //in ms
+    static final String TERMS_SEARCH_FIELD = Server.Schema.CONTENT_WS.toString();
+    static final String TERMS_HANDLER = "/terms"; //NON-NLS
+    static final int TERMS_TIMEOUT = 90 * 1000; //in ms
     private static final Logger logger = Logger.getLogger(TermComponentQuery.class.getName());
     private String queryEscaped;
     private final KeywordList keywordList;
@@ -57,7 +59,8 @@ class TermComponentQuery implements KeywordSearchQuery {
     private List<Term> terms;
     private final List<KeywordQueryFilter> filters = new ArrayList<>();
     private String field;
-    private static final int MAX_TERMS_RESULTS = 20000;
+    static final int MAX_TERMS_RESULTS = 20000;
+    private static final int TERMS_PER_GROUP_QUERY = 64;
 
     private static final boolean DEBUG = (Version.getBuildType() == Version.Type.DEVELOPMENT);
 
@@ -75,6 +78,11 @@ public void addFilter(KeywordQueryFilter filter) {
         this.filters.add(filter);
     }
 
+    @Override
+    public List<KeywordQueryFilter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
     @Override
     public void setField(String field) {
         this.field = field;
@@ -210,6 +218,11 @@ public KeywordCachedArtifact writeSingleFileHitsToBlackBoard(String termHit, Key
 
     @Override
     public QueryResults performQuery() throws NoOpenCoreException {
+        if (!KeywordSearch.getServer().getIndexProfile().supportsRegex()) {
+            // the terms would be empty, and hits in new documents would be missed silently
+            logger.log(Level.WARNING, "Regex query refused, the index profile does not support it: {0}", keyword.getQuery()); //NON-NLS
+            return performQuery(new ArrayList<Term>());
+        }
         /*
          * Execute the regex query to get a list of terms that match the regex.
          * Note that the field that is being searched is tokenized based on
@@ -220,49 +233,99 @@ public QueryResults performQuery() throws NoOpenCoreException {
         q.setTermsLimit(MAX_TERMS_RESULTS);
         logger.log(Level.INFO, "Query: {0}", q.toString()); //NON-NLS
         terms = executeQuery(q);
+        if (terms == null) {
+            terms = new ArrayList<>();
+        }
+
+        return performQuery(terms);
+    }
+
+    /**
+     * Gets the document hits for terms that are already known to match the
+     * regex, e.g. from a RegexTermsScan of several regexes at once, without
+     * querying the terms component again.
+     *
+     * @param matchedTerms terms that match the regex of this query
+     *
+     * @return the query results, one keyword per matched term
+     *
+     * @throws NoOpenCoreException
+     */
+    QueryResults performQuery(List<Term> matchedTerms) throws NoOpenCoreException {
+        terms = matchedTerms;
 
         /*
-         * For each term that matched the regex, query for the term to get the
-         * full set of document hits.
+         * Get the document hits of the terms that matched the regex, with one
+         * query per group of terms. With filters, many terms of the index wide
+         * dictionary may have no hits; they are dropped.
          */
+        final StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
         QueryResults results = new QueryResults(this, keywordList);
+        final boolean showSnippets = KeywordSearchSettings.getShowSnippets();
         int resultSize = 0;
-        for (Term term : terms) {
-            final String termStr = KeywordSearchUtil.escapeLuceneQuery(term.getTerm());
-
-            LuceneQuery filesQuery = new LuceneQuery(keywordList, new Keyword(termStr, true));
-
-            //filesQuery.setField(TERMS_SEARCH_FIELD);
-            for (KeywordQueryFilter filter : filters) {
-                //set filter
-                //note: we can't set filter query on terms query
-                //but setting filter query on terms results query will yield the same result
-                filesQuery.addFilter(filter);
+        for (int start = 0; start < terms.size(); start += TERMS_PER_GROUP_QUERY) {
+            List<Term> group = terms.subList(start, Math.min(start + TERMS_PER_GROUP_QUERY, terms.size()));
+            List<Keyword> groupKeywords = new ArrayList<>();
+            for (Term term : group) {
+                groupKeywords.add(new Keyword(term.getTerm(), true));
             }
-            try {
-                QueryResults subResults = filesQuery.performQuery();
-                Set<KeywordHit> filesResults = new HashSet<>();
-                for (Keyword key : subResults.getKeywords()) {
-                    List<KeywordHit> keyRes = subResults.getResults(key);
-                    resultSize += keyRes.size();
-                    filesResults.addAll(keyRes);
+            List<List<KeywordHit>> groupHits = LuceneQuery.queryHitsOfEach(groupKeywords, filters, showSnippets);
+            for (int i = 0; i < group.size(); ++i) {
+                final Term term = group.get(i);
+                List<KeywordHit> termHits = groupHits != null ? groupHits.get(i) : queryTermHits(term);
+                if (!termHits.isEmpty()) {
+                    resultSize += termHits.size();
+                    results.addResult(new Keyword(term.getTerm(), false), termHits);
                 }
-                results.addResult(new Keyword(term.getTerm(), false), new ArrayList<>(filesResults));
-            } catch (NoOpenCoreException e) {
-                logger.log(Level.WARNING, "Error executing Solr query,", e); //NON-NLS
-                throw e;
-            } catch (RuntimeException e) {
-                logger.log(Level.WARNING, "Error executing Solr query,", e); //NON-NLS
             }
-
         }
 
         //TODO limit how many results we store, not to hit memory limits
-        logger.log(Level.INFO, "Regex # results: {0}", resultSize); //NON-NLS
+        stopWatch.stop();
+        logger.log(Level.INFO, "Regex # results: {0}, terms: {1}, time to resolve terms: {2} ms", new Object[]{resultSize, terms.size(), stopWatch.getElapsedTime()}); //NON-NLS
 
         return results;
     }
 
+    /**
+     * Gets the document hits of a term with its own query, if the query of its
+     * group failed
+     *
+     * @param term the term
+     *
+     * @return the hits, empty if there are none or the query failed
+     *
+     * @throws NoOpenCoreException
+     */
+    private List<KeywordHit> queryTermHits(Term term) throws NoOpenCoreException {
+        final String termStr = KeywordSearchUtil.escapeLuceneQuery(term.getTerm());
+
+        LuceneQuery filesQuery = new LuceneQuery(keywordList, new Keyword(termStr, true));
+
+        //filesQuery.setField(TERMS_SEARCH_FIELD);
+        for (KeywordQueryFilter filter : filters) {
+            //set filter
+            //note: we can't set filter query on terms query
+            //but setting filter query on terms results query will yield the same result
+            filesQuery.addFilter(filter);
+        }
+        try {
+            QueryResults subResults = filesQuery.performQuery();
+            Set<KeywordHit> filesResults = new HashSet<>();
+            for (Keyword key : subResults.getKeywords()) {
+                filesResults.addAll(subResults.getResults(key));
+            }
+            return new ArrayList<>(filesResults);
+        } catch (NoOpenCoreException e) {
+            logger.log(Level.WARNING, "Error executing Solr query,", e); //NON-NLS
+            throw e;
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Error executing Solr query,", e); //NON-NLS
+            return new ArrayList<>();
+        }
+    }
+
     @Override
     public KeywordList getKeywordList() {
         return keywordList;
@@ -134,6 +134,29 @@ enum ExtractOptions {
      */
     void setOptions(Map<String, String> options);
 
+    /**
+     * Set the in-stream keyword scan that the text of each chunk is passed to
+     * after the chunk is indexed
+     *
+     * @param keywordScan scan of the file being indexed, or null for none
+     */
+    void setKeywordScan(InStreamKeywordMatcher.FileScan keywordScan);
+
+    /**
+     * Sets whether the files indexed with their text are made the canonical
+     * files for their content, see ContentAliasIndex. Set from the keyword
+     * search settings of the ingest job.
+     *
+     * @param indexByContentHash the keyword search setting of the job
+     */
+    void setIndexByContentHash(boolean indexByContentHash);
+
+    /**
+     * @return true if the parent document of the file gets its MD5 in the
+     *         content_md5 field
+     */
+    boolean isIndexedByContentHash();
+
     /**
      * Determines if the extractor works only for specified types is
      * supportedTypes() or whether is a generic content extractor (such as
@@ -0,0 +1,225 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the Solr results used to display keyword hits: the number of chunks
+ * of an object, the chunks of an object with hits of a query, highlighted
+ * chunks and hit snippets. Opening the same hit again or paging back and forth
+ * then does not repeat the same Solr queries.
+ *
+ * The cache is bounded and cleared whenever the index changes (commit) or the
+ * core is opened or closed (case change). A value computed from a query
+ * started before the cache was cleared is not added, see getGeneration().
+ */
+class TextViewerCache {
+
+    private static final int MAX_CHUNK_COUNTS = 10000;
+    private static final int MAX_HIT_CHUNKS = 1000;
+    private static final int MAX_SNIPPETS = 10000;
+    private static final int MAX_PAGES = 32;
+    // highlighted chunks are up to ~1 MB of text each, also bound their total size (in chars)
+    private static final long MAX_PAGE_CHARS = 16L * 1024 * 1024;
+    private static final int MAX_QUEUED_PREFETCHES = 4;
+
+    private static final Object lock = new Object();
+    private static long generation = 0; //guarded by lock
+    private static long pageChars = 0; //guarded by lock
+    private static final Map<Long, Integer> chunkCounts = new BoundedMap<>(MAX_CHUNK_COUNTS); //guarded by lock
+    private static final Map<String, List<Integer>> hitChunks = new BoundedMap<>(MAX_HIT_CHUNKS); //guarded by lock
+    private static final Map<String, String> snippets = new BoundedMap<>(MAX_SNIPPETS); //guarded by lock
+    private static final Map<String, String> pages = new LinkedHashMap<>(16, 0.75f, true); //guarded by lock
+
+    // single daemon thread, drops prefetches when the user pages faster than they are done
+    private static final ExecutorService prefetchExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(MAX_QUEUED_PREFETCHES), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "KWS-viewer-prefetch"); //NON-NLS
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    private TextViewerCache() {
+    }
+
+    /**
+     * Gets the current generation of the cache, to be passed to the put
+     * methods along with a value queried after this call.
+     *
+     * @return the generation, incremented each time the cache is cleared
+     */
+    static long getGeneration() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    /**
+     * Clears the cache. Called when the index changes or the core is opened or
+     * closed.
+     */
+    static void invalidate() {
+        synchronized (lock) {
+            ++generation;
+            chunkCounts.clear();
+            hitChunks.clear();
+            snippets.clear();
+            pages.clear();
+            pageChars = 0;
+        }
+    }
+
+    /**
+     * Gets the number of chunks of an object, querying Solr if not cached.
+     *
+     * @param solrServer   the server
+     * @param solrObjectId object id in Solr
+     *
+     * @return the number of chunks, 0 if the object is not chunked
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    static int getNumChunks(Server solrServer, long solrObjectId) throws KeywordSearchModuleException, NoOpenCoreException {
+        final long queryGeneration;
+        synchronized (lock) {
+            Integer numChunks = chunkCounts.get(solrObjectId);
+            if (numChunks != null) {
+                return numChunks;
+            }
+            queryGeneration = generation;
+        }
+        final int numChunks = solrServer.queryNumFileChunks(solrObjectId);
+        synchronized (lock) {
+            if (queryGeneration == generation) {
+                chunkCounts.put(solrObjectId, numChunks);
+            }
+        }
+        return numChunks;
+    }
+
+    /**
+     * @return the sorted ids of the chunks with hits, or null if not cached
+     */
+    static List<Integer> getHitChunks(String query, long solrObjectId) {
+        synchronized (lock) {
+            return hitChunks.get(solrObjectId + ":" + query);
+        }
+    }
+
+    static void putHitChunks(String query, long solrObjectId, List<Integer> chunkIds, long queryGeneration) {
+        synchronized (lock) {
+            if (queryGeneration == generation) {
+                hitChunks.put(solrObjectId + ":" + query, Collections.unmodifiableList(chunkIds));
+            }
+        }
+    }
+
+    static String getSnippet(String snippetKey) {
+        synchronized (lock) {
+            return snippets.get(snippetKey);
+        }
+    }
+
+    static void putSnippet(String snippetKey, String snippet, long queryGeneration) {
+        synchronized (lock) {
+            if (queryGeneration == generation) {
+                snippets.put(snippetKey, snippet);
+            }
+        }
+    }
+
+    /**
+     * @return the highlighted content of the page, an empty string if the page
+     *         has no highlights, or null if not cached
+     */
+    static String getPage(String pageKey) {
+        synchronized (lock) {
+            return pages.get(pageKey);
+        }
+    }
+
+    static void putPage(String pageKey, String highlightedContent, long queryGeneration) {
+        synchronized (lock) {
+            if (queryGeneration != generation || highlightedContent.length() > MAX_PAGE_CHARS) {
+                return;
+            }
+            String previous = pages.put(pageKey, highlightedContent);
+            if (previous != null) {
+                pageChars -= previous.length();
+            }
+            pageChars += highlightedContent.length();
+            Iterator<String> it = pages.values().iterator();
+            while ((pages.size() > MAX_PAGES || pageChars > MAX_PAGE_CHARS) && it.hasNext()) {
+                pageChars -= it.next().length();
+                it.remove();
+            }
+        }
+    }
+
+    static boolean containsPage(String pageKey) {
+        synchronized (lock) {
+            return pages.containsKey(pageKey);
+        }
+    }
+
+    /**
+     * Runs a prefetch of a page in the background. Silently dropped by the
+     * executor if too many are already queued; it is not needed for
+     * correctness, the page will be queried when shown.
+     *
+     * @param prefetch task that queries the page and puts it into the cache
+     */
+    static void prefetch(Runnable prefetch) {
+        prefetchExecutor.execute(prefetch);
+    }
+
+    /**
+     * Map that keeps the most recently accessed entries, up to a maximum
+     * number.
+     */
+    private static class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+        private final int maxEntries;
+
+        BoundedMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
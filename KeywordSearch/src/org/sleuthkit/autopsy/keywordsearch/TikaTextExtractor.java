@@ -68,6 +68,8 @@ class TikaTextExtractor implements TextExtractor {
     private final char[] textChunkBuf = new char[MAX_EXTR_TEXT_CHARS];
     private AbstractFile sourceFile; //currently processed file
     private int numChunks = 0;
+    private InStreamKeywordMatcher.FileScan keywordScan;
+    private boolean indexByContentHash = false;
     private final ExecutorService tikaParseExecutor = Executors.newSingleThreadExecutor();
     private final List<String> TIKA_SUPPORTED_TYPES = new ArrayList<>();
 
@@ -100,6 +102,21 @@ public Map<String, String> getOptions() {
     public void setOptions(Map<String, String> options) {
     }
 
+    @Override
+    public void setKeywordScan(InStreamKeywordMatcher.FileScan keywordScan) {
+        this.keywordScan = keywordScan;
+    }
+
+    @Override
+    public void setIndexByContentHash(boolean indexByContentHash) {
+        this.indexByContentHash = indexByContentHash;
+    }
+
+    @Override
+    public boolean isIndexedByContentHash() {
+        return indexByContentHash;
+    }
+
     @Override
     public int getNumChunks() {
         return numChunks;
@@ -215,11 +232,15 @@ public boolean index(AbstractFile sourceFile, IngestJobContext context) throws I
                 }
 
                 // Encode from UTF-8 charset to bytes
-                byte[] encodedBytes = sb.toString().getBytes(OUTPUT_CHARSET);
+                String chunkText = sb.toString();
+                byte[] encodedBytes = chunkText.getBytes(OUTPUT_CHARSET);
                 AbstractFileChunk chunk = new AbstractFileChunk(this, this.numChunks + 1);
                 try {
                     chunk.index(ingester, encodedBytes, encodedBytes.length, OUTPUT_CHARSET);
                     ++this.numChunks;
+                    if (keywordScan != null) {
+                        keywordScan.scanChunk(chunk.getChunkId(), chunkText);
+                    }
                 } catch (Ingester.IngesterException ingEx) {
                     success = false;
                     logger.log(Level.WARNING, "Ingester had a problem with extracted strings from file '" //NON-NLS